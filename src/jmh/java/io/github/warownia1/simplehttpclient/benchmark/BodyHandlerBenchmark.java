@@ -0,0 +1,61 @@
+package io.github.warownia1.simplehttpclient.benchmark;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BodyHandlerBenchmark {
+
+  @Param({"1024", "65536"})
+  public int size;
+
+  private byte[] body;
+
+  private final HttpResponse.ResponseInfo info = new HttpResponse.ResponseInfo() {
+    private final HttpHeaders headers = HttpHeaders.of(Map.of());
+
+    @Override
+    public int statusCode() {
+      return 200;
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return headers;
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_1_1;
+    }
+  };
+
+  @Setup
+  public void setup() {
+    body = new byte[size];
+    Arrays.fill(body, (byte) 'a');
+  }
+
+  @Benchmark
+  public String ofString() throws IOException {
+    return HttpResponse.BodyHandlers.ofString().apply(info, new ByteArrayInputStream(body));
+  }
+
+  @Benchmark
+  public Void discarding() throws IOException {
+    return HttpResponse.BodyHandlers.discarding().apply(info, new ByteArrayInputStream(body));
+  }
+}
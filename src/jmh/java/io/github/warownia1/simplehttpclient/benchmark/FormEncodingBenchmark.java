@@ -0,0 +1,70 @@
+package io.github.warownia1.simplehttpclient.benchmark;
+
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.impl.WWWFormURLEncodedRequestBodyBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormEncodingBenchmark {
+
+  @Param({"ascii", "unicode"})
+  public String charset;
+
+  @Param({"8", "256"})
+  public int fields;
+
+  private final Map<String, String> form = new LinkedHashMap<>();
+
+  @Setup
+  public void setup() {
+    String value = charset.equals("ascii")
+        ? "some value & more=text"
+        : "za\u017c\u00f3\u0142\u0107 g\u0119\u015bl\u0105 ja\u017a\u0144 \ud83d\ude00";
+    for (int i = 0; i < fields; i++) {
+      form.put("field" + i, value + i);
+    }
+  }
+
+  @Benchmark
+  public byte[] buffered() {
+    return new WWWFormURLEncodedRequestBodyBuilder().appendAll(form).build().getBytes();
+  }
+
+  @Benchmark
+  public void streaming(Blackhole blackhole) throws IOException {
+    HttpRequest.Body body = WWWFormURLEncodedRequestBodyBuilder.streaming()
+        .appendAll(form)
+        .build();
+    body.writeTo(new BlackholeOutputStream(blackhole));
+  }
+
+  static final class BlackholeOutputStream extends OutputStream {
+    private final Blackhole blackhole;
+
+    BlackholeOutputStream(Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(int b) {
+      blackhole.consume(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      blackhole.consume(b);
+    }
+  }
+}
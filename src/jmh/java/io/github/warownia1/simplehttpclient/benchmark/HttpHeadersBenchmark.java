@@ -0,0 +1,47 @@
+package io.github.warownia1.simplehttpclient.benchmark;
+
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.impl.HttpHeadersBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpHeadersBenchmark {
+
+  private HttpHeaders headers;
+
+  @Setup
+  public void setup() {
+    headers = build();
+  }
+
+  @Benchmark
+  public HttpHeaders build() {
+    HttpHeadersBuilder builder = new HttpHeadersBuilder();
+    builder.addHeader("Content-Type", "application/json");
+    builder.addHeader("Content-Length", "1024");
+    builder.addHeader("Cache-Control", "no-cache");
+    builder.addHeader("Accept", "application/json");
+    builder.addHeader("Accept", "text/plain");
+    builder.addHeader("X-Request-Id", "5f3c1d2e-8b7a-4e21-9c55-0d6b2f4a1e90");
+    return builder.build();
+  }
+
+  @Benchmark
+  public Optional<String> firstValue() {
+    return headers.firstValue("content-type");
+  }
+
+  @Benchmark
+  public List<String> allValues() {
+    return headers.allValues("ACCEPT");
+  }
+}
@@ -0,0 +1,49 @@
+package io.github.warownia1.simplehttpclient.benchmark;
+
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.impl.ByteArrayRequestBody;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpRequestBuilderBenchmark {
+
+  private final URI uri = URI.create("https://example.org/api/v1/items?page=2");
+  private final byte[] content = new byte[256];
+  private HttpRequest request;
+
+  @Setup
+  public void setup() {
+    request = post();
+  }
+
+  @Benchmark
+  public HttpRequest get() {
+    return HttpRequest.newBuilder(uri)
+        .header("Accept", "application/json")
+        .timeout(Duration.ofSeconds(10))
+        .build();
+  }
+
+  @Benchmark
+  public HttpRequest post() {
+    return HttpRequest.newBuilder(uri)
+        .header("Accept", "application/json")
+        .header("Content-Type", "application/json")
+        .POST(new ByteArrayRequestBody(content))
+        .build();
+  }
+
+  @Benchmark
+  public HttpRequest copy() {
+    return HttpRequest.newBuilder(request).header("X-Attempt", "2").build();
+  }
+}
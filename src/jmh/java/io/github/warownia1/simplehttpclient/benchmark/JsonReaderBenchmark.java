@@ -0,0 +1,65 @@
+package io.github.warownia1.simplehttpclient.benchmark;
+
+import io.github.warownia1.simplehttpclient.JsonReader;
+import io.github.warownia1.simplehttpclient.JsonReader.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonReaderBenchmark {
+
+  @Param({"1000"})
+  public int elements;
+
+  private byte[] document;
+
+  @Setup
+  public void setup() {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < elements; i++) {
+      if (i > 0)
+        json.append(',');
+      json.append("{\"id\":").append(i)
+          .append(",\"price\":").append(i).append(".25")
+          .append(",\"name\":\"item ").append(i).append("\"")
+          .append(",\"active\":true}");
+    }
+    document = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Sums the numeric fields matching the names without creating strings.
+   */
+  @Benchmark
+  public double sumFields() throws IOException {
+    JsonReader reader = new JsonReader(new ByteArrayInputStream(document));
+    double sum = 0;
+    reader.next();
+    while (reader.next() == Token.BEGIN_OBJECT) {
+      while (reader.next() == Token.FIELD_NAME) {
+        boolean id = reader.textEquals("id");
+        boolean price = reader.textEquals("price");
+        reader.next();
+        if (id)
+          sum += reader.longValue();
+        else if (price)
+          sum += reader.doubleValue();
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public String readAsString() {
+    return new String(document, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,78 @@
+package io.github.warownia1.simplehttpclient.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.impl.ByteArrayRequestBody;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures complete exchanges with a server running on the loopback interface in the
+ * same JVM, so the results include the cost of both ends of the connection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SendBenchmark {
+
+  @Param({"16", "16384"})
+  public int size;
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private HttpClient client;
+  private HttpRequest get;
+  private HttpRequest post;
+
+  @Setup
+  public void setup() throws IOException {
+    byte[] response = new byte[size];
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      try (InputStream in = exchange.getRequestBody()) {
+        in.transferTo(OutputStream.nullOutputStream());
+      }
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(response);
+      }
+    });
+    serverExecutor = Executors.newFixedThreadPool(4);
+    server.setExecutor(serverExecutor);
+    server.start();
+    URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    client = HttpClient.newHttpClient();
+    get = HttpRequest.newBuilder(uri).build();
+    post = HttpRequest.newBuilder(uri).POST(new ByteArrayRequestBody(new byte[size])).build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public byte[] get() throws IOException {
+    return client.send(get, (info, stream) -> stream.readAllBytes()).body();
+  }
+
+  @Benchmark
+  public byte[] post() throws IOException {
+    return client.send(post, (info, stream) -> stream.readAllBytes()).body();
+  }
+}
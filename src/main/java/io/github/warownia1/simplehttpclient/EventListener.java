@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient;
+
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * A listener of the lifecycle events of the requests sent by an {@link HttpClient}.
+ * <p>
+ * A listener is installed with {@link HttpClient.Builder#eventListener(EventListener)}
+ * and receives the events of every request sent by the client. The events are delivered
+ * synchronously on the thread performing the exchange in the order they are declared
+ * here, so the listener must be fast and must not block. Phases that do not take place,
+ * such as the DNS lookup and connect of a pooled TLS connection, are not reported; a
+ * plain HTTP connection does not reveal whether it is taken from the pool, so its
+ * lookup and connect are reported for every request. A followed redirect repeats the
+ * events from {@link #dnsStart} for the next hop. Every request ends with either
+ * {@link #responseBodyComplete} or {@link #requestFailed}, including a request
+ * cancelled before it is sent.
+ * <p>
+ * All methods have empty default implementations so the listener implements only the
+ * events it is interested in.
+ */
+public interface EventListener {
+
+  /**
+   * Invoked when an asynchronous request is submitted to the executor.
+   *
+   * @param request the request
+   */
+  default void requestQueued(HttpRequest request) {
+  }
+
+  /**
+   * Invoked before the host name of the request is resolved.
+   *
+   * @param request the request
+   * @param host the host name being resolved
+   */
+  default void dnsStart(HttpRequest request, String host) {
+  }
+
+  /**
+   * Invoked after the host name of the request is resolved.
+   *
+   * @param request the request
+   * @param host the resolved host name
+   * @param addresses the addresses of the host, empty if the host could not be resolved
+   */
+  default void dnsEnd(HttpRequest request, String host, List<InetAddress> addresses) {
+  }
+
+  /**
+   * Invoked before the connection to the server is established, or before a plain HTTP
+   * connection is established or taken from the pool.
+   *
+   * @param request the request
+   */
+  default void connectStart(HttpRequest request) {
+  }
+
+  /**
+   * Invoked before the TLS handshake of a new secure connection starts.
+   *
+   * @param request the request
+   */
+  default void secureConnectStart(HttpRequest request) {
+  }
+
+  /**
+   * Invoked after the TLS handshake of a new secure connection completes.
+   *
+   * @param request the request
+   */
+  default void secureConnectEnd(HttpRequest request) {
+  }
+
+  /**
+   * Invoked once the connection to the server is ready.
+   *
+   * @param request the request
+   */
+  default void connectEnd(HttpRequest request) {
+  }
+
+  /**
+   * Invoked after the request line and headers are written.
+   *
+   * @param request the request
+   */
+  default void requestHeadersSent(HttpRequest request) {
+  }
+
+  /**
+   * Invoked after the request body is written. Not invoked for requests without a body.
+   *
+   * @param request the request
+   */
+  default void requestBodySent(HttpRequest request) {
+  }
+
+  /**
+   * Invoked when the response status line and headers are received, just before the
+   * body handler is applied.
+   *
+   * @param request the request
+   * @param responseInfo the response status and headers
+   */
+  default void responseHeadersReceived(HttpRequest request,
+      HttpResponse.ResponseInfo responseInfo) {
+  }
+
+  /**
+   * Invoked after the body handler returned, which ends a successful request.
+   *
+   * @param request the request
+   * @param timings the final timings of the request
+   */
+  default void responseBodyComplete(HttpRequest request, HttpResponse.Timings timings) {
+  }
+
+  /**
+   * Invoked when the request fails, which ends the request.
+   *
+   * @param request the request
+   * @param exception the failure
+   * @param timings the timings of the phases completed before the failure
+   */
+  default void requestFailed(HttpRequest request, Exception exception,
+      HttpResponse.Timings timings) {
+  }
+}
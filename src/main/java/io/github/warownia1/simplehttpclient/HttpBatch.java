@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * A batch of requests sent with
+ * {@link HttpClient#sendAll(Collection, HttpResponse.BodyHandler, int) HttpClient.sendAll}.
+ * <p>
+ * The requests are dispatched in the order of the input collection and no more than the
+ * requested number of them are in flight at any time. The responses can be retrieved
+ * either in the input order, through {@link #futures()} or {@link #responses()}, or in the
+ * order in which they complete, through {@link #completionOrder()} or {@link #stream()}.
+ *
+ * @param <T> the response body type
+ */
+public interface HttpBatch<T> {
+
+  /**
+   * Returns the futures of the responses in the order of the requests. A request that
+   * is not dispatched yet has its future incomplete. Cancelling a future cancels its
+   * request and does not affect the other requests in the batch.
+   *
+   * @return an unmodifiable list of the response futures
+   */
+  List<CompletableFuture<HttpResponse<T>>> futures();
+
+  /**
+   * Returns a future that completes with the responses in the order of the requests once
+   * all requests completed successfully. If any request fails or is cancelled, the
+   * returned future completes exceptionally once all the requests are completed.
+   *
+   * @return a future of all responses
+   */
+  CompletableFuture<List<HttpResponse<T>>> responses();
+
+  /**
+   * Returns an iterator which yields the response futures in the order in which they
+   * complete. The {@code next} method blocks until another response is completed, and
+   * the returned future is always done. The completion order can be consumed only once,
+   * either with this iterator or with the {@link #stream()}.
+   *
+   * @return an iterator over the completed futures
+   */
+  Iterator<CompletableFuture<HttpResponse<T>>> completionOrder();
+
+  /**
+   * Returns a sequential stream of the response futures in the order in which they
+   * complete.
+   *
+   * @return a stream of the completed futures
+   * @see #completionOrder()
+   */
+  Stream<CompletableFuture<HttpResponse<T>>> stream();
+
+  /**
+   * Cancels all the requests which are not completed yet. The requests which were not
+   * dispatched are never sent.
+   */
+  void cancel();
+
+  /**
+   * Returns the number of requests in this batch.
+   *
+   * @return the size of the batch
+   */
+  int size();
+}
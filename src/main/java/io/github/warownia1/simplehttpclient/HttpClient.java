@@ -24,12 +24,20 @@
 
 package io.github.warownia1.simplehttpclient;
 
+import io.github.warownia1.simplehttpclient.impl.BoundedHttpBatch;
 import io.github.warownia1.simplehttpclient.impl.JQueryHttpClient;
 import io.github.warownia1.simplehttpclient.impl.SimpleHttpClient;
+import io.github.warownia1.simplehttpclient.impl.SimpleHttpClientBuilder;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * An HTTP Client.
@@ -63,6 +71,214 @@ public interface HttpClient {
       return new JQueryHttpClient();
   }
 
+  /**
+   * Creates a new {@code HttpClient} builder.
+   *
+   * @return a new builder
+   */
+  static Builder newBuilder() {
+    return new SimpleHttpClientBuilder();
+  }
+
+  /**
+   * A builder of {@linkplain HttpClient HTTP Clients}.
+   * <p>
+   * Builders are created by invoking {@link HttpClient#newBuilder() newBuilder}. Each of
+   * the setter methods modifies the state of the builder and returns the same instance.
+   * Builders are not thread-safe and should not be used concurrently from multiple
+   * threads.
+   * <p>
+   * The socket options, {@link #tcpNoDelay}, {@link #keepAlive},
+   * {@link #sendBufferSize}, {@link #receiveBufferSize} and {@link #localAddress},
+   * apply only to the sockets the client opens itself: those of HTTPS requests sent
+   * without a proxy and those of WebSockets. {@code HttpURLConnection} opens the
+   * sockets of plain HTTP requests and of proxy tunnels without a way to configure
+   * them, so these connections keep the defaults of the platform.
+   */
+  interface Builder {
+    /**
+     * Sets the listener receiving the lifecycle events of the requests sent by the
+     * client. By default, no listener is installed.
+     *
+     * @param listener the event listener
+     * @return this builder
+     */
+    Builder eventListener(EventListener listener);
+
+    /**
+     * Sets the redirect policy of the client. The default is {@link Redirect#NORMAL}.
+     *
+     * @param policy the redirect policy
+     * @return this builder
+     */
+    Builder followRedirects(Redirect policy);
+
+    /**
+     * Sets the maximum number of redirects followed for a single request. A request
+     * redirected more times fails with a {@link java.net.ProtocolException}. The default
+     * is 20.
+     *
+     * @param maxRedirects the maximum number of redirects
+     * @return this builder
+     * @throws IllegalArgumentException if the number is negative
+     */
+    Builder maxRedirects(int maxRedirects);
+
+    /**
+     * Sets the cookie handler of the client. The handler supplies the cookies added to
+     * every request, including the redirected ones, and receives the headers of every
+     * response. By default, the client does not manage cookies.
+     *
+     * @param cookieHandler the cookie handler, e.g. an
+     *     {@link io.github.warownia1.simplehttpclient.impl.CookieJar}
+     * @return this builder
+     */
+    Builder cookieHandler(java.net.CookieHandler cookieHandler);
+
+    /**
+     * Sets the selector choosing the proxy for each request. Only the first proxy
+     * returned by the selector is used. By default, the connections use the system-wide
+     * {@link java.net.ProxySelector#getDefault() proxy selector}.
+     *
+     * @param proxySelector the proxy selector, e.g. a
+     *     {@link io.github.warownia1.simplehttpclient.impl.HostProxySelector}
+     * @return this builder
+     */
+    Builder proxy(java.net.ProxySelector proxySelector);
+
+    /**
+     * Sets the timeout of establishing a connection. A request which sets its own
+     * {@linkplain HttpRequest#timeout() timeout} uses it instead. By default, the
+     * connect does not time out.
+     *
+     * @param timeout the connect timeout
+     * @return this builder
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    Builder connectTimeout(Duration timeout);
+
+    /**
+     * Sets the longest time a connection may wait for the response data. A request
+     * which sets its own {@linkplain HttpRequest#timeout() timeout} uses it instead. By
+     * default, the reads do not time out.
+     *
+     * @param timeout the read timeout
+     * @return this builder
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    Builder readTimeout(Duration timeout);
+
+    /**
+     * Sets the longest time writing the request headers and body may take. By default,
+     * the writes do not time out.
+     *
+     * @param timeout the write timeout
+     * @return this builder
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    Builder writeTimeout(Duration timeout);
+
+    /**
+     * Sets the longest time a whole exchange may take, from connecting to handling the
+     * response body, including the redirects. By default, the exchanges are bounded by
+     * the connect and read timeouts only.
+     *
+     * @param timeout the total timeout of a request
+     * @return this builder
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    Builder requestTimeout(Duration timeout);
+
+    /**
+     * Sets the executor of the asynchronous requests sent without an executor. By
+     * default, the {@linkplain java.util.concurrent.ForkJoinPool#commonPool() common
+     * pool} is used.
+     *
+     * @param executor the default executor
+     * @return this builder
+     */
+    Builder executor(Executor executor);
+
+    /**
+     * Limits the number of requests in flight, and so the number of connections open,
+     * to each host. Requests over the limit wait for a free connection. By default,
+     * the number of connections is not limited.
+     *
+     * @param maxConnections the maximum number of connections to a host
+     * @return this builder
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    Builder maxConnectionsPerHost(int maxConnections);
+
+    /**
+     * Sets the {@link java.net.StandardSocketOptions#TCP_NODELAY TCP_NODELAY} option of
+     * the direct HTTPS and WebSocket connections, disabling Nagle's algorithm if set.
+     * Plain HTTP and proxied connections are not affected.
+     *
+     * @param tcpNoDelay whether to disable Nagle's algorithm
+     * @return this builder
+     */
+    Builder tcpNoDelay(boolean tcpNoDelay);
+
+    /**
+     * Sets the {@link java.net.StandardSocketOptions#SO_KEEPALIVE SO_KEEPALIVE} option
+     * of the direct HTTPS and WebSocket connections. Plain HTTP and proxied
+     * connections are not affected.
+     *
+     * @param keepAlive whether to send TCP keep-alive probes
+     * @return this builder
+     */
+    Builder keepAlive(boolean keepAlive);
+
+    /**
+     * Sets the size of the socket send buffer of the direct HTTPS and WebSocket
+     * connections. Plain HTTP and proxied connections are not affected.
+     *
+     * @param size the buffer size in bytes
+     * @return this builder
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    Builder sendBufferSize(int size);
+
+    /**
+     * Sets the size of the socket receive buffer of the direct HTTPS and WebSocket
+     * connections. Plain HTTP and proxied connections are not affected.
+     *
+     * @param size the buffer size in bytes
+     * @return this builder
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    Builder receiveBufferSize(int size);
+
+    /**
+     * Sets the local address the direct HTTPS and WebSocket connections are bound to,
+     * choosing the network interface they leave through. Plain HTTP and proxied
+     * connections are not affected.
+     *
+     * @param address the local address
+     * @return this builder
+     */
+    Builder localAddress(java.net.InetAddress address);
+
+    /**
+     * Sets the largest payload, after decompression, of a frame received by the
+     * WebSockets of the client. A larger frame fails the WebSocket with status
+     * {@code 1009}. The default is 16 MiB.
+     *
+     * @param size the maximum frame size in bytes
+     * @return this builder
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    Builder maxWebSocketFrameSize(int size);
+
+    /**
+     * Returns a new {@link HttpClient} built from the current state of this builder.
+     *
+     * @return a new {@code HttpClient}
+     */
+    HttpClient build();
+  }
+
   /**
    * Sends the given request and returns a response.
    * <p>
@@ -92,6 +308,144 @@ public interface HttpClient {
   <T> CompletableFuture<HttpResponse<T>> sendAsync(
       HttpRequest request, HttpResponse.BodyHandler<T> handler, Executor executor);
 
+  /**
+   * Sends the given request asynchronously using the default executor of the client.
+   * Unless the client is built with an {@linkplain Builder#executor executor}, the
+   * {@linkplain ForkJoinPool#commonPool() common pool} is used.
+   *
+   * @param request the request
+   * @param handler the response body handler
+   * @return the response wrapped in a future
+   * @param <T> the response body type
+   */
+  default <T> CompletableFuture<HttpResponse<T>> sendAsync(
+      HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+    return sendAsync(request, handler, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Sends the given request asynchronously using provided {@link Executor} and feeds
+   * the response body to a subscriber as it arrives.
+   * <p>
+   * A new subscriber is taken from the supplier for each exchange, so clients which
+   * send the request more than once, such as when retrying or hedging it, never feed
+   * two bodies to the same subscriber. Clients which can drive the subscriber
+   * themselves release the executor thread once the response headers are received.
+   * The default implementation reads the body through a
+   * {@linkplain HttpResponse.BodyHandlers#fromSubscriber body handler} instead, which
+   * occupies the executor thread until the body is complete.
+   *
+   * @param request the request
+   * @param subscriber the supplier of a response body subscriber for each exchange
+   * @param executor the executor
+   * @return the response wrapped in a future
+   * @param <T> the response body type
+   */
+  default <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends HttpResponse.BodySubscriber<T>> subscriber, Executor executor) {
+    return sendAsync(request, HttpResponse.BodyHandlers.fromSubscriber(subscriber), executor);
+  }
+
+  /**
+   * Opens a WebSocket to the URI of the request, connecting to an {@code http} URI as
+   * {@code ws} and to an {@code https} URI as {@code wss}. The headers of the request are
+   * sent with the opening handshake; subprotocols are offered in the
+   * {@code Sec-WebSocket-Protocol} header and compression in the
+   * {@code Sec-WebSocket-Extensions: permessage-deflate} header. The
+   * {@linkplain HttpRequest#timeout() timeout} of the request bounds the handshake.
+   * <p>
+   * The messages are passed to the listener by a task of the executor, which occupies
+   * a thread until the WebSocket is closed.
+   * <p>
+   * The default implementation throws {@link UnsupportedOperationException}; a client
+   * wrapping another one opens the WebSocket through it, so the connection settings of
+   * the wrapped client apply.
+   *
+   * @param request the request of the opening handshake
+   * @param listener the listener of the received messages
+   * @param executor the executor reading the messages
+   * @return the open WebSocket
+   * @throws java.net.ProtocolException if the server refuses the handshake
+   * @throws IOException if the connection fails
+   * @throws UnsupportedOperationException if the client does not support WebSockets
+   */
+  default WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    throw new UnsupportedOperationException("WebSockets not supported");
+  }
+
+  /**
+   * Sends all the given requests asynchronously keeping at most {@code concurrency} of
+   * them in flight at the same time.
+   * <p>
+   * The requests are executed on a pool of {@code concurrency} threads which is shut
+   * down once the whole batch is completed. A failure of one request does not affect
+   * the other requests in the batch.
+   *
+   * @param requests the requests to send
+   * @param handler the response body handler used for every response
+   * @param concurrency the maximum number of requests in flight
+   * @param <T> the response body type
+   * @return the batch of the sent requests
+   * @throws IllegalArgumentException if concurrency is not positive
+   */
+  default <T> HttpBatch<T> sendAll(
+      Collection<HttpRequest> requests, HttpResponse.BodyHandler<T> handler,
+      int concurrency) {
+    return BoundedHttpBatch.send(this, requests, handler, concurrency, null, false);
+  }
+
+  /**
+   * Sends all the given requests asynchronously using provided {@link Executor} keeping
+   * at most {@code concurrency} of them in flight at the same time.
+   * <p>
+   * If {@code failFast} is set, the first failed request cancels all the remaining
+   * requests in the batch, including the ones that were not dispatched yet.
+   *
+   * @param requests the requests to send
+   * @param handler the response body handler used for every response
+   * @param concurrency the maximum number of requests in flight
+   * @param executor the executor
+   * @param failFast whether to cancel the batch on the first failure
+   * @param <T> the response body type
+   * @return the batch of the sent requests
+   * @throws IllegalArgumentException if concurrency is not positive
+   */
+  default <T> HttpBatch<T> sendAll(
+      Collection<HttpRequest> requests, HttpResponse.BodyHandler<T> handler,
+      int concurrency, Executor executor, boolean failFast) {
+    requireNonNull(executor);
+    return BoundedHttpBatch.send(this, requests, handler, concurrency, executor, failFast);
+  }
+
+  /**
+   * Defines the automatic redirection policy.
+   * <p>
+   * Redirects with the status codes 301, 302, 303, 307 and 308 are followed according to
+   * the policy. A 303 redirect changes any method but HEAD to GET and a 301 or 302
+   * redirect changes POST to GET, dropping the request body, while 307 and 308 redirects
+   * resend the request unchanged. The {@code Authorization} and {@code Cookie} headers
+   * are not sent to a different origin. The targets of permanent redirects, 301 and 308,
+   * are remembered by the client so that subsequent requests go straight to the target.
+   */
+  enum Redirect {
+
+    /**
+     * Never redirect.
+     */
+    NEVER,
+
+    /**
+     * Always redirect.
+     */
+    ALWAYS,
+
+    /**
+     * Always redirect, except from HTTPS URLs to HTTP URLs.
+     */
+    NORMAL
+  }
+
   enum Version {
 
     /**
@@ -33,6 +33,8 @@ package io.github.warownia1.simplehttpclient;
 
 import io.github.warownia1.simplehttpclient.impl.SimpleHttpRequestBuilder;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Optional;
@@ -158,6 +160,33 @@ public abstract class HttpRequest {
      */
     Builder timeout(Duration duration);
 
+    /**
+     * Requests or disables the use of {@code Expect: 100-continue}. The default is
+     * disabled.
+     * <p>
+     * When enabled, the request headers are sent with {@code Expect: 100-continue} and the
+     * body is only sent once the server answers with {@code 100 Continue}. If the server
+     * answers with a final status instead, for example {@code 401} or {@code 413}, the
+     * body is not sent at all and that status is returned as the response. This saves
+     * the bandwidth of large uploads the server would reject. A request without a body
+     * ignores this setting.
+     *
+     * @implNote The JRE client waits up to five seconds for the server to answer the
+     *     expectation and sends the body anyway afterwards. If the request has a timeout,
+     *     it waits up to the timeout instead and fails if no answer arrives. The response
+     *     to a rejected expectation carries the status code and headers without a body.
+     *     The default implementation supports disabling the expectation only.
+     *
+     * @param enable whether to expect the continue response
+     * @return this builder
+     * @throws UnsupportedOperationException if the builder does not support the
+     *     expectation
+     */
+    default Builder expectContinue(boolean enable) {
+      if (enable)
+        throw new UnsupportedOperationException("expect continue not supported");
+      return this;
+    }
 
     /**
      * Builds and returns an {@link HttpRequest}.
@@ -171,7 +200,27 @@ public abstract class HttpRequest {
   public interface Body {
     byte[] getBytes();
 
+    /**
+     * Returns the length of the body in bytes or {@code -1} if the length is not known in
+     * advance, in which case the body is sent using chunked transfer encoding.
+     *
+     * @return the body length or -1 if unknown
+     */
     long contentLength();
+
+    /**
+     * Writes the body to the given output stream.
+     * <p>
+     * The default implementation writes the array returned from {@link #getBytes()}.
+     * Implementations that can produce their content incrementally should override this
+     * method so that the body is never materialized in memory as a whole.
+     *
+     * @param out the stream to write the body to
+     * @throws IOException if an IO error occurs
+     */
+    default void writeTo(OutputStream out) throws IOException {
+      out.write(getBytes());
+    }
   }
 
   public static Builder newBuilder(URI uri) {
@@ -182,6 +231,18 @@ public abstract class HttpRequest {
     return new SimpleHttpRequestBuilder();
   }
 
+  /**
+   * Creates a {@code Builder} whose initial state is copied from an existing
+   * {@code HttpRequest}. The builder can be used to create a modified copy of the request,
+   * for example one sent to a different URI.
+   *
+   * @param request the original request
+   * @return a new request builder
+   */
+  public static Builder newBuilder(HttpRequest request) {
+    return SimpleHttpRequestBuilder.copyOf(request);
+  }
+
   public abstract Optional<Body> body();
 
   public abstract String method();
@@ -191,4 +252,15 @@ public abstract class HttpRequest {
   public abstract HttpHeaders headers();
 
   public abstract Optional<Duration> timeout();
+
+  /**
+   * Returns whether the body is sent only after the server accepts the request with
+   * {@code 100 Continue}. The default implementation returns {@code false}.
+   *
+   * @return whether the request expects the continue response
+   * @see Builder#expectContinue(boolean)
+   */
+  public boolean expectContinue() {
+    return false;
+  }
 }
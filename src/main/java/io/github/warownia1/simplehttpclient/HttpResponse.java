@@ -31,9 +31,14 @@
 
 package io.github.warownia1.simplehttpclient;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * An HTTP Response
@@ -73,6 +78,67 @@ public interface HttpResponse<T> {
     HttpClient.Version version();
   }
 
+  /**
+   * The time spent in each phase of a request exchange.
+   * <p>
+   * The phases follow each other, so the time not spent in the network, which is the
+   * sum of {@link #dns()}, {@link #connect()}, {@link #secureConnect()} and
+   * {@link #sending()}, can be told apart from the time the server took to respond,
+   * {@link #waiting()}, and the time spent in the {@link BodyHandler},
+   * {@link #bodyHandling()}. A phase which did not take place, for example the connect
+   * of a pooled connection, has zero duration.
+   */
+  interface Timings {
+    /**
+     * Returns the time the request waited for the executor before it was started.
+     * @return the queueing time
+     */
+    Duration queued();
+
+    /**
+     * Returns the time spent resolving the host name.
+     * @return the DNS lookup time
+     */
+    Duration dns();
+
+    /**
+     * Returns the time spent establishing the TCP connection.
+     * @return the connect time
+     */
+    Duration connect();
+
+    /**
+     * Returns the time spent in the TLS handshake.
+     * @return the handshake time
+     */
+    Duration secureConnect();
+
+    /**
+     * Returns the time spent writing the request headers and body.
+     * @return the sending time
+     */
+    Duration sending();
+
+    /**
+     * Returns the time between the request being sent and the response headers being
+     * received, that is the time to the first byte of the response.
+     * @return the waiting time
+     */
+    Duration waiting();
+
+    /**
+     * Returns the time spent in the body handler reading the response body.
+     * @return the body handling time
+     */
+    Duration bodyHandling();
+
+    /**
+     * Returns the time from the submission of the request to its completion.
+     * @return the total time
+     */
+    Duration total();
+  }
+
   /**
    * A handler for response bodies. The class {@link BodyHandlers} provides
    * implementations of common body handlers.
@@ -95,6 +161,143 @@ public interface HttpResponse<T> {
     T apply(ResponseInfo responseInfo, InputStream stream) throws IOException;
   }
 
+  /**
+   * A consumer of a response body which is driven by the client as the body bytes
+   * arrive, instead of reading them from a stream. The class {@link BodySubscribers}
+   * provides implementations of common body subscribers.
+   * <p>
+   * The client calls {@link #onHeaders} once the response status code and headers are
+   * received, {@link #onData} for every part of the body, and then either
+   * {@link #onComplete} when the whole body has been received, or {@link #onError} if
+   * the response fails. The calls are never concurrent, but they may come from
+   * different threads. A subscriber is used for a single response only.
+   * <p>
+   * Unlike a {@link BodyHandler}, a {@code BodySubscriber} does not need a thread of
+   * its own while it waits for the body bytes, so a client which can drive subscribers
+   * without blocking, like the default client of the JRE, handles many concurrent
+   * responses on a few threads. The client of this library does so only for plain HTTP
+   * bodies with a content length; HTTPS and chunked bodies still hold a thread of the
+   * request executor while they wait. The callbacks may run on shared threads, so they
+   * must not block.
+   *
+   * @param <T> the response body type
+   */
+  interface BodySubscriber<T> {
+    /**
+     * Receives the response status code and headers before the body.
+     *
+     * @param responseInfo the response status code and headers
+     * @throws IOException to fail the response
+     */
+    default void onHeaders(ResponseInfo responseInfo) throws IOException {
+    }
+
+    /**
+     * Receives the next part of the response body. The buffer is reused once the
+     * method returns, so its content must be consumed or copied.
+     *
+     * @param data the next bytes of the body
+     * @throws IOException to fail the response
+     */
+    void onData(ByteBuffer data) throws IOException;
+
+    /**
+     * Called once the whole body has been received.
+     *
+     * @return the response body object
+     * @throws IOException to fail the response
+     */
+    T onComplete() throws IOException;
+
+    /**
+     * Called if receiving the response fails, including the failures thrown by the
+     * other methods of the subscriber. No other method is called afterwards.
+     *
+     * @param error the cause of the failure
+     */
+    default void onError(Throwable error) {
+    }
+  }
+
+  /**
+   * Implementations of {@link BodySubscriber} counterparts of the common
+   * {@linkplain BodyHandlers body handlers}.
+   */
+  class BodySubscribers {
+    private BodySubscribers() {
+    }
+
+    /**
+     * Returns a {@code BodySubscriber<byte[]>} collecting the response body in a
+     * byte array.
+     *
+     * @return a response body subscriber
+     */
+    public static BodySubscriber<byte[]> ofByteArray() {
+      return new BodySubscriber<>() {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public void onData(ByteBuffer data) {
+          if (data.hasArray()) {
+            bytes.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+          }
+          else {
+            byte[] copy = new byte[data.remaining()];
+            data.get(copy);
+            bytes.write(copy, 0, copy.length);
+          }
+        }
+
+        @Override
+        public byte[] onComplete() {
+          return bytes.toByteArray();
+        }
+      };
+    }
+
+    /**
+     * Returns a {@code BodySubscriber<String>} that returns a response body
+     * as a String using default charset.
+     *
+     * @return a response body subscriber
+     */
+    public static BodySubscriber<String> ofString() {
+      BodySubscriber<byte[]> bytes = ofByteArray();
+      return new BodySubscriber<>() {
+        @Override
+        public void onData(ByteBuffer data) throws IOException {
+          bytes.onData(data);
+        }
+
+        @Override
+        public String onComplete() throws IOException {
+          return new String(bytes.onComplete());
+        }
+      };
+    }
+
+    /**
+     * Returns a {@code BodySubscriber<Void>} that drops the response body.
+     *
+     * @return a response body subscriber
+     */
+    public static BodySubscriber<Void> discarding() {
+      return new BodySubscriber<>() {
+        @Override
+        public void onData(ByteBuffer data) {
+          data.position(data.limit());
+        }
+
+        @Override
+        public Void onComplete() {
+          return null;
+        }
+      };
+    }
+  }
+
   /**
    * Implementations of {@link BodyHandler} that provide some useful handlers
    * such as handling the response body as a {@code String}.
@@ -110,7 +313,38 @@ public interface HttpResponse<T> {
      * @return a response body handler
      */
     public static BodyHandler<String> ofString() {
-      return (info, stream) -> new String(stream.readAllBytes());
+      return fromSubscriber(BodySubscribers::ofString);
+    }
+
+    /**
+     * Returns a {@code BodyHandler} feeding the response body to a new subscriber
+     * from the supplier. The body is read from the stream on the calling thread, which
+     * lets any client consume the response with a {@link BodySubscriber}.
+     *
+     * @param subscriber the supplier of a subscriber for each response
+     * @param <T> the response body type
+     * @return a response body handler
+     */
+    public static <T> BodyHandler<T> fromSubscriber(
+        Supplier<? extends BodySubscriber<T>> subscriber) {
+      return (info, stream) -> {
+        BodySubscriber<T> consumer = subscriber.get();
+        try {
+          consumer.onHeaders(info);
+          if (stream != null) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = stream.read(buffer)) >= 0) {
+              consumer.onData(ByteBuffer.wrap(buffer, 0, count));
+            }
+          }
+          return consumer.onComplete();
+        }
+        catch (IOException | RuntimeException e) {
+          consumer.onError(e);
+          throw e;
+        }
+      };
     }
 
     public static BodyHandler<Void> discarding() {
@@ -127,6 +361,19 @@ public interface HttpResponse<T> {
     public static BodyHandler<InputStream> ofInputStream() {
       return (info, stream) -> stream;
     }
+
+    /**
+     * Returns a {@code BodyHandler<JsonReader>} that returns a streaming
+     * reader of the UTF-8 encoded JSON response body. The body is parsed as
+     * it is read from the reader, which must be closed once it is no longer
+     * needed.
+     *
+     * @return a response body handler
+     */
+    public static BodyHandler<JsonReader> ofJson() {
+      return (info, stream) ->
+          new JsonReader(stream != null ? stream : InputStream.nullInputStream());
+    }
   }
 
   /**
@@ -166,4 +413,13 @@ public interface HttpResponse<T> {
    * @return the URI of the response
    */
   URI uri();
+
+  /**
+   * Returns the time spent in the phases of the exchange, if the client recorded them.
+   *
+   * @return the timings of the exchange or an empty optional
+   */
+  default Optional<Timings> timings() {
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,630 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A streaming pull parser of UTF-8 encoded JSON documents.
+ * <p>
+ * Each call to {@link #next()} reads the next token from the stream and the value of a
+ * scalar token is available from the accessor methods until the following call. The
+ * input is read through a single buffer of a fixed size and the text of strings and
+ * numbers is decoded into a reusable character buffer, so a document of any size, such
+ * as a large array processed element by element, is parsed in constant memory. Numbers
+ * are decoded from their digits without creating strings, except for doubles which
+ * cannot be converted exactly from a 15-digit mantissa and a power of ten below 23.
+ * <p>
+ * A typical loop reading the objects of a top-level array:
+ * <pre>{@code
+ * reader.next(); // BEGIN_ARRAY
+ * while (reader.next() == Token.BEGIN_OBJECT) {
+ *   while (reader.next() == Token.FIELD_NAME) {
+ *     String name = reader.stringValue();
+ *     reader.next();
+ *     ...
+ *     reader.skipChildren();
+ *   }
+ * }
+ * }</pre>
+ * The reader is not thread safe.
+ */
+public final class JsonReader implements Closeable {
+
+  public enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER,
+    BOOLEAN, NULL, END_DOCUMENT
+  }
+
+  // contexts of the open containers
+  private static final byte ARRAY_FIRST = 0;
+  private static final byte ARRAY = 1;
+  private static final byte OBJECT_FIRST = 2;
+  private static final byte OBJECT = 3;
+  private static final byte OBJECT_VALUE = 4;
+
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final InputStream in;
+  private final byte[] buffer;
+  private int pos = 0;
+  private int limit = 0;
+  private long offset = 0;
+
+  private byte[] stack = new byte[16];
+  private int depth = 0;
+  private boolean rootRead = false;
+  private Token current = null;
+
+  private char[] text = new char[64];
+  private int textLength = 0;
+
+  private boolean booleanValue;
+  // the significant digits accumulated as a non-positive value, so that
+  // Long.MIN_VALUE is representable
+  private long mantissa;
+  private int mantissaDigits;
+  private int exponent;
+  private boolean negative;
+  private boolean integral;
+  private boolean overflow;
+
+  public JsonReader(InputStream in) {
+    this(in, 8192);
+  }
+
+  /**
+   * Creates a reader with the given size of the input buffer.
+   *
+   * @param in the stream to read the document from
+   * @param bufferSize the size of the input buffer in bytes
+   * @throws IllegalArgumentException if the size is not positive
+   */
+  public JsonReader(InputStream in, int bufferSize) {
+    if (bufferSize <= 0)
+      throw new IllegalArgumentException("non-positive buffer size: " + bufferSize);
+    this.in = requireNonNull(in);
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Returns the current token, or null if {@link #next()} has not been called yet.
+   *
+   * @return the current token
+   */
+  public Token current() {
+    return current;
+  }
+
+  /**
+   * Returns the number of containers enclosing the current position.
+   *
+   * @return the nesting depth
+   */
+  public int depth() {
+    return depth;
+  }
+
+  /**
+   * Reads the next token.
+   *
+   * @return the token read
+   * @throws MalformedJsonException if the input is not valid JSON
+   * @throws EOFException if the input ends before the document is complete
+   * @throws IOException if reading the input fails
+   */
+  public Token next() throws IOException {
+    int c = skipWhitespace();
+    if (depth == 0) {
+      if (rootRead) {
+        if (c >= 0)
+          throw syntaxError("unexpected data after the document");
+        return current = Token.END_DOCUMENT;
+      }
+      return current = value(c);
+    }
+    switch (stack[depth - 1]) {
+      case ARRAY_FIRST:
+        if (c == ']')
+          return current = endContainer();
+        stack[depth - 1] = ARRAY;
+        return current = value(c);
+      case ARRAY:
+        if (c == ']')
+          return current = endContainer();
+        expect(c, ',');
+        return current = value(skipWhitespace());
+      case OBJECT_FIRST:
+        if (c == '}')
+          return current = endContainer();
+        return current = fieldName(c);
+      case OBJECT:
+        if (c == '}')
+          return current = endContainer();
+        expect(c, ',');
+        return current = fieldName(skipWhitespace());
+      default:
+        expect(c, ':');
+        stack[depth - 1] = OBJECT;
+        return current = value(skipWhitespace());
+    }
+  }
+
+  /**
+   * Skips the contents of the object or array if the current token begins one, so the
+   * current token becomes its end token. Does nothing for other tokens.
+   *
+   * @throws IOException if reading the input fails or the input is malformed
+   */
+  public void skipChildren() throws IOException {
+    if (current != Token.BEGIN_OBJECT && current != Token.BEGIN_ARRAY)
+      return;
+    int target = depth - 1;
+    while (depth > target) {
+      if (next() == Token.END_DOCUMENT)
+        throw new EOFException("unexpected end of the document");
+    }
+  }
+
+  /**
+   * Returns the text of the current field name, string or number.
+   *
+   * @return the text of the token
+   * @throws IllegalStateException if the current token has no text
+   */
+  public String stringValue() {
+    if (current != Token.FIELD_NAME && current != Token.STRING && current != Token.NUMBER)
+      throw new IllegalStateException("no text for token " + current);
+    return new String(text, 0, textLength);
+  }
+
+  /**
+   * Tells whether the text of the current field name or string equals the given string,
+   * without creating a string from the input.
+   *
+   * @param value the string to compare with
+   * @return whether the text equals the string
+   */
+  public boolean textEquals(String value) {
+    if (current != Token.FIELD_NAME && current != Token.STRING)
+      return false;
+    if (value.length() != textLength)
+      return false;
+    for (int i = 0; i < textLength; i++) {
+      if (text[i] != value.charAt(i))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the value of the current boolean token.
+   *
+   * @return the boolean value
+   * @throws IllegalStateException if the current token is not a boolean
+   */
+  public boolean booleanValue() {
+    if (current != Token.BOOLEAN)
+      throw new IllegalStateException("not a boolean: " + current);
+    return booleanValue;
+  }
+
+  /**
+   * Tells whether the current number is an integer that fits in a long.
+   *
+   * @return whether {@link #longValue()} can be called
+   * @throws IllegalStateException if the current token is not a number
+   */
+  public boolean isLong() {
+    checkNumber();
+    return integral && !overflow && (negative || mantissa != Long.MIN_VALUE);
+  }
+
+  /**
+   * Returns the value of the current number as a long.
+   *
+   * @return the value of the number
+   * @throws IllegalStateException if the current token is not a number
+   * @throws ArithmeticException if the number has a fraction or exponent, or it does not
+   *     fit in a long
+   */
+  public long longValue() {
+    if (!isLong())
+      throw new ArithmeticException("not a long: " + stringValue());
+    return negative ? mantissa : -mantissa;
+  }
+
+  /**
+   * Returns the value of the current number as an int.
+   *
+   * @return the value of the number
+   * @throws IllegalStateException if the current token is not a number
+   * @throws ArithmeticException if the number is not an integer that fits in an int
+   */
+  public int intValue() {
+    return Math.toIntExact(longValue());
+  }
+
+  /**
+   * Returns the value of the current number as a double, rounded to the nearest double
+   * if needed.
+   *
+   * @return the value of the number
+   * @throws IllegalStateException if the current token is not a number
+   */
+  public double doubleValue() {
+    checkNumber();
+    if (!overflow && mantissaDigits <= 15 && Math.abs(exponent) < POWERS_OF_TEN.length) {
+      // both values are exact doubles, so a single operation rounds correctly
+      double value = -(double) mantissa;
+      value = exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+      return negative ? -value : value;
+    }
+    return Double.parseDouble(stringValue());
+  }
+
+  private void checkNumber() {
+    if (current != Token.NUMBER)
+      throw new IllegalStateException("not a number: " + current);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private Token value(int c) throws IOException {
+    if (depth == 0)
+      rootRead = true;
+    switch (c) {
+      case '{':
+        pos++;
+        push(OBJECT_FIRST);
+        return Token.BEGIN_OBJECT;
+      case '[':
+        pos++;
+        push(ARRAY_FIRST);
+        return Token.BEGIN_ARRAY;
+      case '"':
+        pos++;
+        readString();
+        return Token.STRING;
+      case 't':
+        readLiteral("true");
+        booleanValue = true;
+        return Token.BOOLEAN;
+      case 'f':
+        readLiteral("false");
+        booleanValue = false;
+        return Token.BOOLEAN;
+      case 'n':
+        readLiteral("null");
+        return Token.NULL;
+      case -1:
+        throw new EOFException("unexpected end of the document");
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          readNumber();
+          return Token.NUMBER;
+        }
+        throw syntaxError("unexpected character '" + (char) c + "'");
+    }
+  }
+
+  private Token fieldName(int c) throws IOException {
+    expect(c, '"');
+    readString();
+    stack[depth - 1] = OBJECT_VALUE;
+    return Token.FIELD_NAME;
+  }
+
+  private Token endContainer() {
+    pos++;
+    depth--;
+    return stack[depth] <= ARRAY ? Token.END_ARRAY : Token.END_OBJECT;
+  }
+
+  private void push(byte context) {
+    if (depth == stack.length)
+      stack = Arrays.copyOf(stack, depth * 2);
+    stack[depth++] = context;
+  }
+
+  private void expect(int c, char expected) throws IOException {
+    if (c != expected) {
+      if (c < 0)
+        throw new EOFException("unexpected end of the document");
+      throw syntaxError("expected '" + expected + "' but found '" + (char) c + "'");
+    }
+    pos++;
+  }
+
+  private MalformedJsonException syntaxError(String message) {
+    return new MalformedJsonException(message + " at offset " + (offset + pos));
+  }
+
+  /**
+   * Returns the next byte without consuming it, or -1 at the end of the input.
+   */
+  private int peek() throws IOException {
+    if (pos == limit && !fill())
+      return -1;
+    return buffer[pos] & 0xFF;
+  }
+
+  private int read() throws IOException {
+    if (pos == limit && !fill())
+      throw new EOFException("unexpected end of the document");
+    return buffer[pos++] & 0xFF;
+  }
+
+  private boolean fill() throws IOException {
+    offset += limit;
+    pos = limit = 0;
+    int count = in.read(buffer, 0, buffer.length);
+    if (count <= 0)
+      return false;
+    limit = count;
+    return true;
+  }
+
+  private int skipWhitespace() throws IOException {
+    while (true) {
+      while (pos < limit) {
+        int c = buffer[pos];
+        if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+          return c & 0xFF;
+        pos++;
+      }
+      if (!fill())
+        return -1;
+    }
+  }
+
+  private void readLiteral(String literal) throws IOException {
+    for (int i = 0; i < literal.length(); i++) {
+      if (peek() != literal.charAt(i))
+        throw syntaxError("invalid literal");
+      pos++;
+    }
+    int c = peek();
+    if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+      throw syntaxError("invalid literal");
+  }
+
+  private void appendText(char c) {
+    if (textLength == text.length)
+      text = Arrays.copyOf(text, textLength * 2);
+    text[textLength++] = c;
+  }
+
+  private void readString() throws IOException {
+    textLength = 0;
+    while (true) {
+      // copy the run of plain ASCII characters available in the buffer
+      int start = pos;
+      while (pos < limit) {
+        byte b = buffer[pos];
+        if (b == '"' || b == '\\' || b < 0x20)
+          break;
+        pos++;
+      }
+      int count = pos - start;
+      if (count > 0) {
+        if (textLength + count > text.length)
+          text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + count));
+        for (int i = 0; i < count; i++) {
+          text[textLength + i] = (char) buffer[start + i];
+        }
+        textLength += count;
+      }
+      if (pos == limit) {
+        if (!fill())
+          throw new EOFException("unterminated string");
+        continue;
+      }
+      int c = buffer[pos++] & 0xFF;
+      if (c == '"')
+        return;
+      if (c == '\\')
+        readEscape();
+      else if (c >= 0x80)
+        readMultiByte(c);
+      else
+        throw syntaxError("unescaped control character in string");
+    }
+  }
+
+  private void readEscape() throws IOException {
+    int c = read();
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        appendText((char) c);
+        break;
+      case 'b':
+        appendText('\b');
+        break;
+      case 'f':
+        appendText('\f');
+        break;
+      case 'n':
+        appendText('\n');
+        break;
+      case 'r':
+        appendText('\r');
+        break;
+      case 't':
+        appendText('\t');
+        break;
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(read(), 16);
+          if (digit < 0)
+            throw syntaxError("invalid unicode escape");
+          value = (value << 4) | digit;
+        }
+        appendText((char) value);
+        break;
+      default:
+        throw syntaxError("invalid escape sequence");
+    }
+  }
+
+  private void readMultiByte(int lead) throws IOException {
+    int length;
+    int codePoint;
+    if ((lead & 0xE0) == 0xC0) {
+      length = 1;
+      codePoint = lead & 0x1F;
+    }
+    else if ((lead & 0xF0) == 0xE0) {
+      length = 2;
+      codePoint = lead & 0x0F;
+    }
+    else if ((lead & 0xF8) == 0xF0) {
+      length = 3;
+      codePoint = lead & 0x07;
+    }
+    else {
+      throw syntaxError("invalid UTF-8 sequence");
+    }
+    for (int i = 0; i < length; i++) {
+      int c = read();
+      if ((c & 0xC0) != 0x80)
+        throw syntaxError("invalid UTF-8 sequence");
+      codePoint = (codePoint << 6) | (c & 0x3F);
+    }
+    // reject overlong encodings, surrogates and values beyond unicode
+    int min = length == 1 ? 0x80 : length == 2 ? 0x800 : 0x10000;
+    if (codePoint < min || codePoint > Character.MAX_CODE_POINT ||
+        (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+      throw syntaxError("invalid UTF-8 sequence");
+    if (codePoint < 0x10000) {
+      appendText((char) codePoint);
+    }
+    else {
+      appendText(Character.highSurrogate(codePoint));
+      appendText(Character.lowSurrogate(codePoint));
+    }
+  }
+
+  private void readNumber() throws IOException {
+    textLength = 0;
+    mantissa = 0;
+    mantissaDigits = 0;
+    exponent = 0;
+    integral = true;
+    overflow = false;
+    negative = peek() == '-';
+    if (negative)
+      appendText((char) read());
+    int c = peek();
+    if (c == '0') {
+      appendText((char) read());
+      c = peek();
+      if (c >= '0' && c <= '9')
+        throw syntaxError("leading zero in number");
+    }
+    else if (c >= '1' && c <= '9') {
+      readDigits(false);
+    }
+    else {
+      throw syntaxError("invalid number");
+    }
+    if (peek() == '.') {
+      integral = false;
+      appendText((char) read());
+      if (readDigits(true) == 0)
+        throw syntaxError("invalid number");
+    }
+    c = peek();
+    if (c == 'e' || c == 'E') {
+      integral = false;
+      appendText((char) read());
+      c = peek();
+      boolean negativeExponent = c == '-';
+      if (c == '-' || c == '+')
+        appendText((char) read());
+      int value = 0;
+      int digits = 0;
+      while ((c = peek()) >= '0' && c <= '9') {
+        appendText((char) read());
+        if (value < 100_000)
+          value = value * 10 + (c - '0');
+        digits++;
+      }
+      if (digits == 0)
+        throw syntaxError("invalid number");
+      exponent += negativeExponent ? -value : value;
+    }
+  }
+
+  /**
+   * Reads a run of digits into the mantissa, adjusting the exponent for fraction digits.
+   *
+   * @return the number of digits read
+   */
+  private int readDigits(boolean fraction) throws IOException {
+    int digits = 0;
+    int c;
+    while ((c = peek()) >= '0' && c <= '9') {
+      appendText((char) read());
+      digits++;
+      if (c == '0' && mantissa == 0) {
+        // leading zeros of the fraction do not count as significant digits
+        if (fraction)
+          exponent--;
+        continue;
+      }
+      int digit = c - '0';
+      if (mantissa > Long.MIN_VALUE / 10 ||
+          (mantissa == Long.MIN_VALUE / 10 && digit <= -(Long.MIN_VALUE % 10))) {
+        mantissa = mantissa * 10 - digit;
+        mantissaDigits++;
+        if (fraction)
+          exponent--;
+      }
+      else {
+        // the remaining digits only matter to the slow path
+        overflow = true;
+        if (!fraction)
+          exponent++;
+      }
+    }
+    return digits;
+  }
+}
@@ -1,26 +1,165 @@
 package io.github.warownia1.simplehttpclient;
 
 import io.github.warownia1.simplehttpclient.impl.ByteArrayRequestBody;
-import io.github.warownia1.simplehttpclient.impl.JQueryHttpClient;
-import io.github.warownia1.simplehttpclient.impl.SimpleHttpRequestBuilder;
+import io.github.warownia1.simplehttpclient.impl.EmptyRequestBody;
+import io.github.warownia1.simplehttpclient.impl.LatencyHistogram;
+import io.github.warownia1.simplehttpclient.impl.LoadGenerator;
 
+import java.io.PrintStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
 
+/**
+ * A command line load generator in the style of wrk2.
+ * <p>
+ * Sends the request at a constant rate for the given duration and prints the latency
+ * percentiles corrected for coordinated omission, the service time percentiles, the
+ * response counts and the achieved throughput. Run without arguments for usage.
+ *
+ * @see LoadGenerator
+ */
 public class Main
 {
+  private static final String USAGE = String.join("\n",
+      "Usage: Main [options] <url>",
+      "  -R, --rate <n>          requests per second (required)",
+      "  -c, --concurrency <n>   threads, or requests in flight with --async (default 10)",
+      "  -d, --duration <time>   duration of the run, e.g. 500ms, 30s, 2m (default 10s)",
+      "  -X, --method <method>   request method (default GET, or POST with a body)",
+      "  -H, --header <header>   request header \"Name: value\", may be repeated",
+      "  -b, --body <file>       file with the request body",
+      "  -t, --timeout <time>    request timeout",
+      "      --async             send the requests with sendAsync");
+
+  private static final double[] PERCENTILES = {50, 75, 90, 99, 99.9, 99.99, 100};
+
   public static void main(String[] args) throws Exception {
-    var content = "Hello world";
-    var body = new ByteArrayRequestBody(content.getBytes());
-    var request = new SimpleHttpRequestBuilder()
-//        .uri(URI.create("https://ptsv2.com/t/kaliog/post"))
-        .uri(URI.create("http://localhost:5000"))
-//        .header("Content-Type", "text/plain")
-        .header("Foo", "foo")
-        .header("Foo", "bar")
-        .header("Baz", "baz")
-        .GET()
-        .build();
-    var client = new JQueryHttpClient();
-    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    double rate = 0;
+    int concurrency = 10;
+    Duration duration = Duration.ofSeconds(10);
+    String method = null;
+    Path bodyFile = null;
+    boolean async = false;
+    String url = null;
+    HttpRequest.Builder builder = HttpRequest.newBuilder();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        switch (arg) {
+          case "-R": case "--rate":
+            rate = Double.parseDouble(value(args, ++i, arg));
+            break;
+          case "-c": case "--concurrency":
+            concurrency = Integer.parseInt(value(args, ++i, arg));
+            break;
+          case "-d": case "--duration":
+            duration = parseDuration(value(args, ++i, arg));
+            break;
+          case "-X": case "--method":
+            method = value(args, ++i, arg).toUpperCase(Locale.ROOT);
+            break;
+          case "-H": case "--header":
+            String header = value(args, ++i, arg);
+            int colon = header.indexOf(':');
+            if (colon <= 0)
+              throw new IllegalArgumentException("invalid header: " + header);
+            builder.header(header.substring(0, colon).trim(), header.substring(colon + 1).trim());
+            break;
+          case "-b": case "--body":
+            bodyFile = Path.of(value(args, ++i, arg));
+            break;
+          case "-t": case "--timeout":
+            builder.timeout(parseDuration(value(args, ++i, arg)));
+            break;
+          case "--async":
+            async = true;
+            break;
+          default:
+            if (arg.startsWith("-") || url != null)
+              throw new IllegalArgumentException("unexpected argument: " + arg);
+            url = arg;
+        }
+      }
+      if (url == null)
+        throw new IllegalArgumentException("missing url");
+      if (!(rate > 0))
+        throw new IllegalArgumentException("missing or invalid rate");
+      builder.uri(URI.create(url));
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+      return;
+    }
+    // the body is read once so the file system does not take part in the measurement
+    HttpRequest.Body body = bodyFile != null
+        ? new ByteArrayRequestBody(Files.readAllBytes(bodyFile))
+        : null;
+    if (method == null)
+      method = body != null ? "POST" : "GET";
+    builder.method(method, body != null ? body : EmptyRequestBody.getInstance());
+    HttpRequest request = builder.build();
+
+    System.out.printf("Running %s test @ %s%n", format(duration), url);
+    System.out.printf("  %d %s, %.1f requests/s%n", concurrency,
+        async ? "requests in flight" : "threads", rate);
+    LoadGenerator generator = new LoadGenerator(
+        HttpClient.newHttpClient(), request, rate, concurrency, duration, async);
+    LoadGenerator.Result result = generator.run();
+    print(System.out, result);
+  }
+
+  private static String value(String[] args, int index, String option) {
+    if (index >= args.length)
+      throw new IllegalArgumentException("missing value of " + option);
+    return args[index];
+  }
+
+  static Duration parseDuration(String text) {
+    String unit = text.replaceAll("^[0-9.]+", "");
+    double amount = Double.parseDouble(text.substring(0, text.length() - unit.length()));
+    double nanos;
+    switch (unit) {
+      case "ms": nanos = amount * 1e6; break;
+      case "": case "s": nanos = amount * 1e9; break;
+      case "m": nanos = amount * 60e9; break;
+      case "h": nanos = amount * 3600e9; break;
+      default: throw new IllegalArgumentException("invalid duration: " + text);
+    }
+    return Duration.ofNanos((long) nanos);
+  }
+
+  private static String format(Duration duration) {
+    return String.format("%.2fs", duration.toNanos() / 1e9);
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%10.3fms", nanos / 1e6);
+  }
+
+  private static void print(PrintStream out, LoadGenerator.Result result) {
+    printPercentiles(out, "Latency (corrected for coordinated omission)", result.latency());
+    printPercentiles(out, "Service time", result.serviceTime());
+    out.printf("%n  %d requests in %s%n", result.requests(), format(result.elapsed()));
+    out.printf("  1xx: %d, 2xx: %d, 3xx: %d, 4xx: %d, 5xx: %d, errors: %d%n",
+        result.responses(1), result.responses(2), result.responses(3),
+        result.responses(4), result.responses(5), result.errors());
+    out.printf("Requests/sec: %.2f%n", result.throughput());
+  }
+
+  private static void printPercentiles(PrintStream out, String title,
+      LatencyHistogram.Snapshot snapshot) {
+    out.printf("%n  %s%n", title);
+    if (snapshot.count() > 0)
+      out.printf("  %8s %s%n", "mean", millis(snapshot.sumNanos() / snapshot.count()));
+    for (double percentile : PERCENTILES) {
+      out.printf("  %7s%% %s%n", percentile == (long) percentile
+          ? Long.toString((long) percentile) : Double.toString(percentile),
+          millis(snapshot.percentileNanos(percentile)));
+    }
   }
 }
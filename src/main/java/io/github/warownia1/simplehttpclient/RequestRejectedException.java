@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient;
+
+import java.io.IOException;
+
+/**
+ * Signals that the client refused to send a request, because sending it would exceed a
+ * limit imposed on the client, rather than because of a failure of the exchange.
+ * Requests rejected with this exception never reached the server.
+ */
+public class RequestRejectedException extends IOException {
+
+  public RequestRejectedException(String message) {
+    super(message);
+  }
+
+  public RequestRejectedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
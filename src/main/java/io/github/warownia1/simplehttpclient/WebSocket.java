@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A WebSocket client connection as defined by RFC 6455.
+ * <p>
+ * A {@code WebSocket} is opened with
+ * {@link HttpClient#newWebSocket(HttpRequest, Listener, java.util.concurrent.Executor)}
+ * and receives the incoming messages through its {@link Listener}. The listener is
+ * invoked from a single thread of the executor, one call at a time, and only as many
+ * times as {@linkplain #request(long) requested}; while there is no demand, the
+ * connection is not read and the server is held back by TCP flow control.
+ * <p>
+ * The send methods block until the frame is written and may be called from any
+ * thread. A message may be sent in parts, with {@code last} set on the final part
+ * only; control messages may be sent between the parts. Once
+ * {@link #sendClose(int, String)} is called, no more messages can be sent, and the
+ * connection is closed when the server answers the close.
+ */
+public interface WebSocket {
+
+  /**
+   * The status code of a normal closure.
+   */
+  int NORMAL_CLOSURE = 1000;
+
+  /**
+   * The listener of the messages received from a WebSocket.
+   * <p>
+   * The parts of the messages are passed as they arrive, with {@code last} set on the
+   * final part of each message. The buffers passed to the listener are only valid until
+   * the method returns. The default implementations request the next message.
+   */
+  interface Listener {
+    /**
+     * Invoked once the connection is open, before any other method.
+     *
+     * @param webSocket the WebSocket
+     */
+    default void onOpen(WebSocket webSocket) {
+      webSocket.request(1);
+    }
+
+    /**
+     * Receives a part of a text message.
+     *
+     * @param webSocket the WebSocket
+     * @param data the text
+     * @param last whether this is the final part of the message
+     */
+    default void onText(WebSocket webSocket, CharSequence data, boolean last) {
+      webSocket.request(1);
+    }
+
+    /**
+     * Receives a part of a binary message.
+     *
+     * @param webSocket the WebSocket
+     * @param data the bytes, valid until the method returns
+     * @param last whether this is the final part of the message
+     */
+    default void onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+      webSocket.request(1);
+    }
+
+    /**
+     * Receives a ping. The pong is sent automatically before the method is invoked.
+     *
+     * @param webSocket the WebSocket
+     * @param message the application data of the ping
+     */
+    default void onPing(WebSocket webSocket, ByteBuffer message) {
+      webSocket.request(1);
+    }
+
+    /**
+     * Receives a pong.
+     *
+     * @param webSocket the WebSocket
+     * @param message the application data of the pong
+     */
+    default void onPong(WebSocket webSocket, ByteBuffer message) {
+      webSocket.request(1);
+    }
+
+    /**
+     * Invoked when the server closes the connection. No other method is invoked
+     * afterwards.
+     *
+     * @param webSocket the WebSocket
+     * @param statusCode the status code sent by the server, or 1005 if it sent none
+     * @param reason the reason sent by the server, possibly empty
+     */
+    default void onClose(WebSocket webSocket, int statusCode, String reason) {
+    }
+
+    /**
+     * Invoked when the connection fails, including failures caused by the other
+     * methods of the listener. No other method is invoked afterwards.
+     *
+     * @param webSocket the WebSocket
+     * @param error the cause of the failure
+     */
+    default void onError(WebSocket webSocket, Throwable error) {
+    }
+  }
+
+  /**
+   * Sends a text message or its part.
+   *
+   * @param data the text, which must not end in the middle of a surrogate pair
+   * @param last whether this is the final part of the message
+   * @throws IOException if the frame cannot be written
+   * @throws IllegalStateException if the output is closed or a binary message is
+   *     being sent
+   */
+  void sendText(CharSequence data, boolean last) throws IOException;
+
+  /**
+   * Sends a binary message or its part. The bytes between the position and the limit of
+   * the buffer are sent, and the buffer is left unchanged.
+   *
+   * @param data the bytes
+   * @param last whether this is the final part of the message
+   * @throws IOException if the frame cannot be written
+   * @throws IllegalStateException if the output is closed or a text message is being
+   *     sent
+   */
+  void sendBinary(ByteBuffer data, boolean last) throws IOException;
+
+  /**
+   * Sends a ping.
+   *
+   * @param message the application data of at most 125 bytes
+   * @throws IOException if the frame cannot be written
+   * @throws IllegalArgumentException if the message is longer than 125 bytes
+   * @throws IllegalStateException if the output is closed
+   */
+  void sendPing(ByteBuffer message) throws IOException;
+
+  /**
+   * Sends an unsolicited pong.
+   *
+   * @param message the application data of at most 125 bytes
+   * @throws IOException if the frame cannot be written
+   * @throws IllegalArgumentException if the message is longer than 125 bytes
+   * @throws IllegalStateException if the output is closed
+   */
+  void sendPong(ByteBuffer message) throws IOException;
+
+  /**
+   * Starts the closing handshake and closes the output.
+   *
+   * @param statusCode the status code, e.g. {@link #NORMAL_CLOSURE}
+   * @param reason the reason of at most 123 bytes in UTF-8
+   * @throws IOException if the frame cannot be written
+   * @throws IllegalArgumentException if the status code or the reason are invalid
+   * @throws IllegalStateException if the output is already closed
+   */
+  void sendClose(int statusCode, String reason) throws IOException;
+
+  /**
+   * Allows the given number of further invocations of the listener.
+   *
+   * @param n the number of invocations
+   * @throws IllegalArgumentException if the number is not positive
+   */
+  void request(long n);
+
+  /**
+   * Returns the subprotocol chosen by the server.
+   *
+   * @return the subprotocol or an empty string if there is none
+   */
+  String getSubprotocol();
+
+  /**
+   * Returns whether no more messages can be sent.
+   *
+   * @return whether the output is closed
+   */
+  boolean isOutputClosed();
+
+  /**
+   * Returns whether no more messages will be received.
+   *
+   * @return whether the input is closed
+   */
+  boolean isInputClosed();
+
+  /**
+   * Closes the connection immediately, without the closing handshake.
+   */
+  void abort();
+}
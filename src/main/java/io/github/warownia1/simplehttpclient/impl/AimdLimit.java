@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.time.Duration;
+
+/**
+ * Additive increase, multiplicative decrease limit. The limit grows by one after every
+ * successful request made while the limit was at least half used, and shrinks by the
+ * backoff ratio after every dropped request or a request slower than the timeout.
+ */
+public class AimdLimit implements LimitAlgorithm {
+
+  private final int initialLimit;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final long timeoutNanos;
+
+  public AimdLimit() {
+    this(10, 1, 200, 0.9, Duration.ofSeconds(5));
+  }
+
+  /**
+   * @param initialLimit the limit before any request completes
+   * @param minLimit the lower bound of the limit
+   * @param maxLimit the upper bound of the limit
+   * @param backoffRatio the factor applied to the limit on a drop, in range (0.5, 1)
+   * @param timeout the latency above which a request is considered dropped
+   */
+  public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+      Duration timeout) {
+    if (minLimit < 1 || maxLimit < minLimit)
+      throw new IllegalArgumentException("invalid limit bounds");
+    if (initialLimit < minLimit || initialLimit > maxLimit)
+      throw new IllegalArgumentException("initial limit out of bounds: " + initialLimit);
+    if (!(backoffRatio >= 0.5 && backoffRatio < 1))
+      throw new IllegalArgumentException("invalid backoff ratio: " + backoffRatio);
+    this.initialLimit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.timeoutNanos = timeout.toNanos();
+  }
+
+  @Override
+  public int initialLimit() {
+    return initialLimit;
+  }
+
+  @Override
+  public int update(int limit, int inFlight, long rttNanos, boolean dropped) {
+    if (dropped || rttNanos > timeoutNanos)
+      return Math.max(minLimit, (int) (limit * backoffRatio));
+    // do not grow the limit when the traffic does not use it
+    if (inFlight * 2 >= limit)
+      return Math.min(maxLimit, limit + 1);
+    return limit;
+  }
+}
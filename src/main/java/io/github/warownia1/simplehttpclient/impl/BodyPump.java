@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds response bodies to their {@link BodySubscriber subscribers}, reading from a
+ * single thread shared by all responses whenever the stream can be read without
+ * blocking.
+ * <p>
+ * {@code HttpURLConnection} offers blocking streams only, so the pump never waits on
+ * them. It visits the registered bodies in turn and reads the bytes which the
+ * {@linkplain InputStream#available() stream reports available}, which is never
+ * blocking, and sleeps for a moment when none of the bodies made progress. The end of
+ * a body is recognised by its content length.
+ * <p>
+ * Whenever the pump cannot read without blocking, it falls back to a blocking read on
+ * the executor of the request, after which the body returns to the pump. This happens
+ * as soon as nothing is available for a body whose length is unknown, such as a
+ * chunked body, since the end of its stream cannot be told from a slow server, and for
+ * an HTTPS body, whose stream decrypts a TLS record only when it is read and so
+ * reports no bytes available until a blocking read. Such bodies therefore hold an
+ * executor thread for most of their transfer, just as a blocking body handler would.
+ * Only plain HTTP bodies with a content length stay on the pump thread while data
+ * keeps arriving; they fall back to the executor after receiving nothing for a while.
+ */
+final class BodyPump implements Runnable {
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+  // the time without data after which a body is probed with a blocking read
+  private static final long PROBE_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final BodyPump SHARED = new BodyPump();
+
+  private final Queue<Body<?>> added = new ConcurrentLinkedQueue<>();
+  // accessed by the pump thread only
+  private final List<Body<?>> bodies = new ArrayList<>();
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private Thread thread;
+
+  static BodyPump shared() {
+    return SHARED;
+  }
+
+  /**
+   * Starts feeding the body to the subscriber. Completing the returned future before
+   * the body is complete stops the transfer and closes the stream.
+   *
+   * @param stream the response body stream or null if the response has no body
+   * @param length the length of the body or -1 if unknown
+   * @param secure whether the stream decrypts TLS records, so that its available bytes
+   *     are not known before it is read
+   * @param subscriber the subscriber of the body
+   * @param executor the executor running the blocking reads
+   * @return the future of the body returned by the subscriber
+   */
+  <T> CompletableFuture<T> register(InputStream stream, long length, boolean secure,
+      BodySubscriber<T> subscriber, Executor executor) {
+    Body<T> body = new Body<>(stream, length, secure, subscriber, executor);
+    if (stream == null || length == 0)
+      body.complete();
+    else
+      schedule(body);
+    return body.result;
+  }
+
+  private void schedule(Body<?> body) {
+    added.add(body);
+    Thread thread;
+    synchronized (this) {
+      if (this.thread == null) {
+        this.thread = new Thread(this, "simplehttpclient-body-pump");
+        this.thread.setDaemon(true);
+        this.thread.start();
+      }
+      thread = this.thread;
+    }
+    LockSupport.unpark(thread);
+  }
+
+  @Override
+  public void run() {
+    long idleNanos = MIN_IDLE_NANOS;
+    while (true) {
+      Body<?> body;
+      while ((body = added.poll()) != null) {
+        bodies.add(body);
+      }
+      if (bodies.isEmpty()) {
+        // a body added in the meantime leaves the permit to unpark
+        LockSupport.park(this);
+        continue;
+      }
+      boolean progress = false;
+      long now = System.nanoTime();
+      for (Iterator<Body<?>> iterator = bodies.iterator(); iterator.hasNext(); ) {
+        switch (iterator.next().poll(now)) {
+          case PROGRESS:
+            progress = true;
+            break;
+          case REMOVED:
+            iterator.remove();
+            break;
+          default:
+            break;
+        }
+      }
+      if (progress) {
+        idleNanos = MIN_IDLE_NANOS;
+      }
+      else {
+        LockSupport.parkNanos(this, idleNanos);
+        idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+      }
+    }
+  }
+
+  private enum PollResult { PROGRESS, WAITING, REMOVED }
+
+  private final class Body<T> {
+    final InputStream stream;
+    final boolean secure;
+    final BodySubscriber<T> subscriber;
+    final Executor executor;
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    long remaining;
+    long lastData = System.nanoTime();
+    // the buffer of the blocking reads, allocated on the first one
+    byte[] probeBuffer;
+
+    Body(InputStream stream, long length, boolean secure, BodySubscriber<T> subscriber,
+        Executor executor) {
+      this.stream = stream;
+      this.remaining = length;
+      this.secure = secure;
+      this.subscriber = subscriber;
+      this.executor = executor;
+    }
+
+    /**
+     * Reads the available bytes of the body without blocking.
+     */
+    PollResult poll(long now) {
+      if (result.isDone()) {
+        cancelled();
+        return PollResult.REMOVED;
+      }
+      try {
+        int available = stream.available();
+        if (available > 0) {
+          int count = (int) Math.min(Math.min(available, buffer.length),
+              remaining >= 0 ? remaining : Integer.MAX_VALUE);
+          count = stream.read(buffer, 0, count);
+          if (count < 0) {
+            end();
+            return PollResult.REMOVED;
+          }
+          deliver(buffer, count, now);
+          if (remaining == 0) {
+            complete();
+            return PollResult.REMOVED;
+          }
+          return PollResult.PROGRESS;
+        }
+        if (remaining < 0 || secure || now - lastData >= PROBE_DELAY_NANOS) {
+          executor.execute(this::probe);
+          return PollResult.REMOVED;
+        }
+        return PollResult.WAITING;
+      }
+      catch (Throwable e) {
+        fail(e);
+        return PollResult.REMOVED;
+      }
+    }
+
+    /**
+     * Waits for the next bytes of the body on the executor thread, failing on the read
+     * timeout of the connection, and returns the body to the pump. The read returns
+     * the bytes which arrived together, such as a whole TLS record.
+     */
+    void probe() {
+      if (result.isDone()) {
+        cancelled();
+        return;
+      }
+      try {
+        if (probeBuffer == null)
+          probeBuffer = new byte[BUFFER_SIZE];
+        int count = (int) Math.min(probeBuffer.length,
+            remaining >= 0 ? remaining : Integer.MAX_VALUE);
+        count = stream.read(probeBuffer, 0, count);
+        if (count < 0) {
+          end();
+          return;
+        }
+        deliver(probeBuffer, count, System.nanoTime());
+        if (remaining == 0)
+          complete();
+        else
+          schedule(this);
+      }
+      catch (Throwable e) {
+        fail(e);
+      }
+    }
+
+    void deliver(byte[] bytes, int count, long now) throws IOException {
+      lastData = now;
+      if (remaining > 0)
+        remaining -= count;
+      subscriber.onData(ByteBuffer.wrap(bytes, 0, count));
+    }
+
+    void end() {
+      if (remaining > 0)
+        fail(new IOException("premature end of the response body, " + remaining +
+            " bytes missing"));
+      else
+        complete();
+    }
+
+    void complete() {
+      try {
+        T value = subscriber.onComplete();
+        // closing the fully read stream returns the connection to the pool
+        close();
+        result.complete(value);
+      }
+      catch (Throwable e) {
+        fail(e);
+      }
+    }
+
+    void fail(Throwable error) {
+      close();
+      subscriber.onError(error);
+      result.completeExceptionally(error);
+    }
+
+    void cancelled() {
+      close();
+      subscriber.onError(new CancellationException("response cancelled"));
+    }
+
+    void close() {
+      if (stream == null)
+        return;
+      try {
+        stream.close();
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+}
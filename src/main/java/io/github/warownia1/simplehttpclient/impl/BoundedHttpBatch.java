@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpBatch;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A batch of requests which dispatches the next request whenever one of the in-flight
+ * requests completes, so that no thread is blocked waiting for a free slot. The slot of
+ * a cancelled request is freed once its exchange stops running on the executor.
+ */
+public final class BoundedHttpBatch<T> implements HttpBatch<T> {
+
+  private final HttpClient client;
+  private final HttpRequest[] requests;
+  private final BodyHandler<T> handler;
+  private final Executor executor;
+  private final boolean failFast;
+
+  private final List<CompletableFuture<HttpResponse<T>>> results;
+  private final AtomicReferenceArray<CompletableFuture<HttpResponse<T>>> inFlight;
+  private final BlockingQueue<CompletableFuture<HttpResponse<T>>> completed =
+      new LinkedBlockingQueue<>();
+  private final AtomicBoolean completionOrderTaken = new AtomicBoolean();
+
+  private final AtomicInteger permits;
+  private final AtomicInteger wip = new AtomicInteger();
+  private int nextIndex = 0;
+  private volatile boolean cancelled = false;
+
+  private BoundedHttpBatch(HttpClient client, HttpRequest[] requests,
+      BodyHandler<T> handler, int concurrency, Executor executor, boolean failFast) {
+    this.client = client;
+    this.requests = requests;
+    this.handler = handler;
+    this.executor = executor;
+    this.failFast = failFast;
+    this.permits = new AtomicInteger(concurrency);
+    this.inFlight = new AtomicReferenceArray<>(requests.length);
+    List<CompletableFuture<HttpResponse<T>>> results = new ArrayList<>(requests.length);
+    for (int i = 0; i < requests.length; i++) {
+      results.add(new CompletableFuture<>());
+    }
+    this.results = Collections.unmodifiableList(results);
+    for (int i = 0; i < requests.length; i++) {
+      int index = i;
+      results.get(i).whenComplete((response, exc) -> onResultCompleted(index, exc));
+    }
+  }
+
+  /**
+   * Creates a batch and starts dispatching the requests. If the executor is
+   * {@code null}, a pool of {@code concurrency} daemon threads is created for the batch
+   * and shut down when all the requests are completed.
+   */
+  public static <T> BoundedHttpBatch<T> send(HttpClient client,
+      Iterable<? extends HttpRequest> requests, BodyHandler<T> handler, int concurrency,
+      Executor executor, boolean failFast) {
+    if (concurrency <= 0)
+      throw new IllegalArgumentException("invalid concurrency: " + concurrency);
+    List<HttpRequest> requestList = new ArrayList<>();
+    for (HttpRequest request : requests) {
+      requestList.add(requireNonNull(request));
+    }
+    HttpRequest[] requestArray = requestList.toArray(new HttpRequest[0]);
+    ExecutorService ownExecutor = null;
+    if (executor == null) {
+      ownExecutor = Executors.newFixedThreadPool(
+          Math.max(1, Math.min(concurrency, requestArray.length)), runnable -> {
+            Thread thread = new Thread(runnable, "http-batch");
+            thread.setDaemon(true);
+            return thread;
+          });
+      executor = ownExecutor;
+    }
+    BoundedHttpBatch<T> batch = new BoundedHttpBatch<>(
+        client, requestArray, handler, concurrency, executor, failFast);
+    if (ownExecutor != null) {
+      ExecutorService pool = ownExecutor;
+      batch.allDone().whenComplete((r, e) -> pool.shutdown());
+    }
+    batch.drain();
+    return batch;
+  }
+
+  private CompletableFuture<Void> allDone() {
+    return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]));
+  }
+
+  // Dispatches requests while there are free permits. Only one thread runs the loop at a
+  // time, others increment wip so the running thread performs another pass for them.
+  private void drain() {
+    if (wip.getAndIncrement() != 0)
+      return;
+    do {
+      while (nextIndex < requests.length && permits.get() > 0) {
+        permits.decrementAndGet();
+        dispatch(nextIndex++);
+      }
+    } while (wip.decrementAndGet() != 0);
+  }
+
+  private void dispatch(int index) {
+    CompletableFuture<HttpResponse<T>> result = results.get(index);
+    if (cancelled || result.isDone()) {
+      release(index);
+      return;
+    }
+    Exchange exchange = new Exchange();
+    CompletableFuture<HttpResponse<T>> future;
+    try {
+      future = client.sendAsync(requests[index], handler, exchange);
+    }
+    catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+    inFlight.set(index, future);
+    // the result might have been cancelled before the in-flight future was published
+    if (result.isDone())
+      future.cancel(true);
+    future.whenComplete((response, exc) -> {
+      if (exc == null)
+        result.complete(response);
+      else
+        result.completeExceptionally(unwrap(exc));
+      exchange.end();
+    });
+  }
+
+  /**
+   * The executor of a single exchange, which keeps its slot taken until the future of
+   * the exchange is done and none of the tasks it submitted is queued or running. A
+   * cancelled future is done at once, while its exchange may still be running in a task.
+   */
+  private final class Exchange implements Executor {
+    // the future of the exchange holds one count until it is done
+    private final AtomicInteger pending = new AtomicInteger(1);
+
+    @Override
+    public void execute(Runnable task) {
+      // a task submitted after the slot is freed is not counted
+      if (pending.getAndUpdate(n -> n > 0 ? n + 1 : n) <= 0) {
+        executor.execute(task);
+        return;
+      }
+      try {
+        executor.execute(() -> {
+          try {
+            task.run();
+          }
+          finally {
+            end();
+          }
+        });
+      }
+      catch (RuntimeException e) {
+        end();
+        throw e;
+      }
+    }
+
+    void end() {
+      if (pending.decrementAndGet() == 0) {
+        permits.incrementAndGet();
+        drain();
+      }
+    }
+  }
+
+  private void release(int index) {
+    results.get(index).cancel(false);
+    permits.incrementAndGet();
+  }
+
+  private static Throwable unwrap(Throwable exc) {
+    if (exc instanceof CompletionException && exc.getCause() != null)
+      return exc.getCause();
+    return exc;
+  }
+
+  private void onResultCompleted(int index, Throwable exc) {
+    CompletableFuture<HttpResponse<T>> result = results.get(index);
+    if (result.isCancelled()) {
+      CompletableFuture<HttpResponse<T>> future = inFlight.get(index);
+      if (future != null)
+        future.cancel(true);
+    }
+    completed.add(result);
+    if (exc != null && failFast)
+      cancel();
+  }
+
+  @Override
+  public List<CompletableFuture<HttpResponse<T>>> futures() {
+    return results;
+  }
+
+  @Override
+  public CompletableFuture<List<HttpResponse<T>>> responses() {
+    return allDone().thenApply(v -> {
+      List<HttpResponse<T>> responses = new ArrayList<>(results.size());
+      for (CompletableFuture<HttpResponse<T>> result : results) {
+        responses.add(result.join());
+      }
+      return responses;
+    });
+  }
+
+  @Override
+  public Iterator<CompletableFuture<HttpResponse<T>>> completionOrder() {
+    if (!completionOrderTaken.compareAndSet(false, true))
+      throw new IllegalStateException("completion order already consumed");
+    return new Iterator<>() {
+      private int remaining = requests.length;
+
+      @Override
+      public boolean hasNext() {
+        return remaining > 0;
+      }
+
+      @Override
+      public CompletableFuture<HttpResponse<T>> next() {
+        if (remaining == 0)
+          throw new NoSuchElementException();
+        try {
+          CompletableFuture<HttpResponse<T>> future = completed.take();
+          remaining--;
+          return future;
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CompletionException(e);
+        }
+      }
+    };
+  }
+
+  @Override
+  public Stream<CompletableFuture<HttpResponse<T>>> stream() {
+    return StreamSupport.stream(Spliterators.spliterator(completionOrder(), requests.length,
+        Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    for (CompletableFuture<HttpResponse<T>> result : results) {
+      result.cancel(true);
+    }
+  }
+
+  @Override
+  public int size() {
+    return requests.length;
+  }
+}
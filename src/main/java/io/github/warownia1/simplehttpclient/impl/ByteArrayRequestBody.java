@@ -26,6 +26,9 @@ package io.github.warownia1.simplehttpclient.impl;
 
 import io.github.warownia1.simplehttpclient.HttpRequest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 public class ByteArrayRequestBody implements HttpRequest.Body {
 
   private final int length;
@@ -54,4 +57,9 @@ public class ByteArrayRequestBody implements HttpRequest.Body {
     return length;
   }
 
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(content, offset, length);
+  }
+
 }
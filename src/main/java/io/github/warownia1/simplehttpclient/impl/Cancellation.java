@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cancellation state of an asynchronous exchange of {@link SimpleHttpClient}.
+ * <p>
+ * Until the response headers arrive, cancelling disconnects the current connection
+ * which closes its socket and unblocks the thread sending the request. The response
+ * stream of {@code HttpURLConnection} cannot be closed while another thread reads it,
+ * as closing waits for the read to return, so once the body is being handled the
+ * socket the body is read from is closed instead. The sockets of direct HTTPS
+ * connections are created by {@link TimingSSLSocketFactory}, which attaches them to
+ * the exchange reading from them; the sockets of plain HTTP and proxied connections
+ * are out of reach, so a read blocked on them ends only with the read timeout, which
+ * the client limits to the time left before the total timeout. A cancelled exchange
+ * fails on its next read in any case, and the exchanging thread then disconnects the
+ * connection itself, so it is not returned to the pool.
+ * <p>
+ * The timeouts of the client which cannot be set on the connection, the write and the
+ * total timeout, cancel the exchange the same way, and the cancelled operations fail
+ * with a {@link SocketTimeoutException}.
+ */
+final class Cancellation {
+
+  /**
+   * The exchange reading the response body on the current thread.
+   */
+  private static final ThreadLocal<Cancellation> READING = new ThreadLocal<>();
+
+  private HttpURLConnection connection;
+  private Socket socket;
+  private boolean headersReceived = false;
+  private volatile boolean cancelled = false;
+  private volatile String timedOut;
+  private volatile long deadline;
+
+  /**
+   * Sets the connection of the next hop of the exchange.
+   *
+   * @throws InterruptedIOException if the exchange has been cancelled
+   */
+  void register(HttpURLConnection connection) throws InterruptedIOException {
+    synchronized (this) {
+      if (!cancelled) {
+        this.connection = connection;
+        this.socket = null;
+        this.headersReceived = false;
+        return;
+      }
+    }
+    connection.disconnect();
+    throw cancelledException();
+  }
+
+  /**
+   * Attaches the socket read on the current thread to the exchange reading the response
+   * body on it, if any, so that cancelling the exchange closes the socket.
+   */
+  static void reading(Socket socket) {
+    Cancellation cancellation = READING.get();
+    if (cancellation == null)
+      return;
+    synchronized (cancellation) {
+      if (cancellation.socket == socket)
+        return;
+      if (!cancellation.cancelled) {
+        cancellation.socket = socket;
+        return;
+      }
+    }
+    closeQuietly(socket);
+  }
+
+  /**
+   * Marks the response headers of the current connection as received, from which
+   * point the connection is aborted by the exchanging thread only.
+   */
+  synchronized void headersReceived() throws InterruptedIOException {
+    headersReceived = true;
+    checkCancelled();
+  }
+
+  void checkCancelled() throws InterruptedIOException {
+    if (cancelled)
+      throw cancelledException();
+  }
+
+  private InterruptedIOException cancelledException() {
+    String timedOut = this.timedOut;
+    if (timedOut != null)
+      return new SocketTimeoutException(timedOut + " timed out");
+    return new InterruptedIOException("request cancelled");
+  }
+
+  /**
+   * Returns the name of the timeout which cancelled the exchange or null if it did not
+   * time out.
+   */
+  String timedOut() {
+    return timedOut;
+  }
+
+  /**
+   * Cancels the exchange after the delay unless the returned timeout is cancelled
+   * first.
+   *
+   * @param millis the delay in milliseconds
+   * @param name the name of the timeout reported in the exception
+   * @return the future cancelling the timeout
+   */
+  ScheduledFuture<?> scheduleTimeout(long millis, String name) {
+    return Timeouts.schedule(() -> {
+      if (cancelled)
+        return;
+      timedOut = name;
+      cancel();
+    }, millis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Schedules the total timeout of the exchange, which also limits the read timeouts of
+   * its connections.
+   *
+   * @param millis the total timeout in milliseconds
+   * @return the future cancelling the timeout
+   */
+  ScheduledFuture<?> scheduleRequestTimeout(long millis) {
+    limitReads(millis);
+    return scheduleTimeout(millis, "request");
+  }
+
+  /**
+   * Limits the read timeouts of the connections to the time left before the total
+   * timeout expiring after the given delay.
+   *
+   * @param millis the total timeout in milliseconds
+   */
+  void limitReads(long millis) {
+    deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  /**
+   * Returns the read timeout of a connection limited to the time left before the total
+   * timeout, if it is scheduled, so that a blocked read whose socket cannot be closed
+   * ends in time.
+   *
+   * @param millis the read timeout in milliseconds or zero if there is none
+   */
+  int readTimeout(int millis) {
+    long deadline = this.deadline;
+    if (deadline == 0)
+      return millis;
+    long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    int bound = (int) Math.min(Math.max(left, 1), Integer.MAX_VALUE);
+    return millis == 0 ? bound : Math.min(millis, bound);
+  }
+
+  boolean isCancelled() {
+    return cancelled;
+  }
+
+  void cancel() {
+    HttpURLConnection connection;
+    Socket socket;
+    synchronized (this) {
+      if (cancelled)
+        return;
+      cancelled = true;
+      connection = headersReceived ? null : this.connection;
+      socket = headersReceived ? this.socket : null;
+    }
+    if (connection != null)
+      connection.disconnect();
+    if (socket != null)
+      closeQuietly(socket);
+  }
+
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    }
+    catch (IOException ignored) {
+    }
+  }
+
+  /**
+   * Disconnects the current connection of a cancelled exchange. Called by the
+   * exchanging thread when the exchange fails.
+   */
+  void abort() {
+    HttpURLConnection connection;
+    synchronized (this) {
+      connection = cancelled ? this.connection : null;
+    }
+    if (connection != null)
+      connection.disconnect();
+  }
+
+  /**
+   * Returns the response stream failing the reads once the exchange is cancelled.
+   */
+  InputStream wrap(InputStream in) {
+    if (in == null)
+      return null;
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        checkCancelled();
+        READING.set(Cancellation.this);
+        int b;
+        try {
+          b = super.read();
+        }
+        finally {
+          READING.remove();
+        }
+        checkCancelled();
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        checkCancelled();
+        READING.set(Cancellation.this);
+        int count;
+        try {
+          count = super.read(b, off, len);
+        }
+        finally {
+          READING.remove();
+        }
+        checkCancelled();
+        return count;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        checkCancelled();
+        READING.set(Cancellation.this);
+        try {
+          return super.skip(n);
+        }
+        finally {
+          READING.remove();
+        }
+      }
+    };
+  }
+}
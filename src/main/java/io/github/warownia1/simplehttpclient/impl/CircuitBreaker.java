@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.impl.CircuitBreakingHttpClient.State;
+
+/**
+ * Circuit breaker of a single host. The outcomes of the most recent requests are kept
+ * in a ring buffer together with running counts of failed and slow requests, so that
+ * recording an outcome and checking the thresholds take constant time.
+ * <p>
+ * Every state the circuit enters starts a new generation, and a permit carries the
+ * generation it was issued in. The outcome of a request permitted in an earlier
+ * generation is ignored, so a request sent while the circuit was closed cannot count
+ * as a successful probe of the half-open circuit.
+ */
+final class CircuitBreaker {
+
+  /** The permit of a rejected request. */
+  static final long REJECTED = -1;
+
+  private static final byte FAILED = 1;
+  private static final byte SLOW = 2;
+
+  private final String origin;
+  private final CircuitBreakerConfig config;
+  private final long slowCallNanos;
+  private final long openNanos;
+
+  private final byte[] window;
+  private int windowCount = 0;
+  private int windowNext = 0;
+  private int failedCount = 0;
+  private int slowCount = 0;
+
+  private State state = State.CLOSED;
+  private long generation = 0;
+  private long openedAt;
+  private int halfOpenIssued;
+  private int halfOpenSucceeded;
+
+  CircuitBreaker(String origin, CircuitBreakerConfig config) {
+    this.origin = origin;
+    this.config = config;
+    this.slowCallNanos = config.slowCallDuration().toNanos();
+    this.openNanos = config.openDuration().toNanos();
+    this.window = new byte[config.windowSize()];
+  }
+
+  /**
+   * Returns the permit of a request which may be sent now, or {@link #REJECTED}. Every
+   * permitted request must be followed by a call to either {@link #onResult} or
+   * {@link #onIgnored} with its permit.
+   */
+  long tryAcquire() {
+    State newState;
+    long permit;
+    synchronized (this) {
+      switch (state) {
+        case CLOSED:
+          return generation;
+        case OPEN:
+          if (System.nanoTime() - openedAt < openNanos)
+            return REJECTED;
+          transition(State.HALF_OPEN);
+          halfOpenIssued = 1;
+          newState = state;
+          permit = generation;
+          break;
+        default:
+          if (halfOpenIssued >= config.halfOpenCalls())
+            return REJECTED;
+          halfOpenIssued++;
+          return generation;
+      }
+    }
+    notifyListener(newState);
+    return permit;
+  }
+
+  void onResult(long permit, long durationNanos, boolean failed) {
+    State newState = null;
+    synchronized (this) {
+      if (permit != generation)
+        return;
+      boolean slow = durationNanos >= slowCallNanos;
+      if (state == State.CLOSED) {
+        record(failed, slow);
+        if (windowCount >= config.minimumCalls() && (
+            failedCount >= config.failureRateThreshold() * windowCount ||
+                slowCount >= config.slowCallRateThreshold() * windowCount)) {
+          open();
+          newState = state;
+        }
+      }
+      else if (state == State.HALF_OPEN) {
+        if (failed || slow) {
+          open();
+          newState = state;
+        }
+        else if (++halfOpenSucceeded >= config.halfOpenCalls()) {
+          transition(State.CLOSED);
+          newState = state;
+        }
+      }
+    }
+    notifyListener(newState);
+  }
+
+  /**
+   * Returns the permit of a request whose outcome says nothing about the host, for
+   * example because it was cancelled or rejected by the client.
+   */
+  synchronized void onIgnored(long permit) {
+    if (permit == generation && state == State.HALF_OPEN &&
+        halfOpenIssued > halfOpenSucceeded)
+      halfOpenIssued--;
+  }
+
+  private void record(boolean failed, boolean slow) {
+    if (windowCount == window.length) {
+      byte evicted = window[windowNext];
+      if ((evicted & FAILED) != 0) failedCount--;
+      if ((evicted & SLOW) != 0) slowCount--;
+    }
+    else {
+      windowCount++;
+    }
+    byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+    window[windowNext] = outcome;
+    windowNext = (windowNext + 1) % window.length;
+    if (failed) failedCount++;
+    if (slow) slowCount++;
+  }
+
+  private void open() {
+    transition(State.OPEN);
+    openedAt = System.nanoTime();
+  }
+
+  private void transition(State newState) {
+    state = newState;
+    generation++;
+    windowCount = 0;
+    windowNext = 0;
+    failedCount = 0;
+    slowCount = 0;
+    halfOpenIssued = 0;
+    halfOpenSucceeded = 0;
+  }
+
+  private void notifyListener(State newState) {
+    if (newState != null)
+      config.stateListener().accept(origin, newState);
+  }
+
+  synchronized State state() {
+    return state;
+  }
+
+  synchronized double failureRate() {
+    return windowCount == 0 ? 0 : (double) failedCount / windowCount;
+  }
+}
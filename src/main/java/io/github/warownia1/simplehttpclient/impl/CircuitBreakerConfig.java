@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configuration of a {@link CircuitBreakingHttpClient}.
+ * <p>
+ * The default configuration opens the circuit of a host when at least half of the last
+ * 100 requests, and no fewer than 20, failed or took longer than 5 seconds. An open
+ * circuit rejects all requests for 30 seconds and then lets 5 probing requests through.
+ * Failures are IO errors and 5xx responses. Each {@code with} method returns a modified
+ * copy.
+ */
+public final class CircuitBreakerConfig {
+
+  private final int windowSize;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final double slowCallRateThreshold;
+  private final Duration slowCallDuration;
+  private final Duration openDuration;
+  private final int halfOpenCalls;
+  private final IntPredicate failureStatus;
+  private final BiConsumer<String, CircuitBreakingHttpClient.State> stateListener;
+
+  private CircuitBreakerConfig(int windowSize, int minimumCalls, double failureRateThreshold,
+      double slowCallRateThreshold, Duration slowCallDuration, Duration openDuration,
+      int halfOpenCalls, IntPredicate failureStatus,
+      BiConsumer<String, CircuitBreakingHttpClient.State> stateListener) {
+    this.windowSize = windowSize;
+    this.minimumCalls = minimumCalls;
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.slowCallDuration = slowCallDuration;
+    this.openDuration = openDuration;
+    this.halfOpenCalls = halfOpenCalls;
+    this.failureStatus = failureStatus;
+    this.stateListener = stateListener;
+  }
+
+  public static CircuitBreakerConfig defaultConfig() {
+    return new CircuitBreakerConfig(100, 20, 0.5, 0.5, Duration.ofSeconds(5),
+        Duration.ofSeconds(30), 5, status -> status >= 500, (origin, state) -> { });
+  }
+
+  /**
+   * Sets the size of the sliding window of the most recent requests and the minimum
+   * number of requests recorded before the circuit may open.
+   *
+   * @param windowSize the number of requests in the window
+   * @param minimumCalls the minimum number of requests, at most the window size
+   * @return the new configuration
+   */
+  public CircuitBreakerConfig withWindow(int windowSize, int minimumCalls) {
+    if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize)
+      throw new IllegalArgumentException("invalid window");
+    return new CircuitBreakerConfig(windowSize, minimumCalls, failureRateThreshold,
+        slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls, failureStatus,
+        stateListener);
+  }
+
+  /**
+   * @param failureRateThreshold the rate of failures in range (0, 1] opening the circuit
+   * @return the new configuration
+   */
+  public CircuitBreakerConfig withFailureRateThreshold(double failureRateThreshold) {
+    requireRate(failureRateThreshold);
+    return new CircuitBreakerConfig(windowSize, minimumCalls, failureRateThreshold,
+        slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls, failureStatus,
+        stateListener);
+  }
+
+  /**
+   * @param slowCallRateThreshold the rate of slow requests in range (0, 1] opening the
+   *     circuit
+   * @param slowCallDuration the duration above which a request is considered slow
+   * @return the new configuration
+   */
+  public CircuitBreakerConfig withSlowCalls(double slowCallRateThreshold,
+      Duration slowCallDuration) {
+    requireRate(slowCallRateThreshold);
+    requirePositive(slowCallDuration);
+    return new CircuitBreakerConfig(windowSize, minimumCalls, failureRateThreshold,
+        slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls, failureStatus,
+        stateListener);
+  }
+
+  /**
+   * @param openDuration the time the circuit stays open before probing
+   * @param halfOpenCalls the number of probing requests let through a half-open circuit
+   * @return the new configuration
+   */
+  public CircuitBreakerConfig withHalfOpen(Duration openDuration, int halfOpenCalls) {
+    requirePositive(openDuration);
+    if (halfOpenCalls < 1)
+      throw new IllegalArgumentException("invalid number of calls: " + halfOpenCalls);
+    return new CircuitBreakerConfig(windowSize, minimumCalls, failureRateThreshold,
+        slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls, failureStatus,
+        stateListener);
+  }
+
+  /**
+   * @param failureStatus the predicate selecting response status codes counted as failures
+   * @return the new configuration
+   */
+  public CircuitBreakerConfig withFailureStatus(IntPredicate failureStatus) {
+    return new CircuitBreakerConfig(windowSize, minimumCalls, failureRateThreshold,
+        slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls,
+        requireNonNull(failureStatus), stateListener);
+  }
+
+  /**
+   * @param stateListener the listener notified with the origin and the new state whenever
+   *     a circuit changes its state
+   * @return the new configuration
+   */
+  public CircuitBreakerConfig withStateListener(
+      BiConsumer<String, CircuitBreakingHttpClient.State> stateListener) {
+    return new CircuitBreakerConfig(windowSize, minimumCalls, failureRateThreshold,
+        slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls, failureStatus,
+        requireNonNull(stateListener));
+  }
+
+  private static void requireRate(double rate) {
+    if (!(rate > 0 && rate <= 1))
+      throw new IllegalArgumentException("invalid rate: " + rate);
+  }
+
+  private static void requirePositive(Duration duration) {
+    if (duration.isNegative() || duration.isZero())
+      throw new IllegalArgumentException("invalid duration: " + duration);
+  }
+
+  int windowSize() {
+    return windowSize;
+  }
+
+  int minimumCalls() {
+    return minimumCalls;
+  }
+
+  double failureRateThreshold() {
+    return failureRateThreshold;
+  }
+
+  double slowCallRateThreshold() {
+    return slowCallRateThreshold;
+  }
+
+  Duration slowCallDuration() {
+    return slowCallDuration;
+  }
+
+  Duration openDuration() {
+    return openDuration;
+  }
+
+  int halfOpenCalls() {
+    return halfOpenCalls;
+  }
+
+  boolean isFailureStatus(int statusCode) {
+    return failureStatus.test(statusCode);
+  }
+
+  BiConsumer<String, CircuitBreakingHttpClient.State> stateListener() {
+    return stateListener;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpClient} with a circuit breaker for every host.
+ * <p>
+ * A circuit of a host opens when the rate of failed or slow requests in its sliding
+ * window exceeds the configured threshold. While the circuit is open, requests to the
+ * host fail immediately with {@link RequestRejectedException} instead of waiting for
+ * the connect or read timeouts. After the open duration elapses, the circuit becomes
+ * half-open and lets a few probing requests through; it closes when all of them succeed
+ * and opens again on the first failure.
+ */
+public class CircuitBreakingHttpClient implements HttpClient {
+
+  /**
+   * The state of a circuit.
+   */
+  public enum State {
+    /** Requests are sent and their outcomes recorded. */
+    CLOSED,
+    /** Requests are rejected without being sent. */
+    OPEN,
+    /** A limited number of probing requests is sent. */
+    HALF_OPEN
+  }
+
+  private final HttpClient delegate;
+  private final CircuitBreakerConfig config;
+  private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+  public CircuitBreakingHttpClient(HttpClient delegate, CircuitBreakerConfig config) {
+    this.delegate = requireNonNull(delegate);
+    this.config = requireNonNull(config);
+  }
+
+  private CircuitBreaker breakerFor(URI uri) {
+    return breakers.computeIfAbsent(Origins.of(uri),
+        origin -> new CircuitBreaker(origin, config));
+  }
+
+  private static RequestRejectedException circuitOpen(URI uri) {
+    return new RequestRejectedException("circuit open for " + Origins.of(uri));
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
+      throws IOException {
+    CircuitBreaker breaker = breakerFor(request.uri());
+    long permit = breaker.tryAcquire();
+    if (permit == CircuitBreaker.REJECTED)
+      throw circuitOpen(request.uri());
+    long start = System.nanoTime();
+    HttpResponse<T> response;
+    try {
+      response = delegate.send(request, handler);
+    }
+    catch (RequestRejectedException e) {
+      breaker.onIgnored(permit);
+      throw e;
+    }
+    catch (IOException e) {
+      breaker.onResult(permit, System.nanoTime() - start, true);
+      throw e;
+    }
+    catch (RuntimeException | Error e) {
+      breaker.onIgnored(permit);
+      throw e;
+    }
+    breaker.onResult(permit, System.nanoTime() - start,
+        config.isFailureStatus(response.statusCode()));
+    return response;
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler, Executor executor) {
+    return exchangeAsync(request,
+        () -> delegate.sendAsync(request, handler, executor));
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends BodySubscriber<T>> subscriber, Executor executor) {
+    return exchangeAsync(request,
+        () -> delegate.sendAsync(request, subscriber, executor));
+  }
+
+  /**
+   * Opens the WebSocket through the delegate. The handshake is neither rejected by
+   * an open circuit nor counted towards the failure rate of the host.
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    return delegate.newWebSocket(request, listener, executor);
+  }
+
+  /**
+   * Starts the exchange of the delegate with the body handler or the body subscriber
+   * of the request.
+   */
+  private <T> CompletableFuture<HttpResponse<T>> exchangeAsync(HttpRequest request,
+      Supplier<CompletableFuture<HttpResponse<T>>> exchange) {
+    CircuitBreaker breaker = breakerFor(request.uri());
+    long permit = breaker.tryAcquire();
+    if (permit == CircuitBreaker.REJECTED)
+      return CompletableFuture.failedFuture(circuitOpen(request.uri()));
+    long start = System.nanoTime();
+    CompletableFuture<HttpResponse<T>> future;
+    try {
+      future = exchange.get();
+    }
+    catch (RuntimeException e) {
+      breaker.onIgnored(permit);
+      throw e;
+    }
+    future.whenComplete((response, exc) -> {
+      long duration = System.nanoTime() - start;
+      if (exc == null) {
+        breaker.onResult(permit, duration,
+            config.isFailureStatus(response.statusCode()));
+        return;
+      }
+      Throwable cause = exc instanceof CompletionException && exc.getCause() != null ?
+          exc.getCause() : exc;
+      if (cause instanceof IOException && !(cause instanceof RequestRejectedException))
+        breaker.onResult(permit, duration, true);
+      else
+        breaker.onIgnored(permit);
+    });
+    return future;
+  }
+
+  /**
+   * Returns the state of the circuit of the host of the given URI.
+   *
+   * @param uri the URI of the host
+   * @return the circuit state
+   */
+  public State state(URI uri) {
+    return breakerFor(uri).state();
+  }
+
+  /**
+   * Returns a snapshot of the states of all circuits keyed by the
+   * {@code scheme://host:port} origin.
+   *
+   * @return the circuit states
+   */
+  public Map<String, State> states() {
+    TreeMap<String, State> states = new TreeMap<>();
+    breakers.forEach((origin, breaker) -> states.put(origin, breaker.state()));
+    return states;
+  }
+
+  /**
+   * Returns the rate of failed requests in the current window of the host of the given
+   * URI.
+   *
+   * @param uri the URI of the host
+   * @return the failure rate
+   */
+  public double failureRate(URI uri) {
+    return breakerFor(uri).failureRate();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Concurrency limiter of a single host. Permits are granted through futures so that
+ * asynchronous requests wait for a free slot without blocking a thread.
+ */
+final class ConcurrencyLimiter {
+
+  private final String origin;
+  private final LimitAlgorithm algorithm;
+  private final int maxQueueLength;
+  private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+  private int limit;
+  private int inFlight = 0;
+
+  ConcurrencyLimiter(String origin, LimitAlgorithm algorithm, int maxQueueLength) {
+    this.origin = origin;
+    this.algorithm = algorithm;
+    this.maxQueueLength = maxQueueLength;
+    this.limit = Math.max(1, algorithm.initialLimit());
+  }
+
+  /**
+   * Returns a future which completes once a permit is granted. The future is failed
+   * immediately if the limit is reached and the queue is full. A waiter which is
+   * completed or cancelled by the caller before the permit is granted gives up its place.
+   */
+  CompletableFuture<Void> acquire() {
+    synchronized (this) {
+      if (inFlight < limit) {
+        inFlight++;
+        return CompletableFuture.completedFuture(null);
+      }
+      if (waiters.size() < maxQueueLength) {
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+      }
+    }
+    return CompletableFuture.failedFuture(new RequestRejectedException(
+        "concurrency limit of " + origin + " reached"));
+  }
+
+  /**
+   * Returns the permit and records the outcome of the request.
+   */
+  void release(int inFlightAtStart, long rttNanos, boolean dropped) {
+    List<CompletableFuture<Void>> granted;
+    synchronized (this) {
+      inFlight--;
+      limit = Math.max(1, algorithm.update(limit, inFlightAtStart, rttNanos, dropped));
+      granted = grant();
+    }
+    complete(granted);
+  }
+
+  /**
+   * Returns a permit which was granted but never used to send a request.
+   */
+  void releaseUnused() {
+    List<CompletableFuture<Void>> granted;
+    synchronized (this) {
+      inFlight--;
+      granted = grant();
+    }
+    complete(granted);
+  }
+
+  private List<CompletableFuture<Void>> grant() {
+    List<CompletableFuture<Void>> granted = null;
+    while (inFlight < limit && !waiters.isEmpty()) {
+      CompletableFuture<Void> waiter = waiters.poll();
+      if (waiter.isDone())
+        continue;
+      if (granted == null)
+        granted = new ArrayList<>();
+      granted.add(waiter);
+      inFlight++;
+    }
+    return granted;
+  }
+
+  // completes the waiters outside of the lock as their dependent actions run synchronously
+  private void complete(List<CompletableFuture<Void>> granted) {
+    if (granted == null)
+      return;
+    for (CompletableFuture<Void> waiter : granted) {
+      if (!waiter.complete(null))
+        releaseUnused();
+    }
+  }
+
+  synchronized int limit() {
+    return limit;
+  }
+
+  synchronized int inFlight() {
+    return inFlight;
+  }
+
+  synchronized int queued() {
+    return waiters.size();
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpClient} which limits the number of requests in flight to each host.
+ * <p>
+ * The limit of every host is adjusted by its own instance of a {@link LimitAlgorithm}
+ * from the latency of the completed requests. Requests failed with an exception or
+ * answered with 429 or 503 status are reported to the algorithm as dropped. Requests
+ * exceeding the limit wait in a queue for at most the configured time; requests which
+ * do not fit in the queue or time out are failed with {@link RequestRejectedException}.
+ * Asynchronous requests wait in the queue without occupying a thread.
+ */
+public class ConcurrencyLimitingHttpClient implements HttpClient {
+
+  private final HttpClient delegate;
+  private final Supplier<? extends LimitAlgorithm> algorithmFactory;
+  private final int maxQueueLength;
+  private final Duration maxWait;
+  private final ConcurrentHashMap<String, ConcurrencyLimiter> limiters =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Creates a client whose requests wait for a free slot for as long as needed.
+   *
+   * @param delegate the client sending the requests
+   * @param algorithmFactory the factory of per-host limit algorithms
+   */
+  public ConcurrencyLimitingHttpClient(HttpClient delegate,
+      Supplier<? extends LimitAlgorithm> algorithmFactory) {
+    this(delegate, algorithmFactory, Integer.MAX_VALUE, null);
+  }
+
+  /**
+   * Creates a client with a bounded queue of requests waiting for a free slot.
+   *
+   * @param delegate the client sending the requests
+   * @param algorithmFactory the factory of per-host limit algorithms
+   * @param maxQueueLength the maximum number of waiting requests per host, zero rejects
+   *     requests over the limit immediately
+   * @param maxWait the maximum time a request waits for a free slot or {@code null} to
+   *     wait without a limit
+   */
+  public ConcurrencyLimitingHttpClient(HttpClient delegate,
+      Supplier<? extends LimitAlgorithm> algorithmFactory, int maxQueueLength,
+      Duration maxWait) {
+    if (maxQueueLength < 0)
+      throw new IllegalArgumentException("negative queue length: " + maxQueueLength);
+    if (maxWait != null && maxWait.isNegative())
+      throw new IllegalArgumentException("negative wait: " + maxWait);
+    this.delegate = requireNonNull(delegate);
+    this.algorithmFactory = requireNonNull(algorithmFactory);
+    this.maxQueueLength = maxQueueLength;
+    this.maxWait = maxWait;
+  }
+
+  private ConcurrencyLimiter limiterFor(URI uri) {
+    return limiters.computeIfAbsent(Origins.of(uri),
+        origin -> new ConcurrencyLimiter(origin, algorithmFactory.get(), maxQueueLength));
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
+      throws IOException {
+    ConcurrencyLimiter limiter = limiterFor(request.uri());
+    awaitPermit(limiter, limiter.acquire());
+    int inFlight = limiter.inFlight();
+    long start = System.nanoTime();
+    boolean dropped = true;
+    try {
+      HttpResponse<T> response = delegate.send(request, handler);
+      dropped = isOverloaded(response.statusCode());
+      return response;
+    }
+    finally {
+      limiter.release(inFlight, System.nanoTime() - start, dropped);
+    }
+  }
+
+  private void awaitPermit(ConcurrencyLimiter limiter, CompletableFuture<Void> permit)
+      throws IOException {
+    try {
+      if (maxWait == null)
+        permit.get();
+      else
+        permit.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+    }
+    catch (TimeoutException e) {
+      if (permit.cancel(false))
+        throw new RequestRejectedException("timed out waiting for a free slot");
+      // the permit was granted in the meantime
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      if (!permit.cancel(false) && !permit.isCompletedExceptionally())
+        limiter.releaseUnused();
+      throw new InterruptedIOException("interrupted waiting for a free slot");
+    }
+    catch (ExecutionException e) {
+      throw unwrapIOException(e.getCause());
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler, Executor executor) {
+    return exchangeAsync(request,
+        () -> delegate.sendAsync(request, handler, executor));
+  }
+
+  /**
+   * Sends the request asynchronously using the default executor of the wrapped client.
+   */
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler) {
+    return exchangeAsync(request, () -> delegate.sendAsync(request, handler));
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends BodySubscriber<T>> subscriber, Executor executor) {
+    return exchangeAsync(request,
+        () -> delegate.sendAsync(request, subscriber, executor));
+  }
+
+  /**
+   * Opens the WebSocket through the delegate without a permit, which the WebSocket
+   * would hold until it is closed.
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    return delegate.newWebSocket(request, listener, executor);
+  }
+
+  /**
+   * Starts the exchange of the delegate with the body handler or the body subscriber
+   * of the request.
+   */
+  private <T> CompletableFuture<HttpResponse<T>> exchangeAsync(HttpRequest request,
+      Supplier<CompletableFuture<HttpResponse<T>>> exchange) {
+    ConcurrencyLimiter limiter = limiterFor(request.uri());
+    CompletableFuture<Void> permit = limiter.acquire();
+    if (maxWait != null && !permit.isDone())
+      permit.orTimeout(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    permit.whenComplete((v, exc) -> {
+      if (exc != null) {
+        if (exc instanceof TimeoutException)
+          exc = new RequestRejectedException("timed out waiting for a free slot");
+        result.completeExceptionally(exc);
+        return;
+      }
+      if (result.isDone()) {
+        limiter.releaseUnused();
+        return;
+      }
+      int inFlight = limiter.inFlight();
+      long start = System.nanoTime();
+      CompletableFuture<HttpResponse<T>> future;
+      try {
+        future = exchange.get();
+      }
+      catch (RuntimeException e) {
+        limiter.release(inFlight, System.nanoTime() - start, true);
+        result.completeExceptionally(e);
+        return;
+      }
+      result.whenComplete((r, e) -> {
+        if (result.isCancelled())
+          future.cancel(true);
+      });
+      future.whenComplete((response, e) -> {
+        boolean dropped = e != null || isOverloaded(response.statusCode());
+        limiter.release(inFlight, System.nanoTime() - start, dropped);
+        if (e == null)
+          result.complete(response);
+        else
+          result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+      });
+    });
+    result.whenComplete((r, e) -> {
+      if (result.isCancelled())
+        permit.cancel(false);
+    });
+    return result;
+  }
+
+  private static boolean isOverloaded(int statusCode) {
+    return statusCode == 429 || statusCode == 503;
+  }
+
+  private static IOException unwrapIOException(Throwable exc) {
+    if (exc instanceof IOException)
+      return (IOException) exc;
+    if (exc instanceof CancellationException)
+      return new InterruptedIOException("cancelled");
+    return new IOException(exc);
+  }
+
+  /**
+   * Returns the current concurrency limit of the host of the given URI, or zero if no
+   * request has been sent to the host yet.
+   *
+   * @param uri the URI of the host
+   * @return the current limit
+   */
+  public int currentLimit(URI uri) {
+    ConcurrencyLimiter limiter = limiters.get(Origins.of(uri));
+    return limiter != null ? limiter.limit() : 0;
+  }
+
+  /**
+   * Returns a snapshot of the current limits of all hosts keyed by the
+   * {@code scheme://host:port} origin.
+   *
+   * @return the current limits
+   */
+  public Map<String, Integer> limits() {
+    TreeMap<String, Integer> limits = new TreeMap<>();
+    limiters.forEach((origin, limiter) -> limits.put(origin, limiter.limit()));
+    return limits;
+  }
+
+  /**
+   * Returns a snapshot of the numbers of requests in flight to each host keyed by the
+   * {@code scheme://host:port} origin.
+   *
+   * @return the numbers of requests in flight
+   */
+  public Map<String, Integer> inFlight() {
+    TreeMap<String, Integer> inFlight = new TreeMap<>();
+    limiters.forEach((origin, limiter) -> inFlight.put(origin, limiter.inFlight()));
+    return inFlight;
+  }
+}
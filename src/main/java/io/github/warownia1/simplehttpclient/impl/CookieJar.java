@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.net.CookieHandler;
+import java.net.URI;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory cookie store following RFC 6265.
+ * <p>
+ * The jar is a {@link CookieHandler}, so it can be attached to a client with
+ * {@link io.github.warownia1.simplehttpclient.HttpClient.Builder#cookieHandler}. Cookies
+ * are stored in buckets indexed by the registrable domain of the host according to the
+ * snapshot of the Public Suffix List shipped with the library, and each bucket keeps its
+ * cookies ordered by path length as required for the {@code Cookie} header. Matching a
+ * request therefore only looks at the cookies of its host's domain. Buckets are
+ * copy-on-write arrays, so lookups take no locks and updates lock only their bucket. A
+ * cookie whose {@code Domain} attribute is a public suffix, such as {@code co.uk}, is
+ * ignored unless it comes from that very host, which then gets it as a host-only cookie.
+ * <p>
+ * Cookies expire according to their {@code Max-Age} or {@code Expires} attribute. A
+ * cookie longer than 4096 bytes is ignored, a domain holds at most 50 cookies and the jar
+ * at most 3000; when a limit is exceeded the expired cookies are removed first and then
+ * the least recently used ones.
+ */
+public class CookieJar extends CookieHandler {
+
+  static final int MAX_COOKIE_SIZE = 4096;
+  static final int MAX_COOKIES_PER_DOMAIN = 50;
+  static final int MAX_COOKIES = 3000;
+
+  private static final Cookie[] NO_COOKIES = new Cookie[0];
+
+  // longer paths first, then earlier creation times
+  private static final Comparator<Cookie> COOKIE_ORDER =
+      Comparator.<Cookie>comparingInt(c -> -c.path.length())
+          .thenComparingLong(c -> c.creationTime);
+
+  private final Clock clock;
+  private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+  private final AtomicInteger count = new AtomicInteger();
+
+  public CookieJar() {
+    this(Clock.systemUTC());
+  }
+
+  CookieJar(Clock clock) {
+    this.clock = clock;
+  }
+
+  static final class Cookie {
+    final String name;
+    final String value;
+    final String domain;
+    final boolean hostOnly;
+    final String path;
+    final long expiryTime;
+    final boolean secure;
+    final long creationTime;
+    volatile long lastAccessTime;
+
+    Cookie(String name, String value, String domain, boolean hostOnly, String path,
+        long expiryTime, boolean secure, long creationTime) {
+      this.name = name;
+      this.value = value;
+      this.domain = domain;
+      this.hostOnly = hostOnly;
+      this.path = path;
+      this.expiryTime = expiryTime;
+      this.secure = secure;
+      this.creationTime = creationTime;
+      this.lastAccessTime = creationTime;
+    }
+
+    boolean isExpired(long now) {
+      return expiryTime <= now;
+    }
+
+    boolean sameIdentity(Cookie other) {
+      return name.equals(other.name) && domain.equals(other.domain) &&
+          path.equals(other.path);
+    }
+
+    boolean matches(String host, String requestPath, boolean secureChannel) {
+      if (secure && !secureChannel)
+        return false;
+      if (hostOnly ? !host.equals(domain) : !domainMatches(host, domain))
+        return false;
+      return pathMatches(requestPath, path);
+    }
+  }
+
+  private static final class Bucket {
+    volatile Cookie[] cookies = NO_COOKIES;
+  }
+
+  @Override
+  public Map<String, List<String>> get(URI uri, Map<String, List<String>> requestHeaders) {
+    String host = host(uri);
+    if (host == null)
+      return Map.of();
+    Bucket bucket = buckets.get(bucketKey(host));
+    if (bucket == null)
+      return Map.of();
+    long now = clock.millis();
+    boolean secureChannel = "https".equalsIgnoreCase(uri.getScheme());
+    String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+    StringBuilder header = null;
+    boolean expired = false;
+    for (Cookie cookie : bucket.cookies) {
+      if (cookie.isExpired(now)) {
+        expired = true;
+        continue;
+      }
+      if (!cookie.matches(host, path, secureChannel))
+        continue;
+      cookie.lastAccessTime = now;
+      if (header == null)
+        header = new StringBuilder();
+      else
+        header.append("; ");
+      header.append(cookie.name).append('=').append(cookie.value);
+    }
+    if (expired)
+      removeExpired(bucket, now);
+    if (header == null)
+      return Map.of();
+    return Map.of("Cookie", List.of(header.toString()));
+  }
+
+  @Override
+  public void put(URI uri, Map<String, List<String>> responseHeaders) {
+    String host = host(uri);
+    if (host == null)
+      return;
+    for (Map.Entry<String, List<String>> entry : responseHeaders.entrySet()) {
+      if (!"Set-Cookie".equalsIgnoreCase(entry.getKey()))
+        continue;
+      for (String value : entry.getValue()) {
+        Cookie cookie = parse(value, uri, host, clock.millis());
+        if (cookie != null)
+          store(cookie);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of cookies in the jar, including the expired ones which have
+   * not been removed yet.
+   *
+   * @return the number of cookies
+   */
+  public int size() {
+    return count.get();
+  }
+
+  /**
+   * Removes all cookies from the jar.
+   */
+  public void clear() {
+    for (Bucket bucket : buckets.values()) {
+      synchronized (bucket) {
+        count.addAndGet(-bucket.cookies.length);
+        bucket.cookies = NO_COOKIES;
+      }
+    }
+  }
+
+  private void store(Cookie cookie) {
+    long now = cookie.creationTime;
+    Bucket bucket = buckets.computeIfAbsent(bucketKey(cookie.domain), key -> new Bucket());
+    synchronized (bucket) {
+      Cookie[] cookies = bucket.cookies;
+      ArrayList<Cookie> updated = new ArrayList<>(cookies.length + 1);
+      Cookie replaced = null;
+      for (Cookie existing : cookies) {
+        if (existing.sameIdentity(cookie))
+          replaced = existing;
+        else if (!existing.isExpired(now))
+          updated.add(existing);
+      }
+      if (!cookie.isExpired(now)) {
+        // a replacing cookie keeps the creation time of the old one
+        updated.add(replaced == null ? cookie : new Cookie(cookie.name, cookie.value,
+            cookie.domain, cookie.hostOnly, cookie.path, cookie.expiryTime, cookie.secure,
+            replaced.creationTime));
+      }
+      evictFromDomain(updated, cookie.domain);
+      updated.sort(COOKIE_ORDER);
+      count.addAndGet(updated.size() - cookies.length);
+      bucket.cookies = updated.toArray(NO_COOKIES);
+    }
+    if (count.get() > MAX_COOKIES)
+      evict(now);
+  }
+
+  /**
+   * Removes the least recently used cookies of the domain over its limit. The other
+   * domains sharing the bucket keep their cookies.
+   */
+  private static void evictFromDomain(List<Cookie> cookies, String domain) {
+    while (true) {
+      int count = 0;
+      int oldest = -1;
+      for (int i = 0; i < cookies.size(); i++) {
+        Cookie cookie = cookies.get(i);
+        if (!cookie.domain.equals(domain))
+          continue;
+        count++;
+        if (oldest < 0 || cookie.lastAccessTime < cookies.get(oldest).lastAccessTime)
+          oldest = i;
+      }
+      if (count <= MAX_COOKIES_PER_DOMAIN)
+        return;
+      cookies.remove(oldest);
+    }
+  }
+
+  private void removeExpired(Bucket bucket, long now) {
+    synchronized (bucket) {
+      Cookie[] cookies = bucket.cookies;
+      Cookie[] live = Arrays.stream(cookies)
+          .filter(c -> !c.isExpired(now))
+          .toArray(Cookie[]::new);
+      count.addAndGet(live.length - cookies.length);
+      bucket.cookies = live;
+    }
+  }
+
+  /**
+   * Brings the number of cookies under the limit removing the expired cookies first and
+   * then the least recently used ones across all domains.
+   */
+  private void evict(long now) {
+    for (Bucket bucket : buckets.values()) {
+      removeExpired(bucket, now);
+    }
+    while (count.get() > MAX_COOKIES) {
+      Bucket oldestBucket = null;
+      Cookie oldest = null;
+      for (Bucket bucket : buckets.values()) {
+        for (Cookie cookie : bucket.cookies) {
+          if (oldest == null || cookie.lastAccessTime < oldest.lastAccessTime) {
+            oldest = cookie;
+            oldestBucket = bucket;
+          }
+        }
+      }
+      if (oldest == null)
+        return;
+      synchronized (oldestBucket) {
+        Cookie[] cookies = oldestBucket.cookies;
+        Cookie victim = oldest;
+        Cookie[] remaining = Arrays.stream(cookies)
+            .filter(c -> c != victim)
+            .toArray(Cookie[]::new);
+        count.addAndGet(remaining.length - cookies.length);
+        oldestBucket.cookies = remaining;
+      }
+    }
+  }
+
+  private static String host(URI uri) {
+    String host = uri.getHost();
+    return host == null ? null : host.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Returns the key of the bucket for the domain, which is its registrable domain or the
+   * whole name for IP addresses.
+   */
+  static String bucketKey(String domain) {
+    if (isIpAddress(domain))
+      return domain;
+    return PublicSuffixes.registrableDomain(domain);
+  }
+
+  private static boolean isIpAddress(String host) {
+    return host.indexOf(':') >= 0 || host.startsWith("[") ||
+        host.chars().allMatch(c -> c == '.' || (c >= '0' && c <= '9'));
+  }
+
+  static boolean domainMatches(String host, String domain) {
+    if (host.equals(domain))
+      return true;
+    return host.endsWith(domain) && host.charAt(host.length() - domain.length() - 1) == '.' &&
+        !isIpAddress(host);
+  }
+
+  static boolean pathMatches(String requestPath, String cookiePath) {
+    if (!requestPath.startsWith(cookiePath))
+      return false;
+    return requestPath.length() == cookiePath.length() || cookiePath.endsWith("/") ||
+        requestPath.charAt(cookiePath.length()) == '/';
+  }
+
+  static String defaultPath(URI uri) {
+    String path = uri.getRawPath();
+    if (path == null || !path.startsWith("/"))
+      return "/";
+    int last = path.lastIndexOf('/');
+    return last == 0 ? "/" : path.substring(0, last);
+  }
+
+  /**
+   * Parses the {@code Set-Cookie} header value received from the URI according to
+   * RFC 6265 section 5.2 and 5.3, or returns null if the cookie must be ignored.
+   */
+  static Cookie parse(String header, URI uri, String host, long now) {
+    if (header.length() > MAX_COOKIE_SIZE)
+      return null;
+    String[] parts = header.split(";");
+    int eq = parts[0].indexOf('=');
+    if (eq < 0)
+      return null;
+    String name = parts[0].substring(0, eq).trim();
+    String value = parts[0].substring(eq + 1).trim();
+    if (name.isEmpty())
+      return null;
+    long expiry = Long.MAX_VALUE;
+    boolean maxAgeSet = false;
+    String domain = null;
+    String path = null;
+    boolean secure = false;
+    for (int i = 1; i < parts.length; i++) {
+      String attribute = parts[i];
+      int attrEq = attribute.indexOf('=');
+      String attrName = (attrEq < 0 ? attribute : attribute.substring(0, attrEq)).trim();
+      String attrValue = attrEq < 0 ? "" : attribute.substring(attrEq + 1).trim();
+      switch (attrName.toLowerCase(Locale.ROOT)) {
+        case "expires":
+          if (!maxAgeSet) {
+            long time = parseDate(attrValue);
+            if (time != Long.MIN_VALUE)
+              expiry = time;
+          }
+          break;
+        case "max-age":
+          try {
+            long seconds = Long.parseLong(attrValue);
+            expiry = seconds <= 0 ? Long.MIN_VALUE
+                : seconds >= (Long.MAX_VALUE - now) / 1000 ? Long.MAX_VALUE
+                : now + seconds * 1000;
+            maxAgeSet = true;
+          }
+          catch (NumberFormatException e) {
+            // invalid max-age is ignored
+          }
+          break;
+        case "domain":
+          if (!attrValue.isEmpty()) {
+            domain = (attrValue.startsWith(".") ? attrValue.substring(1) : attrValue)
+                .toLowerCase(Locale.ROOT);
+          }
+          break;
+        case "path":
+          if (attrValue.startsWith("/"))
+            path = attrValue;
+          break;
+        case "secure":
+          secure = true;
+          break;
+        default:
+          // HttpOnly, SameSite and unknown attributes do not affect this client
+      }
+    }
+    boolean hostOnly;
+    if (domain == null || domain.isEmpty()) {
+      domain = host;
+      hostOnly = true;
+    }
+    else {
+      if (!domainMatches(host, domain))
+        return null;
+      // a public suffix may only set cookies for itself
+      if (!isIpAddress(domain) && PublicSuffixes.isPublicSuffix(domain)) {
+        if (!domain.equals(host))
+          return null;
+        hostOnly = true;
+      }
+      else {
+        hostOnly = false;
+      }
+    }
+    if (secure && !"https".equalsIgnoreCase(uri.getScheme()))
+      return null;
+    if (path == null)
+      path = defaultPath(uri);
+    return new Cookie(name, value, domain, hostOnly, path, expiry, secure, now);
+  }
+
+  private static final String[] MONTHS = {
+      "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"
+  };
+
+  private static boolean isDelimiter(char c) {
+    return c == 0x09 || (c >= 0x20 && c <= 0x2F) || (c >= 0x3B && c <= 0x40) ||
+        (c >= 0x5B && c <= 0x60) || (c >= 0x7B && c <= 0x7E);
+  }
+
+  /**
+   * Parses a cookie date using the algorithm of RFC 6265 section 5.1.1.
+   *
+   * @return the time in epoch milliseconds or {@link Long#MIN_VALUE} if invalid
+   */
+  static long parseDate(String text) {
+    int hour = -1, minute = -1, second = -1, day = -1, month = -1, year = -1;
+    int i = 0;
+    int length = text.length();
+    while (i < length) {
+      while (i < length && isDelimiter(text.charAt(i))) i++;
+      int start = i;
+      while (i < length && !isDelimiter(text.charAt(i))) i++;
+      if (start == i)
+        continue;
+      String token = text.substring(start, i);
+      int[] time;
+      if (hour < 0 && (time = parseTime(token)) != null) {
+        hour = time[0];
+        minute = time[1];
+        second = time[2];
+      }
+      else if (day < 0 && leadingDigits(token, 1, 2) >= 0) {
+        day = leadingDigits(token, 1, 2);
+      }
+      else if (month < 0 && monthOf(token) >= 0) {
+        month = monthOf(token);
+      }
+      else if (year < 0 && leadingDigits(token, 2, 4) >= 0) {
+        year = leadingDigits(token, 2, 4);
+      }
+    }
+    if (year >= 70 && year <= 99)
+      year += 1900;
+    else if (year >= 0 && year <= 69)
+      year += 2000;
+    if (hour < 0 || day < 1 || day > 31 || month < 0 || year < 1601 ||
+        hour > 23 || minute > 59 || second > 59)
+      return Long.MIN_VALUE;
+    try {
+      return LocalDateTime.of(year, month + 1, day, hour, minute, second)
+          .toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+    catch (java.time.DateTimeException e) {
+      return Long.MIN_VALUE;
+    }
+  }
+
+  /**
+   * Parses the given number of leading digits followed by a non-digit or the end of the
+   * token, or returns -1.
+   */
+  private static int leadingDigits(String token, int min, int max) {
+    int digits = 0;
+    while (digits < token.length() && Character.isDigit(token.charAt(digits))) digits++;
+    if (digits < min || digits > max)
+      return -1;
+    return Integer.parseInt(token.substring(0, digits));
+  }
+
+  private static int[] parseTime(String token) {
+    String[] fields = token.split(":", 3);
+    if (fields.length != 3)
+      return null;
+    int hour = fields[0].length() <= 2 && !fields[0].isEmpty() &&
+        fields[0].chars().allMatch(Character::isDigit) ? Integer.parseInt(fields[0]) : -1;
+    int minute = fields[1].length() <= 2 && !fields[1].isEmpty() &&
+        fields[1].chars().allMatch(Character::isDigit) ? Integer.parseInt(fields[1]) : -1;
+    int second = leadingDigits(fields[2], 1, 2);
+    if (hour < 0 || minute < 0 || second < 0)
+      return null;
+    return new int[]{hour, minute, second};
+  }
+
+  private static int monthOf(String token) {
+    if (token.length() < 3)
+      return -1;
+    String prefix = token.substring(0, 3).toLowerCase(Locale.ROOT);
+    for (int m = 0; m < MONTHS.length; m++) {
+      if (MONTHS[m].equals(prefix))
+        return m;
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.EventListener;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the timestamps of the phases of a single exchange and forwards the lifecycle
+ * events to the event listener, if there is one.
+ * <p>
+ * Timestamps are plain {@code long} fields written by the thread performing the exchange,
+ * so recording an exchange without a listener allocates nothing but this object, which
+ * is then carried by the response as its {@link HttpResponse.Timings}.
+ */
+final class ExchangeTimings implements HttpResponse.Timings {
+
+  private static final long UNSET = Long.MIN_VALUE;
+  private static final InetAddress[] NO_ADDRESSES = new InetAddress[0];
+
+  private final HttpRequest request;
+  private final EventListener listener;
+
+  private final long submitted;
+  private long started = UNSET;
+  private long dnsStart = UNSET;
+  private long dnsEnd = UNSET;
+  private long connectStart = UNSET;
+  private long secureConnectStart = UNSET;
+  private long secureConnectEnd = UNSET;
+  private long connectEnd = UNSET;
+  private long requestSent = UNSET;
+  private long responseStart = UNSET;
+  private long end = UNSET;
+  private boolean connecting = false;
+  private boolean connectPending = false;
+  private String lookupHost;
+
+  ExchangeTimings(HttpRequest request, EventListener listener) {
+    this.request = request;
+    this.listener = listener;
+    this.submitted = System.nanoTime();
+  }
+
+  void requestQueued() {
+    if (listener != null)
+      listener.requestQueued(request);
+  }
+
+  void started() {
+    started = System.nanoTime();
+  }
+
+  /**
+   * Resolves the host before connecting to time the lookup. The connection finds the
+   * address in the JVM's name cache afterwards, and a host which cannot be resolved is
+   * left for the connection to fail on, as it may be reached through a proxy.
+   */
+  void resolve(String host) {
+    dnsStart(host);
+    InetAddress[] addresses;
+    try {
+      addresses = InetAddress.getAllByName(host);
+    }
+    catch (UnknownHostException e) {
+      addresses = NO_ADDRESSES;
+    }
+    dnsEnd(host, addresses);
+  }
+
+  /**
+   * Defers the lookup of the host, if any, and the start of the connect until the
+   * connection creates a new socket, which a TLS connection reports through its socket
+   * factory. A connection taken from the pool reports neither.
+   */
+  void connectOnNewSocket(String host) {
+    connectPending = true;
+    lookupHost = host;
+    resetSecureConnect();
+  }
+
+  /**
+   * Reports a new socket created by the connection.
+   */
+  void newSocket() {
+    if (!connectPending)
+      return;
+    connectPending = false;
+    if (lookupHost != null)
+      resolve(lookupHost);
+    lookupHost = null;
+    connectStart();
+  }
+
+  void dnsStart(String host) {
+    dnsStart = System.nanoTime();
+    if (listener != null)
+      listener.dnsStart(request, host);
+  }
+
+  void dnsEnd(String host, InetAddress[] addresses) {
+    dnsEnd = System.nanoTime();
+    if (listener != null)
+      listener.dnsEnd(request, host, List.copyOf(Arrays.asList(addresses)));
+  }
+
+  void connectStart() {
+    connecting = true;
+    connectStart = System.nanoTime();
+    resetSecureConnect();
+    if (listener != null)
+      listener.connectStart(request);
+  }
+
+  /**
+   * Forgets the handshake of a previous hop, which a plain or pooled connection of the
+   * next hop must not report as its own.
+   */
+  private void resetSecureConnect() {
+    secureConnectStart = UNSET;
+    secureConnectEnd = UNSET;
+  }
+
+  void secureConnectStart() {
+    secureConnectStart = System.nanoTime();
+    if (listener != null)
+      listener.secureConnectStart(request);
+  }
+
+  void connectEnd() {
+    connectPending = false;
+    if (!connecting)
+      return;
+    connecting = false;
+    connectEnd = System.nanoTime();
+    if (secureConnectStart != UNSET) {
+      // the handshake is completed synchronously by the connect
+      secureConnectEnd = connectEnd;
+      if (listener != null)
+        listener.secureConnectEnd(request);
+    }
+    if (listener != null)
+      listener.connectEnd(request);
+  }
+
+  void requestHeadersSent() {
+    requestSent = System.nanoTime();
+    if (listener != null)
+      listener.requestHeadersSent(request);
+  }
+
+  void requestBodySent() {
+    requestSent = System.nanoTime();
+    if (listener != null)
+      listener.requestBodySent(request);
+  }
+
+  void responseHeadersReceived(HttpResponse.ResponseInfo responseInfo) {
+    responseStart = System.nanoTime();
+    if (listener != null)
+      listener.responseHeadersReceived(request, responseInfo);
+  }
+
+  void responseBodyComplete() {
+    end = System.nanoTime();
+    if (listener != null)
+      listener.responseBodyComplete(request, this);
+  }
+
+  void failed(Exception exception) {
+    end = System.nanoTime();
+    if (listener != null)
+      listener.requestFailed(request, exception, this);
+  }
+
+  private static Duration between(long from, long to) {
+    if (from == UNSET || to == UNSET)
+      return Duration.ZERO;
+    return Duration.ofNanos(to - from);
+  }
+
+  @Override
+  public Duration queued() {
+    return between(submitted, started);
+  }
+
+  @Override
+  public Duration dns() {
+    return between(dnsStart, dnsEnd);
+  }
+
+  @Override
+  public Duration connect() {
+    return between(connectStart,
+        secureConnectStart != UNSET ? secureConnectStart : connectEnd);
+  }
+
+  @Override
+  public Duration secureConnect() {
+    return between(secureConnectStart, secureConnectEnd);
+  }
+
+  @Override
+  public Duration sending() {
+    return between(connectEnd, requestSent);
+  }
+
+  @Override
+  public Duration waiting() {
+    return between(requestSent, responseStart);
+  }
+
+  @Override
+  public Duration bodyHandling() {
+    return between(responseStart, end);
+  }
+
+  @Override
+  public Duration total() {
+    return between(submitted, end);
+  }
+
+  @Override
+  public String toString() {
+    return "Timings{queued=" + queued() + ", dns=" + dns() + ", connect=" + connect() +
+        ", secureConnect=" + secureConnect() + ", sending=" + sending() +
+        ", waiting=" + waiting() + ", bodyHandling=" + bodyHandling() +
+        ", total=" + total() + "}";
+  }
+}
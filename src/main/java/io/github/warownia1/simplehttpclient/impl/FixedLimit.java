@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+/**
+ * A limit which never changes, such as a fixed number of connections to each host.
+ */
+public class FixedLimit implements LimitAlgorithm {
+
+  private final int limit;
+
+  /**
+   * @param limit the limit of the requests in flight
+   */
+  public FixedLimit(int limit) {
+    if (limit < 1)
+      throw new IllegalArgumentException("invalid limit: " + limit);
+    this.limit = limit;
+  }
+
+  @Override
+  public int initialLimit() {
+    return limit;
+  }
+
+  @Override
+  public int update(int limit, int inFlight, long rttNanos, boolean dropped) {
+    return this.limit;
+  }
+}
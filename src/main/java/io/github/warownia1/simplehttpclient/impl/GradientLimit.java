@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+/**
+ * Gradient limit which compares the latency of each request with a long term average.
+ * <p>
+ * When the latency rises above the average, requests are queueing at the server and the
+ * limit is scaled down by the ratio of the two, otherwise the limit grows by a queue
+ * allowance of the square root of the limit. The new limit is smoothed with the previous
+ * one, and the long term average slowly follows the observed latency so the limit
+ * recovers when the server latency changes permanently.
+ */
+public class GradientLimit implements LimitAlgorithm {
+
+  private final int initialLimit;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double rttTolerance;
+  private final double smoothing;
+  private final int longWindow;
+
+  private double estimatedLimit;
+  private double longRtt = 0;
+  private int samples = 0;
+
+  public GradientLimit() {
+    this(20, 1, 200, 1.5, 0.2, 600);
+  }
+
+  /**
+   * @param initialLimit the limit before any request completes
+   * @param minLimit the lower bound of the limit
+   * @param maxLimit the upper bound of the limit
+   * @param rttTolerance how much higher than the average latency may be before the limit
+   *     is reduced, at least 1
+   * @param smoothing the weight of the new limit, in range (0, 1]
+   * @param longWindow the number of samples the long term average is computed over
+   */
+  public GradientLimit(int initialLimit, int minLimit, int maxLimit, double rttTolerance,
+      double smoothing, int longWindow) {
+    if (minLimit < 1 || maxLimit < minLimit)
+      throw new IllegalArgumentException("invalid limit bounds");
+    if (initialLimit < minLimit || initialLimit > maxLimit)
+      throw new IllegalArgumentException("initial limit out of bounds: " + initialLimit);
+    if (!(rttTolerance >= 1))
+      throw new IllegalArgumentException("invalid rtt tolerance: " + rttTolerance);
+    if (!(smoothing > 0 && smoothing <= 1))
+      throw new IllegalArgumentException("invalid smoothing: " + smoothing);
+    if (longWindow < 1)
+      throw new IllegalArgumentException("invalid window: " + longWindow);
+    this.initialLimit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.rttTolerance = rttTolerance;
+    this.smoothing = smoothing;
+    this.longWindow = longWindow;
+    this.estimatedLimit = initialLimit;
+  }
+
+  @Override
+  public int initialLimit() {
+    return initialLimit;
+  }
+
+  @Override
+  public int update(int limit, int inFlight, long rttNanos, boolean dropped) {
+    double shortRtt = Math.max(1, rttNanos);
+    // exponential average which behaves like a plain average for the first samples
+    samples = Math.min(samples + 1, longWindow);
+    longRtt += (shortRtt - longRtt) / samples;
+    // let the average drift down faster once the server latency settles lower
+    if (longRtt / shortRtt > 2)
+      longRtt *= 0.95;
+    // ignore samples taken when the limit was not used, they carry no information
+    if (!dropped && inFlight * 2 < estimatedLimit)
+      return limit;
+    double gradient = dropped ? 0.5 :
+        Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / shortRtt));
+    double queueSize = dropped ? 0 : Math.sqrt(estimatedLimit);
+    double newLimit = estimatedLimit * gradient + queueSize;
+    newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+    estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    return (int) estimatedLimit;
+  }
+}
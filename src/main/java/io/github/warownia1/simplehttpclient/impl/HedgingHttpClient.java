@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpClient} which hedges idempotent requests to reduce tail latency.
+ * <p>
+ * If the response to a {@code GET} or {@code HEAD} request does not arrive within the
+ * delay specified by the {@link HedgingPolicy}, a duplicate request is sent to the same
+ * URI or to a mirror URI. The response which arrives first completes the request and the
+ * other attempts are cancelled. A request fails only when all its attempts fail. The
+ * number of hedges is limited by a budget relative to the number of requests so that
+ * hedging cannot add more than a fixed fraction of load to the servers.
+ * <p>
+ * Blocking {@link #send} calls run their attempts on the executor given to the
+ * constructor and wait for the first response.
+ */
+public class HedgingHttpClient implements HttpClient {
+
+  private final HttpClient delegate;
+  private final HedgingPolicy policy;
+  private final Executor executor;
+  private final LatencyWindow latencies = new LatencyWindow(1000);
+  private final TokenBudget budget;
+
+  private final LongAdder requestCount = new LongAdder();
+  private final LongAdder hedgeCount = new LongAdder();
+  private final LongAdder hedgeWinCount = new LongAdder();
+
+  /**
+   * @param delegate the client sending the requests
+   * @param policy the hedging policy
+   * @param executor the executor running the attempts of blocking sends
+   */
+  public HedgingHttpClient(HttpClient delegate, HedgingPolicy policy, Executor executor) {
+    this.delegate = requireNonNull(delegate);
+    this.policy = requireNonNull(policy);
+    this.executor = requireNonNull(executor);
+    this.budget = new TokenBudget(policy.budgetRatio(), 10);
+  }
+
+  private static boolean isHedgeable(HttpRequest request) {
+    String method = request.method();
+    return method.equals("GET") || method.equals("HEAD");
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
+      throws IOException {
+    if (!isHedgeable(request))
+      return delegate.send(request, handler);
+    CompletableFuture<HttpResponse<T>> future = sendAsync(request, handler, executor);
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler, Executor executor) {
+    if (!isHedgeable(request))
+      return delegate.sendAsync(request, handler, executor);
+    return hedgeAsync(request, executor,
+        attempt -> delegate.sendAsync(attempt, handler, executor));
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Each attempt takes its own subscriber from the supplier.
+   */
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends BodySubscriber<T>> subscriber, Executor executor) {
+    if (!isHedgeable(request))
+      return delegate.sendAsync(request, subscriber, executor);
+    return hedgeAsync(request, executor,
+        attempt -> delegate.sendAsync(attempt, subscriber, executor));
+  }
+
+  /**
+   * Opens the WebSocket through the delegate with a single handshake.
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    return delegate.newWebSocket(request, listener, executor);
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> hedgeAsync(HttpRequest request,
+      Executor executor,
+      Function<HttpRequest, CompletableFuture<HttpResponse<T>>> exchange) {
+    requestCount.increment();
+    budget.deposit();
+    Race<T> race = new Race<>(request, exchange);
+    race.launch(0);
+    long delayNanos = currentDelay().toNanos();
+    for (int i = 1; i <= policy.maxHedges(); i++) {
+      int attempt = i;
+      Executor delayed = CompletableFuture.delayedExecutor(
+          delayNanos * i, TimeUnit.NANOSECONDS, executor);
+      delayed.execute(() -> race.hedge(attempt));
+    }
+    return race.result;
+  }
+
+  /**
+   * Returns the delay after which a hedge is currently sent.
+   *
+   * @return the hedging delay
+   */
+  public Duration currentDelay() {
+    if (policy.fixedDelay() != null)
+      return policy.fixedDelay();
+    long minNanos = policy.minDelay().toNanos();
+    return Duration.ofNanos(Math.max(minNanos, latencies.percentile(policy.percentile())));
+  }
+
+  /**
+   * Returns the number of hedgeable requests sent by this client.
+   *
+   * @return the number of requests
+   */
+  public long requestCount() {
+    return requestCount.sum();
+  }
+
+  /**
+   * Returns the number of hedges sent by this client.
+   *
+   * @return the number of hedges
+   */
+  public long hedgeCount() {
+    return hedgeCount.sum();
+  }
+
+  /**
+   * Returns the number of requests completed with a response to a hedge rather than to
+   * the original request.
+   *
+   * @return the number of hedges which won
+   */
+  public long hedgeWinCount() {
+    return hedgeWinCount.sum();
+  }
+
+  /**
+   * A set of attempts of one request racing for the first response.
+   */
+  private final class Race<T> {
+    final HttpRequest request;
+    // starts the exchange of an attempt with the body handler or subscriber
+    final Function<HttpRequest, CompletableFuture<HttpResponse<T>>> exchange;
+    final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    final List<CompletableFuture<HttpResponse<T>>> attempts = new ArrayList<>();
+    final long start = System.nanoTime();
+    int pending = 0;
+    boolean settled = false;
+    Throwable failure;
+
+    Race(HttpRequest request,
+        Function<HttpRequest, CompletableFuture<HttpResponse<T>>> exchange) {
+      this.request = request;
+      this.exchange = exchange;
+      result.whenComplete((response, exc) -> cancelAttempts());
+    }
+
+    void hedge(int attempt) {
+      if (result.isDone() || !budget.tryWithdraw())
+        return;
+      hedgeCount.increment();
+      launch(attempt);
+    }
+
+    void launch(int attempt) {
+      HttpRequest attemptRequest = request;
+      if (attempt > 0) {
+        List<URI> mirrors = policy.mirrors().apply(request.uri());
+        if (mirrors != null && !mirrors.isEmpty()) {
+          URI mirror = mirrors.get((attempt - 1) % mirrors.size());
+          attemptRequest = HttpRequest.newBuilder(request).uri(mirror).build();
+        }
+      }
+      CompletableFuture<HttpResponse<T>> future;
+      synchronized (this) {
+        if (result.isDone())
+          return;
+        pending++;
+      }
+      try {
+        future = exchange.apply(attemptRequest);
+      }
+      catch (RuntimeException e) {
+        future = CompletableFuture.failedFuture(e);
+      }
+      synchronized (this) {
+        attempts.add(future);
+      }
+      if (result.isDone())
+        future.cancel(true);
+      future.whenComplete((response, exc) -> onAttemptCompleted(attempt, response, exc));
+    }
+
+    private void onAttemptCompleted(int attempt, HttpResponse<T> response, Throwable exc) {
+      if (exc == null) {
+        synchronized (this) {
+          if (settled || result.isDone())
+            return;
+          settled = true;
+        }
+        // update the statistics before the caller is woken up by the result
+        latencies.record(System.nanoTime() - start);
+        if (attempt > 0)
+          hedgeWinCount.increment();
+        result.complete(response);
+        return;
+      }
+      if (exc instanceof CompletionException && exc.getCause() != null)
+        exc = exc.getCause();
+      boolean lastAttempt;
+      synchronized (this) {
+        if (failure == null || failure instanceof CancellationException)
+          failure = exc;
+        lastAttempt = --pending == 0;
+      }
+      if (lastAttempt)
+        result.completeExceptionally(failure);
+    }
+
+    private void cancelAttempts() {
+      List<CompletableFuture<HttpResponse<T>>> toCancel;
+      synchronized (this) {
+        toCancel = new ArrayList<>(attempts);
+      }
+      for (CompletableFuture<HttpResponse<T>> attempt : toCancel) {
+        attempt.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * A ring buffer of the most recent latencies. The percentile is recomputed only after
+   * a number of new samples are recorded to keep the cost of recording low.
+   */
+  static final class LatencyWindow {
+    private static final int MIN_SAMPLES = 20;
+
+    private final long[] samples;
+    private int size = 0;
+    private int next = 0;
+    private int sinceComputed = 0;
+    private double computedPercentile = -1;
+    private long computedValue = 0;
+
+    LatencyWindow(int capacity) {
+      this.samples = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+      samples[next] = nanos;
+      next = (next + 1) % samples.length;
+      if (size < samples.length)
+        size++;
+      sinceComputed++;
+    }
+
+    /**
+     * Returns the percentile of the recorded samples or 0 if there are too few of them.
+     */
+    synchronized long percentile(double percentile) {
+      if (size < MIN_SAMPLES)
+        return 0;
+      if (percentile != computedPercentile || sinceComputed >= samples.length / 10 + 1) {
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(size - 1, Math.ceil(percentile * size) - 1);
+        computedValue = sorted[Math.max(0, index)];
+        computedPercentile = percentile;
+        sinceComputed = 0;
+      }
+      return computedValue;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configuration of a {@link HedgingHttpClient}.
+ * <p>
+ * A policy is created with either a fixed hedging delay or a delay following a
+ * percentile of the recently observed latency, and can be further adjusted with the
+ * {@code with} methods, each of which returns a modified copy of the policy.
+ */
+public final class HedgingPolicy {
+
+  private final Duration fixedDelay;
+  private final double percentile;
+  private final Duration minDelay;
+  private final double budgetRatio;
+  private final int maxHedges;
+  private final Function<URI, List<URI>> mirrors;
+
+  private HedgingPolicy(Duration fixedDelay, double percentile, Duration minDelay,
+      double budgetRatio, int maxHedges, Function<URI, List<URI>> mirrors) {
+    this.fixedDelay = fixedDelay;
+    this.percentile = percentile;
+    this.minDelay = minDelay;
+    this.budgetRatio = budgetRatio;
+    this.maxHedges = maxHedges;
+    this.mirrors = mirrors;
+  }
+
+  /**
+   * Returns a policy which sends a hedge after the given delay.
+   *
+   * @param delay the delay after which the hedge is sent
+   * @return the policy
+   */
+  public static HedgingPolicy fixedDelay(Duration delay) {
+    requirePositive(delay);
+    return new HedgingPolicy(delay, 0, delay, 0.05, 1, uri -> List.of());
+  }
+
+  /**
+   * Returns a policy which sends a hedge after the given percentile of the recent latency
+   * elapses. Until enough latency samples are collected, and whenever the percentile is
+   * lower, the minimum delay is used.
+   *
+   * @param percentile the latency percentile in range (0, 1), e.g. 0.95
+   * @param minDelay the lower bound of the delay
+   * @return the policy
+   */
+  public static HedgingPolicy percentileDelay(double percentile, Duration minDelay) {
+    if (!(percentile > 0 && percentile < 1))
+      throw new IllegalArgumentException("invalid percentile: " + percentile);
+    requirePositive(minDelay);
+    return new HedgingPolicy(null, percentile, minDelay, 0.05, 1, uri -> List.of());
+  }
+
+  private static void requirePositive(Duration duration) {
+    requireNonNull(duration);
+    if (duration.isNegative() || duration.isZero())
+      throw new IllegalArgumentException("invalid duration: " + duration);
+  }
+
+  /**
+   * Returns a copy of this policy with the given budget. The budget is the maximum ratio
+   * of hedges to requests, e.g. 0.05 allows at most 5% of additional load.
+   *
+   * @param budgetRatio the budget ratio in range (0, 1]
+   * @return the new policy
+   */
+  public HedgingPolicy withBudget(double budgetRatio) {
+    if (!(budgetRatio > 0 && budgetRatio <= 1))
+      throw new IllegalArgumentException("invalid budget: " + budgetRatio);
+    return new HedgingPolicy(fixedDelay, percentile, minDelay, budgetRatio, maxHedges, mirrors);
+  }
+
+  /**
+   * Returns a copy of this policy which sends up to the given number of hedges per
+   * request, each one after another delay elapses.
+   *
+   * @param maxHedges the maximum number of hedges per request
+   * @return the new policy
+   */
+  public HedgingPolicy withMaxHedges(int maxHedges) {
+    if (maxHedges < 1)
+      throw new IllegalArgumentException("invalid number of hedges: " + maxHedges);
+    return new HedgingPolicy(fixedDelay, percentile, minDelay, budgetRatio, maxHedges, mirrors);
+  }
+
+  /**
+   * Returns a copy of this policy which sends the hedges to alternate URIs returned by the
+   * function for the request URI. The mirrors are used in turn, and if the function
+   * returns an empty list the hedge is sent to the request URI.
+   *
+   * @param mirrors the function returning the mirror URIs of the request URI
+   * @return the new policy
+   */
+  public HedgingPolicy withMirrors(Function<URI, List<URI>> mirrors) {
+    requireNonNull(mirrors);
+    return new HedgingPolicy(fixedDelay, percentile, minDelay, budgetRatio, maxHedges, mirrors);
+  }
+
+  Duration fixedDelay() {
+    return fixedDelay;
+  }
+
+  double percentile() {
+    return percentile;
+  }
+
+  Duration minDelay() {
+    return minDelay;
+  }
+
+  double budgetRatio() {
+    return budgetRatio;
+  }
+
+  int maxHedges() {
+    return maxHedges;
+  }
+
+  Function<URI, List<URI>> mirrors() {
+    return mirrors;
+  }
+}
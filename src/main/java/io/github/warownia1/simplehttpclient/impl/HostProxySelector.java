@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A proxy selector choosing the HTTP proxy by the host of the request.
+ * <p>
+ * Rules are host patterns which are either a host name matched exactly or a
+ * {@code *.domain} wildcard matching all subdomains of the domain. A more specific
+ * pattern takes precedence, so a host is looked up by its full name and then by the
+ * wildcards of its parent domains, nearest first, and requests to hosts matching no rule
+ * go to the default proxy. Each {@code with} method returns a modified copy.
+ * <p>
+ * Connections made through the proxy are pooled by {@code HttpURLConnection} under the
+ * target origin together with the proxy, so an established {@code CONNECT} tunnel is
+ * reused by the following requests to the same origin as long as the same proxy is
+ * selected for them.
+ */
+public final class HostProxySelector extends ProxySelector {
+
+  private static final List<Proxy> DIRECT = List.of(Proxy.NO_PROXY);
+
+  private final List<Proxy> defaultProxy;
+  private final Map<String, List<Proxy>> rules;
+
+  private HostProxySelector(List<Proxy> defaultProxy, Map<String, List<Proxy>> rules) {
+    this.defaultProxy = defaultProxy;
+    this.rules = rules;
+  }
+
+  /**
+   * Returns a selector sending all requests through the proxy.
+   *
+   * @param proxy the address of the proxy
+   * @return a new selector
+   */
+  public static HostProxySelector of(InetSocketAddress proxy) {
+    return new HostProxySelector(List.of(httpProxy(proxy)), Map.of());
+  }
+
+  /**
+   * Returns a selector connecting directly unless a rule selects a proxy.
+   *
+   * @return a new selector
+   */
+  public static HostProxySelector direct() {
+    return new HostProxySelector(DIRECT, Map.of());
+  }
+
+  private static Proxy httpProxy(InetSocketAddress address) {
+    return new Proxy(Proxy.Type.HTTP, requireNonNull(address));
+  }
+
+  /**
+   * Sends the requests to the hosts matching the pattern through the given proxy.
+   *
+   * @param hostPattern a host name or a {@code *.domain} wildcard
+   * @param proxy the address of the proxy
+   * @return the new selector
+   */
+  public HostProxySelector withProxy(String hostPattern, InetSocketAddress proxy) {
+    return withRule(hostPattern, List.of(httpProxy(proxy)));
+  }
+
+  /**
+   * Connects directly to the hosts matching any of the patterns.
+   *
+   * @param hostPatterns host names or {@code *.domain} wildcards
+   * @return the new selector
+   */
+  public HostProxySelector withBypass(String... hostPatterns) {
+    HostProxySelector selector = this;
+    for (String pattern : hostPatterns) {
+      selector = selector.withRule(pattern, DIRECT);
+    }
+    return selector;
+  }
+
+  private HostProxySelector withRule(String hostPattern, List<Proxy> proxies) {
+    String pattern = hostPattern.toLowerCase(Locale.ROOT);
+    if (pattern.isEmpty() || pattern.indexOf('*', pattern.startsWith("*.") ? 1 : 0) >= 0)
+      throw new IllegalArgumentException("invalid host pattern: " + hostPattern);
+    var rules = new HashMap<>(this.rules);
+    rules.put(pattern, proxies);
+    return new HostProxySelector(defaultProxy, Map.copyOf(rules));
+  }
+
+  @Override
+  public List<Proxy> select(URI uri) {
+    String host = uri.getHost();
+    if (host == null)
+      return defaultProxy;
+    host = host.toLowerCase(Locale.ROOT);
+    List<Proxy> proxies = rules.get(host);
+    if (proxies != null)
+      return proxies;
+    for (int dot = host.indexOf('.'); dot >= 0; dot = host.indexOf('.', dot + 1)) {
+      proxies = rules.get("*" + host.substring(dot));
+      if (proxies != null)
+        return proxies;
+    }
+    return defaultProxy;
+  }
+
+  @Override
+  public void connectFailed(URI uri, SocketAddress sa, IOException ioe) {
+    // the proxies are fixed, there is no alternative to fall back to
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CookieHandler;
+import java.net.ProtocolException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the head of an HTTP/1.1 message for the clients which speak the
+ * protocol on a socket of their own. The lines and the number of headers read are
+ * bounded, so a misbehaving server cannot make the client buffer without limit.
+ */
+final class HttpHead {
+
+  static final int MAX_LINE_LENGTH = 8192;
+  static final int MAX_HEADERS = 256;
+
+  private HttpHead() {
+  }
+
+  /**
+   * Returns the path and the query of the URI as the target of a request line.
+   */
+  static String requestTarget(URI uri) {
+    String path = uri.getRawPath();
+    String target = path == null || path.isEmpty() ? "/" : path;
+    return uri.getRawQuery() != null ? target + "?" + uri.getRawQuery() : target;
+  }
+
+  static void write(OutputStream out, CharSequence head) throws IOException {
+    out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * Returns the headers of the request with the cookies of the handler, if any, added.
+   * The cookies are merged with the {@code Cookie} header of the request into a single
+   * header, as a request must not carry more than one (RFC 6265, section 5.4).
+   */
+  static Map<String, List<String>> withCookies(HttpRequest request,
+      CookieHandler cookieHandler) throws IOException {
+    Map<String, List<String>> headers = request.headers().map();
+    if (cookieHandler == null)
+      return headers;
+    Map<String, List<String>> cookies = cookieHandler.get(request.uri(), headers);
+    if (cookies.isEmpty())
+      return headers;
+    var merged = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    merged.putAll(headers);
+    cookies.forEach((name, values) -> {
+      if (values.isEmpty())
+        return;
+      List<String> all = new ArrayList<>(merged.getOrDefault(name, List.of()));
+      all.addAll(values);
+      merged.put(name, name.equalsIgnoreCase("Cookie") ? List.of(String.join("; ", all)) : all);
+    });
+    return merged;
+  }
+
+  /**
+   * Rejects the header names and values which would break the request head, as
+   * {@code HttpURLConnection} does.
+   */
+  static void checkHeaders(HttpRequest request) {
+    request.headers().map().forEach((name, values) -> {
+      checkHeader(name, "name");
+      for (String value : values) {
+        checkHeader(value, "value");
+      }
+    });
+  }
+
+  private static void checkHeader(String text, String kind) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\r' || c == '\n')
+        throw new IllegalArgumentException("illegal character in header " + kind + ": " + text);
+    }
+  }
+
+  static int parseStatus(String statusLine) throws IOException {
+    if (statusLine == null)
+      throw new EOFException("connection closed before the response");
+    if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12 ||
+        (statusLine.length() > 12 && statusLine.charAt(12) != ' '))
+      throw new ProtocolException("invalid status line: " + statusLine);
+    try {
+      return Integer.parseInt(statusLine.substring(9, 12));
+    }
+    catch (NumberFormatException e) {
+      throw new ProtocolException("invalid status line: " + statusLine);
+    }
+  }
+
+  static HttpHeaders readHeaders(InputStream in) throws IOException {
+    var headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    String line;
+    int count = 0;
+    while (!(line = requireLine(in)).isEmpty()) {
+      if (++count > MAX_HEADERS)
+        throw new ProtocolException("too many headers");
+      int colon = line.indexOf(':');
+      if (colon <= 0)
+        throw new ProtocolException("invalid header: " + line);
+      headers.computeIfAbsent(line.substring(0, colon).trim(), key -> new ArrayList<>(1))
+          .add(line.substring(colon + 1).trim());
+    }
+    return HttpHeaders.of(headers);
+  }
+
+  /**
+   * Reads a line terminated with CRLF or LF, or returns null if the stream ends before
+   * any character is read. The stream is read byte by byte, so nothing past the line
+   * is consumed from an unbuffered stream.
+   */
+  static String readLine(InputStream in) throws IOException {
+    var line = new ByteArrayOutputStream(64);
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b < 0) {
+        if (line.size() == 0)
+          return null;
+        throw new EOFException("unexpected end of stream");
+      }
+      if (line.size() >= MAX_LINE_LENGTH)
+        throw new ProtocolException("line too long");
+      line.write(b);
+    }
+    int length = line.size();
+    byte[] bytes = line.toByteArray();
+    if (length > 0 && bytes[length - 1] == '\r')
+      length--;
+    return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+  }
+
+  static String requireLine(InputStream in) throws IOException {
+    String line = readLine(in);
+    if (line == null)
+      throw new EOFException("unexpected end of stream");
+    return line;
+  }
+
+  /**
+   * Tells whether one of the comma separated elements of the header is the token,
+   * ignoring case.
+   */
+  static boolean hasToken(HttpHeaders headers, String name, String token) {
+    for (String value : headers.allValues(name)) {
+      for (String element : value.split(",")) {
+        if (element.trim().equalsIgnoreCase(token))
+          return true;
+      }
+    }
+    return false;
+  }
+}
@@ -66,6 +66,10 @@ public class HttpHeadersBuilder {
     headers.put(name, values);
   }
 
+  public void removeHeader(String name) {
+    headers.remove(name);
+  }
+
   public void clear() {
     headers.clear();
   }
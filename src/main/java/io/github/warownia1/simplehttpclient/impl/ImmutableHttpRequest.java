@@ -47,6 +47,7 @@ public final class ImmutableHttpRequest extends HttpRequest {
   private final HttpHeaders headers;
   private final Body body;
   private final Duration timeout;
+  private final boolean expectContinue;
 
   ImmutableHttpRequest(SimpleHttpRequestBuilder builder) {
     this.method = requireNonNull(builder.method);
@@ -54,6 +55,7 @@ public final class ImmutableHttpRequest extends HttpRequest {
     this.headers = HttpHeaders.of(builder.headers.map());
     this.body = builder.body;
     this.timeout = builder.timeout;
+    this.expectContinue = builder.expectContinue;
   }
 
   @Override
@@ -81,6 +83,11 @@ public final class ImmutableHttpRequest extends HttpRequest {
     return Optional.ofNullable(timeout);
   }
 
+  @Override
+  public boolean expectContinue() {
+    return expectContinue;
+  }
+
   @Override
   public String toString() {
     return uri.toString() + " " + method;
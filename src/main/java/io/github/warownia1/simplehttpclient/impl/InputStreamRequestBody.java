@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+/**
+ * A request body which copies the content of an input stream obtained from the supplier
+ * each time the body is written. The stream is closed after it has been copied.
+ */
+public class InputStreamRequestBody implements HttpRequest.Body {
+
+  private final Supplier<? extends InputStream> streamSupplier;
+  private final long length;
+
+  /**
+   * Creates a body of unknown length, which will be sent using chunked transfer encoding.
+   *
+   * @param streamSupplier the supplier of the content stream
+   */
+  public InputStreamRequestBody(Supplier<? extends InputStream> streamSupplier) {
+    this(streamSupplier, -1);
+  }
+
+  /**
+   * Creates a body whose stream provides exactly the given number of bytes.
+   *
+   * @param streamSupplier the supplier of the content stream
+   * @param length the number of bytes in the stream or -1 if unknown
+   */
+  public InputStreamRequestBody(Supplier<? extends InputStream> streamSupplier, long length) {
+    if (length < -1)
+      throw new IllegalArgumentException("invalid length: " + length);
+    this.streamSupplier = streamSupplier;
+    this.length = length;
+  }
+
+  @Override
+  public byte[] getBytes() {
+    try (InputStream stream = streamSupplier.get()) {
+      return stream.readAllBytes();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public long contentLength() {
+    return length;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    try (InputStream stream = streamSupplier.get()) {
+      stream.transferTo(out);
+    }
+  }
+}
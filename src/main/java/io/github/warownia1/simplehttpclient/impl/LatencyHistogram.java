@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory histogram of latencies with log-linear buckets in the style of
+ * HdrHistogram.
+ * <p>
+ * Latencies are recorded with microsecond resolution. Values below 128 microseconds
+ * have their own buckets, and every following power of two range is split into 64
+ * buckets, which bounds the relative error of the reported percentiles to about 1.6%.
+ * Values above the highest trackable value, one hour, are recorded in the last bucket.
+ * <p>
+ * Recording is lock-free and may be called from many threads at once. Snapshots and
+ * resets are not atomic with respect to concurrent recording, so a value recorded while
+ * a snapshot is taken may be attributed to either interval.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+  private static final int BUCKET_COUNT = index(HIGHEST_TRACKABLE_MICROS) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  static int index(long value) {
+    if (value < SUB_BUCKET_COUNT)
+      return (int) value;
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+  }
+
+  /**
+   * Returns the highest value which falls into the bucket of the given index.
+   */
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT)
+      return index;
+    int offset = index - SUB_BUCKET_COUNT;
+    int shift = offset / SUB_BUCKET_HALF + 1;
+    long subBucket = SUB_BUCKET_HALF + offset % SUB_BUCKET_HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void recordNanos(long nanos) {
+    long micros = Math.max(0, Math.min(nanos / 1000, HIGHEST_TRACKABLE_MICROS));
+    counts.incrementAndGet(index(micros));
+    totalCount.incrementAndGet();
+    totalMicros.addAndGet(micros);
+    if (micros > maxMicros.get())
+      maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  /**
+   * Returns a snapshot of the latencies recorded so far.
+   *
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    long[] copy = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      copy[i] = counts.get(i);
+      count += copy[i];
+    }
+    return new Snapshot(copy, count, totalMicros.get(), maxMicros.get());
+  }
+
+  /**
+   * Returns a snapshot of the latencies recorded since the previous reset and starts a
+   * new interval.
+   *
+   * @return the snapshot of the finished interval
+   */
+  public Snapshot snapshotAndReset() {
+    long[] copy = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      copy[i] = counts.getAndSet(i, 0);
+      count += copy[i];
+    }
+    totalCount.addAndGet(-count);
+    return new Snapshot(copy, count, totalMicros.getAndSet(0), maxMicros.getAndSet(0));
+  }
+
+  /**
+   * Returns the number of latencies recorded since the last reset.
+   *
+   * @return the number of recorded latencies
+   */
+  public long count() {
+    return totalCount.get();
+  }
+
+  /**
+   * An immutable copy of the histogram counts.
+   */
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sumMicros;
+    private final long maxMicros;
+
+    private Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+      this.counts = counts;
+      this.count = count;
+      this.sumMicros = sumMicros;
+      this.maxMicros = maxMicros;
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the number of latencies
+     */
+    public long count() {
+      return count;
+    }
+
+    /**
+     * Returns the sum of the recorded latencies in nanoseconds.
+     *
+     * @return the sum of latencies
+     */
+    public long sumNanos() {
+      return sumMicros * 1000;
+    }
+
+    /**
+     * Returns the highest recorded latency in nanoseconds.
+     *
+     * @return the maximum latency
+     */
+    public long maxNanos() {
+      return maxMicros * 1000;
+    }
+
+    /**
+     * Returns the latency at the given percentile in nanoseconds, or zero if nothing was
+     * recorded. The returned value is the upper bound of the bucket containing the
+     * percentile, capped at the highest recorded latency.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the latency at the percentile
+     * @throws IllegalArgumentException if the percentile is out of range
+     */
+    public long percentileNanos(double percentile) {
+      if (!(percentile >= 0 && percentile <= 100))
+        throw new IllegalArgumentException("invalid percentile: " + percentile);
+      if (count == 0)
+        return 0;
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank)
+          return Math.min(highestEquivalentValue(i), maxMicros) * 1000;
+      }
+      return maxNanos();
+    }
+  }
+}
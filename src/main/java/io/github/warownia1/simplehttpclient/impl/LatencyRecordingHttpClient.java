@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpClient} which records the latency of every request into a
+ * {@link LatencyHistogram} keyed by the host, the request method and the status class of
+ * the response.
+ * <p>
+ * The latency is measured from the call to {@code send} or {@code sendAsync} until the
+ * body handler returns. Responses are classified as {@code 1xx} to {@code 5xx} and
+ * requests which failed with an exception as {@code error}. The histograms can be read
+ * as snapshots, reset at the end of each reporting interval or written out in the
+ * Prometheus text exposition format.
+ */
+public class LatencyRecordingHttpClient implements HttpClient {
+
+  private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+  private static final String ERROR_CLASS = "error";
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+  private static final String METRIC_NAME = "http_client_request_duration_seconds";
+
+  private final HttpClient delegate;
+  private final ConcurrentHashMap<Key, Series> series = new ConcurrentHashMap<>();
+
+  public LatencyRecordingHttpClient(HttpClient delegate) {
+    this.delegate = requireNonNull(delegate);
+  }
+
+  /**
+   * The host, method and status class a histogram is recorded for.
+   */
+  public static final class Key {
+    private final String host;
+    private final String method;
+    private final String statusClass;
+
+    Key(String host, String method, String statusClass) {
+      this.host = host;
+      this.method = method;
+      this.statusClass = statusClass;
+    }
+
+    /**
+     * Returns the host and port of the request.
+     *
+     * @return the host
+     */
+    public String host() {
+      return host;
+    }
+
+    /**
+     * Returns the request method.
+     *
+     * @return the method
+     */
+    public String method() {
+      return method;
+    }
+
+    /**
+     * Returns the status class of the response such as {@code 2xx}, or {@code error}
+     * if the request failed.
+     *
+     * @return the status class
+     */
+    public String statusClass() {
+      return statusClass;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key) obj;
+      return host.equals(other.host) && method.equals(other.method) &&
+          statusClass.equals(other.statusClass);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(host, method, statusClass);
+    }
+
+    @Override
+    public String toString() {
+      return host + " " + method + " " + statusClass;
+    }
+  }
+
+  /**
+   * The histogram of a key together with the totals since the client was created, which
+   * the exposition reports as counters and a reset of the histogram does not clear.
+   */
+  private static final class Series {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final LongAdder count = new LongAdder();
+    final LongAdder sumNanos = new LongAdder();
+
+    void recordNanos(long nanos) {
+      histogram.recordNanos(nanos);
+      count.increment();
+      sumNanos.add(nanos);
+    }
+  }
+
+  private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::host)
+      .thenComparing(Key::method)
+      .thenComparing(Key::statusClass);
+
+  private void record(HttpRequest request, int statusCode, long startNanos) {
+    long latency = System.nanoTime() - startNanos;
+    String statusClass = statusCode >= 100 && statusCode < 600
+        ? STATUS_CLASSES[statusCode / 100 - 1] : ERROR_CLASS;
+    String host = Origins.hostAndPort(request.uri());
+    Key key = new Key(host, request.method(), statusClass);
+    Series recorded = series.get(key);
+    if (recorded == null)
+      recorded = series.computeIfAbsent(key, k -> new Series());
+    recorded.recordNanos(latency);
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
+      throws IOException {
+    long start = System.nanoTime();
+    HttpResponse<T> response;
+    try {
+      response = delegate.send(request, handler);
+    }
+    catch (IOException | RuntimeException e) {
+      record(request, -1, start);
+      throw e;
+    }
+    record(request, response.statusCode(), start);
+    return response;
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler, Executor executor) {
+    return exchangeAsync(request,
+        () -> delegate.sendAsync(request, handler, executor));
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends BodySubscriber<T>> subscriber, Executor executor) {
+    return exchangeAsync(request,
+        () -> delegate.sendAsync(request, subscriber, executor));
+  }
+
+  /**
+   * Opens the WebSocket through the delegate. The handshake is not recorded.
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    return delegate.newWebSocket(request, listener, executor);
+  }
+
+  /**
+   * Starts the exchange of the delegate with the body handler or the body subscriber
+   * of the request.
+   */
+  private <T> CompletableFuture<HttpResponse<T>> exchangeAsync(HttpRequest request,
+      Supplier<CompletableFuture<HttpResponse<T>>> exchange) {
+    long start = System.nanoTime();
+    CompletableFuture<HttpResponse<T>> future = exchange.get();
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    result.whenComplete((r, e) -> {
+      if (result.isCancelled())
+        future.cancel(true);
+    });
+    future.whenComplete((response, exc) -> {
+      record(request, response != null ? response.statusCode() : -1, start);
+      if (exc != null)
+        result.completeExceptionally(exc);
+      else
+        result.complete(response);
+    });
+    return result;
+  }
+
+  /**
+   * Returns snapshots of all the histograms ordered by host, method and status class.
+   *
+   * @return the histogram snapshots
+   */
+  public Map<Key, LatencyHistogram.Snapshot> snapshots() {
+    return collect(LatencyHistogram::snapshot);
+  }
+
+  /**
+   * Returns snapshots of all the histograms and resets them, starting a new interval.
+   *
+   * @return the histogram snapshots of the finished interval
+   */
+  public Map<Key, LatencyHistogram.Snapshot> snapshotsAndReset() {
+    return collect(LatencyHistogram::snapshotAndReset);
+  }
+
+  private Map<Key, LatencyHistogram.Snapshot> collect(
+      Function<LatencyHistogram, LatencyHistogram.Snapshot> snapshot) {
+    Map<Key, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+    series.keySet().stream()
+        .sorted(KEY_ORDER)
+        .forEach(key -> snapshots.put(key, snapshot.apply(series.get(key).histogram)));
+    return snapshots;
+  }
+
+  /**
+   * Writes the current latencies as a summary in the Prometheus text exposition format.
+   * Each histogram is written as its 0.5, 0.9, 0.99 and 0.999 quantiles, sum and count
+   * labelled with {@code host}, {@code method} and {@code status}. The quantiles cover
+   * the current interval, while the sum and the count cover all the requests since the
+   * client was created, as Prometheus expects counters not to go back on a reset.
+   *
+   * @param out the destination of the text
+   * @throws UncheckedIOException if writing to the destination fails
+   */
+  public void writePrometheus(Appendable out) {
+    try {
+      out.append("# HELP ").append(METRIC_NAME)
+          .append(" Latency of outgoing HTTP requests.\n");
+      out.append("# TYPE ").append(METRIC_NAME).append(" summary\n");
+      Key[] keys = series.keySet().stream().sorted(KEY_ORDER).toArray(Key[]::new);
+      for (Key key : keys) {
+        Series recorded = series.get(key);
+        LatencyHistogram.Snapshot snapshot = recorded.histogram.snapshot();
+        String labels = "host=\"" + escape(key.host) + "\",method=\"" + escape(key.method) +
+            "\",status=\"" + key.statusClass + "\"";
+        for (double quantile : QUANTILES) {
+          out.append(METRIC_NAME).append('{').append(labels)
+              .append(",quantile=\"").append(Double.toString(quantile)).append("\"} ")
+              .append(seconds(snapshot.percentileNanos(quantile * 100))).append('\n');
+        }
+        out.append(METRIC_NAME).append("_sum{").append(labels).append("} ")
+            .append(seconds(recorded.sumNanos.sum())).append('\n');
+        out.append(METRIC_NAME).append("_count{").append(labels).append("} ")
+            .append(Long.toString(recorded.count.sum())).append('\n');
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the current latencies in the Prometheus text exposition format.
+   *
+   * @return the Prometheus text
+   * @see #writePrometheus(Appendable)
+   */
+  public String prometheus() {
+    StringBuilder builder = new StringBuilder();
+    writePrometheus(builder);
+    return builder.toString();
+  }
+
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1e9);
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+/**
+ * An algorithm adjusting the concurrency limit of a {@link ConcurrencyLimitingHttpClient}
+ * from the observed request latency and failures.
+ * <p>
+ * Every host gets its own instance of the algorithm and its methods are always called
+ * while holding the lock of that host's limiter, so implementations may keep mutable
+ * state without additional synchronization.
+ */
+public interface LimitAlgorithm {
+
+  /**
+   * Returns the limit used before any request completes.
+   *
+   * @return the initial limit
+   */
+  int initialLimit();
+
+  /**
+   * Computes the new limit after a request completes.
+   *
+   * @param limit the current limit
+   * @param inFlight the number of requests in flight when the request was started
+   * @param rttNanos the round trip time of the request in nanoseconds
+   * @param dropped whether the request failed or was rejected by the server as overloaded
+   * @return the new limit, at least 1
+   */
+  int update(int limit, int inFlight, long rttNanos, boolean dropped);
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An open-loop load generator sending a request at a constant rate.
+ * <p>
+ * Request {@code n} is scheduled to start {@code n / rate} seconds after the start of
+ * the run regardless of how long the previous requests took. The latency of a request
+ * is measured from its scheduled start rather than from the moment it was actually
+ * sent, which corrects for coordinated omission: when the server stalls and the
+ * requests queue up, the time they spend waiting is included in the reported latency.
+ * The time from the actual send to the completion is recorded separately as the service
+ * time.
+ * <p>
+ * In blocking mode, {@code concurrency} threads call {@link HttpClient#send}. In
+ * asynchronous mode, a single thread schedules {@link HttpClient#sendAsync} calls and
+ * at most {@code concurrency} requests are in flight.
+ */
+public final class LoadGenerator {
+
+  private static final BodyHandler<Void> DRAINING = (info, stream) -> {
+    // read the whole body so the connection can be reused
+    if (stream != null) {
+      try (InputStream in = stream) {
+        in.transferTo(OutputStream.nullOutputStream());
+      }
+    }
+    return null;
+  };
+
+  private final HttpClient client;
+  private final HttpRequest request;
+  private final double rate;
+  private final int concurrency;
+  private final long durationNanos;
+  private final boolean async;
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LatencyHistogram serviceTime = new LatencyHistogram();
+  private final AtomicLongArray statusClasses = new AtomicLongArray(5);
+  private final LongAdder errors = new LongAdder();
+
+  /**
+   * Creates a load generator.
+   *
+   * @param client the client sending the requests
+   * @param request the request to send repeatedly
+   * @param rate the number of requests per second
+   * @param concurrency the number of threads in blocking mode or the maximum number of
+   *     requests in flight in asynchronous mode
+   * @param duration the duration of the run
+   * @param async whether to send the requests asynchronously
+   * @throws IllegalArgumentException if the rate, concurrency or duration is not
+   *     positive
+   */
+  public LoadGenerator(HttpClient client, HttpRequest request, double rate,
+      int concurrency, Duration duration, boolean async) {
+    if (!(rate > 0))
+      throw new IllegalArgumentException("invalid rate: " + rate);
+    if (concurrency < 1)
+      throw new IllegalArgumentException("invalid concurrency: " + concurrency);
+    if (duration.isNegative() || duration.isZero())
+      throw new IllegalArgumentException("invalid duration: " + duration);
+    this.client = requireNonNull(client);
+    this.request = requireNonNull(request);
+    this.rate = rate;
+    this.concurrency = concurrency;
+    this.durationNanos = duration.toNanos();
+    this.async = async;
+  }
+
+  /**
+   * Runs the load and waits for all the requests to complete.
+   *
+   * @return the result of the run
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public Result run() throws InterruptedException {
+    long start = System.nanoTime();
+    if (async)
+      runAsync(start);
+    else
+      runBlocking(start);
+    long elapsed = System.nanoTime() - start;
+    long[] statuses = new long[5];
+    for (int i = 0; i < statuses.length; i++) {
+      statuses[i] = statusClasses.get(i);
+    }
+    return new Result(latency.snapshot(), serviceTime.snapshot(), statuses, errors.sum(),
+        elapsed);
+  }
+
+  private long scheduledTime(long start, long sequence) {
+    return start + (long) (sequence * 1e9 / rate);
+  }
+
+  private static void sleepUntil(long deadline) {
+    long remaining;
+    while ((remaining = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  private void runBlocking(long start) throws InterruptedException {
+    AtomicLong sequence = new AtomicLong();
+    long end = start + durationNanos;
+    Thread[] workers = new Thread[concurrency];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread(() -> {
+        while (true) {
+          long scheduled = scheduledTime(start, sequence.getAndIncrement());
+          if (scheduled - end >= 0)
+            return;
+          sleepUntil(scheduled);
+          long sent = System.nanoTime();
+          try {
+            HttpResponse<Void> response = client.send(request, DRAINING);
+            completed(scheduled, sent, response.statusCode());
+          }
+          catch (Exception e) {
+            completed(scheduled, sent, -1);
+          }
+        }
+      }, "load-generator-" + i);
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+  }
+
+  private void runAsync(long start) throws InterruptedException {
+    Semaphore inFlight = new Semaphore(concurrency);
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+      Thread thread = new Thread(runnable, "load-generator");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      long end = start + durationNanos;
+      for (long n = 0; ; n++) {
+        long scheduled = scheduledTime(start, n);
+        if (scheduled - end >= 0)
+          break;
+        sleepUntil(scheduled);
+        inFlight.acquire();
+        long sent = System.nanoTime();
+        try {
+          client.sendAsync(request, DRAINING, executor).whenComplete((response, exc) -> {
+            completed(scheduled, sent, response != null ? response.statusCode() : -1);
+            inFlight.release();
+          });
+        }
+        catch (RuntimeException e) {
+          completed(scheduled, sent, -1);
+          inFlight.release();
+        }
+      }
+      inFlight.acquire(concurrency);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private void completed(long scheduled, long sent, int statusCode) {
+    long now = System.nanoTime();
+    latency.recordNanos(now - scheduled);
+    serviceTime.recordNanos(now - sent);
+    if (statusCode >= 100 && statusCode < 600)
+      statusClasses.incrementAndGet(statusCode / 100 - 1);
+    else
+      errors.increment();
+  }
+
+  /**
+   * The latencies, response counts and duration of a completed run.
+   */
+  public static final class Result {
+    private final LatencyHistogram.Snapshot latency;
+    private final LatencyHistogram.Snapshot serviceTime;
+    private final long[] statusClasses;
+    private final long errors;
+    private final long elapsedNanos;
+
+    private Result(LatencyHistogram.Snapshot latency, LatencyHistogram.Snapshot serviceTime,
+        long[] statusClasses, long errors, long elapsedNanos) {
+      this.latency = latency;
+      this.serviceTime = serviceTime;
+      this.statusClasses = statusClasses;
+      this.errors = errors;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the latencies measured from the scheduled start of the requests.
+     *
+     * @return the corrected latencies
+     */
+    public LatencyHistogram.Snapshot latency() {
+      return latency;
+    }
+
+    /**
+     * Returns the latencies measured from the actual send of the requests.
+     *
+     * @return the service times
+     */
+    public LatencyHistogram.Snapshot serviceTime() {
+      return serviceTime;
+    }
+
+    /**
+     * Returns the number of responses with a status code in the given class.
+     *
+     * @param statusClass the status class from 1 to 5
+     * @return the number of responses
+     */
+    public long responses(int statusClass) {
+      return statusClasses[statusClass - 1];
+    }
+
+    /**
+     * Returns the number of requests which failed with an exception.
+     *
+     * @return the number of failed requests
+     */
+    public long errors() {
+      return errors;
+    }
+
+    /**
+     * Returns the number of completed requests, including the failed ones.
+     *
+     * @return the number of requests
+     */
+    public long requests() {
+      return latency.count();
+    }
+
+    /**
+     * Returns the time from the start of the run until the last request completed.
+     *
+     * @return the duration of the run
+     */
+    public Duration elapsed() {
+      return Duration.ofNanos(elapsedNanos);
+    }
+
+    /**
+     * Returns the achieved throughput in completed requests per second.
+     *
+     * @return the throughput
+     */
+    public double throughput() {
+      return requests() * 1e9 / elapsedNanos;
+    }
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A builder of {@code multipart/form-data} request bodies.
+ * <p>
+ * Parts are kept as {@link HttpRequest.Body} instances and written one after another
+ * when the body is sent, so file and stream parts are never loaded into memory. If the
+ * length of every part is known, the length of the whole body is computed up front,
+ * otherwise the body reports an unknown length and is sent using chunked transfer
+ * encoding.
+ * <p>
+ * The {@code Content-Type} header of the request must be set to the value returned from
+ * {@link #contentType()} which carries the boundary separating the parts.
+ */
+public class MultipartFormDataRequestBodyBuilder {
+
+  private static final byte[] CRLF = {'\r', '\n'};
+  private static final HttpHeaders NO_HEADERS = HttpHeaders.of(Map.of());
+
+  private static final char[] BOUNDARY_CHARS =
+      "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+  private final String boundary;
+  private final List<Part> parts = new ArrayList<>();
+
+  public MultipartFormDataRequestBodyBuilder() {
+    this(randomBoundary());
+  }
+
+  /**
+   * Creates a builder which separates the parts with the given boundary.
+   *
+   * @param boundary the boundary
+   * @throws IllegalArgumentException if the boundary is empty, longer than 70 characters
+   *     or contains characters not allowed by RFC 2046
+   */
+  public MultipartFormDataRequestBodyBuilder(String boundary) {
+    checkBoundary(boundary);
+    this.boundary = boundary;
+  }
+
+  private static String randomBoundary() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    char[] chars = new char[32];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)];
+    }
+    return new String(chars);
+  }
+
+  private static void checkBoundary(String boundary) {
+    requireNonNull(boundary);
+    if (boundary.isEmpty() || boundary.length() > 70)
+      throw new IllegalArgumentException("invalid boundary length: " + boundary.length());
+    for (int i = 0; i < boundary.length(); i++) {
+      char c = boundary.charAt(i);
+      boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+          (c >= '0' && c <= '9') || "'()+_,-./:=?".indexOf(c) >= 0;
+      if (!valid)
+        throw new IllegalArgumentException("invalid boundary character: " + c);
+    }
+  }
+
+  public String boundary() {
+    return boundary;
+  }
+
+  /**
+   * Returns the value of the {@code Content-Type} header for the built body.
+   *
+   * @return the content type including the boundary parameter
+   */
+  public String contentType() {
+    return "multipart/form-data; boundary=" + boundary;
+  }
+
+  /**
+   * Adds a text field encoded in UTF-8.
+   *
+   * @param name the field name
+   * @param value the field value
+   * @return this builder
+   */
+  public MultipartFormDataRequestBodyBuilder addField(String name, String value) {
+    requireNonNull(value);
+    return addPart(name, null, NO_HEADERS, new ByteArrayRequestBody(value.getBytes(UTF_8)));
+  }
+
+  /**
+   * Adds a part with the given bytes as its content.
+   *
+   * @param name the field name
+   * @param filename the file name or {@code null}
+   * @param contentType the content type of the part or {@code null}
+   * @param content the part content
+   * @return this builder
+   */
+  public MultipartFormDataRequestBodyBuilder addPart(
+      String name, String filename, String contentType, byte[] content) {
+    return addPart(name, filename, contentType, new ByteArrayRequestBody(content));
+  }
+
+  /**
+   * Adds a part streaming the content of the file. The name of the file is used as the
+   * file name of the part.
+   *
+   * @param name the field name
+   * @param file the file to send
+   * @param contentType the content type of the part or {@code null}
+   * @return this builder
+   * @throws IOException if the size of the file cannot be determined
+   */
+  public MultipartFormDataRequestBodyBuilder addFile(
+      String name, Path file, String contentType) throws IOException {
+    return addPart(name, file.getFileName().toString(), contentType, new FileRequestBody(file));
+  }
+
+  /**
+   * Adds a part streaming the content of the input streams returned by the supplier.
+   *
+   * @param name the field name
+   * @param filename the file name or {@code null}
+   * @param contentType the content type of the part or {@code null}
+   * @param streamSupplier the supplier of the part content
+   * @param length the number of bytes in the stream or -1 if unknown
+   * @return this builder
+   */
+  public MultipartFormDataRequestBodyBuilder addStream(
+      String name, String filename, String contentType,
+      Supplier<? extends InputStream> streamSupplier, long length) {
+    return addPart(name, filename, contentType,
+        new InputStreamRequestBody(streamSupplier, length));
+  }
+
+  /**
+   * Adds a part with the content provided by the given body.
+   *
+   * @param name the field name
+   * @param filename the file name or {@code null}
+   * @param contentType the content type of the part or {@code null}
+   * @param content the part content
+   * @return this builder
+   */
+  public MultipartFormDataRequestBodyBuilder addPart(
+      String name, String filename, String contentType, HttpRequest.Body content) {
+    HttpHeadersBuilder headers = new HttpHeadersBuilder();
+    if (contentType != null)
+      headers.setHeader("Content-Type", contentType);
+    return addPart(name, filename, headers.build(), content);
+  }
+
+  /**
+   * Adds a part with the content provided by the given body and additional part headers.
+   * The {@code Content-Disposition} header is generated from the name and the file name
+   * and must not be present among the given headers.
+   *
+   * @param name the field name
+   * @param filename the file name or {@code null}
+   * @param headers additional headers of the part
+   * @param content the part content
+   * @return this builder
+   * @throws IllegalArgumentException if the headers contain {@code Content-Disposition}
+   */
+  public MultipartFormDataRequestBodyBuilder addPart(
+      String name, String filename, HttpHeaders headers, HttpRequest.Body content) {
+    requireNonNull(name);
+    requireNonNull(headers);
+    requireNonNull(content);
+    if (headers.firstValue("Content-Disposition").isPresent())
+      throw new IllegalArgumentException("Content-Disposition header is not allowed");
+    StringBuilder sb = new StringBuilder();
+    sb.append("--").append(boundary).append("\r\n");
+    sb.append("Content-Disposition: form-data; name=\"").append(escape(name)).append('"');
+    if (filename != null)
+      sb.append("; filename=\"").append(escape(filename)).append('"');
+    sb.append("\r\n");
+    for (Map.Entry<String, List<String>> entry : headers.map().entrySet()) {
+      for (String value : entry.getValue()) {
+        sb.append(entry.getKey()).append(": ").append(value).append("\r\n");
+      }
+    }
+    sb.append("\r\n");
+    parts.add(new Part(sb.toString().getBytes(UTF_8), content));
+    return this;
+  }
+
+  // follows the HTML form submission algorithm for field and file names
+  private static String escape(String s) {
+    return s.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+  }
+
+  public HttpRequest.Body build() {
+    return new MultipartBody(new ArrayList<>(parts),
+        ("--" + boundary + "--").getBytes(US_ASCII));
+  }
+
+  private static final class Part {
+    // the delimiter line followed by the part headers and a blank line
+    final byte[] head;
+    final HttpRequest.Body content;
+
+    Part(byte[] head, HttpRequest.Body content) {
+      this.head = head;
+      this.content = content;
+    }
+  }
+
+  private static final class MultipartBody implements HttpRequest.Body {
+
+    private final List<Part> parts;
+    private final byte[] closeDelimiter;
+    private final long contentLength;
+
+    MultipartBody(List<Part> parts, byte[] closeDelimiter) {
+      this.parts = parts;
+      this.closeDelimiter = closeDelimiter;
+      long length = closeDelimiter.length + CRLF.length;
+      for (Part part : parts) {
+        long partLength = part.content.contentLength();
+        if (partLength < 0) {
+          length = -1;
+          break;
+        }
+        length += part.head.length + partLength + CRLF.length;
+      }
+      this.contentLength = length;
+    }
+
+    @Override
+    public byte[] getBytes() {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(
+          contentLength >= 0 ? (int) Math.min(contentLength, Integer.MAX_VALUE - 8) : 8192);
+      try {
+        writeTo(out);
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return out.toByteArray();
+    }
+
+    @Override
+    public long contentLength() {
+      return contentLength;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      for (Part part : parts) {
+        out.write(part.head);
+        part.content.writeTo(out);
+        out.write(CRLF);
+      }
+      out.write(closeDelimiter);
+      out.write(CRLF);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * Utilities for keying per-host state by the origin of a request URI.
+ */
+final class Origins {
+
+  private Origins() {
+  }
+
+  /**
+   * Returns the origin of the URI in the {@code scheme://host:port} form with the port
+   * always present, so that URIs which differ only in an explicit default port map to the
+   * same origin.
+   */
+  static String of(URI uri) {
+    String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+    return scheme + "://" + hostAndPort(uri).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Returns the host and the port of the URI. An authority which is not a server-based
+   * one, such as a host name with an underscore, is returned as it is.
+   */
+  static String hostAndPort(URI uri) {
+    if (uri.getHost() == null)
+      return uri.getRawAuthority() != null ? uri.getRawAuthority() : "";
+    return uri.getHost() + ":" + port(uri);
+  }
+
+  static int port(URI uri) {
+    int port = uri.getPort();
+    if (port != -1)
+      return port;
+    return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+  }
+}
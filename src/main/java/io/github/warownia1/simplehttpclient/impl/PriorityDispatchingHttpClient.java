@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpClient} which dispatches the requests by priority and deadline while
+ * limiting the number of requests in flight.
+ * <p>
+ * Requests over the concurrency limit wait in a bounded queue ordered by their urgency,
+ * lower values first, then by their deadline, earliest first, and then by arrival. The
+ * urgency is taken from the {@code u} parameter of the {@code Priority} request header
+ * defined by RFC 9218, which ranges from 0 to 7 and defaults to 3, unless a different
+ * urgency function is given. The deadline of a request is its timeout counted from the
+ * time it is queued, and a request still queued at its deadline is failed. When the
+ * queue is full, a request of lower urgency or later deadline than all the queued ones
+ * is rejected, otherwise the last queued request is shed to make room for it. Failed
+ * requests are failed with {@link RequestRejectedException} and never reach the server.
+ * Asynchronous requests wait in the queue without occupying a thread.
+ */
+public class PriorityDispatchingHttpClient implements HttpClient {
+
+  public static final int DEFAULT_URGENCY = 3;
+
+  private static final Comparator<Waiter> ORDER = Comparator
+      .comparingInt((Waiter waiter) -> waiter.urgency)
+      .thenComparingLong(waiter -> waiter.deadline)
+      .thenComparingLong(waiter -> waiter.sequence);
+
+  private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+  private final HttpClient delegate;
+  private final int maxConcurrency;
+  private final int maxQueueLength;
+  private final ToIntFunction<HttpRequest> urgencyFunction;
+
+  private final TreeSet<Waiter> queue = new TreeSet<>(ORDER);
+  private int inFlight = 0;
+  private long sequence = 0;
+  private final AtomicLong shed = new AtomicLong();
+
+  /**
+   * Creates a client taking the urgency of the requests from the {@code Priority}
+   * header.
+   *
+   * @param delegate the client sending the requests
+   * @param maxConcurrency the maximum number of requests in flight
+   * @param maxQueueLength the maximum number of waiting requests
+   */
+  public PriorityDispatchingHttpClient(HttpClient delegate, int maxConcurrency,
+      int maxQueueLength) {
+    this(delegate, maxConcurrency, maxQueueLength, PriorityDispatchingHttpClient::urgency);
+  }
+
+  /**
+   * Creates a client taking the urgency of the requests from the given function.
+   *
+   * @param delegate the client sending the requests
+   * @param maxConcurrency the maximum number of requests in flight
+   * @param maxQueueLength the maximum number of waiting requests, zero rejects requests
+   *     over the limit immediately
+   * @param urgencyFunction the function returning the urgency of a request, requests of
+   *     lower urgency are sent first
+   */
+  public PriorityDispatchingHttpClient(HttpClient delegate, int maxConcurrency,
+      int maxQueueLength, ToIntFunction<HttpRequest> urgencyFunction) {
+    if (maxConcurrency <= 0)
+      throw new IllegalArgumentException("non-positive concurrency: " + maxConcurrency);
+    if (maxQueueLength < 0)
+      throw new IllegalArgumentException("negative queue length: " + maxQueueLength);
+    this.delegate = requireNonNull(delegate);
+    this.maxConcurrency = maxConcurrency;
+    this.maxQueueLength = maxQueueLength;
+    this.urgencyFunction = requireNonNull(urgencyFunction);
+  }
+
+  /**
+   * Returns the urgency from the {@code Priority} header of the request, or the
+   * default urgency if the header is missing or invalid.
+   *
+   * @param request the request
+   * @return the urgency between 0 and 7
+   */
+  public static int urgency(HttpRequest request) {
+    Optional<String> priority = request.headers().firstValue("Priority");
+    if (priority.isEmpty())
+      return DEFAULT_URGENCY;
+    for (String parameter : priority.get().split(",")) {
+      parameter = parameter.trim();
+      if (parameter.length() == 3 && parameter.startsWith("u=")) {
+        char digit = parameter.charAt(2);
+        if (digit >= '0' && digit <= '7')
+          return digit - '0';
+      }
+    }
+    return DEFAULT_URGENCY;
+  }
+
+  private static final class Waiter {
+    final int urgency;
+    final long deadline;
+    final long sequence;
+    final CompletableFuture<Void> permit = new CompletableFuture<>();
+
+    Waiter(int urgency, long deadline, long sequence) {
+      this.urgency = urgency;
+      this.deadline = deadline;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Returns a permit which is completed when the request may be sent, or failed with
+   * {@link RequestRejectedException} if the request is rejected, shed or expires.
+   */
+  private CompletableFuture<Void> acquire(HttpRequest request) {
+    int urgency = urgencyFunction.applyAsInt(request);
+    Optional<Duration> timeout = request.timeout();
+    long deadline = timeout.map(t -> System.nanoTime() + t.toNanos()).orElse(Long.MAX_VALUE);
+    Waiter waiter;
+    Waiter victim = null;
+    synchronized (queue) {
+      if (inFlight < maxConcurrency && queue.isEmpty()) {
+        inFlight++;
+        return GRANTED;
+      }
+      waiter = new Waiter(urgency, deadline, sequence++);
+      if (queue.size() >= maxQueueLength) {
+        if (queue.isEmpty() || ORDER.compare(waiter, queue.last()) > 0)
+          return CompletableFuture.failedFuture(
+              new RequestRejectedException("dispatch queue full"));
+        victim = queue.pollLast();
+      }
+      queue.add(waiter);
+    }
+    if (victim != null) {
+      shed.incrementAndGet();
+      victim.permit.completeExceptionally(
+          new RequestRejectedException("shed by a more urgent request"));
+    }
+    waiter.permit.whenComplete((v, exc) -> {
+      if (exc != null)
+        remove(waiter);
+    });
+    if (timeout.isPresent()) {
+      ScheduledFuture<?> timer = Timeouts.schedule(() -> {
+        // removed first so the queue is up to date when the request fails
+        if (remove(waiter))
+          waiter.permit.completeExceptionally(
+              new RequestRejectedException("deadline expired in the dispatch queue"));
+      }, timeout.get().toNanos(), TimeUnit.NANOSECONDS);
+      // a waiter leaving the queue earlier does not keep its timer
+      waiter.permit.whenComplete((v, exc) -> timer.cancel(false));
+    }
+    return waiter.permit;
+  }
+
+  private boolean remove(Waiter waiter) {
+    synchronized (queue) {
+      return queue.remove(waiter);
+    }
+  }
+
+  /**
+   * Passes the slot of a completed request to the first waiting request.
+   */
+  private void release() {
+    while (true) {
+      Waiter next;
+      synchronized (queue) {
+        do {
+          next = queue.pollFirst();
+        } while (next != null && next.permit.isDone());
+        if (next == null) {
+          inFlight--;
+          return;
+        }
+      }
+      // the waiter could have been failed after it was polled
+      if (next.permit.complete(null))
+        return;
+    }
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
+      throws IOException {
+    CompletableFuture<Void> permit = acquire(request);
+    try {
+      permit.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      if (!permit.cancel(false) && !permit.isCompletedExceptionally())
+        release();
+      throw new InterruptedIOException("interrupted waiting for dispatch");
+    }
+    catch (ExecutionException e) {
+      throw unwrapIOException(e.getCause());
+    }
+    try {
+      return delegate.send(request, handler);
+    }
+    finally {
+      release();
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler, Executor executor) {
+    return exchangeAsync(request,
+        () -> delegate.sendAsync(request, handler, executor));
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends BodySubscriber<T>> subscriber, Executor executor) {
+    return exchangeAsync(request,
+        () -> delegate.sendAsync(request, subscriber, executor));
+  }
+
+  /**
+   * Opens the WebSocket through the delegate at once, as the WebSocket would hold its
+   * permit until it is closed.
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    return delegate.newWebSocket(request, listener, executor);
+  }
+
+  /**
+   * Starts the exchange of the delegate with the body handler or the body subscriber
+   * of the request.
+   */
+  private <T> CompletableFuture<HttpResponse<T>> exchangeAsync(HttpRequest request,
+      Supplier<CompletableFuture<HttpResponse<T>>> exchange) {
+    CompletableFuture<Void> permit = acquire(request);
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    permit.whenComplete((v, exc) -> {
+      if (exc != null) {
+        result.completeExceptionally(exc);
+        return;
+      }
+      if (result.isDone()) {
+        release();
+        return;
+      }
+      CompletableFuture<HttpResponse<T>> future;
+      try {
+        future = exchange.get();
+      }
+      catch (RuntimeException e) {
+        release();
+        result.completeExceptionally(e);
+        return;
+      }
+      result.whenComplete((r, e) -> {
+        if (e != null)
+          future.cancel(true);
+      });
+      future.whenComplete((response, e) -> {
+        release();
+        if (e == null)
+          result.complete(response);
+        else
+          result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+      });
+    });
+    result.whenComplete((r, e) -> {
+      if (result.isCancelled())
+        permit.cancel(false);
+    });
+    return result;
+  }
+
+  private static IOException unwrapIOException(Throwable exc) {
+    if (exc instanceof IOException)
+      return (IOException) exc;
+    if (exc instanceof CancellationException)
+      return new InterruptedIOException("cancelled");
+    return new IOException(exc);
+  }
+
+  /**
+   * Returns the number of requests waiting in the queue.
+   *
+   * @return the queue length
+   */
+  public int queueLength() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * Returns the number of requests in flight.
+   *
+   * @return the number of requests in flight
+   */
+  public int inFlight() {
+    synchronized (queue) {
+      return inFlight;
+    }
+  }
+
+  /**
+   * Returns the number of queued requests shed to make room for more urgent ones.
+   *
+   * @return the number of shed requests
+   */
+  public long shedCount() {
+    return shed.get();
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The rules of the Public Suffix List, read from the snapshot shipped with the library
+ * when first used.
+ * <p>
+ * Domains are expected in lower case ASCII; the rules for internationalized names are
+ * converted to their ASCII form. A name matching no rule is a public suffix if it has a
+ * single label, as the list prescribes.
+ */
+final class PublicSuffixes {
+
+  private static final String RESOURCE = "public_suffix_list.dat";
+
+  private static final class Rules {
+    static final Set<String> SUFFIXES = new HashSet<>();
+    // the parents of the wildcard rules
+    static final Set<String> WILDCARDS = new HashSet<>();
+    static final Set<String> EXCEPTIONS = new HashSet<>();
+
+    static {
+      try (InputStream in = PublicSuffixes.class.getResourceAsStream(RESOURCE)) {
+        if (in == null)
+          throw new IllegalStateException("missing resource " + RESOURCE);
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.isEmpty() || line.startsWith("//"))
+            continue;
+          if (line.startsWith("!"))
+            EXCEPTIONS.add(toAscii(line.substring(1)));
+          else if (line.startsWith("*."))
+            WILDCARDS.add(toAscii(line.substring(2)));
+          else
+            SUFFIXES.add(toAscii(line));
+        }
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static String toAscii(String rule) {
+      try {
+        return IDN.toASCII(rule).toLowerCase(Locale.ROOT);
+      }
+      catch (IllegalArgumentException e) {
+        return rule;
+      }
+    }
+  }
+
+  private PublicSuffixes() {
+  }
+
+  /**
+   * Returns whether cookies and other data may not be shared under the domain, such as
+   * {@code com} or {@code co.uk}.
+   */
+  static boolean isPublicSuffix(String domain) {
+    if (Rules.EXCEPTIONS.contains(domain))
+      return false;
+    if (Rules.SUFFIXES.contains(domain))
+      return true;
+    int dot = domain.indexOf('.');
+    return dot < 0 || Rules.WILDCARDS.contains(domain.substring(dot + 1));
+  }
+
+  /**
+   * Returns the registrable domain of the name, which is its public suffix with one more
+   * label, or the name itself if it is a public suffix.
+   */
+  static String registrableDomain(String domain) {
+    String registrable = domain;
+    int start = 0;
+    while (true) {
+      String suffix = domain.substring(start);
+      if (isPublicSuffix(suffix))
+        return registrable;
+      registrable = suffix;
+      int dot = domain.indexOf('.', start);
+      if (dot < 0)
+        return registrable;
+      start = dot + 1;
+    }
+  }
+}
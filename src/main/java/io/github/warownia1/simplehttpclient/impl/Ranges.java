@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+
+import java.util.Optional;
+
+/**
+ * Utilities for the range requests of the downloaders.
+ */
+final class Ranges {
+
+  private Ranges() {
+  }
+
+  /**
+   * Returns the length of the body in the {@code Content-Length} header, or -1 if it is
+   * missing or invalid.
+   */
+  static long contentLength(HttpHeaders headers) {
+    try {
+      return headers.firstValue("Content-Length").map(Long::parseLong).orElse(-1L);
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the strong entity tag or, if there is none, the modification date of the
+   * resource, which are the validators allowed in the {@code If-Range} header. Weak
+   * entity tags cannot be used to combine ranges.
+   */
+  static Optional<String> validator(String etag, String lastModified) {
+    if (etag != null && !etag.startsWith("W/"))
+      return Optional.of(etag);
+    return Optional.ofNullable(lastModified);
+  }
+
+  static Optional<String> validator(HttpHeaders headers) {
+    return validator(headers.firstValue("ETag").orElse(null),
+        headers.firstValue("Last-Modified").orElse(null));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket implemented as the generic cell rate algorithm.
+ * <p>
+ * Instead of counting tokens, the bucket keeps the theoretical arrival time of the next
+ * request in a single atomic variable. A request conforms if it arrives no earlier than
+ * the burst tolerance before that time, and reserving a slot advances the time by one
+ * emission interval. Requests which do not conform are given the time they have to wait
+ * for, which lets the caller either sleep or schedule the request.
+ */
+final class RateLimiter {
+
+  private final AtomicLong theoreticalArrival;
+  private final long minIntervalNanos;
+  private final int burst;
+  private volatile long intervalNanos;
+
+  RateLimiter(double permitsPerSecond, int burst, long now) {
+    if (!(permitsPerSecond > 0))
+      throw new IllegalArgumentException("invalid rate: " + permitsPerSecond);
+    if (burst < 1)
+      throw new IllegalArgumentException("invalid burst: " + burst);
+    this.minIntervalNanos = Math.max(1, (long) (1e9 / permitsPerSecond));
+    this.intervalNanos = minIntervalNanos;
+    this.burst = burst;
+    this.theoreticalArrival = new AtomicLong(now);
+  }
+
+  private long tolerance(long interval) {
+    return (burst - 1) * interval;
+  }
+
+  /**
+   * Reserves a slot and returns the number of nanoseconds the request has to wait for
+   * it, or -1 without reserving if the wait would be longer than the maximum.
+   */
+  long reserve(long now, long maxWaitNanos) {
+    long interval = intervalNanos;
+    long tolerance = tolerance(interval);
+    while (true) {
+      long tat = theoreticalArrival.get();
+      long wait = Math.max(0, tat - tolerance - now);
+      if (wait > maxWaitNanos)
+        return -1;
+      long newTat = Math.max(tat, now) + interval;
+      if (theoreticalArrival.compareAndSet(tat, newTat))
+        return wait;
+    }
+  }
+
+  /**
+   * Prevents any request from starting before the given time.
+   */
+  void pauseUntil(long time) {
+    long target = time + tolerance(intervalNanos);
+    theoreticalArrival.getAndUpdate(tat -> Math.max(tat, target));
+  }
+
+  /**
+   * Spreads the given number of requests evenly over the given time, but never exceeds
+   * the configured rate.
+   */
+  void adapt(long remaining, long windowNanos) {
+    if (remaining <= 0)
+      return;
+    intervalNanos = Math.max(minIntervalNanos, windowNanos / remaining);
+  }
+
+  /**
+   * Returns the current rate in requests per second.
+   */
+  double rate() {
+    return 1e9 / intervalNanos;
+  }
+}
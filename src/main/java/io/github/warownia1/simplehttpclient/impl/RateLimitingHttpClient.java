@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpClient} which paces the requests to stay within a rate limit.
+ * <p>
+ * Every host, or every key returned by the key function, has its own token bucket
+ * allowing the configured rate with the given burst. Blocking sends sleep until the
+ * request may start, while asynchronous sends are scheduled to start at that time
+ * without occupying a thread. Requests which would wait longer than the maximum wait
+ * are rejected with {@link RequestRejectedException}.
+ * <p>
+ * The limiter adapts to the rate limit announced by the server. A {@code Retry-After}
+ * header of a 429 or 503 response pauses the bucket for the requested time. The
+ * remaining quota and its reset time, read from the {@code RateLimit-Remaining} and
+ * {@code RateLimit-Reset} headers, their {@code X-RateLimit-} variants or the combined
+ * {@code RateLimit} header, spread the remaining requests evenly until the reset, and an
+ * exhausted quota pauses the bucket until the reset. The rate never exceeds the
+ * configured one.
+ */
+public class RateLimitingHttpClient implements HttpClient {
+
+  // X-RateLimit-Reset values above this are epoch seconds rather than a delta
+  private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+  private final HttpClient delegate;
+  private final double permitsPerSecond;
+  private final int burst;
+  private final long maxWaitNanos;
+  private final Function<? super HttpRequest, String> keyFunction;
+  private final ConcurrentHashMap<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a client limiting the rate of requests to each host.
+   *
+   * @param delegate the client sending the requests
+   * @param permitsPerSecond the maximum rate of requests per host
+   * @param burst the number of requests which may be sent at once
+   * @param maxWait the maximum time a request waits for its turn
+   */
+  public RateLimitingHttpClient(HttpClient delegate, double permitsPerSecond, int burst,
+      Duration maxWait) {
+    this(delegate, permitsPerSecond, burst, maxWait, request -> Origins.of(request.uri()));
+  }
+
+  /**
+   * Creates a client limiting the rate of requests sharing the same key.
+   *
+   * @param delegate the client sending the requests
+   * @param permitsPerSecond the maximum rate of requests per key
+   * @param burst the number of requests which may be sent at once
+   * @param maxWait the maximum time a request waits for its turn
+   * @param keyFunction the function returning the rate limit key of a request, for
+   *     example an API key header
+   */
+  public RateLimitingHttpClient(HttpClient delegate, double permitsPerSecond, int burst,
+      Duration maxWait, Function<? super HttpRequest, String> keyFunction) {
+    if (maxWait.isNegative())
+      throw new IllegalArgumentException("negative wait: " + maxWait);
+    // validate the parameters before the first limiter is created
+    new RateLimiter(permitsPerSecond, burst, 0);
+    this.delegate = requireNonNull(delegate);
+    this.permitsPerSecond = permitsPerSecond;
+    this.burst = burst;
+    this.maxWaitNanos = maxWait.toNanos();
+    this.keyFunction = requireNonNull(keyFunction);
+  }
+
+  private RateLimiter limiterFor(HttpRequest request) {
+    return limiters.computeIfAbsent(keyFunction.apply(request),
+        key -> new RateLimiter(permitsPerSecond, burst, System.nanoTime()));
+  }
+
+  private long reserve(RateLimiter limiter, HttpRequest request)
+      throws RequestRejectedException {
+    long wait = limiter.reserve(System.nanoTime(), maxWaitNanos);
+    if (wait < 0)
+      throw new RequestRejectedException("rate limit of " + keyFunction.apply(request) +
+          " exceeded");
+    return wait;
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
+      throws IOException {
+    RateLimiter limiter = limiterFor(request);
+    long wait = reserve(limiter, request);
+    if (wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted waiting for rate limit");
+      }
+    }
+    HttpResponse<T> response = delegate.send(request, handler);
+    adapt(limiter, response.statusCode(), response.headers());
+    return response;
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler, Executor executor) {
+    return exchangeAsync(request, executor,
+        () -> delegate.sendAsync(request, handler, executor));
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends BodySubscriber<T>> subscriber, Executor executor) {
+    return exchangeAsync(request, executor,
+        () -> delegate.sendAsync(request, subscriber, executor));
+  }
+
+  /**
+   * Opens the WebSocket through the delegate without taking a permit, as its messages
+   * are not requests.
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    return delegate.newWebSocket(request, listener, executor);
+  }
+
+  /**
+   * Starts the exchange of the delegate with the body handler or the body subscriber
+   * of the request.
+   */
+  private <T> CompletableFuture<HttpResponse<T>> exchangeAsync(HttpRequest request,
+      Executor executor, Supplier<CompletableFuture<HttpResponse<T>>> exchange) {
+    RateLimiter limiter = limiterFor(request);
+    long wait;
+    try {
+      wait = reserve(limiter, request);
+    }
+    catch (RequestRejectedException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    Runnable send = () -> {
+      if (result.isDone())
+        return;
+      CompletableFuture<HttpResponse<T>> future;
+      try {
+        future = exchange.get();
+      }
+      catch (RuntimeException e) {
+        result.completeExceptionally(e);
+        return;
+      }
+      result.whenComplete((r, e) -> {
+        if (result.isCancelled())
+          future.cancel(true);
+      });
+      future.whenComplete((response, exc) -> {
+        if (exc != null) {
+          result.completeExceptionally(exc);
+          return;
+        }
+        adapt(limiter, response.statusCode(), response.headers());
+        result.complete(response);
+      });
+    };
+    if (wait == 0)
+      send.run();
+    else
+      CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, executor).execute(send);
+    return result;
+  }
+
+  private void adapt(RateLimiter limiter, int statusCode, HttpHeaders headers) {
+    if (headers == null)
+      return;
+    long now = System.nanoTime();
+    if (statusCode == 429 || statusCode == 503) {
+      Optional<Duration> retryAfter = RetryAfter.parse(headers, Instant.now());
+      if (retryAfter.isPresent()) {
+        limiter.pauseUntil(now + retryAfter.get().toNanos());
+        return;
+      }
+    }
+    OptionalLong remaining = quotaValue(headers, "remaining");
+    OptionalLong reset = quotaValue(headers, "reset");
+    if (remaining.isEmpty() || reset.isEmpty())
+      return;
+    long resetSeconds = reset.getAsLong();
+    if (resetSeconds > EPOCH_SECONDS_THRESHOLD)
+      resetSeconds -= Instant.now().getEpochSecond();
+    long resetNanos = TimeUnit.SECONDS.toNanos(Math.max(0, resetSeconds));
+    if (remaining.getAsLong() <= 0)
+      limiter.pauseUntil(now + resetNanos);
+    else
+      limiter.adapt(remaining.getAsLong(), resetNanos);
+  }
+
+  /**
+   * Reads the given quota parameter from the {@code RateLimit-*} or
+   * {@code X-RateLimit-*} header or from the combined {@code RateLimit} header.
+   */
+  static OptionalLong quotaValue(HttpHeaders headers, String parameter) {
+    for (String prefix : new String[]{"RateLimit-", "X-RateLimit-"}) {
+      Optional<String> value = headers.firstValue(prefix + parameter);
+      if (value.isPresent())
+        return parseLong(firstElement(value.get()));
+    }
+    Optional<String> combined = headers.firstValue("RateLimit");
+    if (combined.isPresent()) {
+      for (String item : combined.get().split("[,;]")) {
+        int eq = item.indexOf('=');
+        if (eq > 0 && item.substring(0, eq).trim().equalsIgnoreCase(parameter))
+          return parseLong(item.substring(eq + 1));
+      }
+    }
+    return OptionalLong.empty();
+  }
+
+  private static String firstElement(String value) {
+    int comma = value.indexOf(',');
+    return comma < 0 ? value : value.substring(0, comma);
+  }
+
+  private static OptionalLong parseLong(String value) {
+    try {
+      return OptionalLong.of(Long.parseLong(value.trim()));
+    }
+    catch (NumberFormatException e) {
+      return OptionalLong.empty();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the current rates of all keys in requests per second.
+   *
+   * @return the current rates
+   */
+  public Map<String, Double> rates() {
+    TreeMap<String, Double> rates = new TreeMap<>();
+    limiters.forEach((key, limiter) -> rates.put(key, limiter.rate()));
+    return rates;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of permanent redirects evicting the least recently used entries.
+ */
+final class RedirectCache {
+
+  static final class Entry {
+    final int statusCode;
+    final URI location;
+
+    Entry(int statusCode, URI location) {
+      this.statusCode = statusCode;
+      this.location = location;
+    }
+  }
+
+  private final LinkedHashMap<URI, Entry> entries;
+
+  RedirectCache(int maxSize) {
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<URI, Entry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  synchronized Entry get(URI uri) {
+    return entries.get(uri);
+  }
+
+  synchronized void put(URI uri, int statusCode, URI location) {
+    entries.put(uri, new Entry(statusCode, location));
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+}
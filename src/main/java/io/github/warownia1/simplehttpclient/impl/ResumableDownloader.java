@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse.ResponseInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Downloads a resource into a file, resuming interrupted downloads where they stopped.
+ * <p>
+ * While the body is written, the downloader periodically saves a checkpoint next to
+ * the target file, in a file with the {@code .checkpoint} suffix. The checkpoint holds
+ * the number of bytes safely on disk and the {@code ETag} and {@code Last-Modified}
+ * validators of the resource. When the download fails, the partial file and the
+ * checkpoint are kept, and the next attempt, whether a retry of this downloader or a
+ * download started after a restart, requests the remaining bytes with a {@code Range}
+ * request. The {@code If-Range} header makes the server send the whole resource
+ * instead if it changed since, in which case the file is written from the start.
+ * The checkpoint is deleted once the download completes, including when the server
+ * answers the range request with {@code 416} because the whole resource was already
+ * written.
+ */
+public class ResumableDownloader {
+
+  static final String CHECKPOINT_SUFFIX = ".checkpoint";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long RETRY_DELAY_MILLIS = 200;
+
+  private final HttpClient client;
+  private final int maxAttempts;
+  private final long checkpointInterval;
+
+  public ResumableDownloader(HttpClient client) {
+    this(client, 3, 8 * 1024 * 1024);
+  }
+
+  /**
+   * Creates a downloader retrying failed transfers.
+   *
+   * @param client the client sending the requests
+   * @param maxAttempts the maximum number of attempts of a single download
+   * @param checkpointInterval the number of bytes written between checkpoints
+   * @throws IllegalArgumentException if any of the numbers is not positive
+   */
+  public ResumableDownloader(HttpClient client, int maxAttempts, long checkpointInterval) {
+    if (maxAttempts <= 0)
+      throw new IllegalArgumentException("non-positive number of attempts: " + maxAttempts);
+    if (checkpointInterval <= 0)
+      throw new IllegalArgumentException(
+          "non-positive checkpoint interval: " + checkpointInterval);
+    this.client = requireNonNull(client);
+    this.maxAttempts = maxAttempts;
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * The progress of a download: the number of bytes on disk and the validators of the
+   * resource they were read from.
+   */
+  static final class Checkpoint {
+    final long written;
+    final String etag;
+    final String lastModified;
+
+    Checkpoint(long written, String etag, String lastModified) {
+      this.written = written;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+
+    /**
+     * Returns the validator for the {@code If-Range} header.
+     */
+    Optional<String> validator() {
+      return Ranges.validator(etag, lastModified);
+    }
+
+    static Checkpoint read(Path path) throws IOException {
+      Properties properties = new Properties();
+      try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        properties.load(reader);
+      }
+      catch (NoSuchFileException e) {
+        return null;
+      }
+      try {
+        return new Checkpoint(Long.parseLong(properties.getProperty("written", "")),
+            properties.getProperty("etag"), properties.getProperty("last-modified"));
+      }
+      catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file and moves it into place, so a crash
+     * never leaves a checkpoint half written.
+     */
+    void write(Path path) throws IOException {
+      Properties properties = new Properties();
+      properties.setProperty("written", Long.toString(written));
+      if (etag != null)
+        properties.setProperty("etag", etag);
+      if (lastModified != null)
+        properties.setProperty("last-modified", lastModified);
+      Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+      try (OutputStream stream = Files.newOutputStream(temporary)) {
+        properties.store(stream, null);
+      }
+      Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+  }
+
+  /**
+   * Signals a failure which retrying the request would not fix.
+   */
+  private static final class UnexpectedResponseException extends IOException {
+    UnexpectedResponseException(String message) {
+      super(message);
+    }
+  }
+
+  static Path checkpointPath(Path target) {
+    return target.resolveSibling(target.getFileName() + CHECKPOINT_SUFFIX);
+  }
+
+  /**
+   * Downloads the resource into the file, resuming a previous download of the same
+   * file if its checkpoint exists.
+   *
+   * @param request the {@code GET} request of the resource
+   * @param target the file to write
+   * @return the length of the downloaded file
+   * @throws IOException if the download failed, leaving the checkpoint for a later
+   *     attempt
+   */
+  public long download(HttpRequest request, Path target) throws IOException {
+    Path checkpointPath = checkpointPath(target);
+    for (int attempt = 1; ; attempt++) {
+      try {
+        long length = transfer(request, target, checkpointPath);
+        Files.deleteIfExists(checkpointPath);
+        return length;
+      }
+      catch (UnexpectedResponseException e) {
+        throw e;
+      }
+      catch (IOException e) {
+        if (attempt >= maxAttempts || e instanceof InterruptedIOException)
+          throw e;
+      }
+      try {
+        Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted downloading " + request.uri());
+      }
+    }
+  }
+
+  private long transfer(HttpRequest request, Path target, Path checkpointPath)
+      throws IOException {
+    Checkpoint checkpoint = Files.exists(target) ? Checkpoint.read(checkpointPath) : null;
+    SimpleHttpRequestBuilder builder = SimpleHttpRequestBuilder.copyOf(request);
+    if (checkpoint != null && checkpoint.written > 0 && checkpoint.validator().isPresent()) {
+      builder.headers.setHeader("Range", "bytes=" + checkpoint.written + "-");
+      builder.headers.setHeader("If-Range", checkpoint.validator().get());
+    }
+    else {
+      checkpoint = null;
+    }
+    Checkpoint resumed = checkpoint;
+    return client.send(builder.build(),
+        (info, stream) -> receive(info, stream, target, checkpointPath, resumed)).body();
+  }
+
+  private long receive(ResponseInfo info, InputStream stream, Path target,
+      Path checkpointPath, Checkpoint resumed) throws IOException {
+    long offset;
+    if (info.statusCode() == 206 && resumed != null) {
+      offset = contentRangeStart(info.headers());
+      if (offset != resumed.written)
+        throw new UnexpectedResponseException(
+            "unexpected content range: " + info.headers().firstValue("Content-Range"));
+    }
+    else if (info.statusCode() == 416 && resumed != null &&
+        completeLength(info.headers()) == resumed.written) {
+      // the previous attempt failed after the last byte was written
+      try (stream; FileChannel channel = FileChannel.open(target, WRITE)) {
+        channel.truncate(resumed.written);
+      }
+      return resumed.written;
+    }
+    else if (info.statusCode() == 200) {
+      // a new download, or the resource changed since the checkpoint
+      offset = 0;
+    }
+    else if (info.statusCode() >= 500) {
+      throw new IOException("server error " + info.statusCode());
+    }
+    else {
+      throw new UnexpectedResponseException("unexpected status " + info.statusCode());
+    }
+    String etag = info.headers().firstValue("ETag").orElse(null);
+    String lastModified = info.headers().firstValue("Last-Modified").orElse(null);
+    if (resumed != null && offset > 0) {
+      // 206 responses need not repeat the validators
+      etag = etag != null ? etag : resumed.etag;
+      lastModified = lastModified != null ? lastModified : resumed.lastModified;
+    }
+    try (stream; FileChannel channel = FileChannel.open(target, CREATE, WRITE)) {
+      channel.truncate(offset);
+      if (offset == 0)
+        Files.deleteIfExists(checkpointPath);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+      long position = offset;
+      long checkpointed = offset;
+      int count;
+      try {
+        while ((count = stream.read(buffer)) >= 0) {
+          wrapped.clear().limit(count);
+          while (wrapped.hasRemaining()) {
+            position += channel.write(wrapped, position);
+          }
+          if (position - checkpointed >= checkpointInterval) {
+            checkpoint(channel, position, etag, lastModified, checkpointPath);
+            checkpointed = position;
+          }
+        }
+      }
+      catch (IOException e) {
+        if (position > checkpointed) {
+          try {
+            checkpoint(channel, position, etag, lastModified, checkpointPath);
+          }
+          catch (IOException suppressed) {
+            e.addSuppressed(suppressed);
+          }
+        }
+        throw e;
+      }
+      long expected = Ranges.contentLength(info.headers());
+      if (expected >= 0 && position - offset < expected) {
+        checkpoint(channel, position, etag, lastModified, checkpointPath);
+        throw new IOException("body ended " + (expected - position + offset) + " bytes early");
+      }
+      return position;
+    }
+  }
+
+  /**
+   * Saves the checkpoint after forcing the written bytes to the disk, so the checkpoint
+   * never counts bytes which could be lost.
+   */
+  private static void checkpoint(FileChannel channel, long written, String etag,
+      String lastModified, Path path) throws IOException {
+    if (etag == null && lastModified == null)
+      return;
+    channel.force(false);
+    new Checkpoint(written, etag, lastModified).write(path);
+  }
+
+  private static long contentRangeStart(HttpHeaders headers) {
+    String value = headers.firstValue("Content-Range").orElse("");
+    int dash = value.indexOf('-');
+    if (!value.startsWith("bytes ") || dash < 0)
+      return -1;
+    try {
+      return Long.parseLong(value.substring(6, dash).trim());
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the complete length of the {@code Content-Range: bytes *&#47;length} header
+   * of a {@code 416} response, or -1 if it is missing or unknown.
+   */
+  private static long completeLength(HttpHeaders headers) {
+    String value = headers.firstValue("Content-Range").orElse("");
+    if (!value.startsWith("bytes */"))
+      return -1;
+    try {
+      return Long.parseLong(value.substring(8).trim());
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * Parser of the {@code Retry-After} response header.
+ */
+final class RetryAfter {
+
+  private RetryAfter() {
+  }
+
+  /**
+   * Returns the delay requested by the {@code Retry-After} header, which is either a
+   * number of seconds or an HTTP date. Dates in the past give a zero delay. Returns an
+   * empty optional if the header is missing or malformed.
+   */
+  static Optional<Duration> parse(HttpHeaders headers, Instant now) {
+    Optional<String> value = headers.firstValue("Retry-After");
+    if (value.isEmpty())
+      return Optional.empty();
+    String retryAfter = value.get().trim();
+    if (!retryAfter.isEmpty() && Character.isDigit(retryAfter.charAt(0))) {
+      try {
+        return Optional.of(Duration.ofSeconds(Long.parseLong(retryAfter)));
+      }
+      catch (NumberFormatException e) {
+        return Optional.empty();
+      }
+    }
+    try {
+      Instant date = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME)
+          .toInstant();
+      Duration delay = Duration.between(now, date);
+      return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+    }
+    catch (DateTimeParseException e) {
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Configuration of a {@link RetryingHttpClient}.
+ * <p>
+ * The default policy makes at most three attempts of requests with idempotent methods,
+ * retries after IO errors other than rejected requests, unknown hosts and protocol
+ * errors, and after 429, 502, 503 and 504 responses. The delay before each retry is
+ * drawn uniformly from zero to an exponentially growing bound (full jitter), unless the
+ * server asks for a specific delay with {@code Retry-After}. Retries are limited by a
+ * budget of 10% of the requests. Each {@code with} method returns a modified copy.
+ */
+public final class RetryPolicy {
+
+  private static final Set<String> IDEMPOTENT_METHODS =
+      Set.of("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE");
+
+  private final int maxAttempts;
+  private final Set<String> methods;
+  private final Set<Integer> statusCodes;
+  private final Predicate<? super IOException> retryableException;
+  private final Duration baseDelay;
+  private final Duration maxDelay;
+  private final Duration maxRetryAfter;
+  private final double budgetRatio;
+  private final int maxBudget;
+
+  private RetryPolicy(int maxAttempts, Set<String> methods, Set<Integer> statusCodes,
+      Predicate<? super IOException> retryableException, Duration baseDelay,
+      Duration maxDelay, Duration maxRetryAfter, double budgetRatio, int maxBudget) {
+    this.maxAttempts = maxAttempts;
+    this.methods = methods;
+    this.statusCodes = statusCodes;
+    this.retryableException = retryableException;
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+    this.maxRetryAfter = maxRetryAfter;
+    this.budgetRatio = budgetRatio;
+    this.maxBudget = maxBudget;
+  }
+
+  public static RetryPolicy defaultPolicy() {
+    return new RetryPolicy(3, IDEMPOTENT_METHODS, Set.of(429, 502, 503, 504),
+        RetryPolicy::isTransient, Duration.ofMillis(100), Duration.ofSeconds(10),
+        Duration.ofSeconds(30), 0.1, 10);
+  }
+
+  private static boolean isTransient(IOException e) {
+    return !(e instanceof RequestRejectedException) &&
+        !(e instanceof UnknownHostException) &&
+        !(e instanceof ProtocolException);
+  }
+
+  /**
+   * @param maxAttempts the maximum number of attempts including the first one
+   * @return the new policy
+   */
+  public RetryPolicy withMaxAttempts(int maxAttempts) {
+    if (maxAttempts < 1)
+      throw new IllegalArgumentException("invalid number of attempts: " + maxAttempts);
+    return new RetryPolicy(maxAttempts, methods, statusCodes, retryableException, baseDelay,
+        maxDelay, maxRetryAfter, budgetRatio, maxBudget);
+  }
+
+  /**
+   * @param methods the request methods which may be retried
+   * @return the new policy
+   */
+  public RetryPolicy withMethods(Set<String> methods) {
+    TreeSet<String> copy = new TreeSet<>(requireNonNull(methods));
+    return new RetryPolicy(maxAttempts, copy, statusCodes, retryableException, baseDelay,
+        maxDelay, maxRetryAfter, budgetRatio, maxBudget);
+  }
+
+  /**
+   * @param statusCodes the response status codes after which the request is retried
+   * @return the new policy
+   */
+  public RetryPolicy withStatusCodes(Set<Integer> statusCodes) {
+    Set<Integer> copy = Set.copyOf(statusCodes);
+    return new RetryPolicy(maxAttempts, methods, copy, retryableException, baseDelay,
+        maxDelay, maxRetryAfter, budgetRatio, maxBudget);
+  }
+
+  /**
+   * @param retryableException the predicate selecting the exceptions after which the
+   *     request is retried
+   * @return the new policy
+   */
+  public RetryPolicy withRetryableException(Predicate<? super IOException> retryableException) {
+    return new RetryPolicy(maxAttempts, methods, statusCodes,
+        requireNonNull(retryableException), baseDelay, maxDelay, maxRetryAfter, budgetRatio,
+        maxBudget);
+  }
+
+  /**
+   * Sets the bounds of the exponential backoff. The delay before the n-th retry is drawn
+   * from zero to {@code min(maxDelay, baseDelay * 2^(n-1))}.
+   *
+   * @param baseDelay the bound of the first retry delay
+   * @param maxDelay the upper bound of all retry delays
+   * @return the new policy
+   */
+  public RetryPolicy withBackoff(Duration baseDelay, Duration maxDelay) {
+    if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0)
+      throw new IllegalArgumentException("invalid backoff bounds");
+    return new RetryPolicy(maxAttempts, methods, statusCodes, retryableException, baseDelay,
+        maxDelay, maxRetryAfter, budgetRatio, maxBudget);
+  }
+
+  /**
+   * @param maxRetryAfter the longest {@code Retry-After} delay the client waits for, the
+   *     response is returned without retrying if the server asks for a longer delay
+   * @return the new policy
+   */
+  public RetryPolicy withMaxRetryAfter(Duration maxRetryAfter) {
+    if (maxRetryAfter.isNegative())
+      throw new IllegalArgumentException("invalid duration: " + maxRetryAfter);
+    return new RetryPolicy(maxAttempts, methods, statusCodes, retryableException, baseDelay,
+        maxDelay, maxRetryAfter, budgetRatio, maxBudget);
+  }
+
+  /**
+   * Sets the client-wide retry budget. Every request earns {@code ratio} of a retry and
+   * the unused retries accumulate up to {@code maxBudget}.
+   *
+   * @param ratio the maximum ratio of retries to requests in range [0, 1]
+   * @param maxBudget the maximum number of accumulated retries
+   * @return the new policy
+   */
+  public RetryPolicy withBudget(double ratio, int maxBudget) {
+    if (!(ratio >= 0 && ratio <= 1))
+      throw new IllegalArgumentException("invalid budget ratio: " + ratio);
+    if (maxBudget < 0)
+      throw new IllegalArgumentException("invalid budget: " + maxBudget);
+    return new RetryPolicy(maxAttempts, methods, statusCodes, retryableException, baseDelay,
+        maxDelay, maxRetryAfter, ratio, maxBudget);
+  }
+
+  int maxAttempts() {
+    return maxAttempts;
+  }
+
+  boolean isRetryableMethod(String method) {
+    return methods.contains(method);
+  }
+
+  boolean isRetryableStatus(int statusCode) {
+    return statusCodes.contains(statusCode);
+  }
+
+  boolean isRetryableException(IOException exception) {
+    return retryableException.test(exception);
+  }
+
+  Duration maxRetryAfter() {
+    return maxRetryAfter;
+  }
+
+  /**
+   * Returns the upper bound of the delay before the given retry, counted from 1.
+   */
+  long backoffBoundNanos(int retry) {
+    long base = baseDelay.toNanos();
+    long max = maxDelay.toNanos();
+    // the shifted value would overflow into the sign bit
+    if (base != 0 && retry - 1 >= Long.numberOfLeadingZeros(base) - 1)
+      return max;
+    return Math.min(max, base << (retry - 1));
+  }
+
+  TokenBudget newBudget() {
+    return new TokenBudget(budgetRatio, maxBudget);
+  }
+}
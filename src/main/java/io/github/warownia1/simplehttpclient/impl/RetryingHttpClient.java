@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.HttpResponse.ResponseInfo;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpClient} which retries failed requests according to a {@link RetryPolicy}.
+ * <p>
+ * When a response has a retryable status, its body is discarded without invoking the
+ * body handler and the request is sent again, so the handler processes only the final
+ * response. All retries made by one client draw from a shared budget, which prevents the
+ * client from multiplying its load on a server that is already failing. Once the budget
+ * is exhausted, failures are returned to the caller immediately.
+ */
+public class RetryingHttpClient implements HttpClient {
+
+  // the amount of a discarded body read to let the connection be reused
+  private static final int MAX_DISCARDED_BYTES = 64 * 1024;
+
+  private final HttpClient delegate;
+  private final RetryPolicy policy;
+  private final TokenBudget budget;
+  private final LongAdder retryCount = new LongAdder();
+  private final LongAdder budgetExhaustedCount = new LongAdder();
+
+  public RetryingHttpClient(HttpClient delegate, RetryPolicy policy) {
+    this.delegate = requireNonNull(delegate);
+    this.policy = requireNonNull(policy);
+    this.budget = policy.newBudget();
+  }
+
+  private boolean isRetryable(HttpRequest request) {
+    return policy.maxAttempts() > 1 && policy.isRetryableMethod(request.method());
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
+      throws IOException {
+    if (!isRetryable(request))
+      return delegate.send(request, handler);
+    budget.deposit();
+    for (int attempt = 1; ; attempt++) {
+      AttemptHandler<T> attemptHandler = new AttemptHandler<>(handler, attempt);
+      long delayNanos;
+      try {
+        HttpResponse<T> response = delegate.send(request, attemptHandler);
+        if (attemptHandler.retryDelayNanos < 0)
+          return response;
+        delayNanos = attemptHandler.retryDelayNanos;
+      }
+      catch (IOException e) {
+        if (!shouldRetry(e, attempt))
+          throw e;
+        delayNanos = backoffNanos(attempt);
+      }
+      retryCount.increment();
+      try {
+        TimeUnit.NANOSECONDS.sleep(delayNanos);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted before retrying");
+      }
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler, Executor executor) {
+    if (!isRetryable(request))
+      return delegate.sendAsync(request, handler, executor);
+    return retryAsync(request, executor, attempt -> new AttemptHandler<>(handler, attempt));
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The body of a retried response is discarded without taking a subscriber from the
+   * supplier, so only the final response is fed to a subscriber.
+   */
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends BodySubscriber<T>> subscriber, Executor executor) {
+    if (!isRetryable(request))
+      return delegate.sendAsync(request, subscriber, executor);
+    return retryAsync(request, executor,
+        attempt -> new AttemptSubscriber<>(subscriber, attempt));
+  }
+
+  /**
+   * Opens the WebSocket through the delegate without retrying a failed handshake.
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    return delegate.newWebSocket(request, listener, executor);
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> retryAsync(HttpRequest request,
+      Executor executor, IntFunction<Attempt<T>> newAttempt) {
+    budget.deposit();
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    AtomicReference<CompletableFuture<HttpResponse<T>>> current = new AtomicReference<>();
+    result.whenComplete((response, exc) -> {
+      CompletableFuture<HttpResponse<T>> attempt = current.get();
+      if (result.isCancelled() && attempt != null)
+        attempt.cancel(true);
+    });
+    attemptAsync(request, newAttempt, executor, 1, result, current);
+    return result;
+  }
+
+  private <T> void attemptAsync(HttpRequest request, IntFunction<Attempt<T>> newAttempt,
+      Executor executor, int attempt, CompletableFuture<HttpResponse<T>> result,
+      AtomicReference<CompletableFuture<HttpResponse<T>>> current) {
+    if (result.isDone())
+      return;
+    Attempt<T> attemptExchange = newAttempt.apply(attempt);
+    CompletableFuture<HttpResponse<T>> future;
+    try {
+      future = attemptExchange.sendAsync(request, executor);
+    }
+    catch (RuntimeException e) {
+      result.completeExceptionally(e);
+      return;
+    }
+    current.set(future);
+    if (result.isCancelled())
+      future.cancel(true);
+    future.whenComplete((response, exc) -> {
+      long delayNanos;
+      if (exc == null) {
+        if (attemptExchange.retryDelayNanos < 0) {
+          result.complete(response);
+          return;
+        }
+        delayNanos = attemptExchange.retryDelayNanos;
+      }
+      else {
+        Throwable cause = exc instanceof CompletionException && exc.getCause() != null ?
+            exc.getCause() : exc;
+        if (!(cause instanceof IOException) || !shouldRetry((IOException) cause, attempt)) {
+          result.completeExceptionally(cause);
+          return;
+        }
+        delayNanos = backoffNanos(attempt);
+      }
+      retryCount.increment();
+      CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor)
+          .execute(() -> attemptAsync(request, newAttempt, executor, attempt + 1, result,
+              current));
+    });
+  }
+
+  private boolean shouldRetry(IOException exception, int attempt) {
+    return attempt < policy.maxAttempts() && policy.isRetryableException(exception) &&
+        withdrawBudget();
+  }
+
+  private boolean withdrawBudget() {
+    if (budget.tryWithdraw())
+      return true;
+    budgetExhaustedCount.increment();
+    return false;
+  }
+
+  private long backoffNanos(int attempt) {
+    long bound = policy.backoffBoundNanos(attempt);
+    return bound > 0 ? ThreadLocalRandom.current().nextLong(bound) : 0;
+  }
+
+  /**
+   * Returns the number of retries made by this client.
+   *
+   * @return the number of retries
+   */
+  public long retryCount() {
+    return retryCount.sum();
+  }
+
+  /**
+   * Returns the number of retries which were not made because the budget was exhausted.
+   *
+   * @return the number of retries denied by the budget
+   */
+  public long budgetExhaustedCount() {
+    return budgetExhaustedCount.sum();
+  }
+
+  /**
+   * A single attempt which decides whether its response is retried.
+   */
+  private abstract class Attempt<T> {
+    final int attempt;
+    // the delay before the retry or -1 if the response is final
+    volatile long retryDelayNanos = -1;
+
+    Attempt(int attempt) {
+      this.attempt = attempt;
+    }
+
+    abstract CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+        Executor executor);
+
+    /**
+     * Tells whether the response is retried, setting the retry delay if so.
+     */
+    boolean retried(ResponseInfo responseInfo) {
+      if (attempt >= policy.maxAttempts() || !policy.isRetryableStatus(responseInfo.statusCode()))
+        return false;
+      Optional<Duration> retryAfter = RetryAfter.parse(responseInfo.headers(), Instant.now());
+      if (retryAfter.isPresent() && retryAfter.get().compareTo(policy.maxRetryAfter()) > 0)
+        return false;
+      if (!withdrawBudget())
+        return false;
+      retryDelayNanos = retryAfter.isPresent() ?
+          retryAfter.get().toNanos() : backoffNanos(attempt);
+      return true;
+    }
+  }
+
+  /**
+   * A body handler of a single attempt which discards the body of a retried response.
+   */
+  private final class AttemptHandler<T> extends Attempt<T> implements BodyHandler<T> {
+    private final BodyHandler<T> handler;
+
+    AttemptHandler(BodyHandler<T> handler, int attempt) {
+      super(attempt);
+      this.handler = handler;
+    }
+
+    @Override
+    CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, Executor executor) {
+      return delegate.sendAsync(request, this, executor);
+    }
+
+    @Override
+    public T apply(ResponseInfo responseInfo, InputStream stream) throws IOException {
+      if (!retried(responseInfo))
+        return handler.apply(responseInfo, stream);
+      discard(stream);
+      return null;
+    }
+  }
+
+  /**
+   * A single attempt taking a new subscriber for each exchange the delegate makes, as a
+   * delegate may make several exchanges for a request. The body of a retried response
+   * is ignored and the final response is passed to a subscriber from the supplier.
+   */
+  private final class AttemptSubscriber<T> extends Attempt<T> {
+    private final Supplier<? extends BodySubscriber<T>> supplier;
+
+    AttemptSubscriber(Supplier<? extends BodySubscriber<T>> supplier, int attempt) {
+      super(attempt);
+      this.supplier = supplier;
+    }
+
+    @Override
+    CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, Executor executor) {
+      return delegate.sendAsync(request, ExchangeSubscriber::new, executor);
+    }
+
+    /**
+     * The subscriber of a single exchange of the attempt.
+     */
+    private final class ExchangeSubscriber implements BodySubscriber<T> {
+      // the subscriber of the final response, null until it is received
+      private BodySubscriber<T> subscriber;
+
+      @Override
+      public void onHeaders(ResponseInfo responseInfo) throws IOException {
+        if (retried(responseInfo))
+          return;
+        subscriber = supplier.get();
+        subscriber.onHeaders(responseInfo);
+      }
+
+      @Override
+      public void onData(ByteBuffer data) throws IOException {
+        if (subscriber != null)
+          subscriber.onData(data);
+      }
+
+      @Override
+      public T onComplete() throws IOException {
+        return subscriber != null ? subscriber.onComplete() : null;
+      }
+
+      @Override
+      public void onError(Throwable error) {
+        if (subscriber != null)
+          subscriber.onError(error);
+      }
+    }
+  }
+
+  private static void discard(InputStream stream) {
+    if (stream == null)
+      return;
+    try (stream) {
+      byte[] buffer = new byte[8192];
+      int total = 0;
+      int n;
+      while (total < MAX_DISCARDED_BYTES && (n = stream.read(buffer)) != -1) {
+        total += n;
+      }
+    }
+    catch (IOException ignored) {
+      // the body is not needed, the connection is simply not reused
+    }
+  }
+}
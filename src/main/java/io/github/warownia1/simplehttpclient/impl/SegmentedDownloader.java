@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.ResponseInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Downloads a resource into a file over several connections at once.
+ * <p>
+ * The resource is first probed with a {@code HEAD} request. If the server accepts byte
+ * ranges and reports the length of the resource, the file is preallocated and the
+ * resource is split into equal segments fetched in parallel with {@code Range} requests,
+ * each writing its bytes at its offset in the file. A segment which fails is retried on
+ * its own, requesting only the bytes it is still missing. The {@code If-Range} header
+ * carries the validator of the resource, so the download fails instead of mixing two
+ * versions if the resource changes in the meantime. Resources which cannot be fetched
+ * in ranges, or are too small to be split, are downloaded in a single request.
+ * <p>
+ * A failed download deletes the partially written file.
+ */
+public class SegmentedDownloader {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long RETRY_DELAY_MILLIS = 200;
+
+  private final HttpClient client;
+  private final int segments;
+  private final long minSegmentSize;
+  private final int maxAttempts;
+
+  public SegmentedDownloader(HttpClient client, int segments) {
+    this(client, segments, 1024 * 1024, 3);
+  }
+
+  /**
+   * Creates a downloader fetching resources in the given number of segments.
+   *
+   * @param client the client sending the requests
+   * @param segments the maximum number of segments fetched in parallel
+   * @param minSegmentSize the minimum size of a segment in bytes
+   * @param maxAttempts the maximum number of attempts to fetch each segment
+   * @throws IllegalArgumentException if any of the numbers is not positive
+   */
+  public SegmentedDownloader(HttpClient client, int segments, long minSegmentSize,
+      int maxAttempts) {
+    if (segments <= 0)
+      throw new IllegalArgumentException("non-positive number of segments: " + segments);
+    if (minSegmentSize <= 0)
+      throw new IllegalArgumentException("non-positive segment size: " + minSegmentSize);
+    if (maxAttempts <= 0)
+      throw new IllegalArgumentException("non-positive number of attempts: " + maxAttempts);
+    this.client = requireNonNull(client);
+    this.segments = segments;
+    this.minSegmentSize = minSegmentSize;
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * A byte range of the resource and the number of its bytes already written.
+   */
+  private static final class Segment {
+    final long start;
+    final long end;
+    volatile long written = 0;
+    volatile CompletableFuture<?> current;
+
+    Segment(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    long remaining() {
+      return end - start + 1 - written;
+    }
+  }
+
+  /**
+   * Signals that the server did not return the requested range, and retrying the
+   * segment would not help.
+   */
+  private static final class RangeNotServedException extends IOException {
+    RangeNotServedException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Downloads the resource into the file, blocking until it is complete.
+   *
+   * @param request the {@code GET} request of the resource
+   * @param target the file to write, replaced if it exists
+   * @param executor the executor of the asynchronous requests
+   * @return the number of bytes downloaded
+   * @throws IOException if the download fails
+   */
+  public long download(HttpRequest request, Path target, Executor executor)
+      throws IOException {
+    CompletableFuture<Long> future = downloadAsync(request, target, executor);
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted downloading " + request.uri());
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Downloads the resource into the file asynchronously. Cancelling the returned future
+   * cancels the requests in progress.
+   *
+   * @param request the {@code GET} request of the resource
+   * @param target the file to write, replaced if it exists
+   * @param executor the executor of the asynchronous requests
+   * @return a future of the number of bytes downloaded
+   */
+  public CompletableFuture<Long> downloadAsync(HttpRequest request, Path target,
+      Executor executor) {
+    HttpRequest probe = SimpleHttpRequestBuilder.copyOf(request).HEAD().build();
+    CompletableFuture<Long> result = new CompletableFuture<>();
+    CompletableFuture<HttpResponse<Void>> probing =
+        client.sendAsync(probe, HttpResponse.BodyHandlers.discarding(), executor);
+    result.whenComplete((size, e) -> {
+      if (result.isCancelled())
+        probing.cancel(true);
+    });
+    probing.whenComplete((response, exc) -> {
+      if (result.isDone())
+        return;
+      long length = -1;
+      if (exc == null && response.statusCode() == 200 && acceptsRanges(response.headers()))
+        length = Ranges.contentLength(response.headers());
+      CompletableFuture<Long> download;
+      try {
+        if (length >= 0 && segments > 1 && length >= 2 * minSegmentSize)
+          download = fetchSegmented(request, target, length,
+              Ranges.validator(response.headers()), executor, result);
+        else
+          download = fetchWhole(request, target, executor);
+      }
+      catch (IOException e) {
+        result.completeExceptionally(e);
+        return;
+      }
+      download.whenComplete((size, e) -> {
+        if (e == null) {
+          result.complete(size);
+          return;
+        }
+        deleteQuietly(target);
+        result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+      });
+      result.whenComplete((size, e) -> {
+        if (result.isCancelled())
+          download.cancel(true);
+      });
+    });
+    return result;
+  }
+
+  private static boolean acceptsRanges(HttpHeaders headers) {
+    return headers.allValues("Accept-Ranges").stream()
+        .anyMatch(value -> value.equalsIgnoreCase("bytes"));
+  }
+
+  private CompletableFuture<Long> fetchWhole(HttpRequest request, Path target,
+      Executor executor) {
+    return client.sendAsync(request, (info, stream) -> {
+      if (info.statusCode() != 200)
+        throw new IOException("unexpected status " + info.statusCode());
+      try (FileChannel channel = FileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING)) {
+        return write(stream, channel, 0, Long.MAX_VALUE, null);
+      }
+    }, executor).thenApply(HttpResponse::body);
+  }
+
+  private CompletableFuture<Long> fetchSegmented(HttpRequest request, Path target,
+      long length, Optional<String> validator, Executor executor,
+      CompletableFuture<Long> result) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+      file.setLength(length);
+    }
+    FileChannel channel = FileChannel.open(target, WRITE);
+    int count = (int) Math.min(segments, length / minSegmentSize);
+    long size = length / count;
+    List<Segment> parts = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      long start = i * size;
+      long end = i == count - 1 ? length - 1 : start + size - 1;
+      parts.add(new Segment(start, end));
+    }
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[count];
+    for (int i = 0; i < count; i++) {
+      futures[i] = fetchSegment(request, channel, parts.get(i), validator, executor, 1, result);
+    }
+    CompletableFuture<Long> download = CompletableFuture.allOf(futures)
+        .thenApply(v -> length);
+    // a failed segment stops the others
+    for (CompletableFuture<?> future : futures) {
+      future.whenComplete((v, exc) -> {
+        if (exc != null)
+          download.completeExceptionally(exc);
+      });
+    }
+    download.whenComplete((v, exc) -> {
+      if (exc != null) {
+        for (Segment segment : parts) {
+          CompletableFuture<?> current = segment.current;
+          if (current != null)
+            current.cancel(true);
+        }
+      }
+      closeQuietly(channel);
+    });
+    return download;
+  }
+
+  private CompletableFuture<Void> fetchSegment(HttpRequest request, FileChannel channel,
+      Segment segment, Optional<String> validator, Executor executor, int attempt,
+      CompletableFuture<Long> result) {
+    if (result.isDone())
+      return CompletableFuture.failedFuture(new CancellationException());
+    long from = segment.start + segment.written;
+    SimpleHttpRequestBuilder builder = SimpleHttpRequestBuilder.copyOf(request);
+    builder.headers.setHeader("Range", "bytes=" + from + "-" + segment.end);
+    builder.headers.removeHeader("If-Range");
+    validator.ifPresent(value -> builder.headers.setHeader("If-Range", value));
+    CompletableFuture<HttpResponse<Long>> future = client.sendAsync(builder.build(),
+        (info, stream) -> writeSegment(info, stream, channel, segment, from), executor);
+    segment.current = future;
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    future.whenComplete((response, exc) -> {
+      if (exc == null) {
+        done.complete(null);
+        return;
+      }
+      Throwable cause = exc instanceof CompletionException ? exc.getCause() : exc;
+      if (result.isDone() || attempt >= maxAttempts || cause instanceof RangeNotServedException ||
+          cause instanceof CancellationException) {
+        done.completeExceptionally(cause);
+        return;
+      }
+      Executor delayed = CompletableFuture.delayedExecutor(
+          RETRY_DELAY_MILLIS << (attempt - 1), TimeUnit.MILLISECONDS, executor);
+      CompletableFuture.runAsync(() -> { }, delayed)
+          .thenCompose(v -> fetchSegment(
+              request, channel, segment, validator, executor, attempt + 1, result))
+          .whenComplete((v, e) -> {
+            if (e == null)
+              done.complete(null);
+            else
+              done.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+          });
+    });
+    return done;
+  }
+
+  private static long writeSegment(ResponseInfo info, InputStream stream, FileChannel channel,
+      Segment segment, long from) throws IOException {
+    if (info.statusCode() != 206)
+      throw new RangeNotServedException(
+          "range not served, status " + info.statusCode() + " (resource changed?)");
+    String contentRange = info.headers().firstValue("Content-Range").orElse("");
+    if (!contentRange.startsWith("bytes " + from + "-" + segment.end + "/"))
+      throw new RangeNotServedException("unexpected content range: " + contentRange);
+    try (stream) {
+      write(stream, channel, from, segment.remaining(), segment);
+    }
+    if (segment.remaining() > 0)
+      throw new IOException("segment ended " + segment.remaining() + " bytes early");
+    return segment.end - segment.start + 1;
+  }
+
+  /**
+   * Copies at most the given number of bytes from the stream to the channel at the
+   * position, counting them in the segment if there is one.
+   *
+   * @return the number of bytes copied
+   */
+  private static long write(InputStream stream, FileChannel channel, long position,
+      long limit, Segment segment) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+    long total = 0;
+    int count;
+    while (total < limit &&
+        (count = stream.read(buffer, 0, (int) Math.min(buffer.length, limit - total))) >= 0) {
+      wrapped.clear().limit(count);
+      while (wrapped.hasRemaining()) {
+        position += channel.write(wrapped, position);
+      }
+      total += count;
+      if (segment != null)
+        segment.written += count;
+    }
+    return total;
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    }
+    catch (IOException ignored) {
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    }
+    catch (IOException ignored) {
+    }
+  }
+}
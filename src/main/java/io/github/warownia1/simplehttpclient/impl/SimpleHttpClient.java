@@ -24,89 +24,638 @@
 
 package io.github.warownia1.simplehttpclient.impl;
 
+import io.github.warownia1.simplehttpclient.EventListener;
 import io.github.warownia1.simplehttpclient.HttpClient;
 import io.github.warownia1.simplehttpclient.HttpHeaders;
 import io.github.warownia1.simplehttpclient.HttpRequest;
 import io.github.warownia1.simplehttpclient.HttpResponse;
 import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.WebSocket;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.net.CookieHandler;
 import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Duration;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
 public class SimpleHttpClient implements HttpClient {
 
+  private static final int MAX_CACHED_REDIRECTS = 256;
+
+  private static final long MAX_DISCARDED_BODY = 64 * 1024;
+
+  private final EventListener eventListener;
+  private final Redirect redirect;
+  private final int maxRedirects;
+  private final CookieHandler cookieHandler;
+  private final ProxySelector proxySelector;
+  private final Duration connectTimeout;
+  private final Duration readTimeout;
+  private final Duration writeTimeout;
+  private final Duration requestTimeout;
+  private final Executor executor;
+  private final SocketOptions socketOptions;
+  private final int maxWebSocketFrameSize;
+  private volatile TimingSSLSocketFactory sslSocketFactory;
+  private final RedirectCache redirectCache = new RedirectCache(MAX_CACHED_REDIRECTS);
+
+  public SimpleHttpClient() {
+    this(new SimpleHttpClientBuilder());
+  }
+
+  SimpleHttpClient(SimpleHttpClientBuilder builder) {
+    this.eventListener = builder.eventListener;
+    this.redirect = builder.redirect;
+    this.maxRedirects = builder.maxRedirects;
+    this.cookieHandler = builder.cookieHandler;
+    this.proxySelector = builder.proxySelector;
+    this.maxWebSocketFrameSize = builder.maxWebSocketFrameSize;
+    this.connectTimeout = builder.connectTimeout;
+    this.readTimeout = builder.readTimeout;
+    this.writeTimeout = builder.writeTimeout;
+    this.requestTimeout = builder.requestTimeout;
+    this.executor = builder.executor != null ? builder.executor : ForkJoinPool.commonPool();
+    SocketOptions socketOptions = new SocketOptions(builder.tcpNoDelay, builder.keepAlive,
+        builder.sendBufferSize, builder.receiveBufferSize, builder.localAddress);
+    this.socketOptions = socketOptions.isDefault() ? null : socketOptions;
+  }
+
   @Override
   public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
       throws IOException {
-    HttpURLConnection conn = (HttpURLConnection) request.uri().toURL().openConnection();
+    // the write and the total timeouts are enforced by cancelling the exchange
+    Cancellation cancellation =
+        writeTimeout != null || requestTimeout != null ? new Cancellation() : null;
+    return send(request, handler, new ExchangeTimings(request, eventListener), cancellation);
+  }
+
+  /**
+   * Sends the request, which can be cancelled through the cancellation if it is not
+   * null.
+   */
+  private <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler,
+      ExchangeTimings timings, Cancellation cancellation) throws IOException {
+    timings.started();
+    ScheduledFuture<?> timer = requestTimeout != null && cancellation != null
+        ? cancellation.scheduleRequestTimeout(requestTimeout.toMillis()) : null;
+    try {
+      HttpResponse<T> response = exchange(request, handler, timings, cancellation);
+      timings.responseBodyComplete();
+      return response;
+    }
+    catch (IOException | RuntimeException e) {
+      if (cancellation != null)
+        cancellation.abort();
+      timings.failed(e);
+      // a timeout closing the connection makes the exchange fail with a socket error
+      String timeout = cancellation != null ? cancellation.timedOut() : null;
+      if (timeout != null && !(e instanceof SocketTimeoutException)) {
+        SocketTimeoutException timedOut = new SocketTimeoutException(timeout + " timed out");
+        timedOut.initCause(e);
+        throw timedOut;
+      }
+      throw e;
+    }
+    finally {
+      if (timer != null)
+        timer.cancel(false);
+    }
+  }
+
+
+  private <T> HttpResponse<T> exchange(HttpRequest request, BodyHandler<T> handler,
+      ExchangeTimings timings, Cancellation cancellation) throws IOException {
+    HttpRequest current = request;
+    for (int redirects = 0; ; redirects++) {
+      RedirectCache.Entry cached = redirect != Redirect.NEVER
+          ? redirectCache.get(current.uri()) : null;
+      if (cached != null) {
+        // skip the round trip to the permanently redirected location
+        checkRedirectLimit(redirects);
+        current = redirected(current, cached.statusCode, cached.location);
+        continue;
+      }
+      HttpURLConnection conn = connect(current, timings, cancellation);
+      ScheduledFuture<?> writeTimer = writeTimeout != null && cancellation != null
+          ? cancellation.scheduleTimeout(writeTimeout.toMillis(), "write") : null;
+      boolean written;
+      try {
+        written = writeRequest(conn, current, timings);
+      }
+      finally {
+        if (writeTimer != null)
+          writeTimer.cancel(false);
+      }
+      if (!written)
+        return rejected(request, handler, conn, current.uri(), timings);
+      int statusCode = conn.getResponseCode();
+      if (cancellation != null)
+        cancellation.headersReceived();
+      var headersMap = new LinkedHashMap<>(conn.getHeaderFields());
+      // URLConnection maps null to status line
+      headersMap.remove(null);
+      if (cookieHandler != null)
+        cookieHandler.put(current.uri(), headersMap);
+      HttpHeaders headers = HttpHeaders.of(headersMap);
+      URI location = redirectLocation(current, statusCode, headers);
+      if (location != null) {
+        checkRedirectLimit(redirects);
+        discardBody(conn, statusCode);
+        if ((statusCode == 301 || statusCode == 308) && !isNoStore(headers))
+          redirectCache.put(current.uri(), statusCode, location);
+        current = redirected(current, statusCode, location);
+        continue;
+      }
+      ResponseInfoImpl responseInfo = new ResponseInfoImpl(statusCode, headers, Version.HTTP_1_1);
+      InputStream inputStream = statusCode < 400 ? conn.getInputStream() : conn.getErrorStream();
+      if (cancellation != null)
+        inputStream = cancellation.wrap(inputStream);
+      timings.responseHeadersReceived(responseInfo);
+      T body = handler.apply(responseInfo, inputStream);
+      return new SimpleHttpResponse<T>(statusCode, request, headers, body, current.uri(),
+          timings);
+    }
+  }
+
+  private HttpURLConnection connect(HttpRequest request, ExchangeTimings timings,
+      Cancellation cancellation) throws IOException {
+    URL url = request.uri().toURL();
+    Proxy proxy = selectProxy(request.uri());
+    HttpURLConnection conn = proxy == null
+        ? (HttpURLConnection) url.openConnection()
+        : (HttpURLConnection) url.openConnection(proxy);
+    // the proxy resolves the target host
+    boolean direct = proxy == null || proxy.type() == Proxy.Type.DIRECT;
+    if (cancellation != null)
+      cancellation.register(conn);
+    if (conn instanceof HttpsURLConnection) {
+      HttpsURLConnection httpsConn = (HttpsURLConnection) conn;
+      httpsConn.setSSLSocketFactory(sslSocketFactory(httpsConn.getSSLSocketFactory()));
+    }
+    // redirects are followed by the client according to its own policy
+    conn.setInstanceFollowRedirects(false);
     if (!request.method().equals("HEAD")) {
       conn.setDoInput(true);
     }
     conn.setRequestMethod(request.method());
-    request.headers().map().forEach((header, values) -> {
+    HttpHead.withCookies(request, cookieHandler).forEach((header, values) -> {
       for (String value : values) {
         conn.addRequestProperty(header, value);
       }
     });
     if (request.body().isPresent() && request.body().get().contentLength() != 0) {
       conn.setDoOutput(true);
-      conn.setRequestProperty("Content-Length",
-          Long.toString(request.body().get().contentLength()));
+      long contentLength = request.body().get().contentLength();
+      // stream the body instead of letting the connection buffer all of it
+      if (contentLength > 0)
+        conn.setFixedLengthStreamingMode(contentLength);
+      else
+        conn.setChunkedStreamingMode(0);
+      // the connection handles the expectation itself in streaming mode
+      if (request.expectContinue())
+        conn.setRequestProperty("Expect", "100-continue");
     }
     else {
       conn.setRequestProperty("Content-Length", "0");
     }
+    int readTimeoutMillis = 0;
     if (request.timeout().isPresent()) {
-      int timeoutMillis = (int) Math.min(request.timeout().get().toMillis(), Integer.MAX_VALUE);
+      int timeoutMillis = toMillis(request.timeout().get());
       conn.setConnectTimeout(timeoutMillis);
-      conn.setReadTimeout(timeoutMillis);
+      readTimeoutMillis = timeoutMillis;
     }
-    conn.connect();
-    if (conn.getDoOutput()) {
-      HttpRequest.Body body = request.body().get();
-      OutputStream os = conn.getOutputStream();
-      os.write(body.getBytes());
+    else {
+      if (connectTimeout != null)
+        conn.setConnectTimeout(toMillis(connectTimeout));
+      if (readTimeout != null)
+        readTimeoutMillis = toMillis(readTimeout);
+    }
+    // a read on a socket the cancellation cannot close ends with the total timeout
+    if (cancellation != null)
+      readTimeoutMillis = cancellation.readTimeout(readTimeoutMillis);
+    if (readTimeoutMillis > 0)
+      conn.setReadTimeout(readTimeoutMillis);
+    String lookupHost = direct && eventListener != null ? url.getHost() : null;
+    if (direct && conn instanceof HttpsURLConnection) {
+      // the socket factory reports a new connection; a pooled one is neither resolved
+      // nor timed
+      timings.connectOnNewSocket(lookupHost);
+    }
+    else {
+      if (lookupHost != null)
+        timings.resolve(lookupHost);
+      timings.connectStart();
+    }
+    TimingSSLSocketFactory.CURRENT.set(timings);
+    try {
+      conn.connect();
+    }
+    catch (IOException e) {
+      if (proxy != null && proxy.type() != Proxy.Type.DIRECT)
+        proxySelector.connectFailed(request.uri(), proxy.address(), e);
+      throw e;
     }
+    finally {
+      TimingSSLSocketFactory.CURRENT.remove();
+    }
+    timings.connectEnd();
+    if (cancellation != null)
+      cancellation.checkCancelled();
+    return conn;
+  }
+
+  private static int toMillis(Duration timeout) {
+    return (int) Math.min(Math.max(timeout.toMillis(), 1), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the factory wrapper of the connection's TLS socket factory. A client with
+   * socket options keeps its own wrapper which creates the sockets.
+   */
+  private SSLSocketFactory sslSocketFactory(SSLSocketFactory factory) {
+    if (socketOptions == null)
+      return TimingSSLSocketFactory.wrap(factory);
+    TimingSSLSocketFactory wrapper = sslSocketFactory;
+    if (wrapper == null || !wrapper.wraps(factory))
+      sslSocketFactory = wrapper = TimingSSLSocketFactory.wrap(factory, socketOptions);
+    return wrapper;
+  }
+
+  /**
+   * Returns the proxy chosen by the client's proxy selector or null if the client has
+   * none and the connection should use the default one.
+   */
+  private Proxy selectProxy(URI uri) {
+    if (proxySelector == null)
+      return null;
+    List<Proxy> proxies = proxySelector.select(uri);
+    return proxies == null || proxies.isEmpty() ? Proxy.NO_PROXY : proxies.get(0);
+  }
+
+  /**
+   * Writes the request body, if there is one.
+   *
+   * @return false if the server rejected the body with a final status
+   */
+  private static boolean writeRequest(HttpURLConnection conn, HttpRequest request,
+      ExchangeTimings timings) throws IOException {
+    if (!conn.getDoOutput()) {
+      // the connection writes the headers together with reading the response
+      timings.requestHeadersSent();
+      return true;
+    }
+    HttpRequest.Body body = request.body().get();
+    OutputStream out;
+    try {
+      out = conn.getOutputStream();
+    }
+    catch (ProtocolException e) {
+      if (!request.expectContinue())
+        throw e;
+      // a rejected expectation disconnects keeping the final status and headers, which
+      // the connection would otherwise read by sending the request again
+      int statusCode;
+      try {
+        conn.setDoInput(false);
+        statusCode = conn.getResponseCode();
+      }
+      catch (IllegalStateException | IOException ignored) {
+        throw e;
+      }
+      if (statusCode < 200)
+        throw e;
+      return false;
+    }
+    try (OutputStream os = out) {
+      timings.requestHeadersSent();
+      body.writeTo(os);
+    }
+    timings.requestBodySent();
+    return true;
+  }
+
+  /**
+   * Completes a request whose expectation was answered with a final status. The
+   * connection closes the socket when it rejects the body, so the response has the
+   * status and headers but an empty body.
+   */
+  private <T> HttpResponse<T> rejected(HttpRequest request, BodyHandler<T> handler,
+      HttpURLConnection conn, URI uri, ExchangeTimings timings) throws IOException {
+    timings.requestHeadersSent();
     int statusCode = conn.getResponseCode();
     var headersMap = new LinkedHashMap<>(conn.getHeaderFields());
-    // URLConnection maps null to status line
     headersMap.remove(null);
+    if (cookieHandler != null)
+      cookieHandler.put(uri, headersMap);
     HttpHeaders headers = HttpHeaders.of(headersMap);
     ResponseInfoImpl responseInfo = new ResponseInfoImpl(statusCode, headers, Version.HTTP_1_1);
-    InputStream inputStream = statusCode < 400 ? conn.getInputStream() : conn.getErrorStream();
-    T body = handler.apply(responseInfo, inputStream);
-    URI uri;
+    timings.responseHeadersReceived(responseInfo);
+    T body = handler.apply(responseInfo, InputStream.nullInputStream());
+    return new SimpleHttpResponse<T>(statusCode, request, headers, body, uri, timings);
+  }
+
+  private void checkRedirectLimit(int redirects) throws ProtocolException {
+    if (redirects >= maxRedirects)
+      throw new ProtocolException("too many redirects: " + (redirects + 1));
+  }
+
+  /**
+   * Returns the location the response redirects to if it should be followed according
+   * to the redirect policy, or null otherwise.
+   */
+  private URI redirectLocation(HttpRequest request, int statusCode, HttpHeaders headers) {
+    if (redirect == Redirect.NEVER)
+      return null;
+    if (statusCode != 301 && statusCode != 302 && statusCode != 303 &&
+        statusCode != 307 && statusCode != 308)
+      return null;
+    Optional<String> location = headers.firstValue("Location");
+    if (location.isEmpty())
+      return null;
+    URI target;
     try {
-      uri = conn.getURL().toURI();
+      target = request.uri().resolve(new URI(location.get()));
     }
     catch (URISyntaxException e) {
-      e.printStackTrace();
-      uri = request.uri();
+      return null;
+    }
+    String scheme = target.getScheme();
+    if (target.getHost() == null ||
+        !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)))
+      return null;
+    if (redirect == Redirect.NORMAL && "http".equalsIgnoreCase(scheme) &&
+        "https".equalsIgnoreCase(request.uri().getScheme()))
+      return null;
+    return target;
+  }
+
+  /**
+   * Returns the request to send to the redirect target, rewriting the method as browsers
+   * do and dropping the credentials when the redirect leaves the origin.
+   */
+  static HttpRequest redirected(HttpRequest request, int statusCode, URI target) {
+    SimpleHttpRequestBuilder builder = SimpleHttpRequestBuilder.copyOf(request).uri(target);
+    String method = request.method();
+    if ((statusCode == 303 && !method.equals("HEAD")) ||
+        ((statusCode == 301 || statusCode == 302) && method.equals("POST"))) {
+      builder.method("GET", EmptyRequestBody.getInstance());
+      builder.headers.removeHeader("Content-Type");
+      builder.headers.removeHeader("Content-Length");
+      builder.headers.removeHeader("Content-Encoding");
+    }
+    if (!Origins.of(target).equals(Origins.of(request.uri()))) {
+      builder.headers.removeHeader("Authorization");
+      builder.headers.removeHeader("Cookie");
+    }
+    return builder.build();
+  }
+
+  private static boolean isNoStore(HttpHeaders headers) {
+    for (String value : headers.allValues("Cache-Control")) {
+      if (value.toLowerCase(Locale.ROOT).contains("no-store"))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Reads and discards the body of a redirect response so the connection can be
+   * returned to the pool and reused by the next hop. Large bodies are abandoned.
+   */
+  private static void discardBody(HttpURLConnection conn, int statusCode) throws IOException {
+    InputStream in = statusCode < 400 ? conn.getInputStream() : conn.getErrorStream();
+    if (in == null)
+      return;
+    try (in) {
+      byte[] buffer = new byte[8192];
+      long remaining = MAX_DISCARDED_BODY;
+      int count;
+      while (remaining > 0 &&
+          (count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) >= 0) {
+        remaining -= count;
+      }
     }
-    return new SimpleHttpResponse<T>(statusCode, request, headers, body, uri);
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Cancelling the returned future, or completing it in any other way before the
+   * response is ready, aborts the exchange and closes its connection. An exchange which
+   * has not started yet is skipped. Futures derived from the returned one do not
+   * propagate their cancellation to it. The total timeout of the client fails the
+   * returned future when it expires, even if the handler is still reading the body.
+   */
   @Override
   public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
       BodyHandler<T> handler, Executor executor) {
-    Supplier<HttpResponse<T>> supplier = () -> {
+    ExchangeTimings timings = new ExchangeTimings(request, eventListener);
+    timings.requestQueued();
+    Cancellation cancellation = new Cancellation();
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    result.whenComplete((response, exc) -> {
+      if (exc != null)
+        cancellation.cancel();
+    });
+    executor.execute(() -> {
+      if (result.isDone()) {
+        skipped(result, timings);
+        return;
+      }
+      try {
+        result.complete(send(request, handler, timings, cancellation));
+      }
+      catch (Throwable e) {
+        result.completeExceptionally(
+            e instanceof CompletionException ? e : new CompletionException(e));
+      }
+    });
+    if (requestTimeout != null)
+      failOnTimeout(result, cancellation);
+    return result;
+  }
+
+  /**
+   * Reports the failure of a request whose future was completed before its exchange
+   * started, so that the listener sees the end of every queued request.
+   */
+  private static void skipped(CompletableFuture<?> result, ExchangeTimings timings) {
+    Exception failure;
+    try {
+      result.join();
+      failure = new InterruptedIOException("request cancelled");
+    }
+    catch (CompletionException e) {
+      failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+    catch (CancellationException e) {
+      failure = new InterruptedIOException("request cancelled");
+    }
+    timings.failed(failure);
+  }
+
+  /**
+   * Fails the future with a timeout once the total timeout of the client expires,
+   * which cancels its exchange.
+   */
+  private void failOnTimeout(CompletableFuture<?> result, Cancellation cancellation) {
+    cancellation.limitReads(requestTimeout.toMillis());
+    ScheduledFuture<?> timer = Timeouts.schedule(
+        () -> result.completeExceptionally(
+            new CompletionException(new SocketTimeoutException("request timed out"))),
+        requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    result.whenComplete((response, exc) -> timer.cancel(false));
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The executor thread is released once the response headers are received, and the
+   * body is fed to the subscriber by a thread shared by all the responses of the
+   * clients. Cancelling the returned future stops the transfer and closes the
+   * connection.
+   */
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      Supplier<? extends BodySubscriber<T>> subscriberSupplier, Executor executor) {
+    ExchangeTimings timings = new ExchangeTimings(request, eventListener);
+    timings.requestQueued();
+    Cancellation cancellation = new Cancellation();
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    executor.execute(() -> {
+      if (result.isDone()) {
+        skipped(result, timings);
+        return;
+      }
+      BodySubscriber<T> subscriber;
+      try {
+        subscriber = subscriberSupplier.get();
+      }
+      catch (Throwable e) {
+        if (e instanceof Exception)
+          timings.failed((Exception) e);
+        result.completeExceptionally(new CompletionException(e));
+        return;
+      }
+      HttpResponse<InputStream> head;
       try {
-        return send(request, handler);
+        timings.started();
+        head = exchange(request, (info, stream) -> {
+          subscriber.onHeaders(info);
+          return stream;
+        }, timings, cancellation);
       }
-      catch (IOException e) {
-        throw new CompletionException(e);
+      catch (Throwable e) {
+        cancellation.abort();
+        if (e instanceof Exception)
+          timings.failed((Exception) e);
+        subscriber.onError(e);
+        result.completeExceptionally(
+            e instanceof CompletionException ? e : new CompletionException(e));
+        return;
       }
-    };
-    return CompletableFuture.supplyAsync(supplier, executor);
+      long length = request.method().equals("HEAD") ? 0 : contentLength(head);
+      boolean secure = "https".equalsIgnoreCase(head.uri().getScheme());
+      CompletableFuture<T> body = BodyPump.shared().register(
+          head.body(), length, secure, subscriber, executor);
+      result.whenComplete((response, exc) -> {
+        if (exc != null)
+          body.cancel(false);
+      });
+      body.whenComplete((value, exc) -> {
+        if (exc == null) {
+          timings.responseBodyComplete();
+          result.complete(new SimpleHttpResponse<>(head.statusCode(), request,
+              head.headers(), value, head.uri(), timings));
+        }
+        else {
+          if (exc instanceof Exception)
+            timings.failed((Exception) exc);
+          result.completeExceptionally(new CompletionException(exc));
+        }
+      });
+    });
+    result.whenComplete((response, exc) -> {
+      if (exc != null)
+        cancellation.cancel();
+    });
+    // the body is not read while it is idle, so the response is failed directly
+    if (requestTimeout != null)
+      failOnTimeout(result, cancellation);
+    return result;
+  }
+
+  /**
+   * Sends the request asynchronously using the executor of the client.
+   */
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler) {
+    return sendAsync(request, handler, executor);
+  }
+
+  /**
+   * Opens a WebSocket through the proxy selected for the request URI, or the proxy of
+   * the default selector if the client has none, and exchanges cookies with the cookie
+   * handler of the client.
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) throws IOException {
+    ProxySelector selector =
+        proxySelector != null ? proxySelector : ProxySelector.getDefault();
+    Proxy proxy = Proxy.NO_PROXY;
+    if (selector != null) {
+      List<Proxy> proxies = selector.select(request.uri());
+      if (proxies != null && !proxies.isEmpty())
+        proxy = proxies.get(0);
+    }
+    try {
+      return SimpleWebSocket.connect(request, listener, executor, proxy, cookieHandler,
+          socketOptions, connectTimeout, maxWebSocketFrameSize);
+    }
+    catch (IOException e) {
+      if (selector != null && proxy.type() != Proxy.Type.DIRECT)
+        selector.connectFailed(request.uri(), proxy.address(), e);
+      throw e;
+    }
+  }
+
+  private static long contentLength(HttpResponse<?> response) {
+    int statusCode = response.statusCode();
+    if (statusCode == 204 || statusCode == 304 || statusCode < 200)
+      return 0;
+    try {
+      return response.headers().firstValue("Content-Length").map(Long::parseLong).orElse(-1L);
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
   }
 
 }
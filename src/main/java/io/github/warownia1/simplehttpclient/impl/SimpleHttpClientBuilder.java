@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.EventListener;
+import io.github.warownia1.simplehttpclient.HttpClient;
+
+import java.net.CookieHandler;
+import java.net.InetAddress;
+import java.net.ProxySelector;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+import static java.util.Objects.requireNonNull;
+
+public class SimpleHttpClientBuilder implements HttpClient.Builder {
+
+  EventListener eventListener;
+  HttpClient.Redirect redirect = HttpClient.Redirect.NORMAL;
+  int maxRedirects = 20;
+  CookieHandler cookieHandler;
+  ProxySelector proxySelector;
+  Duration connectTimeout;
+  Duration readTimeout;
+  Duration writeTimeout;
+  Duration requestTimeout;
+  Executor executor;
+  int maxConnectionsPerHost = 0;
+  Boolean tcpNoDelay;
+  Boolean keepAlive;
+  int sendBufferSize = 0;
+  int receiveBufferSize = 0;
+  InetAddress localAddress;
+  int maxWebSocketFrameSize = SimpleWebSocket.DEFAULT_MAX_FRAME_SIZE;
+
+  @Override
+  public SimpleHttpClientBuilder eventListener(EventListener listener) {
+    this.eventListener = requireNonNull(listener);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder followRedirects(HttpClient.Redirect policy) {
+    this.redirect = requireNonNull(policy);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder maxRedirects(int maxRedirects) {
+    if (maxRedirects < 0)
+      throw new IllegalArgumentException("negative redirect limit: " + maxRedirects);
+    this.maxRedirects = maxRedirects;
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder cookieHandler(CookieHandler cookieHandler) {
+    this.cookieHandler = requireNonNull(cookieHandler);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder proxy(ProxySelector proxySelector) {
+    this.proxySelector = requireNonNull(proxySelector);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder connectTimeout(Duration timeout) {
+    this.connectTimeout = requirePositive(timeout);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder readTimeout(Duration timeout) {
+    this.readTimeout = requirePositive(timeout);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder writeTimeout(Duration timeout) {
+    this.writeTimeout = requirePositive(timeout);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder requestTimeout(Duration timeout) {
+    this.requestTimeout = requirePositive(timeout);
+    return this;
+  }
+
+  private static Duration requirePositive(Duration timeout) {
+    if (timeout.isNegative() || timeout.isZero())
+      throw new IllegalArgumentException("non-positive timeout: " + timeout);
+    return timeout;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder executor(Executor executor) {
+    this.executor = requireNonNull(executor);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder maxConnectionsPerHost(int maxConnections) {
+    if (maxConnections <= 0)
+      throw new IllegalArgumentException(
+          "non-positive number of connections: " + maxConnections);
+    this.maxConnectionsPerHost = maxConnections;
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder tcpNoDelay(boolean tcpNoDelay) {
+    this.tcpNoDelay = tcpNoDelay;
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder keepAlive(boolean keepAlive) {
+    this.keepAlive = keepAlive;
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder sendBufferSize(int size) {
+    if (size <= 0)
+      throw new IllegalArgumentException("non-positive buffer size: " + size);
+    this.sendBufferSize = size;
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder receiveBufferSize(int size) {
+    if (size <= 0)
+      throw new IllegalArgumentException("non-positive buffer size: " + size);
+    this.receiveBufferSize = size;
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder localAddress(InetAddress address) {
+    this.localAddress = requireNonNull(address);
+    return this;
+  }
+
+  @Override
+  public SimpleHttpClientBuilder maxWebSocketFrameSize(int size) {
+    if (size <= 0)
+      throw new IllegalArgumentException("non-positive frame size: " + size);
+    this.maxWebSocketFrameSize = size;
+    return this;
+  }
+
+  /**
+   * Returns a new client. The socket options apply to the direct TLS connections,
+   * whose sockets the client creates; {@code HttpURLConnection} creates the sockets of
+   * plain HTTP connections and proxy tunnels itself and offers no way to configure
+   * them. The idle connections kept for reuse are limited per host by the JVM-wide
+   * {@code http.maxConnections} system property.
+   */
+  @Override
+  public HttpClient build() {
+    if (/** @j2sNative false && */true) {
+      HttpClient client = new SimpleHttpClient(this);
+      if (maxConnectionsPerHost > 0) {
+        int limit = maxConnectionsPerHost;
+        client = new ConcurrencyLimitingHttpClient(client, () -> new FixedLimit(limit));
+      }
+      return client;
+    }
+    else
+      return new JQueryHttpClient();
+  }
+}
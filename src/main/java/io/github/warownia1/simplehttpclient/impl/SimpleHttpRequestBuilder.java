@@ -48,6 +48,23 @@ public class SimpleHttpRequestBuilder implements HttpRequest.Builder {
   HttpHeadersBuilder headers = new HttpHeadersBuilder();
   HttpRequest.Body body = EmptyRequestBody.getInstance();
   Duration timeout;
+  boolean expectContinue = false;
+
+  public static SimpleHttpRequestBuilder copyOf(HttpRequest request) {
+    requireNonNull(request);
+    SimpleHttpRequestBuilder builder = new SimpleHttpRequestBuilder();
+    builder.uri = request.uri();
+    builder.method = request.method();
+    request.headers().map().forEach((name, values) -> {
+      for (String value : values) {
+        builder.headers.addHeader(name, value);
+      }
+    });
+    builder.body = request.body().orElse(EmptyRequestBody.getInstance());
+    builder.timeout = request.timeout().orElse(null);
+    builder.expectContinue = request.expectContinue();
+    return builder;
+  }
 
   @Override
   public SimpleHttpRequestBuilder uri(URI uri) {
@@ -126,6 +143,12 @@ public class SimpleHttpRequestBuilder implements HttpRequest.Builder {
     return this;
   }
 
+  @Override
+  public SimpleHttpRequestBuilder expectContinue(boolean enable) {
+    this.expectContinue = enable;
+    return this;
+  }
+
   @Override
   public ImmutableHttpRequest build() {
     if (uri == null)
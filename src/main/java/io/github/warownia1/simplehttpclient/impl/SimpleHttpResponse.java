@@ -29,6 +29,7 @@ import io.github.warownia1.simplehttpclient.HttpRequest;
 import io.github.warownia1.simplehttpclient.HttpResponse;
 
 import java.net.URI;
+import java.util.Optional;
 
 public class SimpleHttpResponse<T> implements HttpResponse<T> {
 
@@ -37,14 +38,21 @@ public class SimpleHttpResponse<T> implements HttpResponse<T> {
   private final HttpHeaders headers;
   private final T body;
   private final URI uri;
+  private final Timings timings;
 
   public SimpleHttpResponse(int statusCode, HttpRequest request,
       HttpHeaders headers, T body, URI uri) {
+    this(statusCode, request, headers, body, uri, null);
+  }
+
+  public SimpleHttpResponse(int statusCode, HttpRequest request,
+      HttpHeaders headers, T body, URI uri, Timings timings) {
     this.statusCode = statusCode;
     this.request = request;
     this.headers = headers;
     this.body = body;
     this.uri = uri;
+    this.timings = timings;
   }
 
   @Override
@@ -72,4 +80,9 @@ public class SimpleHttpResponse<T> implements HttpResponse<T> {
     return uri;
   }
 
+  @Override
+  public Optional<Timings> timings() {
+    return Optional.ofNullable(timings);
+  }
+
 }
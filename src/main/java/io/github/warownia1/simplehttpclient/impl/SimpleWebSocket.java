@@ -0,0 +1,910 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.CookieHandler;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A WebSocket client of RFC 6455 over a socket of its own.
+ * <p>
+ * {@code HttpURLConnection} does not give up its socket after a protocol upgrade, so the
+ * opening handshake is written and read by this class, from the URI and the headers of
+ * an ordinary {@link HttpRequest}. The request may offer subprotocols in the
+ * {@code Sec-WebSocket-Protocol} header and the permessage-deflate extension of
+ * RFC 7692 in the {@code Sec-WebSocket-Extensions} header. Compression is only used if
+ * the server accepts it; the client window of {@code java.util.zip} is fixed at 15 bits,
+ * so a server limiting it is refused.
+ * <p>
+ * The frames are read by a task of the executor into a buffer reused for all frames,
+ * and the buffer is passed to the listener without copying. The task waits for demand
+ * before reading each frame, so a listener which does not request more messages stops
+ * the reads. A frame whose payload, or whose decompressed payload, is larger than the
+ * maximum frame size fails the WebSocket with status {@code 1009}.
+ * <p>
+ * Through an HTTP proxy the connection is tunnelled with a {@code CONNECT} request;
+ * a SOCKS proxy is used by the socket itself. The responses of the handshake and of the
+ * tunnel are read with the timeout of the request, or with a default of 30 seconds if
+ * the request has none.
+ */
+public final class SimpleWebSocket implements WebSocket {
+
+  private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+  private static final byte[] DEFLATE_TAIL = {0, 0, (byte) 0xff, (byte) 0xff};
+  private static final Set<String> RESERVED_HEADERS = new TreeSet<>(
+      String.CASE_INSENSITIVE_ORDER);
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  static {
+    RESERVED_HEADERS.addAll(List.of("Host", "Upgrade", "Connection", "Sec-WebSocket-Key",
+        "Sec-WebSocket-Version", "Content-Length", "Transfer-Encoding"));
+  }
+
+  private static final int OP_CONTINUATION = 0x0;
+  private static final int OP_TEXT = 0x1;
+  private static final int OP_BINARY = 0x2;
+  private static final int OP_CLOSE = 0x8;
+  private static final int OP_PING = 0x9;
+  private static final int OP_PONG = 0xA;
+
+  private static final int MAX_CONTROL_PAYLOAD = 125;
+  private static final int NO_STATUS_CODE = 1005;
+  private static final int PROTOCOL_ERROR = 1002;
+  private static final int INVALID_DATA = 1007;
+  private static final int MESSAGE_TOO_BIG = 1009;
+  private static final int INTERNAL_ERROR = 1011;
+
+  static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+  private static final int DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = 30_000;
+
+  /**
+   * A violation of the protocol by the server, which fails the connection with the
+   * status code.
+   */
+  private static final class ProtocolViolation extends ProtocolException {
+    final int statusCode;
+
+    ProtocolViolation(int statusCode, String message) {
+      super(message);
+      this.statusCode = statusCode;
+    }
+  }
+
+  private final Socket socket;
+  private final InputStream in;
+  private final OutputStream out;
+  private final Listener listener;
+  private final String subprotocol;
+  private final int maxFrameSize;
+
+  // guarded by writeLock
+  private final Object writeLock = new Object();
+  private final byte[] mask = new byte[4];
+  private final byte[] writeBuffer = new byte[8192];
+  private final Deflater deflater;
+  private final boolean clientNoContextTakeover;
+  private byte[] deflated = new byte[1024];
+  private int sendingMessage = -1;
+  private volatile boolean outputClosed = false;
+
+  // accessed by the reading task only
+  private final Inflater inflater;
+  private final boolean serverNoContextTakeover;
+  private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+  private final ByteBuffer textCarry = ByteBuffer.allocate(4);
+  private byte[] payload = new byte[1024];
+  private byte[] inflated = new byte[1024];
+  private int receivingMessage = -1;
+  private boolean receivingCompressed = false;
+
+  private final Object demandLock = new Object();
+  private long demand = 0;
+  private volatile boolean inputClosed = false;
+  private volatile boolean aborted = false;
+
+  private SimpleWebSocket(Socket socket, InputStream in, OutputStream out, Listener listener,
+      String subprotocol, Map<String, String> deflateParameters, int maxFrameSize) {
+    this.socket = socket;
+    this.in = in;
+    this.out = out;
+    this.listener = listener;
+    this.subprotocol = subprotocol;
+    this.maxFrameSize = maxFrameSize;
+    if (deflateParameters != null) {
+      deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      inflater = new Inflater(true);
+      clientNoContextTakeover = deflateParameters.containsKey("client_no_context_takeover");
+      serverNoContextTakeover = deflateParameters.containsKey("server_no_context_takeover");
+    }
+    else {
+      deflater = null;
+      inflater = null;
+      clientNoContextTakeover = false;
+      serverNoContextTakeover = false;
+    }
+  }
+
+  /**
+   * Opens a WebSocket to the URI of the request, connecting to an {@code http} URI as
+   * {@code ws} and to an {@code https} URI as {@code wss}.
+   *
+   * @param request the request of the opening handshake
+   * @param listener the listener of the received messages
+   * @param executor the executor running the task reading the messages
+   * @return the open WebSocket
+   * @throws ProtocolException if the server refuses the handshake
+   * @throws IOException if the connection fails
+   * @throws IllegalArgumentException if a header contains a line break
+   */
+  public static WebSocket connect(HttpRequest request, Listener listener, Executor executor)
+      throws IOException {
+    return connect(request, listener, executor, Proxy.NO_PROXY, null, null, null,
+        DEFAULT_MAX_FRAME_SIZE);
+  }
+
+  /**
+   * Opens a WebSocket through the proxy, attaching the cookies of the cookie handler to
+   * the handshake if it is not null.
+   */
+  static WebSocket connect(HttpRequest request, Listener listener, Executor executor,
+      Proxy proxy, CookieHandler cookieHandler, SocketOptions options,
+      Duration connectTimeout, int maxFrameSize) throws IOException {
+    requireNonNull(listener);
+    requireNonNull(executor);
+    HttpHead.checkHeaders(request);
+    URI uri = request.uri();
+    boolean secure = uri.getScheme().equalsIgnoreCase("https");
+    if (uri.getHost() == null)
+      throw new IllegalArgumentException("no host in " + uri);
+    String host = uri.getHost();
+    if (host.startsWith("["))
+      host = host.substring(1, host.length() - 1);
+    int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+    Duration timeout = request.timeout().orElse(connectTimeout);
+    int timeoutMillis = timeout != null
+        ? (int) Math.min(Math.max(timeout.toMillis(), 1), Integer.MAX_VALUE) : 0;
+    int handshakeTimeoutMillis = request.timeout().isPresent()
+        ? timeoutMillis : DEFAULT_HANDSHAKE_TIMEOUT_MILLIS;
+    Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+    try {
+      if (options != null)
+        options.apply(socket);
+      if (proxy.type() == Proxy.Type.HTTP) {
+        socket.connect(proxyAddress(proxy), timeoutMillis);
+        socket.setSoTimeout(handshakeTimeoutMillis);
+        tunnel(socket, host, port);
+      }
+      else if (proxy.type() == Proxy.Type.SOCKS) {
+        // the proxy resolves the host
+        socket.connect(InetSocketAddress.createUnresolved(host, port), timeoutMillis);
+      }
+      else {
+        socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+      }
+      if (secure) {
+        SSLSocket sslSocket = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory()
+            .createSocket(socket, host, port, true);
+        SSLParameters parameters = sslSocket.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(parameters);
+        socket = sslSocket;
+      }
+      socket.setSoTimeout(handshakeTimeoutMillis);
+      SimpleWebSocket webSocket = handshake(socket, request, listener, cookieHandler,
+          maxFrameSize);
+      socket.setSoTimeout(0);
+      try {
+        executor.execute(webSocket::run);
+      }
+      catch (RejectedExecutionException e) {
+        webSocket.abort();
+        webSocket.endInflater();
+        throw e;
+      }
+      return webSocket;
+    }
+    catch (IOException | RuntimeException e) {
+      closeQuietly(socket);
+      throw e;
+    }
+  }
+
+  private static InetSocketAddress proxyAddress(Proxy proxy) {
+    if (!(proxy.address() instanceof InetSocketAddress))
+      throw new IllegalArgumentException("unsupported proxy address: " + proxy.address());
+    InetSocketAddress address = (InetSocketAddress) proxy.address();
+    return address.isUnresolved()
+        ? new InetSocketAddress(address.getHostString(), address.getPort()) : address;
+  }
+
+  /**
+   * Opens a tunnel to the host through the HTTP proxy the socket is connected to. The
+   * response of the proxy is read without buffering, so that no bytes of the tunnelled
+   * connection are consumed.
+   */
+  private static void tunnel(Socket socket, String host, int port) throws IOException {
+    String authority = (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port;
+    OutputStream out = socket.getOutputStream();
+    HttpHead.write(out, "CONNECT " + authority + " HTTP/1.1\r\n" +
+        "Host: " + authority + "\r\n\r\n");
+    out.flush();
+    InputStream in = socket.getInputStream();
+    int statusCode = HttpHead.parseStatus(HttpHead.readLine(in));
+    // the headers of the proxy are of no use
+    HttpHead.readHeaders(in);
+    if (statusCode < 200 || statusCode >= 300)
+      throw new ProtocolException("proxy refused the tunnel with status " + statusCode);
+  }
+
+  private static SimpleWebSocket handshake(Socket socket, HttpRequest request,
+      Listener listener, CookieHandler cookieHandler, int maxFrameSize)
+      throws IOException {
+    URI uri = request.uri();
+    byte[] nonce = new byte[16];
+    RANDOM.nextBytes(nonce);
+    String key = Base64.getEncoder().encodeToString(nonce);
+    String authority = uri.getPort() != -1 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+    StringBuilder head = new StringBuilder()
+        .append("GET ").append(HttpHead.requestTarget(uri)).append(" HTTP/1.1\r\n")
+        .append("Host: ").append(authority).append("\r\n")
+        .append("Upgrade: websocket\r\n")
+        .append("Connection: Upgrade\r\n")
+        .append("Sec-WebSocket-Key: ").append(key).append("\r\n")
+        .append("Sec-WebSocket-Version: 13\r\n");
+    HttpHead.withCookies(request, cookieHandler).forEach((name, values) -> {
+      if (!RESERVED_HEADERS.contains(name)) {
+        for (String value : values) {
+          head.append(name).append(": ").append(value).append("\r\n");
+        }
+      }
+    });
+    head.append("\r\n");
+    OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+    HttpHead.write(out, head);
+    out.flush();
+
+    InputStream in = new BufferedInputStream(socket.getInputStream());
+    int statusCode = HttpHead.parseStatus(HttpHead.readLine(in));
+    HttpHeaders headers = HttpHead.readHeaders(in);
+    if (cookieHandler != null)
+      cookieHandler.put(uri, headers.map());
+    if (statusCode != 101)
+      throw new ProtocolException("WebSocket handshake refused with status " + statusCode);
+    if (!headers.firstValue("Upgrade").orElse("").equalsIgnoreCase("websocket"))
+      throw new ProtocolException("missing Upgrade: websocket header");
+    if (!HttpHead.hasToken(headers, "Connection", "upgrade"))
+      throw new ProtocolException("missing Connection: upgrade header");
+    if (!headers.firstValue("Sec-WebSocket-Accept").orElse("").equals(acceptKey(key)))
+      throw new ProtocolException("invalid Sec-WebSocket-Accept header");
+
+    String subprotocol = headers.firstValue("Sec-WebSocket-Protocol").orElse("");
+    if (!subprotocol.isEmpty() &&
+        !HttpHead.hasToken(request.headers(), "Sec-WebSocket-Protocol", subprotocol))
+      throw new ProtocolException("subprotocol not offered: " + subprotocol);
+    Map<String, String> deflateParameters = null;
+    List<String> extensions = headers.allValues("Sec-WebSocket-Extensions");
+    if (!extensions.isEmpty()) {
+      boolean offered = hasExtension(
+          request.headers().allValues("Sec-WebSocket-Extensions"), "permessage-deflate");
+      deflateParameters = parseDeflate(extensions);
+      if (!offered)
+        throw new ProtocolException("extension not offered: " + extensions);
+    }
+    return new SimpleWebSocket(socket, in, out, listener, subprotocol, deflateParameters,
+        maxFrameSize);
+  }
+
+  /**
+   * Returns the parameters of the permessage-deflate extension accepted by the server,
+   * which must be the only extension.
+   */
+  private static Map<String, String> parseDeflate(List<String> extensions)
+      throws ProtocolException {
+    String value = String.join(",", extensions);
+    if (value.contains(","))
+      throw new ProtocolException("unsupported extensions: " + value);
+    String[] parts = value.split(";");
+    if (!parts[0].trim().equalsIgnoreCase("permessage-deflate"))
+      throw new ProtocolException("unsupported extension: " + value);
+    Map<String, String> parameters = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (int i = 1; i < parts.length; i++) {
+      String[] parameter = parts[i].split("=", 2);
+      String name = parameter[0].trim();
+      String argument = parameter.length > 1 ? parameter[1].trim().replace("\"", "") : "";
+      if (parameters.put(name, argument) != null)
+        throw new ProtocolException("repeated extension parameter: " + name);
+      switch (name.toLowerCase(Locale.ROOT)) {
+        case "server_no_context_takeover":
+        case "client_no_context_takeover":
+          break;
+        case "server_max_window_bits":
+          if (!argument.matches("8|9|1[0-5]"))
+            throw new ProtocolException("invalid server_max_window_bits: " + argument);
+          break;
+        case "client_max_window_bits":
+          // the window of java.util.zip cannot be made smaller
+          if (!argument.equals("15"))
+            throw new ProtocolException("unsupported client_max_window_bits: " + argument);
+          break;
+        default:
+          throw new ProtocolException("unknown extension parameter: " + name);
+      }
+    }
+    return parameters;
+  }
+
+  private static boolean hasExtension(List<String> values, String extension) {
+    for (String value : values) {
+      for (String offer : value.split(",")) {
+        if (offer.split(";")[0].trim().equalsIgnoreCase(extension))
+          return true;
+      }
+    }
+    return false;
+  }
+
+  static String acceptKey(String key) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash = digest.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+      return Base64.getEncoder().encodeToString(hash);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // reading
+
+  private void run() {
+    try {
+      listener.onOpen(this);
+      while (!inputClosed && awaitDemand()) {
+        readFrame();
+      }
+    }
+    catch (ProtocolViolation e) {
+      fail(e.statusCode, e);
+    }
+    catch (IOException e) {
+      fail(0, e);
+    }
+    catch (RuntimeException | Error e) {
+      fail(INTERNAL_ERROR, e);
+    }
+    finally {
+      endInflater();
+    }
+  }
+
+  /**
+   * Releases the native memory of the decompressor once no more frames are read.
+   */
+  private void endInflater() {
+    if (inflater != null)
+      inflater.end();
+  }
+
+  /**
+   * Releases the native memory of the compressor once no more frames are written.
+   * Called while holding the write lock.
+   */
+  private void endDeflater() {
+    if (deflater != null)
+      deflater.end();
+  }
+
+  private boolean awaitDemand() throws InterruptedIOException {
+    synchronized (demandLock) {
+      while (demand == 0 && !aborted) {
+        try {
+          demandLock.wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted waiting for demand");
+        }
+      }
+      if (aborted)
+        return false;
+      demand--;
+      return true;
+    }
+  }
+
+  /**
+   * Reads the next frame and passes it to the listener.
+   */
+  private void readFrame() throws IOException {
+    int b0 = in.read();
+    if (b0 < 0)
+      throw new EOFException("connection closed without a close frame");
+    int b1 = readByte();
+    boolean fin = (b0 & 0x80) != 0;
+    boolean rsv1 = (b0 & 0x40) != 0;
+    int opcode = b0 & 0x0f;
+    if ((b0 & 0x30) != 0)
+      throw new ProtocolViolation(PROTOCOL_ERROR, "reserved bits set");
+    if ((b1 & 0x80) != 0)
+      throw new ProtocolViolation(PROTOCOL_ERROR, "masked frame from the server");
+    long length = b1 & 0x7f;
+    if (length == 126)
+      length = (readByte() << 8) | readByte();
+    else if (length == 127) {
+      length = 0;
+      for (int i = 0; i < 8; i++) {
+        length = (length << 8) | readByte();
+      }
+      if (length < 0)
+        throw new ProtocolViolation(PROTOCOL_ERROR, "invalid frame length");
+    }
+    if (opcode >= OP_CLOSE && (!fin || rsv1 || length > MAX_CONTROL_PAYLOAD))
+      throw new ProtocolViolation(PROTOCOL_ERROR, "invalid control frame");
+    if (length > maxFrameSize)
+      throw new ProtocolViolation(MESSAGE_TOO_BIG, "frame of " + length + " bytes");
+    ByteBuffer data = readPayload((int) length);
+    switch (opcode) {
+      case OP_CONTINUATION:
+        if (receivingMessage < 0 || rsv1)
+          throw new ProtocolViolation(PROTOCOL_ERROR, "unexpected continuation frame");
+        receiveData(receivingMessage, data, fin);
+        break;
+      case OP_TEXT:
+      case OP_BINARY:
+        if (receivingMessage >= 0)
+          throw new ProtocolViolation(PROTOCOL_ERROR, "message interrupted by another");
+        if (rsv1 && inflater == null)
+          throw new ProtocolViolation(PROTOCOL_ERROR, "compressed frame not negotiated");
+        receivingCompressed = rsv1;
+        receiveData(opcode, data, fin);
+        break;
+      case OP_CLOSE:
+        receiveClose(data);
+        break;
+      case OP_PING:
+        synchronized (writeLock) {
+          if (!outputClosed)
+            writeFrame(OP_PONG, false, true, data.duplicate());
+        }
+        listener.onPing(this, data);
+        break;
+      case OP_PONG:
+        listener.onPong(this, data);
+        break;
+      default:
+        throw new ProtocolViolation(PROTOCOL_ERROR, "unknown opcode " + opcode);
+    }
+  }
+
+  private int readByte() throws IOException {
+    int b = in.read();
+    if (b < 0)
+      throw new EOFException("connection closed in the middle of a frame");
+    return b;
+  }
+
+  /**
+   * Reads the payload into the buffer shared by all frames.
+   */
+  private ByteBuffer readPayload(int length) throws IOException {
+    if (payload.length < length)
+      payload = new byte[
+          (int) Math.min(Math.max(length, payload.length * 2L), maxFrameSize)];
+    int offset = 0;
+    while (offset < length) {
+      int count = in.read(payload, offset, length - offset);
+      if (count < 0)
+        throw new EOFException("connection closed in the middle of a frame");
+      offset += count;
+    }
+    return ByteBuffer.wrap(payload, 0, length);
+  }
+
+  private void receiveData(int type, ByteBuffer data, boolean fin) throws IOException {
+    if (receivingCompressed)
+      data = inflate(data, fin);
+    receivingMessage = fin ? -1 : type;
+    if (type == OP_TEXT)
+      listener.onText(this, decodeText(data, fin), fin);
+    else
+      listener.onBinary(this, data, fin);
+  }
+
+  private ByteBuffer inflate(ByteBuffer data, boolean fin) throws ProtocolViolation {
+    try {
+      inflater.setInput(data.array(), data.arrayOffset() + data.position(), data.remaining());
+      int total = inflateInto(0);
+      if (fin) {
+        inflater.setInput(DEFLATE_TAIL);
+        total = inflateInto(total);
+        if (serverNoContextTakeover)
+          inflater.reset();
+      }
+      return ByteBuffer.wrap(inflated, 0, total);
+    }
+    catch (DataFormatException e) {
+      throw new ProtocolViolation(INVALID_DATA, "invalid compressed data: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Inflates the input into the shared buffer, which may grow to one byte over the
+   * maximum frame size to tell a frame of the maximum size from a larger one.
+   */
+  private int inflateInto(int total) throws DataFormatException, ProtocolViolation {
+    while (true) {
+      if (total == inflated.length) {
+        if (total > maxFrameSize)
+          throw new ProtocolViolation(MESSAGE_TOO_BIG, "decompressed frame over " +
+              maxFrameSize + " bytes");
+        inflated = Arrays.copyOf(inflated,
+            (int) Math.min(inflated.length * 2L, maxFrameSize + 1L));
+      }
+      int count = inflater.inflate(inflated, total, inflated.length - total);
+      total += count;
+      if (count == 0) {
+        if (inflater.needsDictionary())
+          throw new DataFormatException("preset dictionary required");
+        if (inflater.needsInput() || inflater.finished()) {
+          if (total > maxFrameSize)
+            throw new ProtocolViolation(MESSAGE_TOO_BIG, "decompressed frame over " +
+                maxFrameSize + " bytes");
+          return total;
+        }
+      }
+    }
+  }
+
+  /**
+   * Decodes a part of a text message, keeping the bytes of a character split between
+   * the parts for the next part.
+   */
+  private CharSequence decodeText(ByteBuffer data, boolean fin) throws ProtocolViolation {
+    ByteBuffer input = data;
+    if (textCarry.position() > 0) {
+      textCarry.flip();
+      input = ByteBuffer.allocate(textCarry.remaining() + data.remaining());
+      input.put(textCarry).put(data).flip();
+      textCarry.clear();
+    }
+    CharBuffer chars = CharBuffer.allocate(input.remaining() + 1);
+    CoderResult result = decoder.decode(input, chars, fin);
+    if (!result.isError() && fin)
+      result = decoder.flush(chars);
+    if (result.isError())
+      throw new ProtocolViolation(INVALID_DATA, "invalid UTF-8 text");
+    if (fin) {
+      decoder.reset();
+    }
+    else {
+      if (input.remaining() > 3)
+        throw new ProtocolViolation(INVALID_DATA, "invalid UTF-8 text");
+      textCarry.put(input);
+    }
+    return chars.flip();
+  }
+
+  private void receiveClose(ByteBuffer data) throws IOException {
+    int statusCode = NO_STATUS_CODE;
+    String reason = "";
+    if (data.remaining() == 1)
+      throw new ProtocolViolation(PROTOCOL_ERROR, "truncated close frame");
+    if (data.remaining() >= 2) {
+      statusCode = data.getShort() & 0xffff;
+      if (!isValidStatusCode(statusCode))
+        throw new ProtocolViolation(PROTOCOL_ERROR, "invalid close status " + statusCode);
+      try {
+        reason = StandardCharsets.UTF_8.newDecoder().decode(data).toString();
+      }
+      catch (CharacterCodingException e) {
+        throw new ProtocolViolation(INVALID_DATA, "invalid UTF-8 close reason");
+      }
+    }
+    inputClosed = true;
+    try {
+      synchronized (writeLock) {
+        try {
+          if (!outputClosed) {
+            outputClosed = true;
+            writeFrame(OP_CLOSE, false, true, closePayload(
+                statusCode == NO_STATUS_CODE ? NORMAL_CLOSURE : statusCode, ""));
+          }
+        }
+        finally {
+          endDeflater();
+        }
+      }
+    }
+    finally {
+      closeQuietly(socket);
+    }
+    listener.onClose(this, statusCode, reason);
+  }
+
+  private void fail(int statusCode, Throwable error) {
+    if (aborted)
+      return;
+    inputClosed = true;
+    if (statusCode != 0) {
+      try {
+        synchronized (writeLock) {
+          if (!outputClosed) {
+            outputClosed = true;
+            writeFrame(OP_CLOSE, false, true, closePayload(statusCode, ""));
+          }
+        }
+      }
+      catch (IOException ignored) {
+      }
+    }
+    outputClosed = true;
+    closeQuietly(socket);
+    synchronized (writeLock) {
+      endDeflater();
+    }
+    try {
+      listener.onError(this, error);
+    }
+    catch (RuntimeException ignored) {
+    }
+  }
+
+  private static boolean isValidStatusCode(int code) {
+    return (code >= 1000 && code <= 1003) || (code >= 1007 && code <= 1014) ||
+        (code >= 3000 && code <= 4999);
+  }
+
+  private static ByteBuffer closePayload(int statusCode, String reason) {
+    byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(2 + text.length);
+    buffer.putShort((short) statusCode).put(text).flip();
+    return buffer;
+  }
+
+  // writing
+
+  @Override
+  public void sendText(CharSequence data, boolean last) throws IOException {
+    sendData(OP_TEXT, StandardCharsets.UTF_8.encode(CharBuffer.wrap(data)), last);
+  }
+
+  @Override
+  public void sendBinary(ByteBuffer data, boolean last) throws IOException {
+    sendData(OP_BINARY, data.duplicate(), last);
+  }
+
+  private void sendData(int type, ByteBuffer data, boolean last) throws IOException {
+    synchronized (writeLock) {
+      checkOutputOpen();
+      if (sendingMessage >= 0 && sendingMessage != type)
+        throw new IllegalStateException((sendingMessage == OP_TEXT ? "a text" : "a binary") +
+            " message is being sent");
+      boolean first = sendingMessage < 0;
+      if (deflater != null)
+        data = deflate(data, last);
+      writeFrame(first ? type : OP_CONTINUATION, deflater != null && first, last, data);
+      sendingMessage = last ? -1 : type;
+    }
+  }
+
+  private ByteBuffer deflate(ByteBuffer data, boolean last) {
+    if (data.hasArray()) {
+      deflater.setInput(data.array(), data.arrayOffset() + data.position(), data.remaining());
+    }
+    else {
+      byte[] copy = new byte[data.remaining()];
+      data.get(copy);
+      deflater.setInput(copy);
+    }
+    int total = 0;
+    while (true) {
+      int space = deflated.length - total;
+      int count = deflater.deflate(deflated, total, space, Deflater.SYNC_FLUSH);
+      total += count;
+      if (count < space)
+        break;
+      deflated = Arrays.copyOf(deflated, deflated.length * 2);
+    }
+    if (last) {
+      // the message ends without the empty block finishing the flush
+      if (total >= 4 && Arrays.equals(deflated, total - 4, total, DEFLATE_TAIL, 0, 4))
+        total -= 4;
+      if (clientNoContextTakeover)
+        deflater.reset();
+    }
+    return ByteBuffer.wrap(deflated, 0, total);
+  }
+
+  @Override
+  public void sendPing(ByteBuffer message) throws IOException {
+    sendControl(OP_PING, message);
+  }
+
+  @Override
+  public void sendPong(ByteBuffer message) throws IOException {
+    sendControl(OP_PONG, message);
+  }
+
+  private void sendControl(int opcode, ByteBuffer message) throws IOException {
+    if (message.remaining() > MAX_CONTROL_PAYLOAD)
+      throw new IllegalArgumentException("control message longer than 125 bytes");
+    synchronized (writeLock) {
+      checkOutputOpen();
+      writeFrame(opcode, false, true, message.duplicate());
+    }
+  }
+
+  @Override
+  public void sendClose(int statusCode, String reason) throws IOException {
+    if (!isValidStatusCode(statusCode))
+      throw new IllegalArgumentException("invalid status code: " + statusCode);
+    ByteBuffer data = closePayload(statusCode, reason);
+    if (data.remaining() > MAX_CONTROL_PAYLOAD)
+      throw new IllegalArgumentException("close reason longer than 123 bytes");
+    synchronized (writeLock) {
+      checkOutputOpen();
+      outputClosed = true;
+      try {
+        writeFrame(OP_CLOSE, false, true, data);
+      }
+      finally {
+        endDeflater();
+      }
+    }
+  }
+
+  private void checkOutputOpen() {
+    if (outputClosed)
+      throw new IllegalStateException("output closed");
+  }
+
+  /**
+   * Writes a frame masking the payload through a reused buffer. Called while holding the
+   * write lock.
+   */
+  private void writeFrame(int opcode, boolean rsv1, boolean fin, ByteBuffer data)
+      throws IOException {
+    int length = data.remaining();
+    out.write((fin ? 0x80 : 0) | (rsv1 ? 0x40 : 0) | opcode);
+    if (length < 126) {
+      out.write(0x80 | length);
+    }
+    else if (length <= 0xffff) {
+      out.write(0x80 | 126);
+      out.write(length >>> 8);
+      out.write(length);
+    }
+    else {
+      out.write(0x80 | 127);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        out.write((int) ((long) length >>> shift));
+      }
+    }
+    RANDOM.nextBytes(mask);
+    out.write(mask);
+    int offset = 0;
+    while (data.hasRemaining()) {
+      int count = Math.min(data.remaining(), writeBuffer.length);
+      data.get(writeBuffer, 0, count);
+      for (int i = 0; i < count; i++) {
+        writeBuffer[i] ^= mask[(offset + i) & 3];
+      }
+      out.write(writeBuffer, 0, count);
+      offset += count;
+    }
+    out.flush();
+  }
+
+  @Override
+  public void request(long n) {
+    if (n <= 0)
+      throw new IllegalArgumentException("non-positive demand: " + n);
+    synchronized (demandLock) {
+      demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      demandLock.notifyAll();
+    }
+  }
+
+  @Override
+  public String getSubprotocol() {
+    return subprotocol;
+  }
+
+  @Override
+  public boolean isOutputClosed() {
+    return outputClosed;
+  }
+
+  @Override
+  public boolean isInputClosed() {
+    return inputClosed;
+  }
+
+  @Override
+  public void abort() {
+    synchronized (demandLock) {
+      aborted = true;
+      demandLock.notifyAll();
+    }
+    inputClosed = true;
+    outputClosed = true;
+    closeQuietly(socket);
+    // a sender blocked on the socket has failed and released the lock
+    synchronized (writeLock) {
+      endDeflater();
+    }
+  }
+
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    }
+    catch (IOException ignored) {
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * The socket options of the connections opened by a client. The unset options keep
+ * the defaults of the platform.
+ */
+final class SocketOptions {
+
+  private final Boolean tcpNoDelay;
+  private final Boolean keepAlive;
+  private final int sendBufferSize;
+  private final int receiveBufferSize;
+  private final InetAddress localAddress;
+
+  SocketOptions(Boolean tcpNoDelay, Boolean keepAlive, int sendBufferSize,
+      int receiveBufferSize, InetAddress localAddress) {
+    this.tcpNoDelay = tcpNoDelay;
+    this.keepAlive = keepAlive;
+    this.sendBufferSize = sendBufferSize;
+    this.receiveBufferSize = receiveBufferSize;
+    this.localAddress = localAddress;
+  }
+
+  boolean isDefault() {
+    return tcpNoDelay == null && keepAlive == null && sendBufferSize == 0 &&
+        receiveBufferSize == 0 && localAddress == null;
+  }
+
+  /**
+   * Sets the options of an unconnected socket and binds it to the local address.
+   */
+  void apply(Socket socket) throws IOException {
+    if (tcpNoDelay != null)
+      socket.setTcpNoDelay(tcpNoDelay);
+    if (keepAlive != null)
+      socket.setKeepAlive(keepAlive);
+    if (sendBufferSize > 0)
+      socket.setSendBufferSize(sendBufferSize);
+    // the receive buffer must be set before connecting to affect the TCP window
+    if (receiveBufferSize > 0)
+      socket.setReceiveBufferSize(receiveBufferSize);
+    if (localAddress != null)
+      socket.bind(new InetSocketAddress(localAddress, 0));
+  }
+}
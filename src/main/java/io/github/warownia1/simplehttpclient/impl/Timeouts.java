@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timer of the timeouts of the clients.
+ * <p>
+ * A timeout which is cancelled is removed from the timer at once, so it does not keep
+ * its exchange, its connection or its response reachable until it would have expired.
+ * The tasks run on the timer thread and must be short.
+ */
+final class Timeouts {
+
+  private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+  private Timeouts() {
+  }
+
+  private static ScheduledThreadPoolExecutor newTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+      Thread thread = new Thread(task, "simplehttpclient-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
+  /**
+   * Runs the task after the delay unless the returned future is cancelled first.
+   *
+   * @param task the task to run
+   * @param delay the delay
+   * @param unit the unit of the delay
+   * @return the future cancelling the timeout
+   */
+  static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+    return TIMER.schedule(task, delay, unit);
+  }
+
+  /**
+   * Returns the number of the timeouts which are still pending.
+   */
+  static int pending() {
+    return TIMER.getQueue().size();
+  }
+}
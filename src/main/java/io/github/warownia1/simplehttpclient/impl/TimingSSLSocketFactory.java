@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * An {@link SSLSocketFactory} reporting the start of the TLS handshake to the exchange
+ * being connected on the current thread.
+ * <p>
+ * The connection asks the factory for an unconnected socket whenever it opens a new
+ * connection rather than taking one from the pool, which starts the connect of the
+ * exchange. The factory creates plain unconnected sockets only, which makes
+ * {@code HttpsURLConnection} connect a plain socket first and layer TLS over it once the
+ * TCP connection is established, so the layering call marks the end of the connect and
+ * the start of the handshake. The plain sockets attach themselves to the exchange
+ * reading the response body from them, which lets a cancelled exchange close the
+ * socket its reading thread is blocked on. A single wrapper is kept for the current default factory because the connection pool
+ * of {@code HttpsURLConnection} only reuses connections created by the same factory
+ * instance; a client with socket options keeps its own wrapper, so its connections
+ * are pooled apart from the others.
+ */
+final class TimingSSLSocketFactory extends SSLSocketFactory {
+
+  static final ThreadLocal<ExchangeTimings> CURRENT = new ThreadLocal<>();
+
+  private static volatile TimingSSLSocketFactory shared;
+
+  private final SSLSocketFactory delegate;
+  private final SocketOptions options;
+
+  private TimingSSLSocketFactory(SSLSocketFactory delegate, SocketOptions options) {
+    this.delegate = delegate;
+    this.options = options;
+  }
+
+  static SSLSocketFactory wrap(SSLSocketFactory factory) {
+    if (factory instanceof TimingSSLSocketFactory)
+      return factory;
+    TimingSSLSocketFactory wrapper = shared;
+    if (wrapper == null || wrapper.delegate != factory)
+      shared = wrapper = new TimingSSLSocketFactory(factory, null);
+    return wrapper;
+  }
+
+  /**
+   * Returns a new wrapper of the factory creating the sockets with the given options.
+   */
+  static TimingSSLSocketFactory wrap(SSLSocketFactory factory, SocketOptions options) {
+    return new TimingSSLSocketFactory(factory, options);
+  }
+
+  boolean wraps(SSLSocketFactory factory) {
+    return delegate == factory;
+  }
+
+  @Override
+  public Socket createSocket() throws IOException {
+    ExchangeTimings timings = CURRENT.get();
+    if (timings != null)
+      timings.newSocket();
+    Socket socket = new TrackedSocket();
+    if (options != null)
+      options.apply(socket);
+    return socket;
+  }
+
+  /**
+   * A socket attaching itself to the exchange reading from it, see
+   * {@link Cancellation#reading(Socket)}.
+   */
+  private static final class TrackedSocket extends Socket {
+    private InputStream in;
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+      if (in == null) {
+        in = new FilterInputStream(super.getInputStream()) {
+          @Override
+          public int read() throws IOException {
+            Cancellation.reading(TrackedSocket.this);
+            return super.read();
+          }
+
+          @Override
+          public int read(byte[] b, int off, int len) throws IOException {
+            Cancellation.reading(TrackedSocket.this);
+            return super.read(b, off, len);
+          }
+        };
+      }
+      return in;
+    }
+  }
+
+  @Override
+  public Socket createSocket(Socket s, String host, int port, boolean autoClose)
+      throws IOException {
+    ExchangeTimings timings = CURRENT.get();
+    if (timings != null)
+      timings.secureConnectStart();
+    return delegate.createSocket(s, host, port, autoClose);
+  }
+
+  @Override
+  public String[] getDefaultCipherSuites() {
+    return delegate.getDefaultCipherSuites();
+  }
+
+  @Override
+  public String[] getSupportedCipherSuites() {
+    return delegate.getSupportedCipherSuites();
+  }
+
+  @Override
+  public Socket createSocket(String host, int port) throws IOException {
+    return delegate.createSocket(host, port);
+  }
+
+  @Override
+  public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+      throws IOException {
+    return delegate.createSocket(host, port, localHost, localPort);
+  }
+
+  @Override
+  public Socket createSocket(InetAddress host, int port) throws IOException {
+    return delegate.createSocket(host, port);
+  }
+
+  @Override
+  public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+      int localPort) throws IOException {
+    return delegate.createSocket(address, port, localAddress, localPort);
+  }
+}
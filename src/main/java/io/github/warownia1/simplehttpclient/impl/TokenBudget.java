@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket which limits additional requests, such as hedges or retries,
+ * to a fraction of the original requests. Every original request deposits the ratio of a
+ * token and every additional request withdraws a whole token. The bucket starts full so
+ * that a burst of additional requests is allowed before the ratio takes effect.
+ */
+final class TokenBudget {
+
+  // tokens are kept in thousandths to allow fractional deposits
+  private static final long TOKEN = 1000;
+
+  private final AtomicLong tokens;
+  private final long deposit;
+  private final long maxTokens;
+
+  TokenBudget(double ratio, int maxTokens) {
+    this.deposit = Math.round(ratio * TOKEN);
+    this.maxTokens = maxTokens * TOKEN;
+    this.tokens = new AtomicLong(this.maxTokens);
+  }
+
+  void deposit() {
+    tokens.getAndUpdate(t -> Math.min(maxTokens, t + deposit));
+  }
+
+  boolean tryWithdraw() {
+    long t;
+    do {
+      t = tokens.get();
+      if (t < TOKEN)
+        return false;
+    } while (!tokens.compareAndSet(t, t - TOKEN));
+    return true;
+  }
+
+  double available() {
+    return (double) tokens.get() / TOKEN;
+  }
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2022, Mateusz Warowny.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation. This particular file is
+ * subject to the "Classpath" exception as provided in the LICENSE file
+ * that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Mateusz Warowny, mmzwarowny@dundee.ac.uk if you need
+ * additional information.
+ */
+
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodyHandler;
+import io.github.warownia1.simplehttpclient.WebSocket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpClient} sending all requests over HTTP/1.1 to a Unix domain socket,
+ * such as the one of a sidecar proxy or a local agent.
+ * <p>
+ * The requests keep their {@code http://} URIs, whose authority is sent in the
+ * {@code Host} header and whose path and query form the request target, but the
+ * connections skip the TCP stack entirely. Idle connections are kept for reuse, and a
+ * request without a body which finds its pooled connection closed by the server is
+ * retried once on a new connection. The timeout of a request covers the time until the
+ * response headers are received. Redirects are not followed.
+ * <p>
+ * Unix domain sockets require Java 16 or later and the constructors throw
+ * {@link UnsupportedOperationException} on older versions.
+ */
+public class UnixSocketHttpClient implements HttpClient {
+
+  private final Path socketPath;
+  private final int maxIdleConnections;
+  private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  public UnixSocketHttpClient(Path socketPath) {
+    this(socketPath, 16);
+  }
+
+  /**
+   * Creates a client connecting to the socket at the given path.
+   *
+   * @param socketPath the path of the socket file
+   * @param maxIdleConnections the maximum number of connections kept for reuse
+   * @throws IllegalArgumentException if the number of connections is negative
+   * @throws UnsupportedOperationException if the runtime does not support Unix domain
+   *     sockets
+   */
+  public UnixSocketHttpClient(Path socketPath, int maxIdleConnections) {
+    if (!UnixDomainSockets.isSupported())
+      throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later");
+    if (maxIdleConnections < 0)
+      throw new IllegalArgumentException("negative connection limit: " + maxIdleConnections);
+    this.socketPath = requireNonNull(socketPath);
+    this.maxIdleConnections = maxIdleConnections;
+  }
+
+  /**
+   * A connection to the socket with buffered streams.
+   */
+  private static final class Connection {
+    final SocketChannel channel;
+    final InputStream in;
+    final OutputStream out;
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+      this.in = new BufferedInputStream(Channels.newInputStream(channel));
+      this.out = new BufferedOutputStream(Channels.newOutputStream(channel));
+    }
+
+    void close() {
+      try {
+        channel.close();
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+
+  /**
+   * Thrown when a reused connection turns out to be closed before any part of the
+   * response was received.
+   */
+  private static final class StaleConnectionException extends IOException {
+    StaleConnectionException(IOException cause) {
+      super(cause.getMessage(), cause);
+    }
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler)
+      throws IOException {
+    requireNonNull(request.uri().getRawAuthority(), "request URI has no authority");
+    HttpHead.checkHeaders(request);
+    boolean retryable = request.body().map(body -> body.contentLength() == 0).orElse(true);
+    while (true) {
+      Connection connection = idle.pollFirst();
+      boolean reused = connection != null;
+      if (reused)
+        idleCount.decrementAndGet();
+      else
+        connection = new Connection(UnixDomainSockets.open(socketPath));
+      try {
+        return exchange(connection, request, handler, reused);
+      }
+      catch (StaleConnectionException e) {
+        connection.close();
+        if (!retryable)
+          throw e;
+      }
+      catch (IOException | RuntimeException e) {
+        connection.close();
+        throw e;
+      }
+    }
+  }
+
+  private <T> HttpResponse<T> exchange(Connection connection, HttpRequest request,
+      BodyHandler<T> handler, boolean reused) throws IOException {
+    AtomicBoolean timedOut = new AtomicBoolean();
+    ScheduledFuture<?> timer = request.timeout()
+        .map(timeout -> startTimer(connection, timeout, timedOut))
+        .orElse(null);
+    int statusCode;
+    HttpHeaders headers;
+    try {
+      String statusLine;
+      try {
+        writeRequest(connection.out, request);
+        statusLine = HttpHead.readLine(connection.in);
+        if (statusLine == null)
+          throw new EOFException("connection closed before the response");
+      }
+      catch (IOException e) {
+        // the server may close an idle connection at any time
+        throw reused ? new StaleConnectionException(e) : e;
+      }
+      statusCode = HttpHead.parseStatus(statusLine);
+      headers = HttpHead.readHeaders(connection.in);
+      // skip interim responses
+      while (statusCode >= 100 && statusCode < 200) {
+        statusCode = HttpHead.parseStatus(HttpHead.readLine(connection.in));
+        headers = HttpHead.readHeaders(connection.in);
+      }
+    }
+    catch (IOException e) {
+      if (timedOut.get())
+        throw new SocketTimeoutException("request timed out");
+      throw e;
+    }
+    finally {
+      if (timer != null)
+        timer.cancel(false);
+    }
+    if (timedOut.get())
+      throw new SocketTimeoutException("request timed out");
+    InputStream body = responseBody(connection, request, statusCode, headers);
+    ResponseInfoImpl responseInfo = new ResponseInfoImpl(statusCode, headers, Version.HTTP_1_1);
+    T result = handler.apply(responseInfo, body);
+    return new SimpleHttpResponse<>(statusCode, request, headers, result, request.uri());
+  }
+
+  /**
+   * Closes the connection when the timeout elapses. A timer cancelled before then does
+   * not run.
+   */
+  private static ScheduledFuture<?> startTimer(Connection connection, Duration timeout,
+      AtomicBoolean timedOut) {
+    return Timeouts.schedule(() -> {
+      timedOut.set(true);
+      connection.close();
+    }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private static void writeRequest(OutputStream out, HttpRequest request) throws IOException {
+    URI uri = request.uri();
+    StringBuilder head = new StringBuilder(256);
+    head.append(request.method()).append(' ')
+        .append(HttpHead.requestTarget(uri)).append(" HTTP/1.1\r\n");
+    boolean hostSet = false;
+    for (Map.Entry<String, List<String>> header : request.headers().map().entrySet()) {
+      String name = header.getKey();
+      // the body framing is decided by the client
+      if (name.equalsIgnoreCase("Content-Length") ||
+          name.equalsIgnoreCase("Transfer-Encoding"))
+        continue;
+      hostSet |= name.equalsIgnoreCase("Host");
+      for (String value : header.getValue()) {
+        head.append(name).append(": ").append(value).append("\r\n");
+      }
+    }
+    if (!hostSet) {
+      // the authority may carry user information, which is never sent
+      head.append("Host: ").append(uri.getHost());
+      if (uri.getPort() != -1)
+        head.append(':').append(uri.getPort());
+      head.append("\r\n");
+    }
+    HttpRequest.Body body = request.body().orElse(null);
+    long contentLength = body == null ? 0 : body.contentLength();
+    if (contentLength >= 0)
+      head.append("Content-Length: ").append(contentLength).append("\r\n");
+    else
+      head.append("Transfer-Encoding: chunked\r\n");
+    head.append("\r\n");
+    HttpHead.write(out, head);
+    if (contentLength > 0) {
+      body.writeTo(new NonClosingOutputStream(out));
+    }
+    else if (contentLength < 0) {
+      ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+      body.writeTo(chunked);
+      chunked.finish();
+    }
+    out.flush();
+  }
+
+  private InputStream responseBody(Connection connection, HttpRequest request,
+      int statusCode, HttpHeaders headers) throws IOException {
+    boolean keepAlive = !HttpHead.hasToken(headers, "Connection", "close");
+    if (request.method().equals("HEAD") || statusCode == 204 || statusCode == 304) {
+      release(connection, keepAlive);
+      return InputStream.nullInputStream();
+    }
+    if (HttpHead.hasToken(headers, "Transfer-Encoding", "chunked"))
+      return new ResponseBody(connection, new ChunkedInputStream(connection.in), keepAlive);
+    Optional<String> contentLength = headers.firstValue("Content-Length");
+    if (contentLength.isPresent()) {
+      long length;
+      try {
+        length = Long.parseLong(contentLength.get());
+      }
+      catch (NumberFormatException e) {
+        length = -1;
+      }
+      if (length < 0)
+        throw new ProtocolException("invalid content length: " + contentLength.get());
+      if (length == 0) {
+        release(connection, keepAlive);
+        return InputStream.nullInputStream();
+      }
+      return new ResponseBody(connection,
+          new FixedLengthInputStream(connection.in, length), keepAlive);
+    }
+    // the body is delimited by the end of the connection
+    return new ResponseBody(connection, connection.in, false);
+  }
+
+
+  private void release(Connection connection, boolean keepAlive) {
+    if (keepAlive && idleCount.incrementAndGet() <= maxIdleConnections) {
+      idle.offerFirst(connection);
+    }
+    else {
+      if (keepAlive)
+        idleCount.decrementAndGet();
+      connection.close();
+    }
+  }
+
+  /**
+   * The body of a response which returns the connection to the pool once it is read
+   * to the end, or closes the connection if it is closed before then.
+   */
+  private final class ResponseBody extends InputStream {
+    private final Connection connection;
+    private final InputStream in;
+    private final boolean keepAlive;
+    private boolean done = false;
+
+    ResponseBody(Connection connection, InputStream in, boolean keepAlive) {
+      this.connection = connection;
+      this.in = in;
+      this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (done)
+        return -1;
+      int b = in.read();
+      if (b < 0)
+        finish(true);
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (done)
+        return -1;
+      if (len == 0)
+        return 0;
+      int count = in.read(b, off, len);
+      if (count < 0)
+        finish(true);
+      return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return done ? 0 : in.available();
+    }
+
+    @Override
+    public void close() {
+      if (!done)
+        finish(false);
+    }
+
+    private void finish(boolean complete) {
+      done = true;
+      if (complete)
+        release(connection, keepAlive);
+      else
+        connection.close();
+    }
+  }
+
+  private static final class FixedLengthInputStream extends InputStream {
+    private final InputStream in;
+    private long remaining;
+
+    FixedLengthInputStream(InputStream in, long length) {
+      this.in = in;
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining == 0)
+        return -1;
+      int b = in.read();
+      if (b < 0)
+        throw new EOFException("unexpected end of body");
+      remaining--;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining == 0)
+        return -1;
+      int count = in.read(b, off, (int) Math.min(len, remaining));
+      if (count < 0)
+        throw new EOFException("unexpected end of body");
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(in.available(), remaining);
+    }
+  }
+
+  private static final class ChunkedInputStream extends InputStream {
+    private final InputStream in;
+    private long remaining = 0;
+    private boolean eof = false;
+
+    ChunkedInputStream(InputStream in) {
+      this.in = in;
+    }
+
+    private boolean nextChunk() throws IOException {
+      if (eof)
+        return false;
+      if (remaining == 0) {
+        String line = HttpHead.readLine(in);
+        if (line == null)
+          throw new EOFException("unexpected end of body");
+        int extension = line.indexOf(';');
+        try {
+          remaining = Long.parseLong(
+              (extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+        }
+        catch (NumberFormatException e) {
+          throw new ProtocolException("invalid chunk size: " + line);
+        }
+        if (remaining < 0)
+          throw new ProtocolException("invalid chunk size: " + line);
+        if (remaining == 0) {
+          // skip the trailers
+          String trailer;
+          while ((trailer = HttpHead.readLine(in)) != null && !trailer.isEmpty()) ;
+          eof = true;
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      if (!nextChunk())
+        return -1;
+      int count = in.read(b, off, (int) Math.min(len, remaining));
+      if (count < 0)
+        throw new EOFException("unexpected end of body");
+      remaining -= count;
+      if (remaining == 0 && !HttpHead.requireLine(in).isEmpty())
+        throw new ProtocolException("missing chunk terminator");
+      return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return eof ? 0 : (int) Math.min(in.available(), remaining);
+    }
+  }
+
+  private static class NonClosingOutputStream extends FilterOutputStream {
+    NonClosingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  private static final class ChunkedOutputStream extends NonClosingOutputStream {
+    ChunkedOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return;
+      out.write((Integer.toHexString(len) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+      out.write(b, off, len);
+      out.write('\r');
+      out.write('\n');
+    }
+
+    void finish() throws IOException {
+      out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      BodyHandler<T> handler, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return send(request, handler);
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * WebSockets are not supported over the Unix domain socket; the handshake would
+   * otherwise connect to the host of the URI over TCP.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public WebSocket newWebSocket(HttpRequest request, WebSocket.Listener listener,
+      Executor executor) {
+    throw new UnsupportedOperationException("WebSockets over Unix domain sockets");
+  }
+}
@@ -2,57 +2,277 @@ package io.github.warownia1.simplehttpclient.impl;
 
 import io.github.warownia1.simplehttpclient.HttpRequest;
 
-import java.io.UncheckedIOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 
+/**
+ * A builder of {@code application/x-www-form-urlencoded} request bodies.
+ * <p>
+ * Keys and values are percent-encoded the same way {@link java.net.URLEncoder} does with
+ * the UTF-8 charset, except that {@code '*'} is encoded as well, and the encoded bytes are
+ * written directly into the body buffer without creating intermediate strings.
+ * <p>
+ * A builder obtained from {@link #streaming()} does not encode the fields when they are
+ * appended, instead the returned body encodes them in small chunks while it is being
+ * written to the connection, so the encoded form is never held in memory as a whole.
+ */
 public class WWWFormURLEncodedRequestBodyBuilder {
 
-  private ByteBuffer bodyBuffer = ByteBuffer.allocate(256);
+  private static final byte[] HEX_DIGITS = {
+      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+  };
+
+  private static final boolean[] UNRESERVED = new boolean[0x80];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) UNRESERVED[c] = true;
+    for (char c = 'A'; c <= 'Z'; c++) UNRESERVED[c] = true;
+    for (char c = '0'; c <= '9'; c++) UNRESERVED[c] = true;
+    UNRESERVED['.'] = true;
+    UNRESERVED['-'] = true;
+    UNRESERVED['_'] = true;
+  }
+
+  // the longest encoding of a single code point is four percent-encoded bytes
+  private static final int MAX_ENCODED_CODE_POINT = 12;
+
+  private static final int STREAMING_CHUNK_SIZE = 8192;
+
+  private byte[] buffer;
+  private int count = 0;
+  private final ArrayList<String> fields;
+
+  public WWWFormURLEncodedRequestBodyBuilder() {
+    this(256);
+  }
+
+  /**
+   * Creates a builder with the given initial buffer capacity.
+   *
+   * @param initialCapacity the initial capacity of the body buffer in bytes
+   * @throws IllegalArgumentException if the capacity is negative
+   */
+  public WWWFormURLEncodedRequestBodyBuilder(int initialCapacity) {
+    if (initialCapacity < 0)
+      throw new IllegalArgumentException("negative capacity: " + initialCapacity);
+    this.buffer = new byte[initialCapacity];
+    this.fields = null;
+  }
+
+  private WWWFormURLEncodedRequestBodyBuilder(ArrayList<String> fields) {
+    this.buffer = null;
+    this.fields = fields;
+  }
+
+  /**
+   * Returns a builder which encodes the fields lazily while the built body is written.
+   *
+   * @return a new streaming builder
+   */
+  public static WWWFormURLEncodedRequestBodyBuilder streaming() {
+    return new WWWFormURLEncodedRequestBodyBuilder(new ArrayList<>());
+  }
 
   public WWWFormURLEncodedRequestBodyBuilder append(String key, String value) {
-    byte[] encodedKey, encodedValue;
-    try {
-      encodedKey = URLEncoder.encode(key, "UTF-8")
-              .replaceAll("\\*", "%2A")
-              .getBytes("UTF-8");
-      encodedValue = URLEncoder.encode(value, "UTF-8")
-              .replaceAll("\\*", "%2A")
-              .getBytes("UTF-8");
-    }
-    catch (UnsupportedEncodingException e) {
-      throw new UncheckedIOException(e);
+    if (fields != null) {
+      fields.add(key);
+      fields.add(value);
+      return this;
     }
     // additional two bytes for & and = characters
-    if (encodedKey.length + encodedValue.length + 2 >= bodyBuffer.remaining()) {
-      growBuffer(encodedKey.length + encodedValue.length + 2);
-    }
-    bodyBuffer.put((byte) '&')
-        .put(encodedKey)
-        .put((byte) '=')
-        .put(encodedValue);
+    ensureRemaining(encodedLength(key) + encodedLength(value) + 2);
+    if (count > 0)
+      buffer[count++] = '&';
+    count = encode(key, buffer, count);
+    buffer[count++] = '=';
+    count = encode(value, buffer, count);
     return this;
   }
 
-  private void growBuffer(int requiredRemaining) {
-    int requiredCapacity = bodyBuffer.position() + requiredRemaining;
-    int capacity = bodyBuffer.capacity();
-    while (capacity <= requiredCapacity) {
-      capacity += capacity / 2;
+  /**
+   * Appends all entries of the map in its iteration order. The buffer is grown once to
+   * fit all the entries assuming that most characters are encoded as a single byte.
+   *
+   * @param map the fields to append
+   * @return this builder
+   */
+  public WWWFormURLEncodedRequestBodyBuilder appendAll(Map<String, String> map) {
+    if (fields != null) {
+      fields.ensureCapacity(fields.size() + 2 * map.size());
     }
-    bodyBuffer.flip();
-    var newBuffer = ByteBuffer.allocate(capacity);
-    newBuffer.put(bodyBuffer);
-    bodyBuffer = newBuffer;
+    else {
+      long estimate = 0;
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        estimate += entry.getKey().length() + entry.getValue().length() + 2;
+      }
+      ensureRemaining((int) Math.min(estimate, Integer.MAX_VALUE - 8));
+    }
+    map.forEach(this::append);
+    return this;
+  }
+
+  private void ensureRemaining(int requiredRemaining) {
+    if (buffer.length - count >= requiredRemaining)
+      return;
+    long requiredCapacity = (long) count + requiredRemaining;
+    if (requiredCapacity > Integer.MAX_VALUE - 8)
+      throw new OutOfMemoryError("form body too large");
+    int capacity = Math.max(buffer.length * 2, 16);
+    if (capacity < requiredCapacity || capacity < 0)
+      capacity = (int) requiredCapacity;
+    buffer = Arrays.copyOf(buffer, capacity);
   }
 
   public HttpRequest.Body build() {
-    var buffer = bodyBuffer.duplicate();
-    buffer.flip();
-    if (buffer.limit() > 0)
-      buffer.get();
-    return new ByteArrayRequestBody(buffer.array(),
-        buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    if (fields != null)
+      return new StreamingBody(fields.toArray(new String[0]));
+    return new ByteArrayRequestBody(buffer, 0, count);
+  }
+
+  /**
+   * Returns the number of bytes the percent-encoded string occupies.
+   */
+  static int encodedLength(String s) {
+    int length = 0;
+    for (int i = 0; i < s.length(); ) {
+      int cp = s.codePointAt(i);
+      i += Character.charCount(cp);
+      length += encodedLength(cp);
+    }
+    return length;
+  }
+
+  private static int encodedLength(int cp) {
+    if (cp < 0x80)
+      return UNRESERVED[cp] || cp == ' ' ? 1 : 3;
+    if (cp < 0x800)
+      return 6;
+    if (cp < 0x10000)
+      // unpaired surrogates are replaced with a single '?'
+      return Character.isSurrogate((char) cp) ? 3 : 9;
+    return 12;
+  }
+
+  /**
+   * Percent-encodes the string into the array starting at the given position. The caller
+   * is responsible for ensuring the array has enough room for the encoded string.
+   *
+   * @return the position after the last written byte
+   */
+  static int encode(String s, byte[] dst, int pos) {
+    for (int i = 0; i < s.length(); ) {
+      int cp = s.codePointAt(i);
+      i += Character.charCount(cp);
+      pos = encode(cp, dst, pos);
+    }
+    return pos;
+  }
+
+  private static int encode(int cp, byte[] dst, int pos) {
+    if (cp < 0x80) {
+      if (UNRESERVED[cp])
+        dst[pos++] = (byte) cp;
+      else if (cp == ' ')
+        dst[pos++] = '+';
+      else
+        pos = percent(cp, dst, pos);
+    }
+    else if (cp < 0x800) {
+      pos = percent(0xC0 | (cp >> 6), dst, pos);
+      pos = percent(0x80 | (cp & 0x3F), dst, pos);
+    }
+    else if (cp < 0x10000) {
+      if (Character.isSurrogate((char) cp))
+        return percent('?', dst, pos);
+      pos = percent(0xE0 | (cp >> 12), dst, pos);
+      pos = percent(0x80 | ((cp >> 6) & 0x3F), dst, pos);
+      pos = percent(0x80 | (cp & 0x3F), dst, pos);
+    }
+    else {
+      pos = percent(0xF0 | (cp >> 18), dst, pos);
+      pos = percent(0x80 | ((cp >> 12) & 0x3F), dst, pos);
+      pos = percent(0x80 | ((cp >> 6) & 0x3F), dst, pos);
+      pos = percent(0x80 | (cp & 0x3F), dst, pos);
+    }
+    return pos;
+  }
+
+  private static int percent(int b, byte[] dst, int pos) {
+    dst[pos] = '%';
+    dst[pos + 1] = HEX_DIGITS[(b >> 4) & 0xF];
+    dst[pos + 2] = HEX_DIGITS[b & 0xF];
+    return pos + 3;
+  }
+
+  /**
+   * A form body that encodes its fields as they are written to the output stream.
+   * Fields are stored as an array of alternating keys and values.
+   */
+  static final class StreamingBody implements HttpRequest.Body {
+
+    private final String[] fields;
+    private final long contentLength;
+
+    StreamingBody(String[] fields) {
+      this.fields = fields;
+      long length = 0;
+      for (String field : fields) {
+        length += encodedLength(field);
+      }
+      // each field is followed by either = or & except the last one
+      if (fields.length > 0)
+        length += fields.length - 1;
+      this.contentLength = length;
+    }
+
+    @Override
+    public byte[] getBytes() {
+      if (contentLength > Integer.MAX_VALUE - 8)
+        throw new OutOfMemoryError("form body too large");
+      byte[] bytes = new byte[(int) contentLength];
+      int pos = 0;
+      for (int i = 0; i < fields.length; i++) {
+        if (i > 0)
+          bytes[pos++] = (byte) (i % 2 == 0 ? '&' : '=');
+        pos = encode(fields[i], bytes, pos);
+      }
+      return bytes;
+    }
+
+    @Override
+    public long contentLength() {
+      return contentLength;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      byte[] chunk = new byte[(int) Math.min(STREAMING_CHUNK_SIZE,
+          Math.max(contentLength, MAX_ENCODED_CODE_POINT))];
+      int pos = 0;
+      for (int i = 0; i < fields.length; i++) {
+        String field = fields[i];
+        if (i > 0) {
+          if (pos == chunk.length) {
+            out.write(chunk, 0, pos);
+            pos = 0;
+          }
+          chunk[pos++] = (byte) (i % 2 == 0 ? '&' : '=');
+        }
+        for (int j = 0; j < field.length(); ) {
+          if (chunk.length - pos < MAX_ENCODED_CODE_POINT) {
+            out.write(chunk, 0, pos);
+            pos = 0;
+          }
+          int cp = field.codePointAt(j);
+          j += Character.charCount(cp);
+          pos = encode(cp, chunk, pos);
+        }
+      }
+      if (pos > 0)
+        out.write(chunk, 0, pos);
+    }
   }
 }
@@ -0,0 +1,239 @@
+package io.github.warownia1.simplehttpclient;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.JsonReader.Token;
+import org.testng.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class JsonReaderTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  private static JsonReader reader(String json) {
+    // a tiny buffer makes tokens span buffer boundaries
+    return new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 3);
+  }
+
+  private static List<Token> tokens(String json) throws IOException {
+    var reader = reader(json);
+    var tokens = new ArrayList<Token>();
+    Token token;
+    while ((token = reader.next()) != Token.END_DOCUMENT) {
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  @Test
+  public void next_NestedDocument_TokensInOrder() throws IOException {
+    assertEquals(tokens(" {\"a\": [1, \"x\", true, false, null, {}], \"b\": {\"c\": []}}\n"),
+        List.of(Token.BEGIN_OBJECT, Token.FIELD_NAME, Token.BEGIN_ARRAY, Token.NUMBER,
+            Token.STRING, Token.BOOLEAN, Token.BOOLEAN, Token.NULL, Token.BEGIN_OBJECT,
+            Token.END_OBJECT, Token.END_ARRAY, Token.FIELD_NAME, Token.BEGIN_OBJECT,
+            Token.FIELD_NAME, Token.BEGIN_ARRAY, Token.END_ARRAY, Token.END_OBJECT,
+            Token.END_OBJECT));
+  }
+
+  @Test
+  public void next_ScalarDocument_Read() throws IOException {
+    assertEquals(tokens("42"), List.of(Token.NUMBER));
+    assertEquals(tokens("\"text\""), List.of(Token.STRING));
+  }
+
+  @Test
+  public void stringValue_EscapesAndMultiByte_Decoded() throws IOException {
+    var reader = reader("[\"a\\\"b\\\\c\\/\\n\\u00e9\\ud83d\\ude00\", \"\u00e9\u20ac\ud83d\ude00\"]");
+    reader.next();
+    reader.next();
+    assertEquals(reader.stringValue(), "a\"b\\c/\n\u00e9\ud83d\ude00");
+    reader.next();
+    assertEquals(reader.stringValue(), "\u00e9\u20ac\ud83d\ude00");
+  }
+
+  @Test
+  public void textEquals_FieldName_ComparedWithoutString() throws IOException {
+    var reader = reader("{\"name\": 1}");
+    reader.next();
+    reader.next();
+    assertTrue(reader.textEquals("name"));
+    assertFalse(reader.textEquals("names"));
+    assertFalse(reader.textEquals("nam"));
+  }
+
+  @Test
+  public void longValue_Integers_Decoded() throws IOException {
+    var reader = reader("[0, -7, 1234567890123, 9223372036854775807, 9223372036854775808]");
+    reader.next();
+    reader.next();
+    assertEquals(reader.longValue(), 0);
+    reader.next();
+    assertEquals(reader.intValue(), -7);
+    reader.next();
+    assertEquals(reader.longValue(), 1234567890123L);
+    reader.next();
+    assertEquals(reader.longValue(), Long.MAX_VALUE);
+    reader.next();
+    assertFalse(reader.isLong());
+    assertEquals(reader.doubleValue(), 9223372036854775808.0);
+    expectThrows(ArithmeticException.class, reader::longValue);
+  }
+
+  @Test
+  public void longValue_MinValue_Decoded() throws IOException {
+    var reader = reader("[-9223372036854775808, -9223372036854775809]");
+    reader.next();
+    reader.next();
+    assertTrue(reader.isLong());
+    assertEquals(reader.longValue(), Long.MIN_VALUE);
+    assertEquals(reader.doubleValue(), -9223372036854775808.0);
+    reader.next();
+    assertFalse(reader.isLong());
+    expectThrows(ArithmeticException.class, reader::longValue);
+  }
+
+  @Test
+  public void doubleValue_Decimals_Decoded() throws IOException {
+    String[] numbers = {"0.1", "-2.5", "1e3", "1.5E-7", "0.0001", "123456.789e2",
+        "3.141592653589793", "1e400", "2.2250738585072014E-308", "100"};
+    var reader = reader("[" + String.join(",", numbers) + "]");
+    reader.next();
+    for (String number : numbers) {
+      assertEquals(reader.next(), Token.NUMBER);
+      assertEquals(reader.doubleValue(), Double.parseDouble(number), number);
+      assertEquals(reader.stringValue(), number);
+    }
+    assertEquals(reader.next(), Token.END_ARRAY);
+  }
+
+  @Test
+  public void longValue_Fraction_Rejected() throws IOException {
+    var reader = reader("1.0");
+    reader.next();
+    assertFalse(reader.isLong());
+    expectThrows(ArithmeticException.class, reader::longValue);
+  }
+
+  @Test
+  public void skipChildren_Object_PositionedAtEnd() throws IOException {
+    var reader = reader("[{\"a\": [1, {\"b\": 2}]}, 3]");
+    reader.next();
+    reader.next();
+    reader.skipChildren();
+    assertEquals(reader.current(), Token.END_OBJECT);
+    assertEquals(reader.next(), Token.NUMBER);
+    assertEquals(reader.longValue(), 3);
+    assertEquals(reader.next(), Token.END_ARRAY);
+    assertEquals(reader.next(), Token.END_DOCUMENT);
+  }
+
+  @DataProvider
+  public Object[][] malformedDocuments() {
+    return new Object[][]{
+        {"[1,]"}, {"{\"a\" 1}"}, {"[1 2]"}, {"{\"a\": 1]"}, {"[01]"}, {"[tru]"},
+        {"[1.]"}, {"[\"a\nb\"]"}, {"[\"\\x\"]"}, {"{1: 2}"}, {"[] []"}, {"[-]"},
+        {"[nulls]"}
+    };
+  }
+
+  @Test(dataProvider = "malformedDocuments", expectedExceptions = MalformedJsonException.class)
+  public void next_MalformedDocument_Rejected(String json) throws IOException {
+    tokens(json);
+  }
+
+  @Test(expectedExceptions = EOFException.class)
+  public void next_TruncatedDocument_Rejected() throws IOException {
+    tokens("{\"a\": [1, 2");
+  }
+
+  @Test
+  public void next_LargeArray_ReadInConstantBuffer() throws IOException {
+    int count = 100_000;
+    InputStream stream = new InputStream() {
+      final byte[] element = "{\"id\":1234,\"name\":\"element\"},".getBytes();
+      int index = -1;
+      int position = 0;
+
+      @Override
+      public int read() {
+        if (index == -1) {
+          index = 0;
+          return '[';
+        }
+        if (index == count)
+          return -1;
+        if (index == count - 1 && position == element.length - 1) {
+          index++;
+          return ']';
+        }
+        int b = element[position++];
+        if (position == element.length) {
+          position = 0;
+          index++;
+        }
+        return b;
+      }
+    };
+    var reader = new JsonReader(stream, 512);
+    assertEquals(reader.next(), Token.BEGIN_ARRAY);
+    long sum = 0;
+    int elements = 0;
+    while (reader.next() == Token.BEGIN_OBJECT) {
+      while (reader.next() == Token.FIELD_NAME) {
+        boolean id = reader.textEquals("id");
+        reader.next();
+        if (id)
+          sum += reader.longValue();
+      }
+      elements++;
+    }
+    assertEquals(elements, count);
+    assertEquals(sum, 1234L * count);
+  }
+
+  @Test
+  public void send_OfJson_ResponseStreamed() throws IOException {
+    stubFor(get("/items").willReturn(ok("[{\"id\": 1}, {\"id\": 2}]")));
+    var request = HttpRequest.newBuilder(URI.create(server.url("/items"))).build();
+    var response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofJson());
+    try (var reader = response.body()) {
+      assertEquals(reader.next(), Token.BEGIN_ARRAY);
+      var ids = new ArrayList<Long>();
+      while (reader.next() == Token.BEGIN_OBJECT) {
+        reader.next();
+        reader.next();
+        ids.add(reader.longValue());
+        reader.next();
+      }
+      assertEquals(ids, List.of(1L, 2L));
+    }
+  }
+}
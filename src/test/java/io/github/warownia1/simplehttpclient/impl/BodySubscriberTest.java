@@ -0,0 +1,279 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscriber;
+import io.github.warownia1.simplehttpclient.HttpResponse.BodySubscribers;
+import io.github.warownia1.simplehttpclient.HttpResponse.ResponseInfo;
+import org.testng.annotations.*;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class BodySubscriberTest {
+  WireMockServer server;
+  ExecutorService executor;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort().dynamicHttpsPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void setup() {
+    WireMock.reset();
+    stubFor(get("/text").willReturn(ok("hello, world")));
+    stubFor(get("/empty").willReturn(noContent()));
+    stubFor(get("/dribble").willReturn(ok("0123456789").withChunkedDribbleDelay(5, 300)));
+    stubFor(get("/slow").willReturn(ok("slow").withFixedDelay(300)));
+    // a single thread shows whether the bodies still occupy it
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterMethod
+  public void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  private HttpRequest request(String path) {
+    return HttpRequest.newBuilder(
+        URI.create("http://localhost:" + server.port() + path)).build();
+  }
+
+  /**
+   * Records the calls it receives.
+   */
+  static class RecordingSubscriber implements BodySubscriber<String> {
+    final List<String> calls = new CopyOnWriteArrayList<>();
+    final StringBuilder body = new StringBuilder();
+
+    @Override
+    public void onHeaders(ResponseInfo responseInfo) {
+      calls.add("headers " + responseInfo.statusCode());
+    }
+
+    @Override
+    public void onData(ByteBuffer data) {
+      byte[] bytes = new byte[data.remaining()];
+      data.get(bytes);
+      body.append(new String(bytes));
+    }
+
+    @Override
+    public String onComplete() {
+      calls.add("complete");
+      return body.toString();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      calls.add("error");
+    }
+  }
+
+  @Test
+  public void sendAsync_Subscriber_CallbacksInOrder() throws Exception {
+    var subscriber = new RecordingSubscriber();
+    var response = HttpClient.newHttpClient()
+        .sendAsync(request("/text"), () -> subscriber, executor)
+        .get(2, TimeUnit.SECONDS);
+    assertEquals(response.statusCode(), 200);
+    assertEquals(response.body(), "hello, world");
+    assertEquals(subscriber.calls, List.of("headers 200", "complete"));
+  }
+
+  @Test
+  public void sendAsync_NoContent_CompletedWithoutData() throws Exception {
+    var response = HttpClient.newHttpClient()
+        .sendAsync(request("/empty"), BodySubscribers::ofByteArray, executor)
+        .get(2, TimeUnit.SECONDS);
+    assertEquals(response.statusCode(), 204);
+    assertEquals(response.body().length, 0);
+  }
+
+  @Test
+  public void sendAsync_ChunkedBody_Received() throws Exception {
+    var response = HttpClient.newHttpClient()
+        .sendAsync(request("/dribble"), BodySubscribers::ofString, executor)
+        .get(2, TimeUnit.SECONDS);
+    assertEquals(response.body(), "0123456789");
+  }
+
+  @Test
+  public void sendAsync_ManyBodies_SingleExecutorThread() throws Exception {
+    var client = HttpClient.newHttpClient();
+    // the bodies are sent with a content length, so only the headers need the thread
+    stubFor(get("/sized").willReturn(ok("0123456789")
+        .withHeader("Content-Length", "10").withChunkedDribbleDelay(5, 300)));
+    var futures = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+    for (int i = 0; i < 5; i++) {
+      futures.add(client.sendAsync(request("/sized"), BodySubscribers::ofString, executor));
+    }
+    long start = System.nanoTime();
+    for (var future : futures) {
+      assertEquals(future.get(5, TimeUnit.SECONDS).body(), "0123456789");
+    }
+    // five bodies read one after another would take 1.5s
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1200));
+  }
+
+  @Test
+  public void sendAsync_MaxConnectionsPerHost_FedByPump() throws Exception {
+    stubFor(get("/sized").willReturn(ok("0123456789").withHeader("Content-Length", "10")));
+    var client = HttpClient.newBuilder().maxConnectionsPerHost(2).build();
+    var threads = new CopyOnWriteArrayList<String>();
+    var subscriber = new RecordingSubscriber() {
+      @Override
+      public void onData(ByteBuffer data) {
+        threads.add(Thread.currentThread().getName());
+        super.onData(data);
+      }
+    };
+    var response = client.sendAsync(request("/sized"), () -> subscriber, executor)
+        .get(2, TimeUnit.SECONDS);
+    assertEquals(response.body(), "0123456789");
+    // the decorator passes the subscriber on instead of reading the body on the executor
+    assertFalse(threads.isEmpty());
+    assertTrue(threads.stream().allMatch("simplehttpclient-body-pump"::equals),
+        threads.toString());
+  }
+
+  @Test
+  public void sendAsync_HttpsBody_ReadWithoutProbeDelay() throws Exception {
+    byte[] content = new byte[300_000];
+    // a body of known length is read by the pump rather than probed on the executor
+    stubFor(get("/large").willReturn(ok().withBody(content)
+        .withHeader("Content-Length", String.valueOf(content.length))));
+    SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+    HostnameVerifier defaultVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+    var trustAll = new X509TrustManager() {
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+    };
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, new TrustManager[]{trustAll}, null);
+    HttpsURLConnection.setDefaultSSLSocketFactory(context.getSocketFactory());
+    HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+    try {
+      var parts = new AtomicInteger();
+      var subscriber = new BodySubscriber<Integer>() {
+        int length = 0;
+
+        @Override
+        public void onData(ByteBuffer data) {
+          parts.incrementAndGet();
+          length += data.remaining();
+        }
+
+        @Override
+        public Integer onComplete() {
+          return length;
+        }
+      };
+      var request = HttpRequest.newBuilder(
+          URI.create("https://localhost:" + server.httpsPort() + "/large")).build();
+      long start = System.nanoTime();
+      var response = HttpClient.newHttpClient()
+          .sendAsync(request, () -> subscriber, executor)
+          .get(10, TimeUnit.SECONDS);
+      assertEquals((int) response.body(), content.length);
+      // waiting the probe delay for each of the TLS records would take tens of seconds
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+      // the records are delivered whole rather than starting with a single byte
+      assertTrue(parts.get() <= content.length / 1000, "parts: " + parts.get());
+    }
+    finally {
+      HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+      HttpsURLConnection.setDefaultHostnameVerifier(defaultVerifier);
+    }
+  }
+
+  @Test
+  public void sendAsync_SubscriberFails_ErrorReported() {
+    var subscriber = new RecordingSubscriber() {
+      @Override
+      public String onComplete() {
+        throw new IllegalStateException("rejected");
+      }
+    };
+    var future = HttpClient.newHttpClient()
+        .sendAsync(request("/text"), () -> subscriber, executor);
+    var exc = expectThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+    assertTrue(exc.getCause() instanceof IllegalStateException);
+    assertEquals(subscriber.calls, List.of("headers 200", "error"));
+  }
+
+  @Test
+  public void sendAsync_SupplierFails_Failed() {
+    Supplier<BodySubscriber<String>> supplier = () -> {
+      throw new IllegalStateException("no subscriber");
+    };
+    var future = HttpClient.newHttpClient().sendAsync(request("/text"), supplier, executor);
+    var exc = expectThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+    assertTrue(exc.getCause() instanceof IllegalStateException);
+    verify(0, getRequestedFor(urlEqualTo("/text")));
+  }
+
+  @Test
+  public void sendAsync_Cancelled_SubscriberNotified() throws Exception {
+    var subscriber = new RecordingSubscriber();
+    var future = HttpClient.newHttpClient()
+        .sendAsync(request("/slow"), () -> subscriber, executor);
+    Thread.sleep(100);
+    future.cancel(true);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS));
+    assertEquals(subscriber.calls, List.of("error"));
+  }
+
+  @Test
+  public void fromSubscriber_BodyHandler_FedFromStream() throws IOException {
+    var subscriber = new RecordingSubscriber();
+    var response = HttpClient.newHttpClient().send(request("/text"),
+        HttpResponse.BodyHandlers.fromSubscriber(() -> subscriber));
+    assertEquals(response.body(), "hello, world");
+    assertEquals(subscriber.calls, List.of("headers 200", "complete"));
+  }
+}
@@ -0,0 +1,222 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class CancellationTest {
+  WireMockServer server;
+  ExecutorService executor;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void setup() {
+    WireMock.reset();
+    stubFor(get("/fast").willReturn(ok("fast")));
+    stubFor(get("/slow").willReturn(ok("slow").withFixedDelay(5000)));
+    stubFor(get("/dribble").willReturn(ok("0123456789").withChunkedDribbleDelay(10, 5000)));
+    // a single thread shows whether the cancelled exchange still occupies it
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterMethod
+  public void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  private HttpRequest request(String path) {
+    return HttpRequest.newBuilder(URI.create(server.url(path))).build();
+  }
+
+  private void assertThreadReleased(HttpClient client)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    var response = client.sendAsync(request("/fast"), HttpResponse.BodyHandlers.ofString(),
+        executor).get(2, TimeUnit.SECONDS);
+    assertEquals(response.body(), "fast");
+  }
+
+  @Test
+  public void sendAsync_CancelledWhileWaiting_ThreadReleased() throws Exception {
+    var client = HttpClient.newHttpClient();
+    var future = client.sendAsync(request("/slow"), HttpResponse.BodyHandlers.ofString(),
+        executor);
+    Thread.sleep(300);
+    assertTrue(future.cancel(true));
+    assertThreadReleased(client);
+  }
+
+  @Test
+  public void sendAsync_CancelledWhileReadingBody_ThreadReleased() throws Exception {
+    var client = HttpClient.newHttpClient();
+    var future = client.sendAsync(request("/dribble"), HttpResponse.BodyHandlers.ofString(),
+        executor);
+    Thread.sleep(300);
+    assertTrue(future.cancel(true));
+    assertThreadReleased(client);
+  }
+
+  /**
+   * Opens a TLS server, using the certificate bundled with WireMock, answering a single
+   * request with the headers and two of the ten bytes of the body, after which it stops
+   * sending until the client closes the connection.
+   */
+  private static ServerSocket stallingTlsServer() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    try (InputStream in = WireMockServer.class.getResourceAsStream("/keystore")) {
+      keyStore.load(in, "password".toCharArray());
+    }
+    KeyManagerFactory keyManagers =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(keyStore, "password".toCharArray());
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(keyManagers.getKeyManagers(), null, null);
+    ServerSocket serverSocket = context.getServerSocketFactory().createServerSocket(0);
+    Thread thread = new Thread(() -> {
+      try (Socket socket = serverSocket.accept()) {
+        InputStream in = socket.getInputStream();
+        int tail = 0;
+        int b;
+        while ((b = in.read()) >= 0 && (tail = tail << 8 | b) != 0x0d0a0d0a) {
+          // the request head ends with an empty line
+        }
+        OutputStream out = socket.getOutputStream();
+        out.write("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n01".getBytes());
+        out.flush();
+        in.read();
+      }
+      catch (IOException ignored) {
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return serverSocket;
+  }
+
+  @Test
+  public void sendAsync_CancelledWhileTlsBodyStalled_ThreadReleased() throws Exception {
+    SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+    HostnameVerifier defaultVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+    var trustAll = new X509TrustManager() {
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+    };
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, new TrustManager[]{trustAll}, null);
+    HttpsURLConnection.setDefaultSSLSocketFactory(context.getSocketFactory());
+    HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+    try (var stalling = stallingTlsServer()) {
+      var client = HttpClient.newHttpClient();
+      var request = HttpRequest.newBuilder(
+          URI.create("https://localhost:" + stalling.getLocalPort() + "/")).build();
+      var future = client.sendAsync(request, HttpResponse.BodyHandlers.ofString(), executor);
+      Thread.sleep(500);
+      assertTrue(future.cancel(true));
+      // the socket the body is read from is closed rather than waited out
+      assertThreadReleased(client);
+    }
+    finally {
+      HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+      HttpsURLConnection.setDefaultHostnameVerifier(defaultVerifier);
+    }
+  }
+
+  @Test
+  public void sendAsync_TimedOut_ThreadReleased() throws Exception {
+    var client = HttpClient.newHttpClient();
+    var future = client.sendAsync(request("/slow"), HttpResponse.BodyHandlers.ofString(),
+        executor).orTimeout(300, TimeUnit.MILLISECONDS);
+    var exc = expectThrows(ExecutionException.class, future::get);
+    assertTrue(exc.getCause() instanceof TimeoutException);
+    assertThreadReleased(client);
+  }
+
+  @Test
+  public void sendAsync_CancelledBeforeStart_NotSent() throws Exception {
+    var client = HttpClient.newHttpClient();
+    var blocked = new CountDownLatch(1);
+    executor.execute(() -> {
+      try {
+        blocked.await();
+      }
+      catch (InterruptedException ignored) {
+      }
+    });
+    var future = client.sendAsync(request("/fast"), HttpResponse.BodyHandlers.ofString(),
+        executor);
+    future.cancel(true);
+    blocked.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS));
+    verify(0, getRequestedFor(urlEqualTo("/fast")));
+  }
+
+  @Test
+  public void send_Completed_TimeoutsRemoved() throws Exception {
+    var client = HttpClient.newBuilder()
+        .requestTimeout(Duration.ofHours(1))
+        .writeTimeout(Duration.ofHours(1))
+        .build();
+    int pending = Timeouts.pending();
+    assertEquals(client.send(request("/fast"), HttpResponse.BodyHandlers.ofString()).body(),
+        "fast");
+    assertEquals(client.sendAsync(request("/fast"), HttpResponse.BodySubscribers::ofString,
+        executor).get(2, TimeUnit.SECONDS).body(), "fast");
+    // the timer of the response is cancelled by a completion callback
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    while (Timeouts.pending() > pending && System.nanoTime() < deadline)
+      Thread.sleep(10);
+    // the timeouts would otherwise hold the exchanges for an hour
+    assertEquals(Timeouts.pending(), pending);
+  }
+}
@@ -0,0 +1,155 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+import io.github.warownia1.simplehttpclient.impl.CircuitBreakingHttpClient.State;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.testng.Assert.*;
+
+public class CircuitBreakingHttpClientTest {
+
+  private static final URI HOST = URI.create("http://example.org/");
+
+  private static CircuitBreakerConfig config() {
+    return CircuitBreakerConfig.defaultConfig()
+        .withWindow(10, 4)
+        .withHalfOpen(Duration.ofMillis(50), 2);
+  }
+
+  private static void sendIgnoringErrors(HttpClient client, int times) {
+    for (int i = 0; i < times; i++) {
+      try {
+        client.send(HttpRequest.newBuilder(HOST).build(),
+            HttpResponse.BodyHandlers.discarding());
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+
+  @Test
+  public void send_FailuresAboveThreshold_CircuitOpens() {
+    var delegate = new StubHttpClient();
+    var client = new CircuitBreakingHttpClient(delegate, config());
+    delegate.status = 500;
+    sendIgnoringErrors(client, 4);
+    assertEquals(client.state(HOST), State.OPEN);
+  }
+
+  @Test
+  public void send_FewerThanMinimumCalls_CircuitClosed() {
+    var delegate = new StubHttpClient();
+    var client = new CircuitBreakingHttpClient(delegate, config());
+    delegate.status = -1;
+    sendIgnoringErrors(client, 3);
+    assertEquals(client.state(HOST), State.CLOSED);
+    assertEquals(client.failureRate(HOST), 1.0);
+  }
+
+  @Test
+  public void send_CircuitOpen_RejectedWithoutSending() {
+    var delegate = new StubHttpClient();
+    var client = new CircuitBreakingHttpClient(delegate,
+        config().withHalfOpen(Duration.ofMinutes(1), 1));
+    delegate.status = -1;
+    sendIgnoringErrors(client, 4);
+    assertThrows(RequestRejectedException.class, () -> client.send(
+        HttpRequest.newBuilder(HOST).build(), HttpResponse.BodyHandlers.discarding()));
+    assertEquals(delegate.sent.get(), 4);
+  }
+
+  @Test
+  public void sendAsync_CircuitOpen_FailedFuture() {
+    var delegate = new StubHttpClient();
+    var client = new CircuitBreakingHttpClient(delegate,
+        config().withHalfOpen(Duration.ofMinutes(1), 1));
+    delegate.status = 503;
+    sendIgnoringErrors(client, 4);
+    var future = client.sendAsync(HttpRequest.newBuilder(HOST).build(),
+        HttpResponse.BodyHandlers.discarding(), Runnable::run);
+    var exc = expectThrows(CompletionException.class, future::join);
+    assertTrue(exc.getCause() instanceof RequestRejectedException);
+  }
+
+  @Test
+  public void send_ProbesSucceed_CircuitCloses() throws InterruptedException {
+    var delegate = new StubHttpClient();
+    var transitions = new ArrayList<State>();
+    var client = new CircuitBreakingHttpClient(delegate,
+        config().withStateListener((origin, state) -> transitions.add(state)));
+    delegate.status = 500;
+    sendIgnoringErrors(client, 4);
+    Thread.sleep(60);
+    delegate.status = 200;
+    sendIgnoringErrors(client, 2);
+    assertEquals(client.state(HOST), State.CLOSED);
+    assertEquals(transitions, List.of(State.OPEN, State.HALF_OPEN, State.CLOSED));
+  }
+
+  @Test
+  public void send_ProbeFails_CircuitReopens() throws InterruptedException {
+    var delegate = new StubHttpClient();
+    var client = new CircuitBreakingHttpClient(delegate, config());
+    delegate.status = 500;
+    sendIgnoringErrors(client, 4);
+    Thread.sleep(60);
+    sendIgnoringErrors(client, 1);
+    assertEquals(client.state(HOST), State.OPEN);
+  }
+
+  @Test
+  public void sendAsync_ClosedCallEndsWhileHalfOpen_NotCountedAsProbe()
+      throws InterruptedException {
+    var delegate = new ManualHttpClient();
+    var client = new CircuitBreakingHttpClient(delegate,
+        config().withHalfOpen(Duration.ofMillis(50), 1));
+    for (int i = 0; i < 5; i++) {
+      client.sendAsync(HttpRequest.newBuilder(HOST).build(),
+          HttpResponse.BodyHandlers.discarding(), Runnable::run);
+    }
+    for (int i = 1; i < 5; i++) {
+      delegate.respond(i, 500);
+    }
+    assertEquals(client.state(HOST), State.OPEN);
+    Thread.sleep(60);
+    client.sendAsync(HttpRequest.newBuilder(HOST).build(),
+        HttpResponse.BodyHandlers.discarding(), Runnable::run);
+    assertEquals(client.state(HOST), State.HALF_OPEN);
+    delegate.respond(0, 200);
+    assertEquals(client.state(HOST), State.HALF_OPEN);
+    delegate.respond(5, 200);
+    assertEquals(client.state(HOST), State.CLOSED);
+  }
+
+  @Test
+  public void send_SlowCalls_CircuitOpens() {
+    HttpClient slow = new StubHttpClient() {
+      @Override
+      public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+          throws IOException {
+        try {
+          Thread.sleep(5);
+        }
+        catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        return super.send(request, handler);
+      }
+    };
+    var client = new CircuitBreakingHttpClient(slow,
+        config().withSlowCalls(0.5, Duration.ofMillis(1)));
+    sendIgnoringErrors(client, 4);
+    assertEquals(client.states(), Map.of("http://example.org:80", State.OPEN));
+  }
+}
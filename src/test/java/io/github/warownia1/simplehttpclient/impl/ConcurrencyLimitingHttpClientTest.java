@@ -0,0 +1,188 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static org.testng.Assert.*;
+
+public class ConcurrencyLimitingHttpClientTest {
+
+  private static HttpRequest request(String uri) {
+    return HttpRequest.newBuilder(URI.create(uri)).build();
+  }
+
+  private static CompletableFuture<HttpResponse<Void>> sendAsync(HttpClient client, String uri) {
+    return client.sendAsync(request(uri), HttpResponse.BodyHandlers.discarding(), Runnable::run);
+  }
+
+  @Test
+  public void aimd_Dropped_LimitDecreased() {
+    var aimd = new AimdLimit(10, 1, 20, 0.5, Duration.ofSeconds(1));
+    assertEquals(aimd.update(10, 10, 1_000_000, true), 5);
+  }
+
+  @Test
+  public void aimd_SlowerThanTimeout_LimitDecreased() {
+    var aimd = new AimdLimit(10, 1, 20, 0.5, Duration.ofSeconds(1));
+    assertEquals(aimd.update(10, 10, Duration.ofSeconds(2).toNanos(), false), 5);
+  }
+
+  @Test
+  public void aimd_SuccessUnderLoad_LimitIncreased() {
+    var aimd = new AimdLimit(10, 1, 20, 0.5, Duration.ofSeconds(1));
+    assertEquals(aimd.update(10, 9, 1_000_000, false), 11);
+  }
+
+  @Test
+  public void aimd_SuccessWhenIdle_LimitUnchanged() {
+    var aimd = new AimdLimit(10, 1, 20, 0.5, Duration.ofSeconds(1));
+    assertEquals(aimd.update(10, 1, 1_000_000, false), 10);
+  }
+
+  @Test
+  public void aimd_DroppedAtMinimum_LimitStaysAtMinimum() {
+    var aimd = new AimdLimit(2, 2, 20, 0.5, Duration.ofSeconds(1));
+    assertEquals(aimd.update(2, 2, 1_000_000, true), 2);
+  }
+
+  @Test
+  public void fixed_DroppedOrSlow_LimitUnchanged() {
+    var fixed = new FixedLimit(4);
+    assertEquals(fixed.initialLimit(), 4);
+    assertEquals(fixed.update(4, 4, 1_000_000, true), 4);
+    assertEquals(fixed.update(4, 4, Duration.ofSeconds(10).toNanos(), false), 4);
+  }
+
+  @Test
+  public void gradient_SteadyLatency_LimitGrows() {
+    var gradient = new GradientLimit(10, 1, 100, 1.5, 1.0, 100);
+    int limit = 10;
+    for (int i = 0; i < 20; i++) {
+      limit = gradient.update(limit, limit, 10_000_000, false);
+    }
+    assertTrue(limit > 10, "limit " + limit);
+  }
+
+  @Test
+  public void gradient_LatencySpike_LimitShrinks() {
+    var gradient = new GradientLimit(50, 1, 100, 1.0, 1.0, 100);
+    int limit = 50;
+    for (int i = 0; i < 50; i++) {
+      limit = gradient.update(limit, 50, 10_000_000, false);
+    }
+    int before = limit;
+    for (int i = 0; i < 5; i++) {
+      limit = gradient.update(limit, limit, 100_000_000, false);
+    }
+    assertTrue(limit < before, before + " -> " + limit);
+  }
+
+  @Test
+  public void sendAsync_OverLimitNoQueue_Rejected() {
+    var delegate = new ManualHttpClient();
+    var client = new ConcurrencyLimitingHttpClient(delegate,
+        () -> new AimdLimit(2, 1, 2, 0.9, Duration.ofSeconds(1)), 0, null);
+    sendAsync(client, "http://example.org/a");
+    sendAsync(client, "http://example.org/b");
+    var rejected = sendAsync(client, "http://example.org/c");
+    var exc = expectThrows(CompletionException.class, rejected::join);
+    assertTrue(exc.getCause() instanceof RequestRejectedException);
+    assertEquals(delegate.sentCount(), 2);
+  }
+
+  @Test
+  public void sendAsync_OverLimitWithQueue_SentWhenSlotFreed() {
+    var delegate = new ManualHttpClient();
+    var client = new ConcurrencyLimitingHttpClient(delegate,
+        () -> new AimdLimit(1, 1, 1, 0.9, Duration.ofSeconds(1)), 10, null);
+    var first = sendAsync(client, "http://example.org/a");
+    var second = sendAsync(client, "http://example.org/b");
+    assertEquals(delegate.sentCount(), 1);
+    delegate.respond(0, 200);
+    assertTrue(first.isDone());
+    assertEquals(delegate.sentCount(), 2);
+    assertFalse(second.isDone());
+  }
+
+  @Test
+  public void sendAsync_OtherHost_LimitedSeparately() {
+    var delegate = new ManualHttpClient();
+    var client = new ConcurrencyLimitingHttpClient(delegate,
+        () -> new AimdLimit(1, 1, 1, 0.9, Duration.ofSeconds(1)), 0, null);
+    sendAsync(client, "http://example.org/a");
+    var other = sendAsync(client, "http://example.com/a");
+    assertFalse(other.isCompletedExceptionally());
+    assertEquals(delegate.sentCount(), 2);
+  }
+
+  @Test
+  public void sendAsync_WaitTimedOut_Rejected() {
+    var delegate = new ManualHttpClient();
+    var client = new ConcurrencyLimitingHttpClient(delegate,
+        () -> new AimdLimit(1, 1, 1, 0.9, Duration.ofSeconds(1)), 10, Duration.ofMillis(20));
+    sendAsync(client, "http://example.org/a");
+    var queued = sendAsync(client, "http://example.org/b");
+    var exc = expectThrows(CompletionException.class, queued::join);
+    assertTrue(exc.getCause() instanceof RequestRejectedException);
+    delegate.respond(0, 200);
+    assertEquals(delegate.sentCount(), 1);
+    assertEquals(client.inFlight(), Map.of("http://example.org:80", 0));
+  }
+
+  @Test
+  public void sendAsync_ServiceUnavailable_LimitDecreased() {
+    var delegate = new ManualHttpClient();
+    var client = new ConcurrencyLimitingHttpClient(delegate,
+        () -> new AimdLimit(10, 1, 20, 0.5, Duration.ofSeconds(1)));
+    sendAsync(client, "http://example.org/a");
+    delegate.respond(0, 503);
+    assertEquals(client.currentLimit(URI.create("http://example.org:80/")), 5);
+    assertEquals(client.limits(), Map.of("http://example.org:80", 5));
+  }
+
+  @Test
+  public void currentLimit_HostNotSeen_NoLimiterCreated() {
+    var client = new ConcurrencyLimitingHttpClient(new ManualHttpClient(), AimdLimit::new);
+    assertEquals(client.currentLimit(URI.create("http://example.org/")), 0);
+    assertEquals(client.limits(), Map.of());
+  }
+
+  @Test
+  public void origin_HostWithUnderscore_AuthorityKept() {
+    assertEquals(Origins.of(URI.create("http://My_Host:8080/a")), "http://my_host:8080");
+    assertEquals(Origins.of(URI.create("http://Example.org/a")), "http://example.org:80");
+  }
+
+  @Test
+  public void send_Sync_PermitReleased() throws IOException {
+    HttpClient delegate = new HttpClient() {
+      @Override
+      public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return new SimpleHttpResponse<>(200, request, null, null, request.uri());
+      }
+
+      @Override
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+          HttpResponse.BodyHandler<T> handler, Executor executor) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    var client = new ConcurrencyLimitingHttpClient(delegate,
+        () -> new AimdLimit(1, 1, 1, 0.9, Duration.ofSeconds(1)), 0, null);
+    for (int i = 0; i < 3; i++) {
+      client.send(request("http://example.org/"), HttpResponse.BodyHandlers.discarding());
+    }
+    assertEquals(client.inFlight(), Map.of("http://example.org:80", 0));
+  }
+}
@@ -0,0 +1,265 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class CookieJarTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  /**
+   * A clock which only moves when told to.
+   */
+  static class ManualClock extends Clock {
+    Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(java.time.ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  private static void receive(CookieJar jar, String uri, String... setCookies)
+      throws IOException {
+    jar.put(URI.create(uri), Map.of("Set-Cookie", List.of(setCookies)));
+  }
+
+  private static String cookieHeader(CookieJar jar, String uri) throws IOException {
+    List<String> values = jar.get(URI.create(uri), Map.of()).get("Cookie");
+    return values == null ? null : values.get(0);
+  }
+
+  @Test
+  public void get_HostOnlyCookie_NotSentToSubdomain() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://example.org/", "id=1");
+    assertEquals(cookieHeader(jar, "http://example.org/page"), "id=1");
+    assertNull(cookieHeader(jar, "http://www.example.org/page"));
+  }
+
+  @Test
+  public void get_DomainCookie_SentToSubdomain() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://www.example.org/", "id=1; Domain=.example.org");
+    assertEquals(cookieHeader(jar, "http://api.example.org/"), "id=1");
+    assertEquals(cookieHeader(jar, "http://example.org/"), "id=1");
+    assertNull(cookieHeader(jar, "http://example.com/"));
+  }
+
+  @Test
+  public void put_DomainOfOtherHost_Ignored() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://example.org/", "a=1; Domain=example.com", "b=2; Domain=org");
+    assertEquals(jar.size(), 0);
+  }
+
+  @Test
+  public void put_PublicSuffixDomain_Ignored() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://evil.co.uk/", "a=1; Domain=co.uk", "b=2; Domain=.co.uk");
+    receive(jar, "http://user.github.io/", "c=3; Domain=github.io");
+    assertEquals(jar.size(), 0);
+    assertNull(cookieHeader(jar, "http://bank.co.uk/"));
+    receive(jar, "http://evil.co.uk/", "d=4; Domain=evil.co.uk");
+    assertEquals(cookieHeader(jar, "http://www.evil.co.uk/"), "d=4");
+    assertNull(cookieHeader(jar, "http://bank.co.uk/"));
+  }
+
+  @Test
+  public void bucketKey_RegistrableDomain() {
+    assertEquals(CookieJar.bucketKey("www.example.co.uk"), "example.co.uk");
+    assertEquals(CookieJar.bucketKey("a.b.example.org"), "example.org");
+    assertEquals(CookieJar.bucketKey("user.github.io"), "user.github.io");
+    assertEquals(CookieJar.bucketKey("co.uk"), "co.uk");
+    assertEquals(CookieJar.bucketKey("localhost"), "localhost");
+    assertEquals(CookieJar.bucketKey("192.168.0.1"), "192.168.0.1");
+  }
+
+  @Test
+  public void get_CookiesOrderedByPathLength() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://example.org/", "short=1; Path=/", "long=2; Path=/app/api",
+        "other=3; Path=/application");
+    assertEquals(cookieHeader(jar, "http://example.org/app/api/users"), "long=2; short=1");
+    assertEquals(cookieHeader(jar, "http://example.org/application"), "other=3; short=1");
+  }
+
+  @Test
+  public void get_DefaultPath_DirectoryOfRequest() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://example.org/app/login", "id=1");
+    assertEquals(cookieHeader(jar, "http://example.org/app/home"), "id=1");
+    assertNull(cookieHeader(jar, "http://example.org/"));
+  }
+
+  @Test
+  public void get_SecureCookie_OnlySentOverHttps() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "https://example.org/", "id=1; Secure; HttpOnly");
+    receive(jar, "http://example.org/", "other=2; Secure");
+    assertNull(cookieHeader(jar, "http://example.org/"));
+    assertEquals(cookieHeader(jar, "https://example.org/"), "id=1");
+  }
+
+  @Test
+  public void get_MaxAgeElapsed_CookieExpired() throws IOException {
+    var clock = new ManualClock();
+    var jar = new CookieJar(clock);
+    receive(jar, "http://example.org/", "id=1; Max-Age=60; Expires=Wed, 01 Jan 2020 00:00:10 GMT");
+    clock.now = clock.now.plus(Duration.ofSeconds(30));
+    assertEquals(cookieHeader(jar, "http://example.org/"), "id=1");
+    clock.now = clock.now.plus(Duration.ofSeconds(30));
+    assertNull(cookieHeader(jar, "http://example.org/"));
+    assertEquals(jar.size(), 0);
+  }
+
+  @Test
+  public void get_ExpiresElapsed_CookieExpired() throws IOException {
+    var clock = new ManualClock();
+    var jar = new CookieJar(clock);
+    receive(jar, "http://example.org/", "id=1; Expires=Wed, 01-Jan-2020 00:01:00 GMT");
+    assertEquals(cookieHeader(jar, "http://example.org/"), "id=1");
+    clock.now = clock.now.plus(Duration.ofMinutes(1));
+    assertNull(cookieHeader(jar, "http://example.org/"));
+  }
+
+  @Test
+  public void put_ZeroMaxAge_CookieRemoved() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://example.org/", "id=1");
+    receive(jar, "http://example.org/", "id=; Max-Age=0");
+    assertNull(cookieHeader(jar, "http://example.org/"));
+    assertEquals(jar.size(), 0);
+  }
+
+  @Test
+  public void put_SameNameDomainAndPath_CookieReplaced() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://example.org/", "id=1");
+    receive(jar, "http://example.org/", "id=2");
+    assertEquals(cookieHeader(jar, "http://example.org/"), "id=2");
+    assertEquals(jar.size(), 1);
+  }
+
+  @Test
+  public void put_DomainLimitExceeded_LeastRecentlyUsedEvicted() throws IOException {
+    var clock = new ManualClock();
+    var jar = new CookieJar(clock);
+    receive(jar, "http://example.org/", "first=0");
+    for (int i = 1; i < CookieJar.MAX_COOKIES_PER_DOMAIN; i++) {
+      clock.now = clock.now.plusSeconds(1);
+      receive(jar, "http://example.org/", "c" + i + "=" + i + "; Path=/p" + i);
+    }
+    clock.now = clock.now.plusSeconds(1);
+    // using the first cookie makes the second one the least recently used
+    assertEquals(cookieHeader(jar, "http://example.org/"), "first=0");
+    receive(jar, "http://example.org/", "last=1");
+    assertEquals(jar.size(), CookieJar.MAX_COOKIES_PER_DOMAIN);
+    assertEquals(cookieHeader(jar, "http://example.org/p1"), "first=0; last=1");
+    assertEquals(cookieHeader(jar, "http://example.org/p2"), "c2=2; first=0; last=1");
+    assertEquals(cookieHeader(jar, "http://example.org/"), "first=0; last=1");
+  }
+
+  @Test
+  public void put_DomainLimitExceeded_OtherDomainsOfBucketKept() throws IOException {
+    var jar = new CookieJar();
+    receive(jar, "http://example.org/", "kept=1");
+    for (int i = 0; i <= CookieJar.MAX_COOKIES_PER_DOMAIN; i++) {
+      receive(jar, "http://www.example.org/", "c" + i + "=" + i);
+    }
+    assertEquals(jar.size(), CookieJar.MAX_COOKIES_PER_DOMAIN + 1);
+    assertEquals(cookieHeader(jar, "http://example.org/"), "kept=1");
+  }
+
+  @Test
+  public void put_TotalLimitExceeded_SizeKept() throws IOException {
+    var jar = new CookieJar();
+    for (int i = 0; i <= CookieJar.MAX_COOKIES; i++) {
+      receive(jar, "http://host" + i + ".example/", "id=" + i);
+    }
+    assertEquals(jar.size(), CookieJar.MAX_COOKIES);
+  }
+
+  @Test
+  public void parseDate_CommonFormats_Parsed() {
+    long expected = Instant.parse("2015-10-21T07:28:00Z").toEpochMilli();
+    assertEquals(CookieJar.parseDate("Wed, 21 Oct 2015 07:28:00 GMT"), expected);
+    assertEquals(CookieJar.parseDate("Wednesday, 21-Oct-15 07:28:00 GMT"), expected);
+    assertEquals(CookieJar.parseDate("Wed Oct 21 07:28:00 2015"), expected);
+    assertEquals(CookieJar.parseDate("Wed, 31 Feb 2015 07:28:00 GMT"), Long.MIN_VALUE);
+    assertEquals(CookieJar.parseDate("tomorrow"), Long.MIN_VALUE);
+  }
+
+  @Test
+  public void send_CookieSetOnRedirect_SentToTarget() throws IOException {
+    stubFor(get("/login").willReturn(aResponse().withStatus(302)
+        .withHeader("Location", "/home")
+        .withHeader("Set-Cookie", "session=abc; Path=/")));
+    stubFor(get("/home").willReturn(ok("home")));
+    var client = HttpClient.newBuilder().cookieHandler(new CookieJar()).build();
+    var request = HttpRequest.newBuilder(URI.create(server.url("/login"))).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(response.body(), "home");
+    verify(getRequestedFor(urlEqualTo("/login")).withoutHeader("Cookie"));
+    verify(getRequestedFor(urlEqualTo("/home")).withHeader("Cookie", equalTo("session=abc")));
+  }
+
+  @Test
+  public void send_RequestCookieAndJarCookie_MergedIntoOneHeader() throws IOException {
+    stubFor(get("/login").willReturn(ok().withHeader("Set-Cookie", "session=abc; Path=/")));
+    stubFor(get("/home").willReturn(ok()));
+    var client = HttpClient.newBuilder().cookieHandler(new CookieJar()).build();
+    client.send(HttpRequest.newBuilder(URI.create(server.url("/login"))).build(),
+        HttpResponse.BodyHandlers.discarding());
+    var request = HttpRequest.newBuilder(URI.create(server.url("/home")))
+        .header("Cookie", "theme=dark")
+        .build();
+    client.send(request, HttpResponse.BodyHandlers.discarding());
+    var sent = findAll(getRequestedFor(urlEqualTo("/home"))).get(0);
+    assertEquals(sent.getHeaders().getHeader("Cookie").values(),
+        List.of("theme=dark; session=abc"));
+  }
+}
@@ -0,0 +1,296 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.http.Fault;
+import io.github.warownia1.simplehttpclient.EventListener;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class EventListenerTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort().dynamicHttpsPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  private URI httpUri() {
+    return URI.create("http://localhost:" + server.port() + "/");
+  }
+
+  /**
+   * A listener recording the names of the received events.
+   */
+  static class RecordingListener implements EventListener {
+    final List<String> events = new CopyOnWriteArrayList<>();
+    volatile HttpResponse.Timings timings;
+
+    @Override
+    public void requestQueued(HttpRequest request) {
+      events.add("requestQueued");
+    }
+
+    @Override
+    public void dnsStart(HttpRequest request, String host) {
+      events.add("dnsStart");
+    }
+
+    @Override
+    public void dnsEnd(HttpRequest request, String host, List<InetAddress> addresses) {
+      events.add("dnsEnd");
+    }
+
+    @Override
+    public void connectStart(HttpRequest request) {
+      events.add("connectStart");
+    }
+
+    @Override
+    public void secureConnectStart(HttpRequest request) {
+      events.add("secureConnectStart");
+    }
+
+    @Override
+    public void secureConnectEnd(HttpRequest request) {
+      events.add("secureConnectEnd");
+    }
+
+    @Override
+    public void connectEnd(HttpRequest request) {
+      events.add("connectEnd");
+    }
+
+    @Override
+    public void requestHeadersSent(HttpRequest request) {
+      events.add("requestHeadersSent");
+    }
+
+    @Override
+    public void requestBodySent(HttpRequest request) {
+      events.add("requestBodySent");
+    }
+
+    @Override
+    public void responseHeadersReceived(HttpRequest request,
+        HttpResponse.ResponseInfo responseInfo) {
+      events.add("responseHeadersReceived");
+    }
+
+    @Override
+    public void responseBodyComplete(HttpRequest request, HttpResponse.Timings timings) {
+      events.add("responseBodyComplete");
+      this.timings = timings;
+    }
+
+    @Override
+    public void requestFailed(HttpRequest request, Exception exception,
+        HttpResponse.Timings timings) {
+      events.add("requestFailed");
+      this.timings = timings;
+    }
+  }
+
+  /**
+   * Makes HTTPS connections trust the self-signed certificate of the server until the
+   * defaults are restored.
+   */
+  private static void trustAll() throws GeneralSecurityException {
+    var trustAll = new X509TrustManager() {
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+    };
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, new TrustManager[]{trustAll}, null);
+    HttpsURLConnection.setDefaultSSLSocketFactory(context.getSocketFactory());
+    HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+  }
+
+  @Test
+  public void send_GetRequest_EventsInOrder() throws IOException {
+    stubFor(get("/").willReturn(ok("hello")));
+    var listener = new RecordingListener();
+    var client = HttpClient.newBuilder().eventListener(listener).build();
+    var request = HttpRequest.newBuilder(httpUri()).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(listener.events, List.of(
+        "dnsStart", "dnsEnd", "connectStart", "connectEnd", "requestHeadersSent",
+        "responseHeadersReceived", "responseBodyComplete"));
+    assertSame(listener.timings, response.timings().orElseThrow());
+  }
+
+  @Test
+  public void send_PostRequest_BodySentReported() throws IOException {
+    stubFor(post("/").willReturn(ok()));
+    var listener = new RecordingListener();
+    var client = HttpClient.newBuilder().eventListener(listener).build();
+    var request = HttpRequest.newBuilder(httpUri())
+        .POST(new ByteArrayRequestBody("content".getBytes()))
+        .build();
+    client.send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(listener.events.subList(4, 6), List.of("requestHeadersSent", "requestBodySent"));
+  }
+
+  @Test
+  public void sendAsync_Request_QueuedFirst() {
+    stubFor(get("/").willReturn(ok()));
+    var listener = new RecordingListener();
+    var client = HttpClient.newBuilder().eventListener(listener).build();
+    var request = HttpRequest.newBuilder(httpUri()).build();
+    client.sendAsync(request, HttpResponse.BodyHandlers.discarding(), ForkJoinPool.commonPool())
+        .join();
+    assertEquals(listener.events.get(0), "requestQueued");
+    assertEquals(listener.events.get(listener.events.size() - 1), "responseBodyComplete");
+  }
+
+  @Test
+  public void send_ConnectionReset_FailureReported() {
+    stubFor(get("/").willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    var listener = new RecordingListener();
+    var client = HttpClient.newBuilder().eventListener(listener).build();
+    var request = HttpRequest.newBuilder(httpUri()).build();
+    assertThrows(IOException.class,
+        () -> client.send(request, HttpResponse.BodyHandlers.discarding()));
+    assertEquals(listener.events.get(listener.events.size() - 1), "requestFailed");
+    assertFalse(listener.events.contains("responseBodyComplete"));
+  }
+
+  @Test
+  public void send_SlowServerAndHandler_PhasesSeparated() throws IOException {
+    stubFor(get("/").willReturn(ok().withFixedDelay(200)));
+    var client = HttpClient.newHttpClient();
+    var request = HttpRequest.newBuilder(httpUri()).build();
+    HttpResponse.BodyHandler<Void> slowHandler = (info, stream) -> {
+      try {
+        Thread.sleep(100);
+      }
+      catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+      return null;
+    };
+    var timings = client.send(request, slowHandler).timings().orElseThrow();
+    assertTrue(timings.waiting().compareTo(Duration.ofMillis(190)) >= 0, timings.toString());
+    assertTrue(timings.bodyHandling().compareTo(Duration.ofMillis(95)) >= 0,
+        timings.toString());
+    assertTrue(timings.bodyHandling().compareTo(Duration.ofMillis(190)) < 0,
+        timings.toString());
+    assertTrue(timings.total().compareTo(timings.waiting().plus(timings.bodyHandling())) >= 0);
+    assertEquals(timings.secureConnect(), Duration.ZERO);
+  }
+
+  @Test
+  public void send_HttpsRequest_HandshakeReportedForNewConnectionOnly()
+      throws IOException, GeneralSecurityException {
+    stubFor(get("/").willReturn(ok()));
+    SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+    HostnameVerifier defaultVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+    trustAll();
+    try {
+      var listener = new RecordingListener();
+      var client = HttpClient.newBuilder().eventListener(listener).build();
+      var request = HttpRequest.newBuilder(
+          URI.create("https://localhost:" + server.httpsPort() + "/")).build();
+      var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      assertEquals(response.statusCode(), 200);
+      assertEquals(listener.events.subList(2, 6), List.of(
+          "connectStart", "secureConnectStart", "secureConnectEnd", "connectEnd"));
+      assertTrue(listener.timings.secureConnect().compareTo(Duration.ZERO) > 0);
+      listener.events.clear();
+      response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      assertEquals(listener.events, List.of("requestHeadersSent", "responseHeadersReceived",
+          "responseBodyComplete"));
+      assertEquals(response.timings().orElseThrow().dns(), Duration.ZERO);
+      assertEquals(response.timings().orElseThrow().connect(), Duration.ZERO);
+    }
+    finally {
+      HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+      HttpsURLConnection.setDefaultHostnameVerifier(defaultVerifier);
+    }
+  }
+
+  @Test
+  public void send_RedirectFromHttpsToHttp_HandshakeReportedOnce()
+      throws IOException, GeneralSecurityException {
+    stubFor(get("/secure").willReturn(
+        temporaryRedirect(httpUri().resolve("/plain").toString())));
+    stubFor(get("/plain").willReturn(ok()));
+    SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+    HostnameVerifier defaultVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+    trustAll();
+    try {
+      var listener = new RecordingListener();
+      var client = HttpClient.newBuilder()
+          .followRedirects(HttpClient.Redirect.ALWAYS)
+          .eventListener(listener)
+          .build();
+      var request = HttpRequest.newBuilder(
+          URI.create("https://localhost:" + server.httpsPort() + "/secure")).build();
+      var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+      assertEquals(response.uri().getPath(), "/plain");
+      assertEquals(listener.events.stream().filter("secureConnectEnd"::equals).count(), 1);
+      assertEquals(listener.timings.secureConnect(), Duration.ZERO);
+    }
+    finally {
+      HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+      HttpsURLConnection.setDefaultHostnameVerifier(defaultVerifier);
+    }
+  }
+
+  @Test
+  public void sendAsync_CancelledBeforeStart_FailureReported() {
+    var listener = new RecordingListener();
+    var client = HttpClient.newBuilder().eventListener(listener).build();
+    var request = HttpRequest.newBuilder(httpUri()).build();
+    var tasks = new ArrayList<Runnable>();
+    var future = client.sendAsync(request, HttpResponse.BodyHandlers.discarding(), tasks::add);
+    future.cancel(true);
+    tasks.forEach(Runnable::run);
+    assertEquals(listener.events, List.of("requestQueued", "requestFailed"));
+  }
+}
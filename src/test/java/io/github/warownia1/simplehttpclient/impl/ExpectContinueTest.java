@@ -0,0 +1,143 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class ExpectContinueTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  /**
+   * A body recording whether it was written.
+   */
+  static class TrackingBody implements HttpRequest.Body {
+    final byte[] content = "upload content".getBytes(StandardCharsets.US_ASCII);
+    final AtomicBoolean written = new AtomicBoolean();
+
+    @Override
+    public byte[] getBytes() {
+      return content;
+    }
+
+    @Override
+    public long contentLength() {
+      return content.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      written.set(true);
+      out.write(content);
+    }
+  }
+
+  @Test
+  public void send_ServerContinues_BodySent() throws IOException {
+    stubFor(put("/upload").willReturn(ok()));
+    var body = new TrackingBody();
+    var request = HttpRequest.newBuilder(URI.create(server.url("/upload")))
+        .PUT(body)
+        .expectContinue(true)
+        .build();
+    var response = HttpClient.newHttpClient()
+        .send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(response.statusCode(), 200);
+    verify(putRequestedFor(urlEqualTo("/upload"))
+        .withHeader("Expect", equalToIgnoreCase("100-continue"))
+        .withRequestBody(equalTo("upload content")));
+  }
+
+  @Test
+  public void send_ServerRejects_BodyNotSentAndHeadersKept() throws Exception {
+    try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      CompletableFuture<Integer> bodyBytes = CompletableFuture.supplyAsync(() -> {
+        try (Socket socket = serverSocket.accept()) {
+          InputStream in = socket.getInputStream();
+          // read the request head up to the empty line
+          int matched = 0;
+          while (matched < 4) {
+            int b = in.read();
+            if (b < 0)
+              return -1;
+            matched = (b == "\r\n\r\n".charAt(matched)) ? matched + 1 : (b == '\r' ? 1 : 0);
+          }
+          socket.getOutputStream().write(("HTTP/1.1 413 Payload Too Large\r\n" +
+              "Retry-After: 120\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+          socket.setSoTimeout(500);
+          int count = 0;
+          try {
+            while (in.read() >= 0)
+              count++;
+          }
+          catch (SocketTimeoutException | SocketException e) {
+            // nothing more was sent
+          }
+          return count;
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      });
+      var body = new TrackingBody();
+      var request = HttpRequest.newBuilder(
+              URI.create("http://127.0.0.1:" + serverSocket.getLocalPort() + "/upload"))
+          .PUT(body)
+          .expectContinue(true)
+          .build();
+      var response = HttpClient.newHttpClient()
+          .send(request, HttpResponse.BodyHandlers.ofString());
+      assertEquals(response.statusCode(), 413);
+      assertEquals(response.body(), "");
+      assertEquals(response.headers().firstValue("Retry-After").orElse(null), "120");
+      assertFalse(body.written.get());
+      assertEquals(bodyBytes.get(), 0);
+    }
+  }
+
+  @Test
+  public void copyOf_ExpectContinue_Copied() {
+    var request = HttpRequest.newBuilder(URI.create("http://example.org/"))
+        .expectContinue(true)
+        .build();
+    assertTrue(HttpRequest.newBuilder(request).build().expectContinue());
+    assertFalse(HttpRequest.newBuilder(URI.create("http://example.org/")).build()
+        .expectContinue());
+  }
+}
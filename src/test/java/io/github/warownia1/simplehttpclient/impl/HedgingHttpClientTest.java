@@ -0,0 +1,155 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class HedgingHttpClientTest {
+  WireMockServer server;
+  ExecutorService executor;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+    executor.shutdown();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  /**
+   * A client which counts the requests and never responds.
+   */
+  static class SilentHttpClient implements HttpClient {
+    final AtomicInteger sent = new AtomicInteger();
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+        HttpRequest request, HttpResponse.BodyHandler<T> handler, Executor executor) {
+      sent.incrementAndGet();
+      return new CompletableFuture<>();
+    }
+  }
+
+  @Test
+  public void send_SlowPrimary_MirrorResponseWins() throws IOException {
+    stubFor(get("/slow").willReturn(ok("slow").withFixedDelay(2000)));
+    stubFor(get("/fast").willReturn(ok("fast")));
+    var policy = HedgingPolicy.fixedDelay(Duration.ofMillis(50))
+        .withMirrors(uri -> List.of(uri.resolve("/fast")));
+    var client = new HedgingHttpClient(HttpClient.newHttpClient(), policy, executor);
+    var request = HttpRequest.newBuilder(URI.create(server.url("/slow"))).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(response.body(), "fast");
+    assertEquals(client.hedgeCount(), 1);
+    assertEquals(client.hedgeWinCount(), 1);
+  }
+
+  @Test
+  public void send_FastPrimary_NoHedgeSent() throws IOException {
+    stubFor(get("/").willReturn(ok("primary")));
+    var policy = HedgingPolicy.fixedDelay(Duration.ofSeconds(2));
+    var client = new HedgingHttpClient(HttpClient.newHttpClient(), policy, executor);
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(response.body(), "primary");
+    assertEquals(client.requestCount(), 1);
+    assertEquals(client.hedgeCount(), 0);
+  }
+
+  @Test
+  public void sendAsync_PostRequest_NotHedged() throws InterruptedException {
+    var delegate = new SilentHttpClient();
+    var policy = HedgingPolicy.fixedDelay(Duration.ofMillis(5));
+    var client = new HedgingHttpClient(delegate, policy, executor);
+    var request = HttpRequest.newBuilder(URI.create("http://example.org/"))
+        .POST(new ByteArrayRequestBody(new byte[1]))
+        .build();
+    client.sendAsync(request, HttpResponse.BodyHandlers.discarding(), executor);
+    Thread.sleep(100);
+    assertEquals(delegate.sent.get(), 1);
+    assertEquals(client.hedgeCount(), 0);
+  }
+
+  @Test
+  public void sendAsync_BudgetExhausted_HedgesLimited() throws InterruptedException {
+    var delegate = new SilentHttpClient();
+    var policy = HedgingPolicy.fixedDelay(Duration.ofMillis(5)).withBudget(0.01);
+    var client = new HedgingHttpClient(delegate, policy, executor);
+    var request = HttpRequest.newBuilder(URI.create("http://example.org/")).build();
+    for (int i = 0; i < 30; i++) {
+      client.sendAsync(request, HttpResponse.BodyHandlers.discarding(), executor);
+    }
+    Thread.sleep(300);
+    assertEquals(client.requestCount(), 30);
+    assertEquals(client.hedgeCount(), 10);
+    assertEquals(delegate.sent.get(), 40);
+  }
+
+  @Test
+  public void sendAsync_ResultCancelled_AttemptsCancelled() throws InterruptedException {
+    var attempt = new CompletableFuture<HttpResponse<Void>>();
+    HttpClient delegate = new SilentHttpClient() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+          HttpRequest request, HttpResponse.BodyHandler<T> handler, Executor executor) {
+        return (CompletableFuture<HttpResponse<T>>) (CompletableFuture<?>) attempt;
+      }
+    };
+    var client = new HedgingHttpClient(delegate,
+        HedgingPolicy.fixedDelay(Duration.ofSeconds(10)), executor);
+    var request = HttpRequest.newBuilder(URI.create("http://example.org/")).build();
+    client.sendAsync(request, HttpResponse.BodyHandlers.discarding(), executor).cancel(true);
+    assertTrue(attempt.isCancelled());
+  }
+
+  @Test
+  public void percentileDelay_EnoughSamples_DelayFollowsLatency() {
+    var window = new HedgingHttpClient.LatencyWindow(100);
+    for (int i = 1; i <= 100; i++) {
+      window.record(i);
+    }
+    assertEquals(window.percentile(0.95), 95);
+    assertEquals(window.percentile(0.5), 50);
+  }
+
+  @Test
+  public void percentileDelay_FewSamples_MinDelayUsed() {
+    var policy = HedgingPolicy.percentileDelay(0.95, Duration.ofMillis(30));
+    var client = new HedgingHttpClient(new SilentHttpClient(), policy, executor);
+    assertEquals(client.currentDelay(), Duration.ofMillis(30));
+  }
+}
@@ -0,0 +1,237 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class HttpClientSendAllTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  private static List<HttpRequest> requests(String baseUrl, int count) {
+    var requests = new ArrayList<HttpRequest>();
+    for (int i = 0; i < count; i++) {
+      requests.add(HttpRequest.newBuilder(URI.create(baseUrl + "/item/" + i)).build());
+    }
+    return requests;
+  }
+
+  private static HttpResponse<Void> responseTo(HttpRequest request) {
+    return new SimpleHttpResponse<>(200, request, null, null, request.uri());
+  }
+
+  @Test
+  public void sendAll_MoreRequestsThanConcurrency_OnlyConcurrencyInFlight() {
+    var client = new ManualHttpClient();
+    var reqs = requests("http://localhost", 10);
+    var batch = client.sendAll(reqs, HttpResponse.BodyHandlers.discarding(), 3,
+        Runnable::run, false);
+    assertEquals(client.sentCount(), 3);
+    client.get(1).complete(responseTo(reqs.get(1)));
+    assertEquals(client.sentCount(), 4);
+    assertEquals(client.started.get(3), reqs.get(3));
+    assertFalse(batch.futures().get(0).isDone());
+    assertTrue(batch.futures().get(1).isDone());
+  }
+
+  @Test
+  public void sendAll_FailFast_RemainingCancelled() {
+    var client = new ManualHttpClient();
+    var reqs = requests("http://localhost", 10);
+    var batch = client.sendAll(reqs, HttpResponse.BodyHandlers.discarding(), 2,
+        Runnable::run, true);
+    client.get(0).completeExceptionally(new IOException("failure"));
+    assertEquals(client.sentCount(), 2);
+    assertTrue(client.get(1).isCancelled());
+    for (int i = 1; i < reqs.size(); i++) {
+      assertTrue(batch.futures().get(i).isCancelled());
+    }
+    var exc = expectThrows(CompletionException.class, () -> batch.futures().get(0).join());
+    assertTrue(exc.getCause() instanceof IOException);
+  }
+
+  @Test
+  public void sendAll_NoFailFast_OtherRequestsContinue() {
+    var client = new ManualHttpClient();
+    var reqs = requests("http://localhost", 3);
+    var batch = client.sendAll(reqs, HttpResponse.BodyHandlers.discarding(), 1,
+        Runnable::run, false);
+    client.get(0).completeExceptionally(new IOException("failure"));
+    assertEquals(client.sentCount(), 2);
+    assertFalse(batch.futures().get(1).isCancelled());
+  }
+
+  @Test
+  public void completionOrder_ReverseCompletion_ReverseOrder() {
+    var client = new ManualHttpClient();
+    var reqs = requests("http://localhost", 3);
+    var batch = client.sendAll(reqs, HttpResponse.BodyHandlers.discarding(), 3,
+        Runnable::run, false);
+    for (int i = 2; i >= 0; i--) {
+      client.get(i).complete(responseTo(reqs.get(i)));
+    }
+    var order = batch.stream()
+        .map(f -> f.join().request())
+        .collect(Collectors.toList());
+    assertEquals(order, List.of(reqs.get(2), reqs.get(1), reqs.get(0)));
+  }
+
+  @Test
+  public void cancel_PendingRequests_NeverSent() {
+    var client = new ManualHttpClient();
+    var batch = client.sendAll(requests("http://localhost", 5),
+        HttpResponse.BodyHandlers.discarding(), 2, Runnable::run, false);
+    batch.cancel();
+    assertEquals(client.sentCount(), 2);
+    assertTrue(batch.futures().stream().allMatch(CompletableFuture::isCancelled));
+  }
+
+  @Test
+  public void cancel_ExchangeStillRunning_SlotKept() throws Exception {
+    var release = new CountDownLatch(1);
+    var sent = new AtomicInteger();
+    // the exchange keeps running in its task after its future is cancelled
+    var client = new ManualHttpClient() {
+      @Override
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+          HttpResponse.BodyHandler<T> handler, Executor executor) {
+        sent.incrementAndGet();
+        var future = super.sendAsync(request, handler, executor);
+        executor.execute(() -> {
+          try {
+            release.await();
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+        return future;
+      }
+    };
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      var batch = client.sendAll(requests("http://localhost", 2),
+          HttpResponse.BodyHandlers.discarding(), 1, executor, false);
+      batch.futures().get(0).cancel(true);
+      Thread.sleep(100);
+      assertEquals(sent.get(), 1);
+      release.countDown();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+      while (sent.get() < 2 && System.nanoTime() < deadline)
+        Thread.sleep(10);
+      assertEquals(sent.get(), 2);
+    }
+    finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void sendAll_ZeroConcurrency_ThrowIllegalArgumentException() {
+    HttpClient.newHttpClient().sendAll(List.of(), HttpResponse.BodyHandlers.discarding(), 0);
+  }
+
+  @Test
+  public void sendAll_EmptyBatch_ResponsesEmpty() {
+    var batch = HttpClient.newHttpClient()
+        .sendAll(List.of(), HttpResponse.BodyHandlers.discarding(), 4);
+    assertEquals(batch.responses().join(), List.of());
+  }
+
+  @Test
+  public void sendAll_RealServer_ResponsesInInputOrder() {
+    stubFor(get(urlPathMatching("/item/.*"))
+        .willReturn(ok().withUniformRandomDelay(0, 20)));
+    var client = HttpClient.newHttpClient();
+    var reqs = requests(server.baseUrl(), 40);
+    var responses = client.sendAll(reqs, HttpResponse.BodyHandlers.ofString(), 8)
+        .responses().join();
+    assertEquals(responses.size(), 40);
+    for (int i = 0; i < 40; i++) {
+      assertEquals(responses.get(i).request(), reqs.get(i));
+      assertEquals(responses.get(i).statusCode(), 200);
+    }
+  }
+
+  @Test
+  public void sendAll_RealServerWithExecutor_MaxInFlightBounded() throws Exception {
+    stubFor(get(urlPathMatching("/item/.*")).willReturn(ok().withFixedDelay(10)));
+    var inFlight = new AtomicInteger();
+    var maxInFlight = new AtomicInteger();
+    var delegate = HttpClient.newHttpClient();
+    HttpClient client = new HttpClient() {
+      @Override
+      public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+          throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+          return delegate.send(request, handler);
+        }
+        finally {
+          inFlight.decrementAndGet();
+        }
+      }
+
+      @Override
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+          HttpResponse.BodyHandler<T> handler, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+          try {
+            return send(request, handler);
+          }
+          catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }, executor);
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      client.sendAll(requests(server.baseUrl(), 30), HttpResponse.BodyHandlers.discarding(),
+          4, executor, false).responses().join();
+    }
+    finally {
+      executor.shutdown();
+    }
+    assertTrue(maxInFlight.get() <= 4, "max in flight " + maxInFlight.get());
+  }
+}
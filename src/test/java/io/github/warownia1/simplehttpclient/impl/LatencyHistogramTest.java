@@ -0,0 +1,77 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void index_ConsecutiveValues_BucketsContiguous() {
+    int previous = LatencyHistogram.index(0);
+    for (long value = 1; value < 1_000_000; value++) {
+      int index = LatencyHistogram.index(value);
+      assertTrue(index == previous || index == previous + 1, "value " + value);
+      assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+      previous = index;
+    }
+  }
+
+  @Test
+  public void percentileNanos_UniformValues_WithinPrecision() {
+    var histogram = new LatencyHistogram();
+    for (int millis = 1; millis <= 1000; millis++) {
+      histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+    var snapshot = histogram.snapshot();
+    assertEquals(snapshot.count(), 1000);
+    assertEquals(snapshot.percentileNanos(50), 500e6, 500e6 * 0.02);
+    assertEquals(snapshot.percentileNanos(99), 990e6, 990e6 * 0.02);
+    assertEquals(snapshot.percentileNanos(99.9), 999e6, 999e6 * 0.02);
+    assertEquals(snapshot.percentileNanos(100), 1000e6, 0);
+    assertEquals(snapshot.maxNanos(), 1000_000_000L);
+  }
+
+  @Test
+  public void percentileNanos_Empty_Zero() {
+    assertEquals(new LatencyHistogram().snapshot().percentileNanos(99), 0);
+  }
+
+  @Test
+  public void recordNanos_AboveHighestTrackable_Clamped() {
+    var histogram = new LatencyHistogram();
+    histogram.recordNanos(TimeUnit.DAYS.toNanos(2));
+    assertEquals(histogram.snapshot().maxNanos(), TimeUnit.HOURS.toNanos(1));
+  }
+
+  @Test
+  public void snapshotAndReset_Recorded_NextIntervalEmpty() {
+    var histogram = new LatencyHistogram();
+    histogram.recordNanos(5_000_000);
+    assertEquals(histogram.snapshotAndReset().count(), 1);
+    assertEquals(histogram.count(), 0);
+    var snapshot = histogram.snapshot();
+    assertEquals(snapshot.count(), 0);
+    assertEquals(snapshot.maxNanos(), 0);
+  }
+
+  @Test
+  public void recordNanos_ManyThreads_AllCounted() throws InterruptedException {
+    var histogram = new LatencyHistogram();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      executor.execute(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          histogram.recordNanos(i * 1000L);
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(histogram.snapshot().count(), 80_000);
+  }
+}
@@ -0,0 +1,102 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.*;
+
+public class LatencyRecordingHttpClientTest {
+
+  private static HttpRequest request(String uri) {
+    return HttpRequest.newBuilder(URI.create(uri)).build();
+  }
+
+  @Test
+  public void send_DifferentStatuses_RecordedPerStatusClass() throws IOException {
+    var client = new LatencyRecordingHttpClient(new StubHttpClient());
+    client.send(request("http://example.org/200"), HttpResponse.BodyHandlers.discarding());
+    client.send(request("http://example.org/204"), HttpResponse.BodyHandlers.discarding());
+    client.send(request("http://example.org/503"), HttpResponse.BodyHandlers.discarding());
+    assertThrows(IOException.class, () ->
+        client.send(request("http://example.org/fail"), HttpResponse.BodyHandlers.discarding()));
+    var snapshots = client.snapshots();
+    var keys = snapshots.keySet().stream().map(Object::toString).collect(Collectors.toList());
+    assertEquals(keys, List.of(
+        "example.org:80 GET 2xx", "example.org:80 GET 5xx", "example.org:80 GET error"));
+    assertEquals(snapshots.values().iterator().next().count(), 2);
+  }
+
+  @Test
+  public void sendAsync_Requests_RecordedPerHost() {
+    var client = new LatencyRecordingHttpClient(new StubHttpClient());
+    client.sendAsync(request("http://example.org/200"), HttpResponse.BodyHandlers.discarding(),
+        ForkJoinPool.commonPool()).join();
+    client.sendAsync(request("https://example.com/200"), HttpResponse.BodyHandlers.discarding(),
+        ForkJoinPool.commonPool()).join();
+    var hosts = client.snapshots().keySet().stream()
+        .map(LatencyRecordingHttpClient.Key::host)
+        .collect(Collectors.toList());
+    assertEquals(hosts, List.of("example.com:443", "example.org:80"));
+  }
+
+  @Test
+  public void snapshotsAndReset_Recorded_CountsCleared() throws IOException {
+    var client = new LatencyRecordingHttpClient(new StubHttpClient());
+    client.send(request("http://example.org/200"), HttpResponse.BodyHandlers.discarding());
+    assertEquals(client.snapshotsAndReset().values().iterator().next().count(), 1);
+    assertEquals(client.snapshots().values().iterator().next().count(), 0);
+  }
+
+  @Test
+  public void prometheus_Recorded_SummaryWritten() throws IOException {
+    var client = new LatencyRecordingHttpClient(new StubHttpClient());
+    client.send(request("http://example.org/404"), HttpResponse.BodyHandlers.discarding());
+    String text = client.prometheus();
+    assertTrue(text.startsWith("# HELP http_client_request_duration_seconds "));
+    assertTrue(text.contains("# TYPE http_client_request_duration_seconds summary\n"));
+    String labels = "host=\"example.org:80\",method=\"GET\",status=\"4xx\"";
+    assertTrue(text.contains(
+        "http_client_request_duration_seconds{" + labels + ",quantile=\"0.999\"} "), text);
+    assertTrue(text.contains("http_client_request_duration_seconds_count{" + labels + "} 1\n"),
+        text);
+  }
+
+  @Test
+  public void prometheus_AfterReset_CountKeepsGrowing() throws IOException {
+    var client = new LatencyRecordingHttpClient(new StubHttpClient());
+    client.send(request("http://example.org/200"), HttpResponse.BodyHandlers.discarding());
+    client.snapshotsAndReset();
+    client.send(request("http://example.org/200"), HttpResponse.BodyHandlers.discarding());
+    String labels = "host=\"example.org:80\",method=\"GET\",status=\"2xx\"";
+    String text = client.prometheus();
+    assertTrue(text.contains("http_client_request_duration_seconds_count{" + labels + "} 2\n"),
+        text);
+  }
+
+  @Test
+  public void sendAsync_Cancelled_DelegateCancelled() {
+    var pending = new CompletableFuture<HttpResponse<Void>>();
+    var client = new LatencyRecordingHttpClient(new StubHttpClient() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+          HttpResponse.BodyHandler<T> handler, Executor executor) {
+        return (CompletableFuture<HttpResponse<T>>) (CompletableFuture<?>) pending;
+      }
+    });
+    var future = client.sendAsync(request("http://example.org/200"),
+        HttpResponse.BodyHandlers.discarding(), ForkJoinPool.commonPool());
+    assertTrue(future.cancel(true));
+    assertTrue(pending.isCancelled());
+    assertEquals(client.snapshots().size(), 1);
+  }
+}
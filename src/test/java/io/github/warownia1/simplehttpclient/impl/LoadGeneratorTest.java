@@ -0,0 +1,92 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class LoadGeneratorTest {
+
+  /**
+   * A client taking the given time to respond to every request.
+   */
+  static class SlowHttpClient implements HttpClient {
+    final long delayMillis;
+
+    SlowHttpClient(long delayMillis) {
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+        throws IOException {
+      try {
+        Thread.sleep(delayMillis);
+      }
+      catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      return new SimpleHttpResponse<>(200, request, null, null, request.uri());
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+        HttpResponse.BodyHandler<T> handler, Executor executor) {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          return send(request, handler);
+        }
+        catch (IOException e) {
+          throw new CompletionException(e);
+        }
+      }, executor);
+    }
+  }
+
+  private static final HttpRequest REQUEST =
+      HttpRequest.newBuilder(URI.create("http://example.org/")).build();
+
+  @Test
+  public void run_FastServer_ConstantRate() throws InterruptedException {
+    var generator = new LoadGenerator(
+        new SlowHttpClient(1), REQUEST, 100, 2, Duration.ofMillis(500), false);
+    var result = generator.run();
+    assertEquals(result.requests(), 50);
+    assertEquals(result.responses(2), 50);
+    assertEquals(result.errors(), 0);
+  }
+
+  @Test
+  public void run_ServerSlowerThanRate_QueueingIncludedInLatency()
+      throws InterruptedException {
+    // one thread completes only 20 of the 100 requests per second scheduled
+    var generator = new LoadGenerator(
+        new SlowHttpClient(50), REQUEST, 100, 1, Duration.ofMillis(300), false);
+    var result = generator.run();
+    assertEquals(result.requests(), 30);
+    long serviceTime = result.serviceTime().percentileNanos(99);
+    long latency = result.latency().percentileNanos(99);
+    assertTrue(serviceTime < TimeUnit.MILLISECONDS.toNanos(200), "service " + serviceTime);
+    assertTrue(latency > TimeUnit.MILLISECONDS.toNanos(1000), "latency " + latency);
+  }
+
+  @Test
+  public void run_AsyncSlowServer_AllRequestsCompleted() throws InterruptedException {
+    var generator = new LoadGenerator(
+        new SlowHttpClient(50), REQUEST, 100, 5, Duration.ofMillis(300), true);
+    var result = generator.run();
+    assertEquals(result.requests(), 30);
+    assertTrue(result.latency().maxNanos() >= result.serviceTime().maxNanos());
+  }
+}
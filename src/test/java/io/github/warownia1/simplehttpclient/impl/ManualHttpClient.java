@@ -0,0 +1,57 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * A client whose asynchronous requests stay in flight until they are completed by the
+ * test, in the order they were sent.
+ */
+class ManualHttpClient implements HttpClient {
+  final List<HttpRequest> started = new CopyOnWriteArrayList<>();
+  final List<CompletableFuture<HttpResponse<?>>> pending = new CopyOnWriteArrayList<>();
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      HttpResponse.BodyHandler<T> handler, Executor executor) {
+    var future = new CompletableFuture<HttpResponse<?>>();
+    started.add(request);
+    pending.add(future);
+    return (CompletableFuture<HttpResponse<T>>) (CompletableFuture<?>) future;
+  }
+
+  CompletableFuture<HttpResponse<?>> get(int index) {
+    return pending.get(index);
+  }
+
+  void respond(int index, int statusCode) {
+    HttpRequest request = started.get(index);
+    pending.get(index).complete(
+        new SimpleHttpResponse<>(statusCode, request, null, null, request.uri()));
+  }
+
+  void complete(int index) {
+    respond(index, 200);
+  }
+
+  int sentCount() {
+    return pending.size();
+  }
+
+  List<String> startedPaths() {
+    return started.stream().map(r -> r.uri().getPath()).collect(Collectors.toList());
+  }
+}
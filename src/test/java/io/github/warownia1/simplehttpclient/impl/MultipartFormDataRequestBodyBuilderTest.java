@@ -0,0 +1,128 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+public class MultipartFormDataRequestBodyBuilderTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  @Test
+  public void build_FieldAndPart_BodyMatches() {
+    var body = new MultipartFormDataRequestBodyBuilder("XyZ")
+        .addField("name", "value")
+        .addPart("file", "a.txt", "text/plain", "content".getBytes(UTF_8))
+        .build();
+    var expected = "--XyZ\r\n" +
+        "Content-Disposition: form-data; name=\"name\"\r\n" +
+        "\r\n" +
+        "value\r\n" +
+        "--XyZ\r\n" +
+        "Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n" +
+        "Content-Type: text/plain\r\n" +
+        "\r\n" +
+        "content\r\n" +
+        "--XyZ--\r\n";
+    assertEquals(new String(body.getBytes(), UTF_8), expected);
+    assertEquals(body.contentLength(), expected.getBytes(UTF_8).length);
+  }
+
+  @Test
+  public void build_NoParts_OnlyCloseDelimiter() {
+    var body = new MultipartFormDataRequestBodyBuilder("XyZ").build();
+    assertEquals(new String(body.getBytes(), UTF_8), "--XyZ--\r\n");
+  }
+
+  @Test
+  public void build_QuotedName_Escaped() {
+    var body = new MultipartFormDataRequestBodyBuilder("XyZ")
+        .addField("a\"b", "")
+        .build();
+    assertEquals(new String(body.getBytes(), UTF_8),
+        "--XyZ\r\nContent-Disposition: form-data; name=\"a%22b\"\r\n\r\n\r\n--XyZ--\r\n");
+  }
+
+  @Test
+  public void build_StreamOfUnknownLength_LengthUnknown() {
+    var body = new MultipartFormDataRequestBodyBuilder()
+        .addField("name", "value")
+        .addStream("data", null, null, () -> new ByteArrayInputStream(new byte[10]), -1)
+        .build();
+    assertEquals(body.contentLength(), -1);
+  }
+
+  @Test
+  public void build_FilePart_ContentLengthMatchesWritten() throws IOException {
+    var file = Files.createTempFile("multipart", ".bin");
+    try {
+      Files.write(file, new byte[1000]);
+      var body = new MultipartFormDataRequestBodyBuilder()
+          .addFile("file", file, "application/octet-stream")
+          .build();
+      var out = new ByteArrayOutputStream();
+      body.writeTo(out);
+      assertEquals(body.contentLength(), out.size());
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void new_InvalidBoundary_ThrowIllegalArgumentException() {
+    new MultipartFormDataRequestBodyBuilder("with space");
+  }
+
+  @DataProvider(name = "StreamLength")
+  public Object[][] streamLength() {
+    return new Object[][]{{-1L}, {11L}};
+  }
+
+  @Test(dataProvider = "StreamLength")
+  public void send_MultipartBody_PartsReceived(long length) throws IOException {
+    stubFor(post("/").willReturn(ok()));
+    var builder = new MultipartFormDataRequestBodyBuilder()
+        .addField("title", "report")
+        .addStream("file", "report.txt", "text/plain",
+            () -> new ByteArrayInputStream("hello world".getBytes(UTF_8)), length);
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl()))
+        .header("Content-Type", builder.contentType())
+        .POST(builder.build())
+        .build();
+    HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.discarding());
+    verify(postRequestedFor(urlEqualTo("/"))
+        .withRequestBodyPart(aMultipart("title").withBody(equalTo("report")).build())
+        .withRequestBodyPart(aMultipart("file").withBody(equalTo("hello world")).build()));
+  }
+}
@@ -0,0 +1,160 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class PriorityDispatchingHttpClientTest {
+
+  private static HttpRequest request(String path, String priority, Duration timeout) {
+    var builder = HttpRequest.newBuilder(URI.create("http://example.org" + path));
+    if (priority != null)
+      builder.header("Priority", priority);
+    if (timeout != null)
+      builder.timeout(timeout);
+    return builder.build();
+  }
+
+  private static CompletableFuture<HttpResponse<Void>> send(HttpClient client,
+      HttpRequest request) {
+    return client.sendAsync(request, HttpResponse.BodyHandlers.discarding(),
+        ForkJoinPool.commonPool());
+  }
+
+  @Test
+  public void urgency_PriorityHeader_Parsed() {
+    assertEquals(PriorityDispatchingHttpClient.urgency(request("/", "u=1, i", null)), 1);
+    assertEquals(PriorityDispatchingHttpClient.urgency(request("/", "i", null)), 3);
+    assertEquals(PriorityDispatchingHttpClient.urgency(request("/", "u=9", null)), 3);
+    assertEquals(PriorityDispatchingHttpClient.urgency(request("/", null, null)), 3);
+  }
+
+  @Test
+  public void sendAsync_OverLimit_DispatchedByUrgency() {
+    var delegate = new ManualHttpClient();
+    var client = new PriorityDispatchingHttpClient(delegate, 1, 10);
+    send(client, request("/first", null, null));
+    send(client, request("/background", "u=7", null));
+    send(client, request("/normal", null, null));
+    send(client, request("/interactive", "u=0", null));
+    assertEquals(client.queueLength(), 3);
+    for (int i = 0; i < 4; i++) {
+      delegate.complete(i);
+    }
+    assertEquals(delegate.startedPaths(),
+        List.of("/first", "/interactive", "/normal", "/background"));
+    assertEquals(client.inFlight(), 0);
+  }
+
+  @Test
+  public void sendAsync_SameUrgency_EarliestDeadlineFirst() {
+    var delegate = new ManualHttpClient();
+    var client = new PriorityDispatchingHttpClient(delegate, 1, 10);
+    send(client, request("/first", null, null));
+    send(client, request("/none", null, null));
+    send(client, request("/late", null, Duration.ofSeconds(20)));
+    send(client, request("/early", null, Duration.ofSeconds(10)));
+    for (int i = 0; i < 3; i++) {
+      delegate.complete(i);
+    }
+    assertEquals(delegate.startedPaths(), List.of("/first", "/early", "/late", "/none"));
+  }
+
+  @Test
+  public void sendAsync_QueueFull_LeastUrgentShed() {
+    var delegate = new ManualHttpClient();
+    var client = new PriorityDispatchingHttpClient(delegate, 1, 1);
+    send(client, request("/first", null, null));
+    var background = send(client, request("/background", "u=7", null));
+    var interactive = send(client, request("/interactive", "u=0", null));
+    var exc = expectThrows(ExecutionException.class, background::get);
+    assertTrue(exc.getCause() instanceof RequestRejectedException);
+    assertEquals(client.shedCount(), 1);
+    var rejected = send(client, request("/other", "u=7", null));
+    exc = expectThrows(ExecutionException.class, rejected::get);
+    assertTrue(exc.getCause() instanceof RequestRejectedException);
+    delegate.complete(0);
+    assertEquals(delegate.startedPaths(), List.of("/first", "/interactive"));
+    assertFalse(interactive.isDone());
+  }
+
+  @Test
+  public void sendAsync_DispatchedBeforeDeadline_TimerCancelled() {
+    var delegate = new ManualHttpClient();
+    var client = new PriorityDispatchingHttpClient(delegate, 1, 10);
+    send(client, request("/first", null, null));
+    int pending = Timeouts.pending();
+    send(client, request("/waiting", null, Duration.ofHours(1)));
+    assertEquals(Timeouts.pending(), pending + 1);
+    delegate.complete(0);
+    assertEquals(delegate.startedPaths(), List.of("/first", "/waiting"));
+    assertEquals(Timeouts.pending(), pending);
+  }
+
+  @Test
+  public void sendAsync_DeadlineExpiredInQueue_Rejected() throws InterruptedException {
+    var delegate = new ManualHttpClient();
+    var client = new PriorityDispatchingHttpClient(delegate, 1, 10);
+    send(client, request("/first", null, null));
+    var expiring = send(client, request("/expiring", null, Duration.ofMillis(100)));
+    var exc = expectThrows(ExecutionException.class, () -> expiring.get(2, TimeUnit.SECONDS));
+    assertTrue(exc.getCause() instanceof RequestRejectedException);
+    assertEquals(client.queueLength(), 0);
+    delegate.complete(0);
+    assertEquals(delegate.startedPaths(), List.of("/first"));
+    assertEquals(client.inFlight(), 0);
+  }
+
+  @Test
+  public void sendAsync_CancelledWhileQueued_SlotNotTaken() {
+    var delegate = new ManualHttpClient();
+    var client = new PriorityDispatchingHttpClient(delegate, 1, 10);
+    send(client, request("/first", null, null));
+    send(client, request("/cancelled", null, null)).cancel(true);
+    assertEquals(client.queueLength(), 0);
+    delegate.complete(0);
+    assertEquals(client.inFlight(), 0);
+    send(client, request("/next", null, null));
+    assertEquals(delegate.startedPaths(), List.of("/first", "/next"));
+  }
+
+  @Test
+  public void send_Blocking_WaitsForSlot() throws Exception {
+    var delegate = new ManualHttpClient() {
+      @Override
+      public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        started.add(request);
+        return new SimpleHttpResponse<>(200, request, null, null, request.uri());
+      }
+    };
+    var client = new PriorityDispatchingHttpClient(delegate, 1, 10);
+    send(client, request("/first", null, null));
+    var blocking = CompletableFuture.supplyAsync(() -> {
+      try {
+        return client.send(request("/blocking", null, null),
+            HttpResponse.BodyHandlers.discarding());
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Thread.sleep(100);
+    assertFalse(blocking.isDone());
+    delegate.complete(0);
+    assertEquals(blocking.get(2, TimeUnit.SECONDS).statusCode(), 200);
+    assertEquals(client.inFlight(), 0);
+  }
+}
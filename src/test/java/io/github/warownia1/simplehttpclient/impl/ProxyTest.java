@@ -0,0 +1,249 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class ProxyTest {
+  WireMockServer server;
+  ProxyStub proxy;
+
+  /**
+   * A forward proxy answering plain requests itself and tunnelling CONNECT requests
+   * to their targets.
+   */
+  static class ProxyStub implements Runnable {
+    final ServerSocket serverSocket;
+    final AtomicInteger connections = new AtomicInteger();
+    final List<String> requestLines = new CopyOnWriteArrayList<>();
+
+    ProxyStub() throws IOException {
+      serverSocket = new ServerSocket(0);
+      Thread thread = new Thread(this, "proxy-stub");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    InetSocketAddress address() {
+      return new InetSocketAddress("localhost", serverSocket.getLocalPort());
+    }
+
+    @Override
+    public void run() {
+      while (!serverSocket.isClosed()) {
+        try {
+          Socket socket = serverSocket.accept();
+          connections.incrementAndGet();
+          Thread thread = new Thread(() -> handle(socket));
+          thread.setDaemon(true);
+          thread.start();
+        }
+        catch (IOException e) {
+          return;
+        }
+      }
+    }
+
+    private void handle(Socket socket) {
+      try (socket) {
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+        String requestLine;
+        while ((requestLine = readLine(in)) != null) {
+          requestLines.add(requestLine);
+          int contentLength = 0;
+          String line;
+          while (!(line = readLine(in)).isEmpty()) {
+            if (line.toLowerCase().startsWith("content-length:"))
+              contentLength = Integer.parseInt(line.substring(15).trim());
+          }
+          in.readNBytes(contentLength);
+          if (requestLine.startsWith("CONNECT ")) {
+            String[] target = requestLine.split(" ")[1].split(":");
+            out.write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes());
+            out.flush();
+            tunnel(socket, new Socket(target[0], Integer.parseInt(target[1])));
+            return;
+          }
+          out.write("HTTP/1.1 200 OK\r\nContent-Length: 7\r\n\r\nproxied".getBytes());
+          out.flush();
+        }
+      }
+      catch (IOException ignored) {
+      }
+    }
+
+    private static void tunnel(Socket client, Socket target) throws IOException {
+      try (target) {
+        Thread upstream = new Thread(() -> {
+          try {
+            client.getInputStream().transferTo(target.getOutputStream());
+            target.shutdownOutput();
+          }
+          catch (IOException ignored) {
+          }
+        });
+        upstream.setDaemon(true);
+        upstream.start();
+        target.getInputStream().transferTo(client.getOutputStream());
+      }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+      var line = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != '\n') {
+        if (b < 0)
+          return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+        if (b != '\r')
+          line.write(b);
+      }
+      return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort().dynamicHttpsPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void reset() throws IOException {
+    WireMock.reset();
+    proxy = new ProxyStub();
+  }
+
+  @AfterMethod
+  public void closeProxy() throws IOException {
+    proxy.close();
+  }
+
+  @Test
+  public void select_MostSpecificPatternWins() {
+    var other = new InetSocketAddress("other", 3128);
+    var selector = HostProxySelector.of(proxy.address())
+        .withProxy("*.example.org", other)
+        .withBypass("internal.example.org", "*.local");
+    assertEquals(selector.select(URI.create("http://example.com/")).get(0).address(),
+        proxy.address());
+    assertEquals(selector.select(URI.create("http://api.example.org/")).get(0).address(),
+        other);
+    assertEquals(selector.select(URI.create("http://internal.example.org/")),
+        List.of(Proxy.NO_PROXY));
+    assertEquals(selector.select(URI.create("http://a.b.local/")), List.of(Proxy.NO_PROXY));
+    assertEquals(selector.select(URI.create("http://example.org/")).get(0).address(),
+        proxy.address());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void withBypass_InvalidPattern_Rejected() {
+    HostProxySelector.direct().withBypass("api.*.org");
+  }
+
+  @Test
+  public void send_PlainHttp_AbsoluteFormOverPooledConnection() throws IOException {
+    var client = HttpClient.newBuilder().proxy(HostProxySelector.of(proxy.address())).build();
+    // the host is only known to the proxy
+    var request = HttpRequest.newBuilder(URI.create("http://service.invalid/items")).build();
+    for (int i = 0; i < 3; i++) {
+      var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      assertEquals(response.body(), "proxied");
+    }
+    assertEquals(proxy.requestLines.get(0), "GET http://service.invalid/items HTTP/1.1");
+    assertEquals(proxy.requestLines.size(), 3);
+    assertEquals(proxy.connections.get(), 1);
+  }
+
+  @Test
+  public void send_BypassedHost_ConnectedDirectly() throws IOException {
+    stubFor(get("/").willReturn(ok("direct")));
+    var selector = HostProxySelector.of(proxy.address()).withBypass("localhost");
+    var client = HttpClient.newBuilder().proxy(selector).build();
+    var request = HttpRequest.newBuilder(
+        URI.create("http://localhost:" + server.port() + "/")).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(response.body(), "direct");
+    assertEquals(proxy.connections.get(), 0);
+  }
+
+  @Test
+  public void send_Https_TunnelReused() throws IOException, GeneralSecurityException {
+    stubFor(get("/").willReturn(ok("secure")));
+    SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+    HostnameVerifier defaultVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+    var trustAll = new X509TrustManager() {
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+    };
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, new TrustManager[]{trustAll}, null);
+    HttpsURLConnection.setDefaultSSLSocketFactory(context.getSocketFactory());
+    HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+    try {
+      var client = HttpClient.newBuilder().proxy(HostProxySelector.of(proxy.address())).build();
+      var request = HttpRequest.newBuilder(
+          URI.create("https://localhost:" + server.httpsPort() + "/")).build();
+      for (int i = 0; i < 3; i++) {
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(response.body(), "secure");
+      }
+      assertEquals(proxy.requestLines, List.of("CONNECT localhost:" + server.httpsPort() +
+          " HTTP/1.1"));
+      assertEquals(proxy.connections.get(), 1);
+    }
+    finally {
+      HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+      HttpsURLConnection.setDefaultHostnameVerifier(defaultVerifier);
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import io.github.warownia1.simplehttpclient.RequestRejectedException;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class RateLimitingHttpClientTest {
+  private static final long SECOND = 1_000_000_000L;
+
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  @Test
+  public void reserve_WithinBurst_NoWait() {
+    var limiter = new RateLimiter(10, 3, 0);
+    assertEquals(limiter.reserve(0, 0), 0);
+    assertEquals(limiter.reserve(0, 0), 0);
+    assertEquals(limiter.reserve(0, 0), 0);
+  }
+
+  @Test
+  public void reserve_BurstExhausted_WaitsOneInterval() {
+    var limiter = new RateLimiter(10, 2, 0);
+    limiter.reserve(0, 0);
+    limiter.reserve(0, 0);
+    assertEquals(limiter.reserve(0, SECOND), SECOND / 10);
+    assertEquals(limiter.reserve(0, SECOND), 2 * SECOND / 10);
+  }
+
+  @Test
+  public void reserve_WaitExceedsMax_RejectedWithoutReserving() {
+    var limiter = new RateLimiter(10, 1, 0);
+    limiter.reserve(0, 0);
+    assertEquals(limiter.reserve(0, 0), -1);
+    assertEquals(limiter.reserve(SECOND / 10, 0), 0);
+  }
+
+  @Test
+  public void reserve_Paused_WaitsUntilResume() {
+    var limiter = new RateLimiter(10, 5, 0);
+    limiter.pauseUntil(2 * SECOND);
+    assertEquals(limiter.reserve(0, 10 * SECOND), 2 * SECOND);
+  }
+
+  @Test
+  public void adapt_FewRemaining_RateLowered() {
+    var limiter = new RateLimiter(100, 1, 0);
+    limiter.adapt(5, 10 * SECOND);
+    assertEquals(limiter.rate(), 0.5, 1e-9);
+    limiter.reserve(0, 0);
+    assertEquals(limiter.reserve(0, 10 * SECOND), 2 * SECOND);
+  }
+
+  @Test
+  public void adapt_ManyRemaining_ConfiguredRateNotExceeded() {
+    var limiter = new RateLimiter(100, 1, 0);
+    limiter.adapt(1_000_000, SECOND);
+    assertEquals(limiter.rate(), 100, 1e-9);
+  }
+
+  @Test
+  public void quotaValue_CombinedHeader_ParametersParsed() {
+    var headers = HttpHeaders.of(Map.of("RateLimit", List.of("limit=100, remaining=7, reset=30")));
+    assertEquals(RateLimitingHttpClient.quotaValue(headers, "remaining"), OptionalLong.of(7));
+    assertEquals(RateLimitingHttpClient.quotaValue(headers, "reset"), OptionalLong.of(30));
+  }
+
+  @Test
+  public void send_QuotaExhausted_NextRequestDelayed() throws IOException {
+    stubFor(get("/").willReturn(ok()
+        .withHeader("X-RateLimit-Remaining", "0")
+        .withHeader("X-RateLimit-Reset", "1")));
+    var client = new RateLimitingHttpClient(
+        HttpClient.newHttpClient(), 100, 10, Duration.ofSeconds(5));
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    client.send(request, HttpResponse.BodyHandlers.discarding());
+    long start = System.nanoTime();
+    client.send(request, HttpResponse.BodyHandlers.discarding());
+    assertTrue(System.nanoTime() - start >= 900_000_000L);
+  }
+
+  @Test
+  public void send_RetryAfter_NextRequestRejected() throws IOException {
+    stubFor(get("/").willReturn(aResponse().withStatus(429).withHeader("Retry-After", "10")));
+    var client = new RateLimitingHttpClient(
+        HttpClient.newHttpClient(), 100, 10, Duration.ofSeconds(1));
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(response.statusCode(), 429);
+    assertThrows(RequestRejectedException.class,
+        () -> client.send(request, HttpResponse.BodyHandlers.discarding()));
+    verify(1, getRequestedFor(urlEqualTo("/")));
+  }
+
+  @Test
+  public void sendAsync_OverRate_RejectedWhenNoWaitAllowed() {
+    stubFor(get("/").willReturn(ok()));
+    var client = new RateLimitingHttpClient(
+        HttpClient.newHttpClient(), 1, 1, Duration.ZERO);
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    client.sendAsync(request, HttpResponse.BodyHandlers.discarding(),
+        ForkJoinPool.commonPool()).join();
+    var future = client.sendAsync(request, HttpResponse.BodyHandlers.discarding(),
+        ForkJoinPool.commonPool());
+    var exc = expectThrows(CompletionException.class, future::join);
+    assertTrue(exc.getCause() instanceof RequestRejectedException);
+  }
+
+  @Test
+  public void sendAsync_OverRate_ScheduledAfterInterval() {
+    stubFor(get("/").willReturn(ok()));
+    var client = new RateLimitingHttpClient(
+        HttpClient.newHttpClient(), 5, 1, Duration.ofSeconds(1));
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    long start = System.nanoTime();
+    client.sendAsync(request, HttpResponse.BodyHandlers.discarding(),
+        ForkJoinPool.commonPool());
+    var response = client.sendAsync(request, HttpResponse.BodyHandlers.discarding(),
+        ForkJoinPool.commonPool()).join();
+    assertEquals(response.statusCode(), 200);
+    assertTrue(System.nanoTime() - start >= 180_000_000L);
+    assertEquals(client.rates().get(Origins.of(request.uri())), 5, 1e-9);
+  }
+
+  @Test
+  public void sendAsync_CancelledWithinRate_DelegateCancelled() {
+    var pending = new CompletableFuture<HttpResponse<Void>>();
+    var delegate = new HttpClient() {
+      @Override
+      public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+          HttpResponse.BodyHandler<T> handler, Executor executor) {
+        return (CompletableFuture<HttpResponse<T>>) (CompletableFuture<?>) pending;
+      }
+    };
+    var client = new RateLimitingHttpClient(delegate, 5, 5, Duration.ZERO);
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var future = client.sendAsync(request, HttpResponse.BodyHandlers.discarding(),
+        ForkJoinPool.commonPool());
+    assertTrue(future.cancel(true));
+    assertTrue(pending.isCancelled());
+  }
+}
@@ -0,0 +1,140 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.URI;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class RedirectTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  private static HttpRequest.Body body(String content) {
+    return new ByteArrayRequestBody(content.getBytes());
+  }
+
+  @Test
+  public void send_Found_PostChangedToGet() throws IOException {
+    stubFor(post("/form").willReturn(aResponse().withStatus(302).withHeader("Location", "/done")));
+    stubFor(get("/done").willReturn(ok("done")));
+    var request = HttpRequest.newBuilder(URI.create(server.url("/form")))
+        .header("Content-Type", "text/plain")
+        .POST(body("content"))
+        .build();
+    var response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(response.statusCode(), 200);
+    assertEquals(response.body(), "done");
+    assertEquals(response.uri(), URI.create(server.url("/done")));
+    assertSame(response.request(), request);
+    verify(getRequestedFor(urlEqualTo("/done")).withoutHeader("Content-Type"));
+  }
+
+  @Test
+  public void send_TemporaryRedirect_MethodAndBodyPreserved() throws IOException {
+    stubFor(post("/old").willReturn(aResponse().withStatus(307).withHeader("Location", "/new")));
+    stubFor(post("/new").willReturn(ok()));
+    var request = HttpRequest.newBuilder(URI.create(server.url("/old")))
+        .POST(body("content"))
+        .build();
+    var response = HttpClient.newHttpClient()
+        .send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(response.statusCode(), 200);
+    verify(postRequestedFor(urlEqualTo("/new")).withRequestBody(equalTo("content")));
+  }
+
+  @Test
+  public void send_PolicyNever_RedirectReturned() throws IOException {
+    stubFor(get("/old").willReturn(aResponse().withStatus(301).withHeader("Location", "/new")));
+    var client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+    var request = HttpRequest.newBuilder(URI.create(server.url("/old"))).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(response.statusCode(), 301);
+    assertEquals(response.headers().firstValue("Location").orElseThrow(), "/new");
+    verify(0, getRequestedFor(urlEqualTo("/new")));
+  }
+
+  @Test
+  public void send_PermanentRedirect_TargetCached() throws IOException {
+    stubFor(get("/old").willReturn(aResponse().withStatus(301).withHeader("Location", "/new")));
+    stubFor(get("/new").willReturn(ok("new")));
+    var client = HttpClient.newHttpClient();
+    var request = HttpRequest.newBuilder(URI.create(server.url("/old"))).build();
+    client.send(request, HttpResponse.BodyHandlers.ofString());
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(response.body(), "new");
+    verify(1, getRequestedFor(urlEqualTo("/old")));
+    verify(2, getRequestedFor(urlEqualTo("/new")));
+  }
+
+  @Test
+  public void send_TemporaryRedirect_NotCached() throws IOException {
+    stubFor(get("/old").willReturn(aResponse().withStatus(302).withHeader("Location", "/new")));
+    stubFor(get("/new").willReturn(ok()));
+    var client = HttpClient.newHttpClient();
+    var request = HttpRequest.newBuilder(URI.create(server.url("/old"))).build();
+    client.send(request, HttpResponse.BodyHandlers.discarding());
+    client.send(request, HttpResponse.BodyHandlers.discarding());
+    verify(2, getRequestedFor(urlEqualTo("/old")));
+  }
+
+  @Test
+  public void send_RedirectLoop_TooManyRedirects() {
+    stubFor(get("/a").willReturn(aResponse().withStatus(302).withHeader("Location", "/b")));
+    stubFor(get("/b").willReturn(aResponse().withStatus(302).withHeader("Location", "/a")));
+    var client = HttpClient.newBuilder().maxRedirects(3).build();
+    var request = HttpRequest.newBuilder(URI.create(server.url("/a"))).build();
+    assertThrows(ProtocolException.class,
+        () -> client.send(request, HttpResponse.BodyHandlers.discarding()));
+    verify(4, anyRequestedFor(anyUrl()));
+  }
+
+  @Test
+  public void send_CrossOriginRedirect_AuthorizationDropped() throws IOException {
+    String target = "http://127.0.0.1:" + server.port() + "/target";
+    stubFor(get("/source").willReturn(aResponse().withStatus(302).withHeader("Location", target)));
+    stubFor(get("/target").willReturn(ok()));
+    var request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + "/source"))
+        .header("Authorization", "Bearer secret")
+        .header("X-Custom", "kept")
+        .build();
+    HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.discarding());
+    verify(getRequestedFor(urlEqualTo("/source")).withHeader("Authorization", equalTo("Bearer secret")));
+    verify(getRequestedFor(urlEqualTo("/target"))
+        .withoutHeader("Authorization")
+        .withHeader("X-Custom", equalTo("kept")));
+  }
+
+  @Test
+  public void redirected_SeeOther_HeadPreserved() {
+    var request = HttpRequest.newBuilder(URI.create("http://example.org/a")).HEAD().build();
+    var redirected = SimpleHttpClient.redirected(request, 303, URI.create("http://example.org/b"));
+    assertEquals(redirected.method(), "HEAD");
+    assertEquals(redirected.uri(), URI.create("http://example.org/b"));
+  }
+}
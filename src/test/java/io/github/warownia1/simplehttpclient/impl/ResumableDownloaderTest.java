@@ -0,0 +1,190 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.testng.Assert.*;
+
+public class ResumableDownloaderTest {
+  static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-");
+
+  HttpServer server;
+  Path directory;
+  byte[] content;
+  final List<String> ranges = new CopyOnWriteArrayList<>();
+  /** the number of the next responses which are cut short */
+  final AtomicInteger truncations = new AtomicInteger();
+  volatile String etag;
+
+  @BeforeClass
+  public void setupServer() throws IOException {
+    content = new byte[100_000];
+    new Random(7).nextBytes(content);
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/file", this::serve);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void teardownServer() {
+    server.stop(0);
+  }
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    ranges.clear();
+    truncations.set(0);
+    etag = "\"v1\"";
+    directory = Files.createTempDirectory("resumable");
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void deleteFiles() throws IOException {
+    try (var files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator)
+        Files.delete(file);
+    }
+    Files.delete(directory);
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+      ranges.add(String.valueOf(range));
+      exchange.getResponseHeaders().add("ETag", etag);
+      Matcher matcher = range == null ? null : RANGE.matcher(range);
+      int start = 0;
+      if (matcher != null && matcher.matches() && etag.equals(ifRange)) {
+        start = Integer.parseInt(matcher.group(1));
+        if (start >= content.length) {
+          exchange.getResponseHeaders().add("Content-Range", "bytes */" + content.length);
+          exchange.sendResponseHeaders(416, -1);
+          return;
+        }
+        exchange.getResponseHeaders().add("Content-Range",
+            "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+        exchange.sendResponseHeaders(206, content.length - start);
+      }
+      else {
+        exchange.sendResponseHeaders(200, content.length);
+      }
+      OutputStream body = exchange.getResponseBody();
+      if (truncations.getAndDecrement() > 0) {
+        // closing the exchange before the declared length drops the connection
+        body.write(content, start, (content.length - start) / 2);
+        body.flush();
+        return;
+      }
+      body.write(content, start, content.length - start);
+    }
+  }
+
+  private HttpRequest request() {
+    return HttpRequest.newBuilder(URI.create(
+        "http://localhost:" + server.getAddress().getPort() + "/file")).build();
+  }
+
+  @Test
+  public void download_Completed_CheckpointDeleted() throws IOException {
+    Path target = directory.resolve("file");
+    var downloader = new ResumableDownloader(HttpClient.newHttpClient(), 1, 10_000);
+    assertEquals(downloader.download(request(), target), content.length);
+    assertEquals(Files.readAllBytes(target), content);
+    assertFalse(Files.exists(ResumableDownloader.checkpointPath(target)));
+  }
+
+  @Test
+  public void download_Interrupted_ResumedFromCheckpoint() throws IOException {
+    Path target = directory.resolve("file");
+    truncations.set(1);
+    var downloader = new ResumableDownloader(HttpClient.newHttpClient(), 1, 10_000);
+    expectThrows(IOException.class, () -> downloader.download(request(), target));
+    var checkpoint = ResumableDownloader.Checkpoint.read(
+        ResumableDownloader.checkpointPath(target));
+    assertNotNull(checkpoint);
+    assertTrue(checkpoint.written > 0 && checkpoint.written < content.length);
+    assertEquals(checkpoint.etag, "\"v1\"");
+    assertEquals(Arrays.copyOf(Files.readAllBytes(target), (int) checkpoint.written),
+        Arrays.copyOf(content, (int) checkpoint.written));
+
+    // a new downloader stands for a restarted process
+    var restarted = new ResumableDownloader(HttpClient.newHttpClient(), 1, 10_000);
+    assertEquals(restarted.download(request(), target), content.length);
+    assertEquals(Files.readAllBytes(target), content);
+    assertEquals(ranges, List.of("null", "bytes=" + checkpoint.written + "-"));
+    assertFalse(Files.exists(ResumableDownloader.checkpointPath(target)));
+  }
+
+  @Test
+  public void download_FailedAttempt_RetriedWithRange() throws IOException {
+    Path target = directory.resolve("file");
+    truncations.set(1);
+    var downloader = new ResumableDownloader(HttpClient.newHttpClient(), 3, 10_000);
+    downloader.download(request(), target);
+    assertEquals(Files.readAllBytes(target), content);
+    assertEquals(ranges.size(), 2);
+    assertTrue(ranges.get(1).startsWith("bytes="));
+  }
+
+  @Test
+  public void download_ResourceChanged_FetchedFromStart() throws IOException {
+    Path target = directory.resolve("file");
+    truncations.set(1);
+    var downloader = new ResumableDownloader(HttpClient.newHttpClient(), 1, 10_000);
+    expectThrows(IOException.class, () -> downloader.download(request(), target));
+    etag = "\"v2\"";
+    content[0] ^= 1;
+    try {
+      assertEquals(downloader.download(request(), target), content.length);
+      assertEquals(Files.readAllBytes(target), content);
+      assertTrue(ranges.get(1).startsWith("bytes="));
+    }
+    finally {
+      content[0] ^= 1;
+    }
+  }
+
+  @Test
+  public void download_CheckpointWithoutFile_FetchedFromStart() throws IOException {
+    Path target = directory.resolve("file");
+    new ResumableDownloader.Checkpoint(5000, "\"v1\"", null)
+        .write(ResumableDownloader.checkpointPath(target));
+    var downloader = new ResumableDownloader(HttpClient.newHttpClient(), 1, 10_000);
+    downloader.download(request(), target);
+    assertEquals(Files.readAllBytes(target), content);
+    assertEquals(ranges, List.of("null"));
+  }
+
+  @Test
+  public void download_CompletedBeforeCheckpointDeleted_Completed() throws IOException {
+    Path target = directory.resolve("file");
+    Files.write(target, content);
+    new ResumableDownloader.Checkpoint(content.length, "\"v1\"", null)
+        .write(ResumableDownloader.checkpointPath(target));
+    var downloader = new ResumableDownloader(HttpClient.newHttpClient(), 1, 10_000);
+    assertEquals(downloader.download(request(), target), content.length);
+    assertEquals(Files.readAllBytes(target), content);
+    assertEquals(ranges, List.of("bytes=" + content.length + "-"));
+    assertFalse(Files.exists(ResumableDownloader.checkpointPath(target)));
+  }
+}
@@ -0,0 +1,259 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.http.Fault;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpHeaders;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.testng.Assert.*;
+
+public class RetryingHttpClientTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+  }
+
+  private static RetryPolicy fastPolicy() {
+    return RetryPolicy.defaultPolicy()
+        .withBackoff(Duration.ofMillis(1), Duration.ofMillis(10));
+  }
+
+  private void stubUnavailableTwice() {
+    stubFor(get("/").inScenario("retry").whenScenarioStateIs(STARTED)
+        .willReturn(serviceUnavailable().withBody("first")).willSetStateTo("second"));
+    stubFor(get("/").inScenario("retry").whenScenarioStateIs("second")
+        .willReturn(serviceUnavailable().withBody("second")).willSetStateTo("third"));
+    stubFor(get("/").inScenario("retry").whenScenarioStateIs("third")
+        .willReturn(ok("third")));
+  }
+
+  @Test
+  public void send_UnavailableTwice_FinalResponseHandledOnce() throws IOException {
+    stubUnavailableTwice();
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(), fastPolicy());
+    var handled = new AtomicInteger();
+    HttpResponse.BodyHandler<String> handler = (info, stream) -> {
+      handled.incrementAndGet();
+      return HttpResponse.BodyHandlers.ofString().apply(info, stream);
+    };
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.send(request, handler);
+    assertEquals(response.statusCode(), 200);
+    assertEquals(response.body(), "third");
+    assertEquals(handled.get(), 1);
+    assertEquals(client.retryCount(), 2);
+  }
+
+  @Test
+  public void sendAsync_UnavailableTwice_FinalResponseReturned() {
+    stubUnavailableTwice();
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(), fastPolicy());
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.sendAsync(request, HttpResponse.BodyHandlers.ofString(),
+        ForkJoinPool.commonPool()).join();
+    assertEquals(response.body(), "third");
+    verify(3, getRequestedFor(urlEqualTo("/")));
+  }
+
+  @Test
+  public void sendAsync_SubscriberUnavailableTwice_FinalBodyFedToNewSubscriber() {
+    stubUnavailableTwice();
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(), fastPolicy());
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var subscribers = new AtomicInteger();
+    var response = client.sendAsync(request, () -> {
+      subscribers.incrementAndGet();
+      return HttpResponse.BodySubscribers.ofString();
+    }, ForkJoinPool.commonPool()).join();
+    assertEquals(response.statusCode(), 200);
+    assertEquals(response.body(), "third");
+    assertEquals(subscribers.get(), 1);
+    verify(3, getRequestedFor(urlEqualTo("/")));
+  }
+
+  @Test
+  public void sendAsync_DelegateExchangesTwice_SubscribersSeparate() {
+    // a delegate making two exchanges for the request, as a hedging client does
+    HttpClient delegate = new HttpClient() {
+      @Override
+      public <T> HttpResponse<T> send(HttpRequest request,
+          HttpResponse.BodyHandler<T> handler) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+          HttpResponse.BodyHandler<T> handler, Executor executor) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+          Supplier<? extends HttpResponse.BodySubscriber<T>> subscriberSupplier,
+          Executor executor) {
+        var info = new ResponseInfoImpl(200, HttpHeaders.of(Map.of()),
+            HttpClient.Version.HTTP_1_1);
+        var first = subscriberSupplier.get();
+        var second = subscriberSupplier.get();
+        try {
+          first.onHeaders(info);
+          second.onHeaders(info);
+          first.onData(ByteBuffer.wrap("first".getBytes()));
+          second.onData(ByteBuffer.wrap("second".getBytes()));
+          second.onComplete();
+          return CompletableFuture.completedFuture(new SimpleHttpResponse<>(200, request,
+              info.headers(), first.onComplete(), request.uri()));
+        }
+        catch (IOException e) {
+          return CompletableFuture.failedFuture(e);
+        }
+      }
+    };
+    var client = new RetryingHttpClient(delegate, fastPolicy());
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.sendAsync(request, HttpResponse.BodySubscribers::ofString,
+        ForkJoinPool.commonPool()).join();
+    assertEquals(response.body(), "first");
+  }
+
+  @Test
+  public void send_AttemptsExhausted_LastResponseReturned() throws IOException {
+    stubFor(get("/").willReturn(serviceUnavailable().withBody("down")));
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(),
+        fastPolicy().withMaxAttempts(2));
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(response.statusCode(), 503);
+    assertEquals(response.body(), "down");
+    verify(2, getRequestedFor(urlEqualTo("/")));
+  }
+
+  @Test
+  public void send_ConnectionReset_Retried() throws IOException {
+    // HttpURLConnection silently repeats an idempotent request once after a reset
+    stubFor(get("/").inScenario("fault").whenScenarioStateIs(STARTED)
+        .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER))
+        .willSetStateTo("reset again"));
+    stubFor(get("/").inScenario("fault").whenScenarioStateIs("reset again")
+        .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER))
+        .willSetStateTo("recovered"));
+    stubFor(get("/").inScenario("fault").whenScenarioStateIs("recovered")
+        .willReturn(ok("recovered")));
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(), fastPolicy());
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(response.body(), "recovered");
+    assertTrue(client.retryCount() >= 1);
+  }
+
+  @Test
+  public void send_PostRequest_NotRetried() throws IOException {
+    stubFor(post("/").willReturn(serviceUnavailable()));
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(), fastPolicy());
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl()))
+        .POST(new ByteArrayRequestBody(new byte[]{1}))
+        .build();
+    var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(response.statusCode(), 503);
+    verify(1, postRequestedFor(urlEqualTo("/")));
+  }
+
+  @Test
+  public void send_BudgetExhausted_NotRetried() throws IOException {
+    stubFor(get("/").willReturn(serviceUnavailable()));
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(),
+        fastPolicy().withBudget(0, 0));
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(response.statusCode(), 503);
+    assertEquals(client.budgetExhaustedCount(), 1);
+    verify(1, getRequestedFor(urlEqualTo("/")));
+  }
+
+  @Test
+  public void send_RetryAfterTooLong_NotRetried() throws IOException {
+    stubFor(get("/").willReturn(status(429).withHeader("Retry-After", "120")));
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(),
+        fastPolicy().withMaxRetryAfter(Duration.ofSeconds(1)));
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(response.statusCode(), 429);
+    verify(1, getRequestedFor(urlEqualTo("/")));
+  }
+
+  @Test
+  public void send_RetryAfterSeconds_DelayHonored() throws IOException {
+    stubFor(get("/").inScenario("limit").whenScenarioStateIs(STARTED)
+        .willReturn(status(429).withHeader("Retry-After", "1")).willSetStateTo("ok"));
+    stubFor(get("/").inScenario("limit").whenScenarioStateIs("ok").willReturn(ok()));
+    var client = new RetryingHttpClient(HttpClient.newHttpClient(), fastPolicy());
+    var request = HttpRequest.newBuilder(URI.create(server.baseUrl())).build();
+    long start = System.nanoTime();
+    var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+    assertEquals(response.statusCode(), 200);
+    assertTrue(System.nanoTime() - start >= Duration.ofSeconds(1).toNanos());
+  }
+
+  @Test
+  public void retryAfter_Seconds_Parsed() {
+    var headers = HttpHeaders.of(Map.of("Retry-After", List.of("30")));
+    assertEquals(RetryAfter.parse(headers, Instant.now()), Optional.of(Duration.ofSeconds(30)));
+  }
+
+  @Test
+  public void retryAfter_HttpDate_Parsed() {
+    var headers = HttpHeaders.of(Map.of("Retry-After", List.of("Wed, 21 Oct 2015 07:28:00 GMT")));
+    var now = Instant.parse("2015-10-21T07:27:00Z");
+    assertEquals(RetryAfter.parse(headers, now), Optional.of(Duration.ofMinutes(1)));
+  }
+
+  @Test
+  public void retryAfter_Malformed_Empty() {
+    var headers = HttpHeaders.of(Map.of("Retry-After", List.of("soon")));
+    assertEquals(RetryAfter.parse(headers, Instant.now()), Optional.empty());
+  }
+
+  @Test
+  public void backoffBound_ManyRetries_CappedAtMaxDelay() {
+    var policy = RetryPolicy.defaultPolicy()
+        .withBackoff(Duration.ofMillis(100), Duration.ofSeconds(1));
+    assertEquals(policy.backoffBoundNanos(1), Duration.ofMillis(100).toNanos());
+    assertEquals(policy.backoffBoundNanos(3), Duration.ofMillis(400).toNanos());
+    assertEquals(policy.backoffBoundNanos(100), Duration.ofSeconds(1).toNanos());
+  }
+}
@@ -0,0 +1,203 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.testng.Assert.*;
+
+public class SegmentedDownloaderTest {
+  static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+  HttpServer server;
+  ExecutorService executor;
+  Path directory;
+  byte[] content;
+  final List<String> ranges = new CopyOnWriteArrayList<>();
+  final AtomicInteger gets = new AtomicInteger();
+  /** the first range request starting at this offset is cut short */
+  volatile long truncateAt = -1;
+  volatile String etag = "\"v1\"";
+
+  @BeforeClass
+  public void setupServer() throws IOException {
+    content = new byte[100_000];
+    new Random(42).nextBytes(content);
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/ranges", exchange -> serve(exchange, true));
+    server.createContext("/plain", exchange -> serve(exchange, false));
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    directory = Files.createTempDirectory("segments");
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void teardownServer() throws IOException {
+    server.stop(0);
+    try (var files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator)
+        Files.delete(file);
+    }
+    Files.delete(directory);
+  }
+
+  @BeforeMethod
+  public void setup() {
+    ranges.clear();
+    gets.set(0);
+    truncateAt = -1;
+    etag = "\"v1\"";
+    executor = Executors.newFixedThreadPool(8);
+  }
+
+  @AfterMethod
+  public void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  private void serve(HttpExchange exchange, boolean acceptRanges) throws IOException {
+    try (exchange) {
+      var headers = exchange.getResponseHeaders();
+      if (acceptRanges) {
+        headers.add("Accept-Ranges", "bytes");
+        headers.add("ETag", etag);
+      }
+      boolean head = exchange.getRequestMethod().equals("HEAD");
+      if (!head)
+        gets.incrementAndGet();
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+      Matcher matcher = range == null ? null : RANGE.matcher(range);
+      if (head || !acceptRanges || matcher == null || !matcher.matches() ||
+          (ifRange != null && !ifRange.equals(etag))) {
+        if (head)
+          headers.add("Content-Length", String.valueOf(content.length));
+        exchange.sendResponseHeaders(200, head ? -1 : content.length);
+        if (!head)
+          exchange.getResponseBody().write(content);
+        return;
+      }
+      ranges.add(range);
+      int start = Integer.parseInt(matcher.group(1));
+      int end = Integer.parseInt(matcher.group(2));
+      headers.add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+      int length = end - start + 1;
+      exchange.sendResponseHeaders(206, length);
+      OutputStream body = exchange.getResponseBody();
+      if (start == truncateAt) {
+        truncateAt = -1;
+        body.write(content, start, length / 2);
+        body.flush();
+        // closing the exchange before the declared length drops the connection
+        return;
+      }
+      body.write(content, start, length);
+    }
+  }
+
+  private HttpRequest request(String path) {
+    return HttpRequest.newBuilder(URI.create(
+        "http://localhost:" + server.getAddress().getPort() + path)).build();
+  }
+
+  @Test
+  public void download_RangesAccepted_FetchedInSegments() throws IOException {
+    var downloader = new SegmentedDownloader(HttpClient.newHttpClient(), 4, 10_000, 3);
+    Path target = directory.resolve("segmented");
+    assertEquals(downloader.download(request("/ranges"), target, executor), content.length);
+    assertEquals(Files.readAllBytes(target), content);
+    assertEquals(Set.copyOf(ranges), Set.of("bytes=0-24999", "bytes=25000-49999",
+        "bytes=50000-74999", "bytes=75000-99999"));
+  }
+
+  @Test
+  public void download_RangesNotAccepted_FetchedWhole() throws IOException {
+    var downloader = new SegmentedDownloader(HttpClient.newHttpClient(), 4, 10_000, 3);
+    Path target = directory.resolve("whole");
+    assertEquals(downloader.download(request("/plain"), target, executor), content.length);
+    assertEquals(Files.readAllBytes(target), content);
+    assertEquals(gets.get(), 1);
+  }
+
+  @Test
+  public void download_SmallResource_FetchedWhole() throws IOException {
+    var downloader = new SegmentedDownloader(HttpClient.newHttpClient(), 4, 60_000, 3);
+    Path target = directory.resolve("small");
+    downloader.download(request("/ranges"), target, executor);
+    assertEquals(Files.readAllBytes(target), content);
+    assertTrue(ranges.isEmpty());
+    assertEquals(gets.get(), 1);
+  }
+
+  @Test
+  public void download_SegmentCutShort_RemainderRetried() throws IOException {
+    truncateAt = 50_000;
+    var downloader = new SegmentedDownloader(HttpClient.newHttpClient(), 4, 10_000, 3);
+    Path target = directory.resolve("retried");
+    downloader.download(request("/ranges"), target, executor);
+    assertEquals(Files.readAllBytes(target), content);
+    // the dropped connection may lose some of the bytes written before the close, so
+    // the retried range starts anywhere in the cut segment
+    assertTrue(ranges.stream().filter(range -> range.endsWith("-74999")).count() >= 2,
+        ranges.toString());
+  }
+
+  @Test
+  public void download_ResourceChanged_FailedAndFileDeleted() {
+    Path target = directory.resolve("changed");
+    var client = new HttpClient() {
+      final HttpClient delegate = HttpClient.newHttpClient();
+
+      @Override
+      public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+          throws IOException {
+        return delegate.send(request, handler);
+      }
+
+      @Override
+      public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+          HttpResponse.BodyHandler<T> handler, Executor executor) {
+        // the resource changes right after the probe
+        if (request.method().equals("GET"))
+          etag = "\"v2\"";
+        return delegate.sendAsync(request, handler, executor);
+      }
+    };
+    var downloader = new SegmentedDownloader(client, 4, 10_000, 3);
+    expectThrows(IOException.class,
+        () -> downloader.download(request("/ranges"), target, executor));
+    assertFalse(Files.exists(target));
+  }
+
+  @Test
+  public void downloadAsync_CancelledDuringProbe_ProbeCancelled() {
+    var client = new ManualHttpClient();
+    var downloader = new SegmentedDownloader(client, 4, 10_000, 3);
+    var result = downloader.downloadAsync(request("/ranges"),
+        directory.resolve("cancelled"), executor);
+    result.cancel(true);
+    assertTrue(client.get(0).isCancelled());
+    assertEquals(client.sentCount(), 1);
+  }
+}
@@ -0,0 +1,251 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.annotations.*;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.testng.Assert.*;
+
+public class SimpleHttpClientBuilderTest {
+  WireMockServer server;
+
+  @BeforeClass
+  public void setupServer() {
+    server = new WireMockServer(wireMockConfig().dynamicPort().dynamicHttpsPort());
+    server.start();
+    WireMock.configureFor(server.port());
+  }
+
+  @AfterClass
+  public void teardownServer() {
+    server.stop();
+  }
+
+  @BeforeMethod
+  public void resetWireMock() {
+    WireMock.reset();
+    stubFor(any(urlEqualTo("/")).willReturn(ok("ok")));
+    stubFor(get("/slow").willReturn(ok("slow").withFixedDelay(600)));
+    stubFor(get("/dribble").willReturn(ok("0123456789").withChunkedDribbleDelay(10, 2000)));
+  }
+
+  private HttpRequest request(String path) {
+    return HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path))
+        .build();
+  }
+
+  @Test(expectedExceptions = SocketTimeoutException.class)
+  public void send_ReadTimeout_TimedOut() throws IOException {
+    var client = HttpClient.newBuilder().readTimeout(Duration.ofMillis(200)).build();
+    client.send(request("/slow"), HttpResponse.BodyHandlers.ofString());
+  }
+
+  @Test
+  public void send_RequestTimeoutSet_ClientTimeoutsOverridden() throws IOException {
+    var client = HttpClient.newBuilder().readTimeout(Duration.ofMillis(200)).build();
+    var request = HttpRequest.newBuilder(request("/slow").uri())
+        .timeout(Duration.ofSeconds(5))
+        .build();
+    assertEquals(client.send(request, HttpResponse.BodyHandlers.ofString()).body(), "slow");
+  }
+
+  @Test
+  public void send_TotalTimeoutWhileReadingBody_TimedOut() {
+    var client = HttpClient.newBuilder().requestTimeout(Duration.ofMillis(500)).build();
+    long start = System.nanoTime();
+    expectThrows(SocketTimeoutException.class,
+        () -> client.send(request("/dribble"), HttpResponse.BodyHandlers.ofString()));
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+  }
+
+  /**
+   * Opens a server answering a single request with the headers and two of the ten
+   * bytes of the body, after which it stops sending until it is closed.
+   */
+  private static ServerSocket stallingServer() throws IOException {
+    ServerSocket serverSocket = new ServerSocket(0);
+    Thread thread = new Thread(() -> {
+      try (Socket socket = serverSocket.accept()) {
+        InputStream in = socket.getInputStream();
+        int tail = 0;
+        int b;
+        while ((b = in.read()) >= 0 && (tail = tail << 8 | b) != 0x0d0a0d0a) {
+          // the request head ends with an empty line
+        }
+        socket.getOutputStream().write(
+            "HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n01".getBytes());
+        socket.getInputStream().read();
+      }
+      catch (IOException ignored) {
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return serverSocket;
+  }
+
+  @Test
+  public void send_TotalTimeoutWhileBodyStalled_TimedOut() throws IOException {
+    var client = HttpClient.newBuilder().requestTimeout(Duration.ofMillis(500)).build();
+    try (var stalling = stallingServer()) {
+      var request = HttpRequest.newBuilder(
+          URI.create("http://localhost:" + stalling.getLocalPort() + "/")).build();
+      long start = System.nanoTime();
+      expectThrows(SocketTimeoutException.class,
+          () -> client.send(request, HttpResponse.BodyHandlers.ofString()));
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+    }
+  }
+
+  @Test
+  public void sendAsync_TotalTimeoutWhileBodyStalled_Failed() throws Exception {
+    var client = HttpClient.newBuilder().requestTimeout(Duration.ofMillis(500)).build();
+    try (var stalling = stallingServer()) {
+      var request = HttpRequest.newBuilder(
+          URI.create("http://localhost:" + stalling.getLocalPort() + "/")).build();
+      var future = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+      var exc = expectThrows(ExecutionException.class,
+          () -> future.get(1500, TimeUnit.MILLISECONDS));
+      assertTrue(exc.getCause() instanceof SocketTimeoutException);
+    }
+  }
+
+  @Test
+  public void send_WriteTimeout_TimedOut() {
+    var client = HttpClient.newBuilder().writeTimeout(Duration.ofMillis(200)).build();
+    InputStream stalling = new InputStream() {
+      int count = 0;
+
+      @Override
+      public int read() throws IOException {
+        if (count++ == 0)
+          return 'x';
+        try {
+          Thread.sleep(500);
+        }
+        catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        return count < 4 ? 'x' : -1;
+      }
+    };
+    var request = HttpRequest.newBuilder(request("/").uri())
+        .POST(new InputStreamRequestBody(() -> stalling))
+        .build();
+    var exc = expectThrows(SocketTimeoutException.class,
+        () -> client.send(request, HttpResponse.BodyHandlers.ofString()));
+    assertEquals(exc.getMessage(), "write timed out");
+  }
+
+  @Test
+  public void sendAsync_DefaultExecutor_Used() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "client-executor"));
+    try {
+      var client = HttpClient.newBuilder().executor(executor).build();
+      var response = client.sendAsync(request("/"), (info, stream) -> {
+        stream.readAllBytes();
+        return Thread.currentThread().getName();
+      }).get(2, TimeUnit.SECONDS);
+      assertEquals(response.body(), "client-executor");
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void sendAsync_MaxConnectionsPerHost_RequestsQueued() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      var client = HttpClient.newBuilder().executor(executor).maxConnectionsPerHost(1).build();
+      long start = System.nanoTime();
+      var futures = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+      for (int i = 0; i < 3; i++) {
+        futures.add(client.sendAsync(request("/slow"), HttpResponse.BodyHandlers.ofString()));
+      }
+      for (var future : futures) {
+        assertEquals(future.get(5, TimeUnit.SECONDS).body(), "slow");
+      }
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1800));
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void send_SocketOptions_AppliedToTlsConnections()
+      throws IOException, GeneralSecurityException {
+    SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+    HostnameVerifier defaultVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+    var trustAll = new X509TrustManager() {
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+    };
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, new TrustManager[]{trustAll}, null);
+    HttpsURLConnection.setDefaultSSLSocketFactory(context.getSocketFactory());
+    HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+    try {
+      var client = HttpClient.newBuilder()
+          .tcpNoDelay(true)
+          .keepAlive(true)
+          .receiveBufferSize(128 * 1024)
+          .localAddress(InetAddress.getByName("127.0.0.2"))
+          .build();
+      var request = HttpRequest.newBuilder(
+          URI.create("https://127.0.0.1:" + server.httpsPort() + "/")).build();
+      assertEquals(client.send(request, HttpResponse.BodyHandlers.ofString()).body(), "ok");
+      assertEquals(findAll(getRequestedFor(urlEqualTo("/"))).get(0).getClientIp(),
+          "127.0.0.2");
+    }
+    finally {
+      HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+      HttpsURLConnection.setDefaultHostnameVerifier(defaultVerifier);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void connectTimeout_Zero_Rejected() {
+    HttpClient.newBuilder().connectTimeout(Duration.ZERO);
+  }
+}
@@ -9,6 +9,7 @@ import java.net.URI;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static org.testng.Assert.*;
 
@@ -212,4 +213,33 @@ public class SimpleHttpRequestBuilderTest {
     var request = builder.build();
     assertFalse(request.timeout().isPresent());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void copyOf_Request_AllPropertiesCopied() {
+    var body = new ByteArrayRequestBody(new byte[]{1, 2, 3});
+    var original = new SimpleHttpRequestBuilder()
+        .uri(EXAMPLE_URI)
+        .header("Accept", "text/plain")
+        .POST(body)
+        .timeout(Duration.ofSeconds(2))
+        .build();
+    var copy = HttpRequest.newBuilder(original).build();
+    assertEquals(copy.uri(), EXAMPLE_URI);
+    assertEquals(copy.method(), "POST");
+    assertEquals(copy.headers(), original.headers());
+    assertSame(copy.body().orElseThrow(), body);
+    assertEquals(copy.timeout(), Optional.of(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  public void copyOf_ModifiedCopy_OriginalUnchanged() {
+    var original = new SimpleHttpRequestBuilder().uri(EXAMPLE_URI).header("A", "1").build();
+    var copy = HttpRequest.newBuilder(original)
+        .uri(URI.create("http://example.com"))
+        .header("A", "2")
+        .build();
+    assertEquals(original.headers().allValues("A"), List.of("1"));
+    assertEquals(copy.headers().allValues("A"), List.of("1", "2"));
+    assertEquals(copy.uri(), URI.create("http://example.com"));
+  }
+}
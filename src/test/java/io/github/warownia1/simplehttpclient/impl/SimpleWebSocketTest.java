@@ -0,0 +1,570 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.WebSocket;
+import org.testng.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ProxySelector;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.testng.Assert.*;
+
+public class SimpleWebSocketTest {
+  ServerSocket serverSocket;
+  ExecutorService executor;
+  final List<String> requestHeads = new CopyOnWriteArrayList<>();
+  final List<String> serverEvents = new CopyOnWriteArrayList<>();
+
+  @BeforeClass
+  public void setupServer() throws IOException {
+    serverSocket = new ServerSocket(0);
+    Thread thread = new Thread(this::acceptConnections, "websocket-server");
+    thread.setDaemon(true);
+    thread.start();
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterClass
+  public void teardownServer() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+
+  @BeforeMethod
+  public void reset() {
+    requestHeads.clear();
+    serverEvents.clear();
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        Thread thread = new Thread(() -> handle(socket));
+        thread.setDaemon(true);
+        thread.start();
+      }
+      catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Completes the handshake and echoes the messages. The text message "burst" is
+   * answered with three messages, "fragments" with a message in three frames and
+   * "ping-me" with a ping. A request to /reject is refused, one to /cookie is
+   * answered with a cookie and one to /flood with headers without end.
+   */
+  private void handle(Socket socket) {
+    try (socket) {
+      InputStream in = socket.getInputStream();
+      OutputStream out = socket.getOutputStream();
+      String head = readHead(in);
+      requestHeads.add(head);
+      if (head.startsWith("GET /reject ")) {
+        out.write("HTTP/1.1 403 Forbidden\r\nContent-Length: 0\r\n\r\n".getBytes());
+        return;
+      }
+      if (head.startsWith("GET /flood ")) {
+        out.write("HTTP/1.1 101 Switching Protocols\r\n".getBytes());
+        for (int i = 0; !socket.isClosed(); i++) {
+          out.write(("X-Flood-" + i + ": value\r\n").getBytes());
+        }
+        return;
+      }
+      String key = header(head, "Sec-WebSocket-Key");
+      byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+          (key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes());
+      boolean deflate = header(head, "Sec-WebSocket-Extensions") != null;
+      out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n" +
+          "Connection: Upgrade\r\nSec-WebSocket-Accept: " +
+          Base64.getEncoder().encodeToString(hash) + "\r\n" +
+          (head.startsWith("GET /cookie ") ? "Set-Cookie: session=abc\r\n" : "") +
+          (header(head, "Sec-WebSocket-Protocol") != null
+              ? "Sec-WebSocket-Protocol: chat\r\n" : "") +
+          (deflate ? "Sec-WebSocket-Extensions: permessage-deflate; " +
+              "client_no_context_takeover; server_no_context_takeover\r\n" : "") +
+          "\r\n").getBytes());
+      var message = new ByteArrayOutputStream();
+      int messageType = 0;
+      boolean compressed = false;
+      while (true) {
+        int b0 = in.read();
+        if (b0 < 0)
+          return;
+        int b1 = in.read();
+        int opcode = b0 & 0x0f;
+        if ((b1 & 0x80) == 0)
+          serverEvents.add("unmasked");
+        long length = b1 & 0x7f;
+        if (length == 126)
+          length = (in.read() << 8) | in.read();
+        else if (length == 127)
+          length = ByteBuffer.wrap(in.readNBytes(8)).getLong();
+        byte[] mask = in.readNBytes(4);
+        byte[] payload = in.readNBytes((int) length);
+        for (int i = 0; i < payload.length; i++) {
+          payload[i] ^= mask[i & 3];
+        }
+        if (opcode == 0x8) {
+          serverEvents.add("close:" + ByteBuffer.wrap(payload).getShort());
+          writeFrame(out, 0x88, payload);
+          return;
+        }
+        if (opcode == 0x9) {
+          writeFrame(out, 0x8A, payload);
+          continue;
+        }
+        if (opcode == 0xA) {
+          serverEvents.add("pong:" + new String(payload));
+          continue;
+        }
+        if (opcode != 0) {
+          messageType = opcode;
+          compressed = (b0 & 0x40) != 0;
+          if (compressed)
+            serverEvents.add("compressed");
+        }
+        message.write(payload);
+        if ((b0 & 0x80) == 0)
+          continue;
+        byte[] data = message.toByteArray();
+        message.reset();
+        if (compressed)
+          data = inflate(data);
+        String text = new String(data, StandardCharsets.UTF_8);
+        if (messageType == 0x1 && text.equals("burst")) {
+          for (String part : List.of("1", "2", "3")) {
+            writeFrame(out, 0x81, part.getBytes());
+          }
+        }
+        else if (messageType == 0x1 && text.equals("fragments")) {
+          writeFrame(out, 0x01, "fr".getBytes());
+          writeFrame(out, 0x00, "ag".getBytes());
+          writeFrame(out, 0x80, "ments".getBytes());
+        }
+        else if (messageType == 0x1 && text.equals("ping-me")) {
+          writeFrame(out, 0x89, "srv".getBytes());
+        }
+        else if (deflate) {
+          writeFrame(out, 0xC0 | messageType, deflate(data));
+        }
+        else {
+          writeFrame(out, 0x80 | messageType, data);
+        }
+      }
+    }
+    catch (Exception ignored) {
+    }
+  }
+
+  private static void writeFrame(OutputStream out, int b0, byte[] payload) throws IOException {
+    out.write(b0);
+    if (payload.length < 126) {
+      out.write(payload.length);
+    }
+    else if (payload.length <= 0xffff) {
+      out.write(126);
+      out.write(payload.length >>> 8);
+      out.write(payload.length);
+    }
+    else {
+      out.write(127);
+      out.write(ByteBuffer.allocate(8).putLong(payload.length).array());
+    }
+    out.write(payload);
+    out.flush();
+  }
+
+  private static byte[] deflate(byte[] data) {
+    var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data);
+    byte[] buffer = new byte[data.length + 64];
+    int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+    deflater.end();
+    return Arrays.copyOf(buffer, length - 4);
+  }
+
+  private static byte[] inflate(byte[] data) throws Exception {
+    var inflater = new Inflater(true);
+    var input = Arrays.copyOf(data, data.length + 4);
+    input[data.length + 2] = (byte) 0xff;
+    input[data.length + 3] = (byte) 0xff;
+    inflater.setInput(input);
+    var output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int count;
+    while ((count = inflater.inflate(buffer)) > 0) {
+      output.write(buffer, 0, count);
+    }
+    inflater.end();
+    return output.toByteArray();
+  }
+
+  private static String readHead(InputStream in) throws IOException {
+    var head = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) >= 0) {
+      head.write(b);
+      String text = head.toString(StandardCharsets.ISO_8859_1);
+      if (text.endsWith("\r\n\r\n"))
+        return text;
+    }
+    throw new IOException("connection closed");
+  }
+
+  private static String header(String head, String name) {
+    for (String line : head.split("\r\n")) {
+      if (line.toLowerCase().startsWith(name.toLowerCase() + ":"))
+        return line.substring(name.length() + 1).trim();
+    }
+    return null;
+  }
+
+  /**
+   * Records the events of the listener, requesting a message after each of them unless
+   * the demand is managed by the test.
+   */
+  static class RecordingListener implements WebSocket.Listener {
+    final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    final boolean manualDemand;
+    final StringBuilder text = new StringBuilder();
+    int parts = 0;
+
+    RecordingListener(boolean manualDemand) {
+      this.manualDemand = manualDemand;
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+      webSocket.request(1);
+    }
+
+    private void next(WebSocket webSocket) {
+      if (!manualDemand)
+        webSocket.request(1);
+    }
+
+    @Override
+    public void onText(WebSocket webSocket, CharSequence data, boolean last) {
+      text.append(data);
+      parts++;
+      if (last) {
+        events.add("text:" + text + (parts > 1 ? "/" + parts : ""));
+        text.setLength(0);
+        parts = 0;
+      }
+      next(webSocket);
+    }
+
+    @Override
+    public void onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+      events.add("binary:" + StandardCharsets.UTF_8.decode(data));
+      next(webSocket);
+    }
+
+    @Override
+    public void onPing(WebSocket webSocket, ByteBuffer message) {
+      events.add("ping:" + StandardCharsets.UTF_8.decode(message));
+      next(webSocket);
+    }
+
+    @Override
+    public void onPong(WebSocket webSocket, ByteBuffer message) {
+      events.add("pong:" + StandardCharsets.UTF_8.decode(message));
+      next(webSocket);
+    }
+
+    @Override
+    public void onClose(WebSocket webSocket, int statusCode, String reason) {
+      events.add("close:" + statusCode);
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+      events.add("error:" + error);
+    }
+
+    String next() throws InterruptedException {
+      return events.poll(2, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Accepts a single CONNECT request, records its head and relays the tunnel to the
+   * test server.
+   */
+  private void proxyConnection(ServerSocket proxySocket, List<String> proxyHeads) {
+    try (Socket client = proxySocket.accept();
+         Socket server = new Socket("localhost", serverSocket.getLocalPort())) {
+      proxyHeads.add(readHead(client.getInputStream()));
+      client.getOutputStream().write(
+          "HTTP/1.1 200 Connection Established\r\n\r\n".getBytes());
+      Thread upstream = new Thread(() -> {
+        try {
+          client.getInputStream().transferTo(server.getOutputStream());
+        }
+        catch (IOException ignored) {
+        }
+      });
+      upstream.setDaemon(true);
+      upstream.start();
+      server.getInputStream().transferTo(client.getOutputStream());
+    }
+    catch (IOException ignored) {
+    }
+  }
+
+  private HttpRequest.Builder request(String path) {
+    return HttpRequest.newBuilder(
+        URI.create("http://localhost:" + serverSocket.getLocalPort() + path));
+  }
+
+  @Test
+  public void newWebSocket_Handshake_HeadersSent() throws Exception {
+    var listener = new RecordingListener(false);
+    var request = request("/chat?room=1")
+        .header("Sec-WebSocket-Protocol", "chat")
+        .header("Authorization", "Bearer token")
+        .build();
+    var webSocket = HttpClient.newHttpClient().newWebSocket(request, listener, executor);
+    assertEquals(webSocket.getSubprotocol(), "chat");
+    String head = requestHeads.get(0);
+    assertTrue(head.startsWith("GET /chat?room=1 HTTP/1.1\r\n"));
+    assertTrue(head.contains("\r\nHost: localhost:" + serverSocket.getLocalPort() + "\r\n"));
+    assertTrue(head.contains("\r\nSec-WebSocket-Version: 13\r\n"));
+    assertTrue(head.contains("\r\nAuthorization: Bearer token\r\n"));
+    webSocket.abort();
+  }
+
+  @Test
+  public void sendText_Echoed_MaskedAndReceived() throws Exception {
+    var listener = new RecordingListener(false);
+    var webSocket = HttpClient.newHttpClient().newWebSocket(request("/").build(), listener,
+        executor);
+    webSocket.sendText("hello é€😀", true);
+    assertEquals(listener.next(), "text:hello é€😀");
+    webSocket.sendBinary(ByteBuffer.wrap("binary".getBytes()), true);
+    assertEquals(listener.next(), "binary:binary");
+    var large = "x".repeat(100_000);
+    webSocket.sendText(large, true);
+    assertEquals(listener.next(), "text:" + large);
+    assertFalse(serverEvents.contains("unmasked"));
+    webSocket.abort();
+  }
+
+  @Test
+  public void sendText_Fragments_ReassembledBothWays() throws Exception {
+    var listener = new RecordingListener(false);
+    var webSocket = HttpClient.newHttpClient().newWebSocket(request("/").build(), listener,
+        executor);
+    webSocket.sendText("frag", false);
+    expectThrows(IllegalStateException.class,
+        () -> webSocket.sendBinary(ByteBuffer.allocate(1), true));
+    webSocket.sendText("ments", true);
+    assertEquals(listener.next(), "text:fragments/3");
+    webSocket.abort();
+  }
+
+  @Test
+  public void sendPing_PongReceived_ServerPingAnswered() throws Exception {
+    var listener = new RecordingListener(false);
+    var webSocket = HttpClient.newHttpClient().newWebSocket(request("/").build(), listener,
+        executor);
+    webSocket.sendPing(ByteBuffer.wrap("client".getBytes()));
+    assertEquals(listener.next(), "pong:client");
+    webSocket.sendText("ping-me", true);
+    assertEquals(listener.next(), "ping:srv");
+    webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+    assertEquals(listener.next(), "close:1000");
+    assertTrue(serverEvents.contains("pong:srv"));
+    expectThrows(IllegalArgumentException.class,
+        () -> webSocket.sendPing(ByteBuffer.allocate(126)));
+  }
+
+  @Test
+  public void sendClose_ServerEchoes_BothSidesClosed() throws Exception {
+    var listener = new RecordingListener(false);
+    var webSocket = HttpClient.newHttpClient().newWebSocket(request("/").build(), listener,
+        executor);
+    webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+    assertTrue(webSocket.isOutputClosed());
+    assertEquals(listener.next(), "close:1000");
+    assertTrue(webSocket.isInputClosed());
+    assertEquals(serverEvents, List.of("close:1000"));
+    expectThrows(IllegalStateException.class, () -> webSocket.sendText("late", true));
+  }
+
+  @Test
+  public void sendText_PermessageDeflate_CompressedBothWays() throws Exception {
+    var listener = new RecordingListener(false);
+    var request = request("/")
+        .header("Sec-WebSocket-Extensions", "permessage-deflate")
+        .build();
+    var webSocket = HttpClient.newHttpClient().newWebSocket(request, listener, executor);
+    var text = "compressible ".repeat(1000);
+    for (int i = 0; i < 2; i++) {
+      webSocket.sendText(text, true);
+      assertEquals(listener.next(), "text:" + text);
+    }
+    webSocket.sendText("in ", false);
+    webSocket.sendText("parts", true);
+    assertEquals(listener.next(), "text:in parts");
+    assertEquals(serverEvents, List.of("compressed", "compressed", "compressed"));
+    webSocket.abort();
+  }
+
+  @Test
+  public void request_NoDemand_MessagesHeldBack() throws Exception {
+    var listener = new RecordingListener(true);
+    var webSocket = HttpClient.newHttpClient().newWebSocket(request("/").build(), listener,
+        executor);
+    webSocket.sendText("burst", true);
+    assertEquals(listener.next(), "text:1");
+    assertNull(listener.events.poll(300, TimeUnit.MILLISECONDS));
+    webSocket.request(2);
+    assertEquals(listener.next(), "text:2");
+    assertEquals(listener.next(), "text:3");
+    webSocket.abort();
+  }
+
+  @Test(expectedExceptions = ProtocolException.class)
+  public void newWebSocket_HandshakeRefused_Rejected() throws Exception {
+    HttpClient.newHttpClient().newWebSocket(request("/reject").build(),
+        new RecordingListener(false), executor);
+  }
+
+  @Test
+  public void newWebSocket_EndlessHandshakeHeaders_Rejected() {
+    var e = expectThrows(ProtocolException.class,
+        () -> HttpClient.newHttpClient().newWebSocket(request("/flood").build(),
+            new RecordingListener(false), executor));
+    assertEquals(e.getMessage(), "too many headers");
+  }
+
+  @Test
+  public void newWebSocket_HeaderWithLineBreak_Rejected() {
+    var request = request("/").header("X-Injected", "a\r\nHost: evil").build();
+    expectThrows(IllegalArgumentException.class,
+        () -> HttpClient.newHttpClient().newWebSocket(request,
+            new RecordingListener(false), executor));
+    assertTrue(requestHeads.isEmpty());
+  }
+
+  @Test
+  public void newWebSocket_CookieHandler_CookiesStoredAndSent() throws Exception {
+    var client = HttpClient.newBuilder()
+        .cookieHandler(new CookieManager(null, CookiePolicy.ACCEPT_ALL))
+        .build();
+    client.newWebSocket(request("/cookie").build(), new RecordingListener(false), executor)
+        .abort();
+    client.newWebSocket(request("/").build(), new RecordingListener(false), executor)
+        .abort();
+    assertEquals(header(requestHeads.get(1), "Cookie"), "session=abc");
+  }
+
+  @Test
+  public void newWebSocket_DecoratedClient_OpenedByDelegate() throws Exception {
+    var client = new RetryingHttpClient(
+        HttpClient.newBuilder()
+            .cookieHandler(new CookieManager(null, CookiePolicy.ACCEPT_ALL))
+            .build(),
+        RetryPolicy.defaultPolicy());
+    client.newWebSocket(request("/cookie").build(), new RecordingListener(false), executor)
+        .abort();
+    client.newWebSocket(request("/").build(), new RecordingListener(false), executor)
+        .abort();
+    assertEquals(header(requestHeads.get(1), "Cookie"), "session=abc");
+  }
+
+  @Test
+  public void newWebSocket_UnixSocketClient_Unsupported() {
+    var client = new UnixSocketHttpClient(Path.of("/nonexistent.sock"));
+    expectThrows(UnsupportedOperationException.class,
+        () -> client.newWebSocket(request("/").build(), new RecordingListener(false),
+            executor));
+    assertTrue(requestHeads.isEmpty());
+  }
+
+  @Test
+  public void newWebSocket_HttpProxy_Tunnelled() throws Exception {
+    var proxyHeads = new CopyOnWriteArrayList<String>();
+    try (var proxySocket = new ServerSocket(0)) {
+      Thread proxy = new Thread(() -> proxyConnection(proxySocket, proxyHeads));
+      proxy.setDaemon(true);
+      proxy.start();
+      var client = HttpClient.newBuilder()
+          .proxy(ProxySelector.of(
+              new InetSocketAddress("localhost", proxySocket.getLocalPort())))
+          .build();
+      var listener = new RecordingListener(false);
+      var webSocket = client.newWebSocket(request("/").build(), listener, executor);
+      webSocket.sendText("tunnelled", true);
+      assertEquals(listener.next(), "text:tunnelled");
+      webSocket.abort();
+    }
+    assertTrue(proxyHeads.get(0).startsWith(
+        "CONNECT localhost:" + serverSocket.getLocalPort() + " HTTP/1.1\r\n"));
+  }
+
+  @Test
+  public void maxWebSocketFrameSize_LargerFrame_ClosedWithMessageTooBig() throws Exception {
+    var client = HttpClient.newBuilder().maxWebSocketFrameSize(1000).build();
+    var listener = new RecordingListener(false);
+    var webSocket = client.newWebSocket(request("/").build(), listener, executor);
+    webSocket.sendText("x".repeat(1000), true);
+    assertEquals(listener.next(), "text:" + "x".repeat(1000));
+    webSocket.sendText("x".repeat(1001), true);
+    assertTrue(listener.next().startsWith("error:"));
+    assertTrue(webSocket.isInputClosed());
+    assertTrue(webSocket.isOutputClosed());
+    for (int i = 0; i < 20 && !serverEvents.contains("close:1009"); i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(serverEvents, List.of("close:1009"));
+  }
+
+  @Test
+  public void maxWebSocketFrameSize_LargerInflatedFrame_ClosedWithMessageTooBig()
+      throws Exception {
+    var client = HttpClient.newBuilder().maxWebSocketFrameSize(1000).build();
+    var listener = new RecordingListener(false);
+    var request = request("/")
+        .header("Sec-WebSocket-Extensions", "permessage-deflate")
+        .build();
+    var webSocket = client.newWebSocket(request, listener, executor);
+    webSocket.sendText("z".repeat(2000), true);
+    assertTrue(listener.next().startsWith("error:"));
+    for (int i = 0; i < 20 && !serverEvents.contains("close:1009"); i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(serverEvents, List.of("compressed", "close:1009"));
+  }
+}
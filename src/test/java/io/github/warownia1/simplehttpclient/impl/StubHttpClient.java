@@ -0,0 +1,54 @@
+package io.github.warownia1.simplehttpclient.impl;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A client answering the requests without a server. The status of the response is
+ * given in the request path, such as /503, or by the status field for other paths. The
+ * path /fail and a negative status fail the request as if the connection was refused.
+ */
+class StubHttpClient implements HttpClient {
+  volatile int status = 200;
+  final AtomicInteger sent = new AtomicInteger();
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+      throws IOException {
+    sent.incrementAndGet();
+    int status = statusOf(request);
+    if (status < 0)
+      throw new ConnectException("connection refused");
+    return new SimpleHttpResponse<>(status, request, null, null, request.uri());
+  }
+
+  private int statusOf(HttpRequest request) {
+    String path = request.uri().getPath();
+    if (path.equals("/fail"))
+      return -1;
+    if (path.matches("/\\d{3}"))
+      return Integer.parseInt(path.substring(1));
+    return status;
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+      HttpResponse.BodyHandler<T> handler, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return send(request, handler);
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+}
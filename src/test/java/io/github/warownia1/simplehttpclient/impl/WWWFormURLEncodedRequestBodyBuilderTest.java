@@ -3,7 +3,10 @@ package io.github.warownia1.simplehttpclient.impl;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -101,6 +104,65 @@ public class WWWFormURLEncodedRequestBodyBuilderTest {
     assertEquals(body.getBytes(), new byte[0]);
   }
 
+  @Test(dataProvider = "SingleParameter")
+  public void build_StreamingSingleParameter_ContentLengthMatches(
+      Map.Entry<String, String> entry, String expectedBody) {
+    var builder = WWWFormURLEncodedRequestBodyBuilder.streaming();
+    builder.append(entry.getKey(), entry.getValue());
+    var body = builder.build();
+    assertEquals(body.contentLength(), expectedBody.getBytes(UTF_8).length);
+  }
+
+  @Test(dataProvider = "MultipleParameters")
+  public void build_StreamingMultiParameters_WrittenBodyEqual(
+      List<Map.Entry<String, String>> entries, String expectedBody) throws IOException {
+    var builder = WWWFormURLEncodedRequestBodyBuilder.streaming();
+    for (var entry : entries) {
+      builder.append(entry.getKey(), entry.getValue());
+    }
+    var body = builder.build();
+    var out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    assertEquals(out.toByteArray(), expectedBody.getBytes(UTF_8));
+    assertEquals(body.getBytes(), expectedBody.getBytes(UTF_8));
+  }
+
+  @Test
+  public void build_StreamingLargeBody_WrittenBodyEqualsEager() throws IOException {
+    var eager = newBuilder();
+    var streaming = WWWFormURLEncodedRequestBodyBuilder.streaming();
+    for (int i = 0; i < 1000; i++) {
+      eager.append("field" + i, "val*ü " + i);
+      streaming.append("field" + i, "val*ü " + i);
+    }
+    var out = new ByteArrayOutputStream();
+    streaming.build().writeTo(out);
+    assertEquals(out.toByteArray(), eager.build().getBytes());
+  }
+
+  @Test
+  public void build_AppendAll_EntriesInMapOrder() {
+    var map = new LinkedHashMap<String, String>();
+    map.put("inflate", "yes");
+    map.put("registration", "completed");
+    map.put("orientation", "vertical");
+    var body = newBuilder().append("first", "1").appendAll(map).build();
+    assertEquals(body.getBytes(),
+        "first=1&inflate=yes&registration=completed&orientation=vertical".getBytes(UTF_8));
+  }
+
+  @Test
+  public void build_SupplementaryCharacter_EncodedAsFourBytes() {
+    var body = newBuilder().append("emoji", "\uD83D\uDE00").build();
+    assertEquals(body.getBytes(), "emoji=%F0%9F%98%80".getBytes(UTF_8));
+  }
+
+  @Test
+  public void build_UnpairedSurrogate_EncodedAsQuestionMark() {
+    var body = newBuilder().append("broken", "a\uD83Db").build();
+    assertEquals(body.getBytes(), "broken=a%3Fb".getBytes(UTF_8));
+  }
+
   public static WWWFormURLEncodedRequestBodyBuilder newBuilder() {
     return new WWWFormURLEncodedRequestBodyBuilder();
   }